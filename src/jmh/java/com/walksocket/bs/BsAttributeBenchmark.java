@@ -0,0 +1,81 @@
+package com.walksocket.bs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmark of session value per message.
+ * <pre>
+ *   counter pattern of README, by name and by attribute key.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class BsAttributeBenchmark {
+
+  /**
+   * counter key.
+   */
+  private static final BsAttributeKey<Integer> CNT = BsAttributeKey.intKey("cnt");
+
+  /**
+   * local.
+   */
+  private BsLocal local;
+
+  /**
+   * remote.
+   */
+  private BsRemote remote;
+
+  /**
+   * setup.
+   * @throws BsLocal.BsLocalException local exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws BsLocal.BsLocalException {
+    local = new BsLocal("127.0.0.1", 9150);
+    remote = new BsRemote("127.0.0.1", 19150, local.getLocalChannel());
+  }
+
+  /**
+   * teardown.
+   */
+  @TearDown(Level.Trial)
+  public void teardown() {
+    local.getLocalChannel().destroy();
+  }
+
+  /**
+   * count by name.
+   * @return count
+   */
+  @Benchmark
+  public int value() {
+    int cnt = 0;
+    Optional<Integer> opt = remote.getValue("cnt", Integer.class);
+    if (opt.isPresent()) {
+      cnt = opt.get();
+    }
+    remote.setValue("cnt", ++cnt);
+    return cnt;
+  }
+
+  /**
+   * count by attribute key.
+   * @return count
+   */
+  @Benchmark
+  public int attribute() {
+    int cnt = remote.getInt(CNT) + 1;
+    remote.setInt(CNT, cnt);
+    return cnt;
+  }
+}
@@ -0,0 +1,148 @@
+package com.walksocket.bs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmark of cidr filter lookup.
+ * <pre>
+ *   ipv4 list is mostly /24, with /16 and /28, ipv6 list is /48 and /64.
+ *   half of looked up addresses are in listed prefixes.
+ *   compile is time to build table, paid on every swap.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class BsCidrBenchmark {
+
+  /**
+   * prefix count per address family.
+   */
+  @Param({"1000", "100000"})
+  public int prefixes;
+
+  /**
+   * looked up address count, power of 2.
+   */
+  private static final int ADDRESSES = 4096;
+
+  /**
+   * filter.
+   */
+  private BsCidrFilter filter;
+
+  /**
+   * table.
+   */
+  private BsCidrTable table;
+
+  /**
+   * ipv4 addresses.
+   */
+  private final InetAddress[] ipv4 = new InetAddress[ADDRESSES];
+
+  /**
+   * ipv6 addresses.
+   */
+  private final InetAddress[] ipv6 = new InetAddress[ADDRESSES];
+
+  /**
+   * next address.
+   */
+  private int next;
+
+  /**
+   * setup.
+   * @throws UnknownHostException address exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws UnknownHostException {
+    Random random = new Random(1);
+    filter = new BsCidrFilter();
+    int[] listed4 = new int[prefixes];
+    long[] listed6 = new long[prefixes];
+    for (int i = 0; i < prefixes; i++) {
+      int ip = random.nextInt();
+      listed4[i] = ip;
+      int r = random.nextInt(100);
+      int length = r < 5 ? 16 : r < 10 ? 28 : 24;
+      filter.deny(String.format("%s/%s", InetAddress.getByAddress(ipv4(ip)).getHostAddress(), length));
+
+      long hi = random.nextLong();
+      listed6[i] = hi;
+      filter.deny(String.format("%s/%s", InetAddress.getByAddress(ipv6(hi, 0)).getHostAddress(), r < 50 ? 48 : 64));
+    }
+    table = filter.compile();
+    for (int i = 0; i < ADDRESSES; i++) {
+      boolean listed = (i & 1) == 0;
+      int ip = listed ? listed4[random.nextInt(prefixes)] : random.nextInt();
+      ipv4[i] = InetAddress.getByAddress(ipv4(ip));
+      long hi = listed ? listed6[random.nextInt(prefixes)] : random.nextLong();
+      ipv6[i] = InetAddress.getByAddress(ipv6(hi, random.nextLong()));
+    }
+  }
+
+  /**
+   * ipv4 bytes.
+   * @param ip ip
+   * @return bytes
+   */
+  private static byte[] ipv4(int ip) {
+    return new byte[] {(byte) (ip >>> 24), (byte) (ip >>> 16), (byte) (ip >>> 8), (byte) ip};
+  }
+
+  /**
+   * ipv6 bytes.
+   * @param hi upper 64 bits
+   * @param lo lower 64 bits
+   * @return bytes
+   */
+  private static byte[] ipv6(long hi, long lo) {
+    byte[] b = new byte[16];
+    for (int i = 0; i < 8; i++) {
+      b[i] = (byte) (hi >>> (56 - i * 8));
+      b[i + 8] = (byte) (lo >>> (56 - i * 8));
+    }
+    return b;
+  }
+
+  /**
+   * look up ipv4.
+   * @return allowed
+   */
+  @Benchmark
+  public boolean lookupIpv4() {
+    return table.allows(ipv4[next++ & (ADDRESSES - 1)]);
+  }
+
+  /**
+   * look up ipv6.
+   * @return allowed
+   */
+  @Benchmark
+  public boolean lookupIpv6() {
+    return table.allows(ipv6[next++ & (ADDRESSES - 1)]);
+  }
+
+  /**
+   * build table for swap.
+   * @return table
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 3)
+  @Measurement(iterations = 5)
+  public BsCidrTable compile() {
+    return filter.compile();
+  }
+}
@@ -0,0 +1,57 @@
+package com.walksocket.bs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmark of clock read on receive path.
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class BsClockBenchmark {
+
+  /**
+   * coarse clock.
+   */
+  private BsCoarseClock coarse;
+
+  /**
+   * setup.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    coarse = new BsCoarseClock(1);
+  }
+
+  /**
+   * teardown.
+   */
+  @TearDown(Level.Trial)
+  public void teardown() {
+    coarse.close();
+  }
+
+  /**
+   * system clock.
+   * @return millis
+   */
+  @Benchmark
+  public long system() {
+    return BsSystemClock.INSTANCE.millis();
+  }
+
+  /**
+   * coarse clock.
+   * @return millis
+   */
+  @Benchmark
+  public long coarse() {
+    return coarse.millis();
+  }
+}
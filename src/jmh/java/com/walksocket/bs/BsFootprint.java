@@ -0,0 +1,128 @@
+package com.walksocket.bs;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * footprint of registered remotes, on heap and off heap.
+ * <pre>
+ *   registers remotes with one int attribute each, like server receiving from them once,
+ *   and prints retained heap and direct memory per remote after gc.
+ *
+ *   run with ./gradlew footprint -Pfootprint.args="remotes=1000000 mode=offheap"
+ *   remotes     remote count (1000000)
+ *   mode        heap or offheap (heap)
+ *   stateBytes  state bytes of off-heap remote (8)
+ *   devide      shard count (10)
+ *   heap mode of 10M remotes needs about 8g heap, set org.gradle.jvmargs or -Xmx.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsFootprint {
+
+  /**
+   * counter key.
+   */
+  private static final BsAttributeKey<Integer> CNT = BsAttributeKey.intKey("cnt");
+
+  /**
+   * main.
+   * @param args key=value options
+   * @throws Exception footprint exception
+   */
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new LinkedHashMap<>();
+    options.put("remotes", "1000000");
+    options.put("mode", "heap");
+    options.put("stateBytes", "8");
+    options.put("devide", "10");
+    for (String arg : args) {
+      for (String option : arg.trim().split("\\s+")) {
+        if (option.isEmpty()) {
+          continue;
+        }
+        String[] kv = option.split("=", 2);
+        if (kv.length != 2 || !options.containsKey(kv[0])) {
+          throw new IllegalArgumentException("unknown option:" + option + ", options:" + options.keySet());
+        }
+        options.put(kv[0], kv[1]);
+      }
+    }
+    System.out.println("options:" + options);
+    int remotes = Integer.parseInt(options.get("remotes"));
+    int devide = Integer.parseInt(options.get("devide"));
+    boolean offHeap = "offheap".equals(options.get("mode"));
+
+    BsLocal local = new BsLocal("127.0.0.1", 9160);
+    BsRemoteManager manager = new BsRemoteManager(devide, new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+      }
+    }, new BsShutdown());
+    if (offHeap) {
+      manager.setSlab(new BsRemoteSlab(remotes, Integer.parseInt(options.get("stateBytes")), devide));
+    }
+
+    long heapBefore = usedHeap();
+    long directBefore = usedDirect();
+    long start = System.nanoTime();
+    byte[] address = new byte[4];
+    for (int i = 0; i < remotes; i++) {
+      address[0] = 10;
+      address[1] = (byte) (i >>> 16);
+      address[2] = (byte) (i >>> 8);
+      address[3] = (byte) i;
+      InetSocketAddress remoteAddr = new InetSocketAddress(InetAddress.getByAddress(address), 10000 + (i >>> 24));
+      BsRemote remote = manager.generate(remoteAddr, local.getLocalChannel());
+      remote.setInt(CNT, 1);
+    }
+    long elapsed = System.nanoTime() - start;
+
+    // let timing wheels take new remotes
+    manager.startServiceTimeout();
+    Thread.sleep(1500);
+    long heap = usedHeap() - heapBefore;
+    long direct = usedDirect() - directBefore;
+
+    System.out.println(String.format("remotes:%s, generate ns/remote:%s", manager.getRemoteCount(), elapsed / remotes));
+    System.out.println(String.format("heap bytes:%s (%s/remote)", heap, heap / remotes));
+    System.out.println(String.format("direct bytes:%s (%s/remote)", direct, direct / remotes));
+    System.out.println(String.format("total bytes/remote:%s", (heap + direct) / remotes));
+    local.getLocalChannel().destroy();
+    System.exit(0);
+  }
+
+  /**
+   * get used heap after gc.
+   * @return bytes
+   * @throws InterruptedException interrupted
+   */
+  private static long usedHeap() throws InterruptedException {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  /**
+   * get used direct memory.
+   * @return bytes
+   */
+  private static long usedDirect() {
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if ("direct".equals(pool.getName())) {
+        return pool.getMemoryUsed();
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,176 @@
+package com.walksocket.bs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * benchmark of small message coalescing through BsExecutorServer.
+ * <pre>
+ *   client sends 40 byte messages to echo server, and waits for echo.
+ *   flushDelayMicros none is without frame handler, baseline.
+ *   pps is messages per second, and datagrams per message is printed on teardown.
+ *   roundTrip shows latency cost, flush delay is paid on both ways.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class BsFrameBenchmark {
+
+  /**
+   * messages per invocation of pps.
+   */
+  private static final int BATCH = 64;
+
+  /**
+   * wait timeout nanoseconds.
+   */
+  private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * flush delay microseconds, or none.
+   */
+  @Param({"none", "0", "200"})
+  public String flushDelayMicros;
+
+  /**
+   * server.
+   */
+  private BsExecutorServer server;
+
+  /**
+   * client.
+   */
+  private BsExecutorClient client;
+
+  /**
+   * frame handler of client.
+   */
+  private BsFrameHandler frame;
+
+  /**
+   * remote of server.
+   */
+  private BsRemote remote;
+
+  /**
+   * message.
+   */
+  private final byte[] message = new byte[40];
+
+  /**
+   * echoed count.
+   */
+  private final AtomicLong echoed = new AtomicLong();
+
+  /**
+   * expected echoed count.
+   */
+  private long expected;
+
+  /**
+   * setup.
+   * @throws Exception start exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        try {
+          remote.send(message);
+        } catch (BsRemote.BsSendException e) {
+          BsLogger.error(e);
+        }
+      }
+    }, Collections.singletonList(new BsLocal("127.0.0.1", 9170)));
+
+    BsLocal local = new BsLocal("127.0.0.1", 9171);
+    remote = new BsRemote("127.0.0.1", 9170, local.getLocalChannel());
+    remote.setIdleMilliSeconds(Integer.MAX_VALUE);
+    client = new BsExecutorClient(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        echoed.incrementAndGet();
+      }
+    }, local, remote);
+
+    if (!"none".equals(flushDelayMicros)) {
+      long delay = Long.parseLong(flushDelayMicros);
+      frame = new BsFrameHandler().flushDelayMicros(delay);
+      server.pipeline(new BsPipeline().addLast(new BsFrameHandler().flushDelayMicros(delay)));
+      client.pipeline(new BsPipeline().addLast(frame));
+    }
+    server.start();
+    client.start();
+  }
+
+  /**
+   * teardown.
+   */
+  @TearDown(Level.Trial)
+  public void teardown() {
+    if (frame != null) {
+      System.out.println(String.format(
+          "datagrams/message:%.3f (%s)",
+          (double) frame.getSentDatagrams() / Math.max(1, frame.getSentMessages()),
+          frame));
+    }
+    client.shutdown();
+    server.shutdown();
+  }
+
+  /**
+   * one round trip.
+   * @return echoed count
+   * @throws BsRemote.BsSendException send exception
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public long roundTrip() throws BsRemote.BsSendException {
+    remote.send(message);
+    expected++;
+    return await();
+  }
+
+  /**
+   * batch of messages in flight.
+   * @return echoed count
+   * @throws BsRemote.BsSendException send exception
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @OperationsPerInvocation(BATCH)
+  public long pps() throws BsRemote.BsSendException {
+    for (int i = 0; i < BATCH; i++) {
+      remote.send(message);
+    }
+    expected += BATCH;
+    return await();
+  }
+
+  /**
+   * wait until expected messages are echoed.
+   * @return echoed count
+   */
+  private long await() {
+    long start = System.nanoTime();
+    long count;
+    while ((count = echoed.get()) < expected) {
+      if (System.nanoTime() - start > TIMEOUT) {
+        // lost, catch up
+        expected = count;
+        break;
+      }
+      Thread.yield();
+    }
+    return count;
+  }
+}
@@ -0,0 +1,79 @@
+package com.walksocket.bs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmark of logging overhead on caller thread.
+ * <pre>
+ *   sink discards lines, so formatting and handing off are measured.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class BsLoggerBenchmark {
+
+  /**
+   * logging mode.
+   */
+  @Param({"sync", "async"})
+  public String mode;
+
+  /**
+   * setup.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    BsLogSink sink = new BsLogSink() {
+      @Override
+      public void write(boolean error, CharSequence line) {
+      }
+    };
+    if ("async".equals(mode)) {
+      BsLogger.setAsync(65536, sink);
+    } else {
+      BsLogger.setSink(sink);
+    }
+    BsLogger.setVerbose(false);
+  }
+
+  /**
+   * teardown.
+   */
+  @TearDown(Level.Trial)
+  public void teardown() {
+    BsLogger.setSync();
+    BsLogger.setSink(BsConsoleSink.INSTANCE);
+  }
+
+  /**
+   * info from one thread.
+   */
+  @Benchmark
+  public void info() {
+    BsLogger.info("remote:127.0.0.1:8710, message received");
+  }
+
+  /**
+   * info from 4 threads.
+   */
+  @Benchmark
+  @Threads(4)
+  public void infoContended() {
+    BsLogger.info("remote:127.0.0.1:8710, message received");
+  }
+
+  /**
+   * debug while not verbose.
+   */
+  @Benchmark
+  public void debugDisabled() {
+    BsLogger.debug(() -> "remote:127.0.0.1:8710, message received");
+  }
+}
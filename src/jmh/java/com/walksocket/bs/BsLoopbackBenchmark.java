@@ -0,0 +1,193 @@
+package com.walksocket.bs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * benchmark of end-to-end loopback through BsExecutorServer.
+ * <pre>
+ *   clients send to echo server, and wait for echo.
+ *   lost datagram is given up after timeout, and not counted as failure.
+ *   selectorThreads shows pps scaling of server, every client is one flow,
+ *   so flows are spread across SO_REUSEPORT channels (java 9 and later for more than 1).
+ *   virtualThread compares virtual threads with default platform pool,
+ *   when every callback blocks for blockMicros (java 21 and later for true).
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class BsLoopbackBenchmark {
+
+  /**
+   * datagrams per invocation of pps.
+   */
+  private static final int BATCH = 64;
+
+  /**
+   * wait timeout nanoseconds.
+   */
+  private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * clients, each is one flow.
+   */
+  private static final int CLIENTS = 8;
+
+  /**
+   * message size.
+   */
+  @Param({"64", "1024"})
+  public int size;
+
+  /**
+   * selector threads of server.
+   */
+  @Param({"1", "2", "4", "8"})
+  public int selectorThreads;
+
+  /**
+   * callbacks on virtual threads.
+   */
+  @Param({"false", "true"})
+  public boolean virtualThread;
+
+  /**
+   * microseconds every callback blocks.
+   */
+  @Param({"0", "1000"})
+  public long blockMicros;
+
+  /**
+   * server.
+   */
+  private BsExecutorServer server;
+
+  /**
+   * clients.
+   */
+  private final BsExecutorClient[] clients = new BsExecutorClient[CLIENTS];
+
+  /**
+   * remotes of server, one per client.
+   */
+  private final BsRemote[] remotes = new BsRemote[CLIENTS];
+
+  /**
+   * message.
+   */
+  private byte[] message;
+
+  /**
+   * echoed count.
+   */
+  private final AtomicLong echoed = new AtomicLong();
+
+  /**
+   * expected echoed count.
+   */
+  private long expected;
+
+  /**
+   * setup.
+   * @throws Exception start exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        try {
+          if (blockMicros > 0) {
+            TimeUnit.MICROSECONDS.sleep(blockMicros);
+          }
+          remote.send(message);
+        } catch (BsRemote.BsSendException | InterruptedException e) {
+          BsLogger.error(e);
+        }
+      }
+    }, Collections.singletonList(new BsLocal("127.0.0.1", 9120)));
+    server.selectorThreads(selectorThreads);
+    server.virtualThread(virtualThread);
+    server.start();
+
+    for (int i = 0; i < CLIENTS; i++) {
+      BsLocal local = new BsLocal("127.0.0.1", 9121 + i);
+      remotes[i] = new BsRemote("127.0.0.1", 9120, local.getLocalChannel());
+      remotes[i].setIdleMilliSeconds(Integer.MAX_VALUE);
+      clients[i] = new BsExecutorClient(new BsCallback() {
+        @Override
+        public void incoming(BsRemote remote, byte[] message) {
+          echoed.incrementAndGet();
+        }
+      }, local, remotes[i]);
+      clients[i].start();
+    }
+    message = new byte[size];
+  }
+
+  /**
+   * teardown.
+   */
+  @TearDown(Level.Trial)
+  public void teardown() {
+    for (BsExecutorClient client : clients) {
+      client.shutdown();
+    }
+    server.shutdown();
+  }
+
+  /**
+   * one round trip.
+   * @return echoed count
+   * @throws BsRemote.BsSendException send exception
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public long roundTrip() throws BsRemote.BsSendException {
+    remotes[0].send(message);
+    expected++;
+    return await();
+  }
+
+  /**
+   * batch of datagrams in flight, spread over clients.
+   * @return echoed count
+   * @throws BsRemote.BsSendException send exception
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @OperationsPerInvocation(BATCH)
+  public long pps() throws BsRemote.BsSendException {
+    for (int i = 0; i < BATCH; i++) {
+      remotes[i % CLIENTS].send(message);
+    }
+    expected += BATCH;
+    return await();
+  }
+
+  /**
+   * wait until expected datagrams are echoed.
+   * @return echoed count
+   */
+  private long await() {
+    long start = System.nanoTime();
+    long count;
+    while ((count = echoed.get()) < expected) {
+      if (System.nanoTime() - start > TIMEOUT) {
+        // lost, catch up
+        expected = count;
+        break;
+      }
+      Thread.yield();
+    }
+    return count;
+  }
+}
@@ -0,0 +1,46 @@
+package com.walksocket.bs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmark of metrics recording on receive and dispatch path.
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Threads(4)
+public class BsMetricsBenchmark {
+
+  /**
+   * port metrics.
+   */
+  private final BsPortMetrics port = new BsPortMetrics(9140);
+
+  /**
+   * histogram.
+   */
+  private final BsHistogram histogram = new BsHistogram();
+
+  /**
+   * count received batch.
+   */
+  @Benchmark
+  public void received() {
+    port.received(1, 64);
+  }
+
+  /**
+   * record latency.
+   */
+  @Benchmark
+  public void record() {
+    histogram.record(ThreadLocalRandom.current().nextLong(1000000));
+  }
+}
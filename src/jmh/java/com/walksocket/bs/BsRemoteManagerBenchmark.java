@@ -0,0 +1,132 @@
+package com.walksocket.bs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmark of remote lookup on receive path.
+ * <pre>
+ *   16 threads call generate for random registered remotes,
+ *   like selector threads of busy server.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class BsRemoteManagerBenchmark {
+
+  /**
+   * registered remote count.
+   */
+  @Param({"1000", "1000000"})
+  public int remotes;
+
+  /**
+   * shard count.
+   */
+  @Param({"16"})
+  public int devide;
+
+  /**
+   * local.
+   */
+  private BsLocal local;
+
+  /**
+   * remote manager.
+   */
+  private BsRemoteManager manager;
+
+  /**
+   * remote addresses.
+   */
+  private InetSocketAddress[] remoteAddrs;
+
+  /**
+   * setup.
+   * @throws BsLocal.BsLocalException local exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws BsLocal.BsLocalException {
+    local = new BsLocal("127.0.0.1", 9100);
+    manager = new BsRemoteManager(devide, new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+      }
+    }, new BsShutdown());
+    remoteAddrs = new InetSocketAddress[remotes];
+    for (int i = 0; i < remotes; i++) {
+      remoteAddrs[i] = new InetSocketAddress(String.format("10.%d.%d.%d", (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff), 10000 + (i >> 24));
+      manager.generate(remoteAddrs[i], local.getLocalChannel());
+    }
+  }
+
+  /**
+   * teardown.
+   */
+  @TearDown(Level.Trial)
+  public void teardown() {
+    local.getLocalChannel().destroy();
+  }
+
+  /**
+   * generate registered remote.
+   * <pre>
+   *   new address instance per call, as every received datagram carries it.
+   * </pre>
+   * @return remote
+   */
+  @Benchmark
+  @Threads(16)
+  public BsRemote generate() {
+    InetSocketAddress remoteAddr = remoteAddrs[ThreadLocalRandom.current().nextInt(remotes)];
+    return manager.generate(new InetSocketAddress(remoteAddr.getAddress(), remoteAddr.getPort()), local.getLocalChannel());
+  }
+
+  /**
+   * create remote of new peer, as one packet peers do.
+   * @return remote
+   */
+  @Benchmark
+  @Threads(16)
+  public BsRemote newRemote() {
+    InetSocketAddress remoteAddr = remoteAddrs[ThreadLocalRandom.current().nextInt(remotes)];
+    return new BsRemote(remoteAddr, local.getLocalChannel());
+  }
+
+  /**
+   * create remote of new peer with mailbox and lock of evicted remote.
+   * <pre>
+   *   compare gc.alloc.rate.norm with newRemote by -prof gc.
+   * </pre>
+   * @param pool pool of thread
+   * @return remote
+   */
+  @Benchmark
+  @Threads(16)
+  public BsRemote pooledRemote(PoolState pool) {
+    InetSocketAddress remoteAddr = remoteAddrs[ThreadLocalRandom.current().nextInt(remotes)];
+    BsRemote remote = pool.pool.create(remoteAddr, local.getLocalChannel());
+    pool.pool.offer(remote);
+    return remote;
+  }
+
+  /**
+   * pool per thread, like pool per shard.
+   */
+  @State(Scope.Thread)
+  public static class PoolState {
+
+    /**
+     * pool.
+     */
+    private final BsRemotePool pool = new BsRemotePool(1);
+  }
+}
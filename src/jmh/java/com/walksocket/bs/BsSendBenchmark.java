@@ -0,0 +1,103 @@
+package com.walksocket.bs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmark of BsRemote#send.
+ * <pre>
+ *   sends to channel which never reads, so kernel discards datagrams,
+ *   and only send path of client is measured.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+public class BsSendBenchmark {
+
+  /**
+   * message size.
+   */
+  @Param({"64", "1024"})
+  public int size;
+
+  /**
+   * sink channel.
+   */
+  private DatagramChannel sink;
+
+  /**
+   * client.
+   */
+  private BsExecutorClient client;
+
+  /**
+   * remote of sink.
+   */
+  private BsRemote remote;
+
+  /**
+   * message.
+   */
+  private byte[] message;
+
+  /**
+   * setup.
+   * @throws Exception start exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    sink = DatagramChannel.open();
+    sink.bind(new InetSocketAddress("127.0.0.1", 9131));
+
+    BsLocal local = new BsLocal("127.0.0.1", 9130);
+    remote = new BsRemote("127.0.0.1", 9131, local.getLocalChannel());
+    remote.setIdleMilliSeconds(Integer.MAX_VALUE);
+    client = new BsExecutorClient(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+      }
+    }, local, remote);
+    client.start();
+    message = new byte[size];
+  }
+
+  /**
+   * teardown.
+   * @throws Exception close exception
+   */
+  @TearDown(Level.Trial)
+  public void teardown() throws Exception {
+    client.shutdown();
+    sink.close();
+  }
+
+  /**
+   * send from one thread.
+   * @return future
+   * @throws BsRemote.BsSendException send exception
+   */
+  @Benchmark
+  public CompletableFuture<BsSendStatus> send() throws BsRemote.BsSendException {
+    return remote.send(message);
+  }
+
+  /**
+   * send from 4 threads to same remote.
+   * @return future
+   * @throws BsRemote.BsSendException send exception
+   */
+  @Benchmark
+  @Threads(4)
+  public CompletableFuture<BsSendStatus> sendContended() throws BsRemote.BsSendException {
+    return remote.send(message);
+  }
+}
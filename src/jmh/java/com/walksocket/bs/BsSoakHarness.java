@@ -0,0 +1,589 @@
+package com.walksocket.bs;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * loopback load generator and soak harness.
+ * <pre>
+ *   raw channels simulate remotes, and send to local echo server at target rate.
+ *   one BsExecutorClient probes latency through client path at low rate.
+ *   every datagram carries its intended send time of schedule,
+ *   so latency includes waiting of sender which fell behind (coordinated omission corrected).
+ *   datagrams intended before warmup end are not counted.
+ *
+ *   run with ./gradlew soak -Psoak.args="remotes=1000 rate=100000 duration=60"
+ *   remotes     simulated remote count, one socket each (1000)
+ *   rate        target datagrams per second of all remotes (50000)
+ *   duration    soak seconds (30)
+ *   warmup      warmup seconds (5)
+ *   size        datagram bytes, 16 or more (64)
+ *   threads     blaster threads (2)
+ *   port        server port (9200)
+ *   selectors   server selector threads (1)
+ *   probeRate   probe datagrams per second (100)
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsSoakHarness {
+
+  /**
+   * header magic.
+   */
+  private static final long MAGIC = 0x4273536f616b4853L;
+
+  /**
+   * header bytes, magic and intended nanos.
+   */
+  private static final int HEADER = 16;
+
+  /**
+   * options.
+   */
+  private final Map<String, Long> options = new LinkedHashMap<>();
+
+  /**
+   * measure start nanos, intended send time before it is warmup.
+   */
+  private long measureNanos;
+
+  /**
+   * end nanos.
+   */
+  private long endNanos;
+
+  /**
+   * latency of blaster.
+   */
+  private final BsSoakHistogram latency = new BsSoakHistogram();
+
+  /**
+   * latency of probe.
+   */
+  private final BsSoakHistogram probeLatency = new BsSoakHistogram();
+
+  /**
+   * sent count in measure.
+   */
+  private final AtomicLong sent = new AtomicLong();
+
+  /**
+   * received count in measure.
+   */
+  private final AtomicLong received = new AtomicLong();
+
+  /**
+   * send error count.
+   */
+  private final AtomicLong sendErrors = new AtomicLong();
+
+  /**
+   * probe sent count in measure.
+   */
+  private final AtomicLong probeSent = new AtomicLong();
+
+  /**
+   * gc pause max milliseconds in measure.
+   */
+  private final AtomicLong gcPauseMax = new AtomicLong();
+
+  /**
+   * main.
+   * @param args key=value options
+   * @throws Exception soak exception
+   */
+  public static void main(String[] args) throws Exception {
+    BsSoakHarness harness = new BsSoakHarness();
+    harness.options.put("remotes", 1000L);
+    harness.options.put("rate", 50000L);
+    harness.options.put("duration", 30L);
+    harness.options.put("warmup", 5L);
+    harness.options.put("size", 64L);
+    harness.options.put("threads", 2L);
+    harness.options.put("port", 9200L);
+    harness.options.put("selectors", 1L);
+    harness.options.put("probeRate", 100L);
+    for (String arg : args) {
+      for (String option : arg.trim().split("\\s+")) {
+        if (option.isEmpty()) {
+          continue;
+        }
+        String[] kv = option.split("=", 2);
+        if (kv.length != 2 || !harness.options.containsKey(kv[0])) {
+          throw new IllegalArgumentException("unknown option:" + option + ", options:" + harness.options.keySet());
+        }
+        harness.options.put(kv[0], Long.parseLong(kv[1]));
+      }
+    }
+    if (harness.option("size") < HEADER) {
+      throw new IllegalArgumentException("size must be " + HEADER + " or more");
+    }
+    harness.run();
+    System.exit(0);
+  }
+
+  /**
+   * get option.
+   * @param name name
+   * @return value
+   */
+  private long option(String name) {
+    return options.get(name);
+  }
+
+  /**
+   * run soak.
+   * @throws Exception soak exception
+   */
+  private void run() throws Exception {
+    System.out.println("options:" + options);
+    int port = (int) option("port");
+
+    // echo server
+    BsExecutorServer server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        try {
+          remote.send(message);
+        } catch (BsRemote.BsSendException e) {
+          BsLogger.error(e);
+        }
+      }
+    }, Collections.singletonList(new BsLocal("127.0.0.1", port)))
+        .selectorThreads((int) option("selectors"));
+    server.start();
+
+    // probe client
+    BsLocal probeLocal = new BsLocal("127.0.0.1", port + 1);
+    BsRemote probeRemote = new BsRemote("127.0.0.1", port, probeLocal.getLocalChannel());
+    probeRemote.setIdleMilliSeconds(Integer.MAX_VALUE);
+    BsExecutorClient probe = new BsExecutorClient(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        ByteBuffer buffer = ByteBuffer.wrap(message);
+        if (message.length >= HEADER && buffer.getLong() == MAGIC) {
+          long intended = buffer.getLong();
+          if (intended >= measureNanos) {
+            probeLatency.record(System.nanoTime() - intended);
+          }
+        }
+      }
+    }, probeLocal, probeRemote);
+    probe.start();
+
+    // gc
+    long gcCount = gcCount();
+    long gcTime = gcTime();
+    watchGc();
+
+    // schedule
+    long start = System.nanoTime();
+    measureNanos = start + TimeUnit.SECONDS.toNanos(option("warmup"));
+    endNanos = measureNanos + TimeUnit.SECONDS.toNanos(option("duration"));
+
+    // probe at fixed rate
+    ScheduledExecutorService probeService = Executors.newSingleThreadScheduledExecutor();
+    long probeInterval = Math.max(1, TimeUnit.SECONDS.toNanos(1) / Math.max(1, option("probeRate")));
+    byte[] probeMessage = new byte[(int) option("size")];
+    probeService.scheduleAtFixedRate(() -> {
+      long intended = System.nanoTime();
+      ByteBuffer.wrap(probeMessage).putLong(MAGIC).putLong(intended);
+      try {
+        probeRemote.send(probeMessage.clone());
+        if (intended >= measureNanos) {
+          probeSent.incrementAndGet();
+        }
+      } catch (BsRemote.BsSendException e) {
+        sendErrors.incrementAndGet();
+      }
+    }, 0, probeInterval, TimeUnit.NANOSECONDS);
+
+    // blasters
+    int threads = (int) option("threads");
+    int remotes = (int) option("remotes");
+    List<Thread> blasters = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      int from = remotes * i / threads;
+      int to = remotes * (i + 1) / threads;
+      BsSoakBlaster blaster = new BsSoakBlaster(new InetSocketAddress("127.0.0.1", port), to - from,
+          (double) option("rate") / threads, start);
+      Thread thread = new Thread(blaster, "bs-soak-blaster-" + i);
+      thread.start();
+      blasters.add(thread);
+    }
+
+    // report per second
+    long lastReceived = 0;
+    long lastSent = 0;
+    long maxRemotes = 0;
+    while (System.nanoTime() < endNanos) {
+      Thread.sleep(1000);
+      long remoteCount = server.getRemoteCount();
+      maxRemotes = Math.max(maxRemotes, remoteCount);
+      long nowSent = sent.get();
+      long nowReceived = received.get();
+      System.out.println(String.format(
+          "%s sent/s:%s, echoed/s:%s, remotes:%s, p99us:%s",
+          System.nanoTime() < measureNanos ? "warmup" : "soak",
+          nowSent - lastSent,
+          nowReceived - lastReceived,
+          remoteCount,
+          latency.getPercentile(99) / 1000));
+      lastSent = nowSent;
+      lastReceived = nowReceived;
+    }
+    for (Thread thread : blasters) {
+      thread.join();
+    }
+    probeService.shutdownNow();
+
+    // summary
+    long seconds = option("duration");
+    long totalSent = sent.get();
+    long totalReceived = received.get();
+    System.out.println("----- summary -----");
+    System.out.println(String.format("sent:%s, received:%s, sendErrors:%s", totalSent, totalReceived, sendErrors.get()));
+    System.out.println(String.format("target pps:%s, achieved pps:%s",
+        option("rate"), totalReceived / Math.max(1, seconds)));
+    System.out.println(String.format("loss:%.4f%%",
+        totalSent == 0 ? 0.0 : 100.0 * (totalSent - totalReceived) / totalSent));
+    System.out.println(String.format("remotes:%s (max %s)", server.getRemoteCount(), maxRemotes));
+    System.out.println("latency us " + latency.summary());
+    System.out.println(String.format("probe sent:%s, latency us %s", probeSent.get(), probeLatency.summary()));
+    System.out.println(String.format("gc count:%s, time ms:%s, max pause ms:%s",
+        gcCount() - gcCount, gcTime() - gcTime, gcPauseMax.get()));
+    System.out.println("server metrics:" + server.getMetrics().snapshot());
+
+    probe.shutdown();
+    server.shutdown();
+  }
+
+  /**
+   * get gc count of all collectors.
+   * @return gc count
+   */
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, bean.getCollectionCount());
+    }
+    return count;
+  }
+
+  /**
+   * get gc milliseconds of all collectors.
+   * @return gc milliseconds
+   */
+  private static long gcTime() {
+    long time = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      time += Math.max(0, bean.getCollectionTime());
+    }
+    return time;
+  }
+
+  /**
+   * watch gc pauses in measure.
+   */
+  private void watchGc() {
+    NotificationListener listener = (Notification notification, Object handback) -> {
+      if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+        return;
+      }
+      if (System.nanoTime() < measureNanos) {
+        return;
+      }
+      GarbageCollectionNotificationInfo info =
+          GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+      gcPauseMax.accumulateAndGet(info.getGcInfo().getDuration(), Math::max);
+    };
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (bean instanceof NotificationEmitter) {
+        ((NotificationEmitter) bean).addNotificationListener(listener, null, null);
+      }
+    }
+  }
+
+  /**
+   * blaster of raw channels.
+   * <pre>
+   *   each channel is one remote for server.
+   *   sends round robin on schedule, and reads echoes without blocking.
+   * </pre>
+   */
+  private class BsSoakBlaster implements Runnable {
+
+    /**
+     * server address.
+     */
+    private final InetSocketAddress serverAddr;
+
+    /**
+     * channels.
+     */
+    private final DatagramChannel[] channels;
+
+    /**
+     * selector of echoes.
+     */
+    private final Selector selector;
+
+    /**
+     * interval nanos of schedule.
+     */
+    private final double intervalNanos;
+
+    /**
+     * start nanos of schedule.
+     */
+    private final long startNanos;
+
+    /**
+     * constructor.
+     * @param serverAddr server address
+     * @param remotes remote count
+     * @param rate datagrams per second
+     * @param startNanos start nanos of schedule
+     * @throws IOException open exception
+     */
+    private BsSoakBlaster(InetSocketAddress serverAddr, int remotes, double rate, long startNanos) throws IOException {
+      this.serverAddr = serverAddr;
+      this.channels = new DatagramChannel[remotes];
+      this.selector = Selector.open();
+      this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+      this.startNanos = startNanos;
+      for (int i = 0; i < remotes; i++) {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress("127.0.0.1", 0));
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+        channels[i] = channel;
+      }
+    }
+
+    @Override
+    public void run() {
+      ByteBuffer out = ByteBuffer.allocateDirect((int) option("size"));
+      ByteBuffer in = ByteBuffer.allocateDirect(65536);
+      long seq = 0;
+      int next = 0;
+      try {
+        while (true) {
+          long now = System.nanoTime();
+          if (now >= endNanos) {
+            break;
+          }
+
+          // send what schedule owes, behind schedule is sent at once
+          long intended;
+          while ((intended = startNanos + (long) (seq * intervalNanos)) <= now && intended < endNanos) {
+            out.clear();
+            out.putLong(MAGIC).putLong(intended);
+            out.position(0).limit(out.capacity());
+            if (channels.length > 0) {
+              if (channels[next].send(out, serverAddr) == 0) {
+                sendErrors.incrementAndGet();
+              } else if (intended >= measureNanos) {
+                sent.incrementAndGet();
+              }
+              next = (next + 1) % channels.length;
+            }
+            seq++;
+          }
+
+          // read echoes
+          read(in);
+        }
+
+        // drain late echoes
+        long drainEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        while (System.nanoTime() < drainEnd) {
+          read(in);
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      } finally {
+        for (DatagramChannel channel : channels) {
+          try {
+            channel.close();
+          } catch (IOException e) {
+            e.printStackTrace();
+          }
+        }
+        try {
+          selector.close();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+
+    /**
+     * read echoes of ready channels.
+     * @param in buffer
+     * @throws IOException read exception
+     */
+    private void read(ByteBuffer in) throws IOException {
+      if (selector.selectNow() == 0) {
+        return;
+      }
+      Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+      while (keys.hasNext()) {
+        SelectionKey key = keys.next();
+        keys.remove();
+        DatagramChannel channel = (DatagramChannel) key.channel();
+        while (true) {
+          in.clear();
+          if (channel.receive(in) == null) {
+            break;
+          }
+          long now = System.nanoTime();
+          in.flip();
+          if (in.remaining() >= HEADER && in.getLong() == MAGIC) {
+            long intended = in.getLong();
+            if (intended >= measureNanos) {
+              received.incrementAndGet();
+              latency.record(now - intended);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * log linear histogram of nanoseconds.
+   * <pre>
+   *   64 sub buckets per power of two, relative error under 2%,
+   *   fine enough for p99.9 unlike log2 buckets of BsHistogram.
+   * </pre>
+   */
+  private static class BsSoakHistogram {
+
+    /**
+     * sub bucket bits.
+     */
+    private static final int SUB_BITS = 6;
+
+    /**
+     * sub bucket count.
+     */
+    private static final int SUB = 1 << SUB_BITS;
+
+    /**
+     * counts.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS) * SUB + SUB);
+
+    /**
+     * max.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * record.
+     * @param nanos nanoseconds
+     */
+    private void record(long nanos) {
+      if (nanos < 0) {
+        nanos = 0;
+      }
+      counts.incrementAndGet(index(nanos));
+      max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * get bucket index.
+     * @param value value
+     * @return index
+     */
+    private static int index(long value) {
+      if (value < 2 * SUB) {
+        return (int) value;
+      }
+      int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+      return shift * SUB + (int) (value >>> shift);
+    }
+
+    /**
+     * get upper bound of bucket.
+     * @param index index
+     * @return upper bound
+     */
+    private static long upper(int index) {
+      if (index < 2 * SUB) {
+        return index;
+      }
+      int shift = index / SUB - 1;
+      long sub = index - shift * SUB;
+      return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * get count.
+     * @return count
+     */
+    private long getCount() {
+      long count = 0;
+      for (int i = 0; i < counts.length(); i++) {
+        count += counts.get(i);
+      }
+      return count;
+    }
+
+    /**
+     * get percentile.
+     * @param percentile 0 to 100
+     * @return upper bound of percentile bucket
+     */
+    private long getPercentile(double percentile) {
+      long count = getCount();
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(count * percentile / 100.0);
+      long seen = 0;
+      for (int i = 0; i < counts.length(); i++) {
+        seen += counts.get(i);
+        if (seen >= Math.max(1, rank)) {
+          return Math.min(upper(i), max.get());
+        }
+      }
+      return max.get();
+    }
+
+    /**
+     * get summary in microseconds.
+     * @return summary
+     */
+    private String summary() {
+      return String.format(
+          "count:%s, p50:%s, p99:%s, p99.9:%s, max:%s",
+          getCount(),
+          getPercentile(50) / 1000,
+          getPercentile(99) / 1000,
+          getPercentile(99.9) / 1000,
+          max.get() / 1000);
+    }
+  }
+}
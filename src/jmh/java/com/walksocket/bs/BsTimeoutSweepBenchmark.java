@@ -0,0 +1,100 @@
+package com.walksocket.bs;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * benchmark of timeout sweep.
+ * <pre>
+ *   one tick of one shard, as service timeout thread does.
+ *   remotes are alive and spread over idle window,
+ *   so each tick collects expired slot and schedules them again.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class BsTimeoutSweepBenchmark {
+
+  /**
+   * tick milliseconds, devide 10.
+   */
+  private static final long TICK = 100;
+
+  /**
+   * idle milliseconds.
+   */
+  private static final long IDLE = 60000;
+
+  /**
+   * remote count of shard.
+   */
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int remotes;
+
+  /**
+   * local.
+   */
+  private BsLocal local;
+
+  /**
+   * timing wheel.
+   */
+  private BsTimingWheel wheel;
+
+  /**
+   * expired remotes.
+   */
+  private final List<BsRemote> expired = new ArrayList<>();
+
+  /**
+   * now timestamp milliseconds.
+   */
+  private long now;
+
+  /**
+   * setup.
+   * @throws BsLocal.BsLocalException local exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws BsLocal.BsLocalException {
+    local = new BsLocal("127.0.0.1", 9110);
+    wheel = new BsTimingWheel(TICK, 0);
+    for (int i = 0; i < remotes; i++) {
+      BsRemote remote = new BsRemote(String.format("10.%d.%d.%d", (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff), 10000, local.getLocalChannel());
+      wheel.schedule(remote, IDLE * i / remotes + TICK);
+    }
+    now = 0;
+  }
+
+  /**
+   * teardown.
+   */
+  @TearDown(Level.Trial)
+  public void teardown() {
+    local.getLocalChannel().destroy();
+  }
+
+  /**
+   * advance one tick, and schedule expired remotes again.
+   * @return expired count
+   */
+  @Benchmark
+  public int tick() {
+    now += TICK;
+    wheel.advance(now, expired);
+    int size = expired.size();
+    for (BsRemote remote : expired) {
+      wheel.schedule(remote, now + IDLE);
+    }
+    expired.clear();
+    return size;
+  }
+}
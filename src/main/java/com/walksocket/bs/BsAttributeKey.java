@@ -0,0 +1,168 @@
+package com.walksocket.bs;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * typed key of remote attribute.
+ * <pre>
+ *   each key gets slot index at registration,
+ *   and remote keeps value in array slot, without hashing name on access.
+ *   int and long keys keep value in primitive slot, without boxing.
+ *   keys are registered once and live forever, so keep them in static fields.
+ *
+ *   static final BsAttributeKey&lt;Integer&gt; CNT = BsAttributeKey.intKey("cnt");
+ *   remote.setInt(CNT, remote.getInt(CNT) + 1);
+ * </pre>
+ * @param <T> value type
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public final class BsAttributeKey<T> {
+
+  /**
+   * registered keys by name.
+   */
+  private static final ConcurrentHashMap<String, BsAttributeKey<?>> keys = new ConcurrentHashMap<>();
+
+  /**
+   * object slot count.
+   */
+  private static final AtomicInteger objectSlots = new AtomicInteger();
+
+  /**
+   * primitive slot count.
+   */
+  private static final AtomicInteger primitiveSlots = new AtomicInteger();
+
+  /**
+   * name.
+   */
+  private final String name;
+
+  /**
+   * value type, int.class or long.class for primitive key.
+   */
+  private final Class<?> type;
+
+  /**
+   * slot index.
+   */
+  private final int index;
+
+  /**
+   * constructor.
+   * @param name name
+   * @param type value type
+   */
+  private BsAttributeKey(String name, Class<?> type) {
+    this.name = name;
+    this.type = type;
+    this.index = type.isPrimitive() ? primitiveSlots.getAndIncrement() : objectSlots.getAndIncrement();
+  }
+
+  /**
+   * get key of object value, or register new one.
+   * @param <T> value type
+   * @param name name
+   * @param type value type
+   * @return key
+   * @throws IllegalArgumentException name is registered with other type
+   */
+  public static <T> BsAttributeKey<T> valueOf(String name, Class<T> type) {
+    if (type.isPrimitive()) {
+      throw new IllegalArgumentException(String.format("use intKey or longKey for %s", type));
+    }
+    return register(name, type);
+  }
+
+  /**
+   * get key of int value, or register new one.
+   * @param name name
+   * @return key
+   * @throws IllegalArgumentException name is registered with other type
+   */
+  public static BsAttributeKey<Integer> intKey(String name) {
+    return register(name, int.class);
+  }
+
+  /**
+   * get key of long value, or register new one.
+   * @param name name
+   * @return key
+   * @throws IllegalArgumentException name is registered with other type
+   */
+  public static BsAttributeKey<Long> longKey(String name) {
+    return register(name, long.class);
+  }
+
+  /**
+   * register.
+   * @param <T> value type
+   * @param name name
+   * @param type value type
+   * @return key
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> BsAttributeKey<T> register(String name, Class<?> type) {
+    BsAttributeKey<?> key = keys.computeIfAbsent(name, n -> new BsAttributeKey<>(n, type));
+    if (key.type != type) {
+      throw new IllegalArgumentException(String.format("key(%s) is already registered as %s", name, key.type));
+    }
+    return (BsAttributeKey<T>) key;
+  }
+
+  /**
+   * get object slot count.
+   * @return object slot count
+   */
+  static int objectSlots() {
+    return objectSlots.get();
+  }
+
+  /**
+   * get primitive slot count.
+   * @return primitive slot count
+   */
+  static int primitiveSlots() {
+    return primitiveSlots.get();
+  }
+
+  /**
+   * get name.
+   * @return name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * get value type.
+   * @return value type, int.class or long.class for primitive key
+   */
+  public Class<?> getType() {
+    return type;
+  }
+
+  /**
+   * get slot index.
+   * @return slot index
+   */
+  int getIndex() {
+    return index;
+  }
+
+  /**
+   * is primitive key.
+   * @return if int or long key, true
+   */
+  boolean isPrimitive() {
+    return type.isPrimitive();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("name:%s, type:%s, index:%s", name, type.getSimpleName(), index);
+  }
+}
@@ -0,0 +1,100 @@
+package com.walksocket.bs;
+
+/**
+ * broadcast result.
+ * <pre>
+ *   counts of one BsExecutorServer#broadcast call.
+ *   queued datagrams are written or dropped later by selector.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsBroadcastResult {
+
+  /**
+   * written to socket.
+   */
+  private long writtenCount;
+
+  /**
+   * queued in outbound queue.
+   */
+  private long queuedCount;
+
+  /**
+   * dropped.
+   */
+  private long droppedCount;
+
+  /**
+   * constructor.
+   */
+  BsBroadcastResult() {
+  }
+
+  /**
+   * add written.
+   * @param count written count
+   */
+  void written(long count) {
+    writtenCount += count;
+  }
+
+  /**
+   * add queued.
+   */
+  void queued() {
+    queuedCount++;
+  }
+
+  /**
+   * add dropped.
+   */
+  void dropped() {
+    droppedCount++;
+  }
+
+  /**
+   * merge result of other channel.
+   * @param other other result
+   */
+  void merge(BsBroadcastResult other) {
+    writtenCount += other.writtenCount;
+    queuedCount += other.queuedCount;
+    droppedCount += other.droppedCount;
+  }
+
+  /**
+   * get written count.
+   * @return written count
+   */
+  public long getWrittenCount() {
+    return writtenCount;
+  }
+
+  /**
+   * get queued count.
+   * @return queued count
+   */
+  public long getQueuedCount() {
+    return queuedCount;
+  }
+
+  /**
+   * get dropped count.
+   * @return dropped count
+   */
+  public long getDroppedCount() {
+    return droppedCount;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "written:%s, queued:%s, dropped:%s",
+        writtenCount,
+        queuedCount,
+        droppedCount);
+  }
+}
@@ -0,0 +1,97 @@
+package com.walksocket.bs;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * direct buffer pool.
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsBufferPool {
+
+  /**
+   * buffer capacity.
+   */
+  private final int capacity;
+
+  /**
+   * max idle buffers kept in pool.
+   */
+  private final int maxIdle;
+
+  /**
+   * idle buffers.
+   */
+  private final Queue<ByteBuffer> idles = new ConcurrentLinkedQueue<>();
+
+  /**
+   * idle count.
+   * <pre>
+   *   ConcurrentLinkedQueue#size is O(n), so count is held separately.
+   * </pre>
+   */
+  private final AtomicInteger idleCount = new AtomicInteger(0);
+
+  /**
+   * constructor.
+   * @param capacity buffer capacity
+   * @param maxIdle max idle buffers kept in pool
+   */
+  BsBufferPool(int capacity, int maxIdle) {
+    this.capacity = capacity;
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * acquire buffer.
+   * <pre>
+   *   if pool is empty, allocate new direct buffer.
+   * </pre>
+   * @return cleared buffer
+   */
+  ByteBuffer acquire() {
+    ByteBuffer buffer = idles.poll();
+    if (buffer == null) {
+      return ByteBuffer.allocateDirect(capacity);
+    }
+    idleCount.decrementAndGet();
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * release buffer.
+   * <pre>
+   *   if pool is full, buffer is left to gc.
+   * </pre>
+   * @param buffer buffer acquired from this pool
+   */
+  void release(ByteBuffer buffer) {
+    if (idleCount.incrementAndGet() > maxIdle) {
+      idleCount.decrementAndGet();
+      return;
+    }
+    idles.offer(buffer);
+  }
+
+  /**
+   * get buffer capacity.
+   * @return capacity
+   */
+  int getCapacity() {
+    return capacity;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "capacity:%s, maxIdle:%s, idle:%s",
+        capacity,
+        maxIdle,
+        idleCount.get());
+  }
+}
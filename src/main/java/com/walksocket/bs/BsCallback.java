@@ -1,5 +1,7 @@
 package com.walksocket.bs;
 
+import java.nio.ByteBuffer;
+
 /**
  * received callback.
  * @author shigenobu
@@ -15,6 +17,40 @@ public interface BsCallback {
    */
   void incoming(BsRemote remote, byte[] message);
 
+  /**
+   * incoming with buffer.
+   * <pre>
+   *   invoked instead of incoming(BsRemote, byte[]) when direct buffer is enabled.
+   *   message is read-only view of pooled buffer, and valid only while this method runs.
+   *   default copies message to byte array and invokes incoming(BsRemote, byte[]).
+   * </pre>
+   * @param remote remote
+   * @param message message
+   */
+  default void incoming(BsRemote remote, ByteBuffer message) {
+    byte[] data = new byte[message.remaining()];
+    message.get(data);
+    incoming(remote, data);
+  }
+
+  /**
+   * incoming decoded message.
+   * <pre>
+   *   invoked when last handler of pipeline passes object other than byte array or ByteBuffer.
+   *   default copies BsCompositeBuffer to byte array and invokes incoming(BsRemote, byte[]),
+   *   and logs error for others, so override it if handlers decode messages to objects.
+   * </pre>
+   * @param remote remote
+   * @param message decoded message
+   */
+  default void decoded(BsRemote remote, Object message) {
+    if (message instanceof BsCompositeBuffer) {
+      incoming(remote, ((BsCompositeBuffer) message).toArray());
+      return;
+    }
+    BsLogger.error(String.format("decoded message is not handled, remote:%s, message:%s", remote, message));
+  }
+
   /**
    * timeout.
    * @param remote remote
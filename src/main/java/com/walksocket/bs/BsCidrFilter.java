@@ -0,0 +1,192 @@
+package com.walksocket.bs;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * cidr allow and deny list of remote ip.
+ * <pre>
+ *   longest matching prefix decides, and unmatched ip follows default.
+ *   set to server by BsExecutorServer#cidrFilter, before or after start.
+ *   list is compiled to immutable table there, so later change of this list
+ *   takes effect when it is set again.
+ *
+ *   BsCidrFilter filter = new BsCidrFilter()
+ *       .deny("10.0.0.0/8")
+ *       .allow("10.1.0.0/16")
+ *       .deny("2001:db8::/32");
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsCidrFilter {
+
+  /**
+   * rules in added order.
+   */
+  private final List<BsCidrRule> rules = new ArrayList<>();
+
+  /**
+   * allow unmatched ip.
+   */
+  private boolean defaultAllow = true;
+
+  /**
+   * add allowed prefix.
+   * @param cidr address/length, or address for single ip
+   * @return this
+   * @throws IllegalArgumentException invalid cidr
+   */
+  public BsCidrFilter allow(String cidr) {
+    rules.add(parse(cidr, true));
+    return this;
+  }
+
+  /**
+   * add denied prefix.
+   * @param cidr address/length, or address for single ip
+   * @return this
+   * @throws IllegalArgumentException invalid cidr
+   */
+  public BsCidrFilter deny(String cidr) {
+    rules.add(parse(cidr, false));
+    return this;
+  }
+
+  /**
+   * set default of unmatched ip.
+   * <pre>
+   *   default true, deny list.
+   *   if false, allow list.
+   * </pre>
+   * @param defaultAllow allow unmatched ip
+   * @return this
+   */
+  public BsCidrFilter defaultAllow(boolean defaultAllow) {
+    this.defaultAllow = defaultAllow;
+    return this;
+  }
+
+  /**
+   * get rule count.
+   * @return rule count
+   */
+  public int size() {
+    return rules.size();
+  }
+
+  /**
+   * compile to lookup table.
+   * @return table
+   */
+  BsCidrTable compile() {
+    return new BsCidrTable(new ArrayList<>(rules), defaultAllow);
+  }
+
+  /**
+   * parse cidr.
+   * @param cidr address/length
+   * @param allow allow or deny
+   * @return rule
+   */
+  private static BsCidrRule parse(String cidr, boolean allow) {
+    String s = cidr.trim();
+    int slash = s.indexOf('/');
+    String host = slash < 0 ? s : s.substring(0, slash);
+    // literal only, never resolve name
+    if (host.isEmpty() || (host.indexOf(':') < 0 && !host.matches("[0-9.]+"))) {
+      throw new IllegalArgumentException(String.format("invalid cidr:%s", cidr));
+    }
+    InetAddress address;
+    try {
+      address = InetAddress.getByName(host);
+    } catch (UnknownHostException e) {
+      throw new IllegalArgumentException(String.format("invalid cidr:%s", cidr), e);
+    }
+    boolean ipv4 = address instanceof Inet4Address;
+    int max = ipv4 ? 32 : 128;
+    int length = max;
+    if (slash >= 0) {
+      try {
+        length = Integer.parseInt(s.substring(slash + 1));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(String.format("invalid cidr:%s", cidr), e);
+      }
+    }
+    if (length < 0 || length > max) {
+      throw new IllegalArgumentException(String.format("invalid cidr:%s", cidr));
+    }
+    byte[] b = address.getAddress();
+    long hi = 0;
+    long lo = 0;
+    if (ipv4) {
+      for (int i = 0; i < 4; i++) {
+        hi = (hi << 8) | (b[i] & 0xff);
+      }
+    } else {
+      for (int i = 0; i < 8; i++) {
+        hi = (hi << 8) | (b[i] & 0xff);
+        lo = (lo << 8) | (b[i + 8] & 0xff);
+      }
+    }
+    return new BsCidrRule(ipv4, hi, lo, length, allow);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("rules:%s, defaultAllow:%s", rules.size(), defaultAllow);
+  }
+
+  /**
+   * parsed rule.
+   * @author shigenobu
+   *
+   */
+  static class BsCidrRule {
+
+    /**
+     * ipv4 or ipv6.
+     */
+    final boolean ipv4;
+
+    /**
+     * ipv4 address, or upper 64 bits of ipv6 address.
+     */
+    final long hi;
+
+    /**
+     * lower 64 bits of ipv6 address.
+     */
+    final long lo;
+
+    /**
+     * prefix length.
+     */
+    final int length;
+
+    /**
+     * allow or deny.
+     */
+    final boolean allow;
+
+    /**
+     * constructor.
+     * @param ipv4 ipv4 or ipv6
+     * @param hi ipv4 address, or upper 64 bits of ipv6 address
+     * @param lo lower 64 bits of ipv6 address
+     * @param length prefix length
+     * @param allow allow or deny
+     */
+    BsCidrRule(boolean ipv4, long hi, long lo, int length, boolean allow) {
+      this.ipv4 = ipv4;
+      this.hi = hi;
+      this.lo = lo;
+      this.length = length;
+      this.allow = allow;
+    }
+  }
+}
@@ -0,0 +1,376 @@
+package com.walksocket.bs;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * immutable lookup table of cidr filter.
+ * <pre>
+ *   ipv4 is two level direct table, no loop on lookup.
+ *     2 bits per /24 (4m bytes) keep result of prefixes up to /24.
+ *     /24 having longer prefixes points to 256 byte node, found by open addressing.
+ *   ipv6 is hash table per prefix length,
+ *     probed from longest length, once per distinct length.
+ *   prefixes are expanded in ascending length, so longer prefix overrides shorter.
+ *   same prefix added twice, later one wins.
+ *   selectors read table through volatile reference,
+ *   so new table is swapped in without lock, and packets in flight finish on old one.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsCidrTable {
+
+  /**
+   * no prefix matched.
+   */
+  private static final int NONE = 0;
+
+  /**
+   * allowed.
+   */
+  private static final int ALLOW = 1;
+
+  /**
+   * denied.
+   */
+  private static final int DENY = 2;
+
+  /**
+   * /24 has longer prefixes, look up node.
+   */
+  private static final int NODE = 3;
+
+  /**
+   * allow unmatched ip.
+   */
+  private final boolean defaultAllow;
+
+  /**
+   * 2 bits per /24, or null if no ipv4 rule.
+   */
+  private final long[] slash24;
+
+  /**
+   * /24 index + 1 of node, 0 is empty.
+   */
+  private final int[] nodeKeys;
+
+  /**
+   * node index.
+   */
+  private final int[] nodeIndexes;
+
+  /**
+   * 256 codes per node.
+   */
+  private final byte[] nodes;
+
+  /**
+   * ipv6 prefix lengths, descending.
+   */
+  private final int[] lengths6;
+
+  /**
+   * upper 64 bits of ipv6 prefix.
+   */
+  private final long[] his6;
+
+  /**
+   * lower 64 bits of ipv6 prefix.
+   */
+  private final long[] los6;
+
+  /**
+   * ipv6 prefix length + 1, 0 is empty.
+   */
+  private final byte[] keys6;
+
+  /**
+   * code of ipv6 prefix.
+   */
+  private final byte[] codes6;
+
+  /**
+   * ipv4 rule count.
+   */
+  private final int ipv4Rules;
+
+  /**
+   * ipv6 rule count.
+   */
+  private final int ipv6Rules;
+
+  /**
+   * constructor.
+   * @param rules rules in added order
+   * @param defaultAllow allow unmatched ip
+   */
+  BsCidrTable(List<BsCidrFilter.BsCidrRule> rules, boolean defaultAllow) {
+    this.defaultAllow = defaultAllow;
+    List<BsCidrFilter.BsCidrRule> v4 = new ArrayList<>();
+    List<BsCidrFilter.BsCidrRule> v6 = new ArrayList<>();
+    for (BsCidrFilter.BsCidrRule rule : rules) {
+      (rule.ipv4 ? v4 : v6).add(rule);
+    }
+    // stable, so later one of same prefix is applied last
+    v4.sort(Comparator.comparingInt(r -> r.length));
+    v6.sort(Comparator.comparingInt(r -> r.length));
+    this.ipv4Rules = v4.size();
+    this.ipv6Rules = v6.size();
+
+    // ipv4, prefixes up to /24
+    slash24 = v4.isEmpty() ? null : new long[1 << 19];
+    Map<Integer, byte[]> longer = new LinkedHashMap<>();
+    for (BsCidrFilter.BsCidrRule rule : v4) {
+      int code = rule.allow ? ALLOW : DENY;
+      if (rule.length <= 24) {
+        int shift = 24 - rule.length;
+        fill((int) (rule.hi >>> 8) >>> shift << shift, 1 << shift, code);
+      } else {
+        int i = (int) (rule.hi >>> 8);
+        byte[] node = longer.get(i);
+        if (node == null) {
+          node = new byte[256];
+          Arrays.fill(node, (byte) get(i));
+          longer.put(i, node);
+        }
+        int shift = 32 - rule.length;
+        int first = (int) (rule.hi & 0xff) >>> shift << shift;
+        Arrays.fill(node, first, first + (1 << shift), (byte) code);
+      }
+    }
+
+    // ipv4, nodes of longer prefixes
+    int capacity = capacity(longer.size());
+    nodeKeys = new int[capacity];
+    nodeIndexes = new int[capacity];
+    nodes = new byte[longer.size() << 8];
+    int n = 0;
+    for (Map.Entry<Integer, byte[]> entry : longer.entrySet()) {
+      int i = entry.getKey();
+      set(i, NODE);
+      int slot = mix(i) & (capacity - 1);
+      while (nodeKeys[slot] != 0) {
+        slot = (slot + 1) & (capacity - 1);
+      }
+      nodeKeys[slot] = i + 1;
+      nodeIndexes[slot] = n;
+      System.arraycopy(entry.getValue(), 0, nodes, n << 8, 256);
+      n++;
+    }
+
+    // ipv6
+    TreeSet<Integer> lengths = new TreeSet<>(Comparator.reverseOrder());
+    capacity = capacity(v6.size());
+    his6 = new long[capacity];
+    los6 = new long[capacity];
+    keys6 = new byte[capacity];
+    codes6 = new byte[capacity];
+    for (BsCidrFilter.BsCidrRule rule : v6) {
+      lengths.add(rule.length);
+      long hi = maskHi(rule.hi, rule.length);
+      long lo = maskLo(rule.lo, rule.length);
+      int slot = probe6(hi, lo, rule.length);
+      his6[slot] = hi;
+      los6[slot] = lo;
+      keys6[slot] = (byte) (rule.length + 1);
+      codes6[slot] = (byte) (rule.allow ? ALLOW : DENY);
+    }
+    lengths6 = new int[lengths.size()];
+    n = 0;
+    for (int length : lengths) {
+      lengths6[n++] = length;
+    }
+  }
+
+  /**
+   * is allowed.
+   * @param address remote ip
+   * @return if allowed, true
+   */
+  boolean allows(InetAddress address) {
+    int code = address instanceof Inet4Address ? lookup4(address.hashCode()) : lookup6(address.getAddress());
+    return code == NONE ? defaultAllow : code == ALLOW;
+  }
+
+  /**
+   * look up ipv4.
+   * <pre>
+   *   Inet4Address#hashCode is its address, so no byte array is allocated.
+   * </pre>
+   * @param ip ipv4 address
+   * @return code
+   */
+  private int lookup4(int ip) {
+    if (slash24 == null) {
+      return NONE;
+    }
+    int i = ip >>> 8;
+    int code = get(i);
+    if (code != NODE) {
+      return code;
+    }
+    int mask = nodeKeys.length - 1;
+    int slot = mix(i) & mask;
+    while (nodeKeys[slot] != i + 1) {
+      slot = (slot + 1) & mask;
+    }
+    return nodes[(nodeIndexes[slot] << 8) | (ip & 0xff)];
+  }
+
+  /**
+   * look up ipv6.
+   * @param b ipv6 address
+   * @return code
+   */
+  private int lookup6(byte[] b) {
+    if (lengths6.length == 0) {
+      return NONE;
+    }
+    long hi = 0;
+    long lo = 0;
+    for (int i = 0; i < 8; i++) {
+      hi = (hi << 8) | (b[i] & 0xff);
+      lo = (lo << 8) | (b[i + 8] & 0xff);
+    }
+    for (int length : lengths6) {
+      long h = maskHi(hi, length);
+      long l = maskLo(lo, length);
+      int slot = probe6(h, l, length);
+      if (keys6[slot] != 0) {
+        return codes6[slot];
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * find slot of ipv6 prefix, or empty slot.
+   * @param hi masked upper 64 bits
+   * @param lo masked lower 64 bits
+   * @param length prefix length
+   * @return slot
+   */
+  private int probe6(long hi, long lo, int length) {
+    int mask = keys6.length - 1;
+    int slot = mix((hi * 0x9e3779b97f4a7c15L) ^ lo ^ length) & mask;
+    byte key = (byte) (length + 1);
+    while (keys6[slot] != 0) {
+      if (keys6[slot] == key && his6[slot] == hi && los6[slot] == lo) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * get code of /24.
+   * @param i /24 index
+   * @return code
+   */
+  private int get(int i) {
+    return (int) (slash24[i >>> 5] >>> ((i & 31) << 1)) & 3;
+  }
+
+  /**
+   * set code of /24.
+   * @param i /24 index
+   * @param code code
+   */
+  private void set(int i, int code) {
+    int shift = (i & 31) << 1;
+    slash24[i >>> 5] = (slash24[i >>> 5] & ~(3L << shift)) | ((long) code << shift);
+  }
+
+  /**
+   * set code of /24 range.
+   * @param first first /24 index
+   * @param count /24 count
+   * @param code code
+   */
+  private void fill(int first, int count, int code) {
+    int i = first;
+    int end = first + count;
+    while (i < end) {
+      if ((i & 31) == 0 && end - i >= 32) {
+        // whole word
+        slash24[i >>> 5] = 0x5555555555555555L * code;
+        i += 32;
+      } else {
+        set(i, code);
+        i++;
+      }
+    }
+  }
+
+  /**
+   * get table capacity, power of 2 and at most half full.
+   * @param size entries
+   * @return capacity
+   */
+  private static int capacity(int size) {
+    return Integer.highestOneBit(Math.max(1, size) * 4 - 1);
+  }
+
+  /**
+   * mask upper 64 bits of ipv6.
+   * @param hi upper 64 bits
+   * @param length prefix length
+   * @return masked
+   */
+  private static long maskHi(long hi, int length) {
+    if (length >= 64) {
+      return hi;
+    }
+    return length == 0 ? 0L : hi & (-1L << (64 - length));
+  }
+
+  /**
+   * mask lower 64 bits of ipv6.
+   * @param lo lower 64 bits
+   * @param length prefix length
+   * @return masked
+   */
+  private static long maskLo(long lo, int length) {
+    if (length <= 64) {
+      return 0L;
+    }
+    return length == 128 ? lo : lo & (-1L << (128 - length));
+  }
+
+  /**
+   * mix hash.
+   * @param key key
+   * @return hash
+   */
+  private static int mix(long key) {
+    // murmur3 finalizer
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "ipv4Rules:%s, ipv4Nodes:%s, ipv6Rules:%s, ipv6Lengths:%s, defaultAllow:%s",
+        ipv4Rules,
+        nodes.length >>> 8,
+        ipv6Rules,
+        lengths6.length,
+        defaultAllow);
+  }
+}
@@ -0,0 +1,20 @@
+package com.walksocket.bs;
+
+/**
+ * clock source.
+ * <pre>
+ *   read by remote timeouts on every datagram and timeout tick.
+ *   set by BsDate#setClock before executors start.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public interface BsClock {
+
+  /**
+   * get timestamp milliseconds.
+   * @return timestamp milliseconds
+   */
+  long millis();
+}
@@ -0,0 +1,74 @@
+package com.walksocket.bs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * coarse clock.
+ * <pre>
+ *   background daemon thread caches System#currentTimeMillis every resolution,
+ *   and read is one volatile load.
+ *   value lags behind system clock up to resolution,
+ *   so keep resolution far smaller than idle milliseconds of remotes.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsCoarseClock implements BsClock {
+
+  /**
+   * cached timestamp milliseconds.
+   */
+  private volatile long millis = System.currentTimeMillis();
+
+  /**
+   * resolution milliseconds.
+   */
+  private final long resolutionMilliseconds;
+
+  /**
+   * running.
+   */
+  private volatile boolean running = true;
+
+  /**
+   * ticking thread.
+   */
+  private final Thread thread;
+
+  /**
+   * constructor.
+   * @param resolutionMilliseconds resolution milliseconds, at least 1
+   */
+  public BsCoarseClock(long resolutionMilliseconds) {
+    this.resolutionMilliseconds = Math.max(1, resolutionMilliseconds);
+    this.thread = new Thread(() -> {
+      long nanos = TimeUnit.MILLISECONDS.toNanos(this.resolutionMilliseconds);
+      while (running) {
+        millis = System.currentTimeMillis();
+        LockSupport.parkNanos(nanos);
+      }
+    }, "bs-coarse-clock");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  @Override
+  public long millis() {
+    return millis;
+  }
+
+  /**
+   * stop ticking.
+   */
+  public void close() {
+    running = false;
+    LockSupport.unpark(thread);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("coarse(resolutionMilliseconds:%s)", resolutionMilliseconds);
+  }
+}
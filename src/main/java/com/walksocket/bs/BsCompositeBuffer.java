@@ -0,0 +1,103 @@
+package com.walksocket.bs;
+
+import java.nio.ByteBuffer;
+
+/**
+ * message composed of buffers, without concatenating them.
+ * <pre>
+ *   reassembled message of BsFragmentHandler is passed as this,
+ *   and each fragment is kept as it was received.
+ *   read buffers in order, or write them at once by gathering write,
+ *   and toArray copies only when one array is needed.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public final class BsCompositeBuffer {
+
+  /**
+   * buffers in order.
+   */
+  private final ByteBuffer[] buffers;
+
+  /**
+   * total bytes.
+   */
+  private final int size;
+
+  /**
+   * constructor.
+   * @param buffers buffers in order, not copied
+   */
+  BsCompositeBuffer(ByteBuffer[] buffers) {
+    this.buffers = buffers;
+    int size = 0;
+    for (ByteBuffer buffer : buffers) {
+      size += buffer.remaining();
+    }
+    this.size = size;
+  }
+
+  /**
+   * get total bytes.
+   * @return total bytes
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * get count of buffers.
+   * @return count of buffers
+   */
+  public int getBufferCount() {
+    return buffers.length;
+  }
+
+  /**
+   * get buffers.
+   * <pre>
+   *   read-only views in order, so reading them does not change this.
+   * </pre>
+   * @return buffers
+   */
+  public ByteBuffer[] getBuffers() {
+    ByteBuffer[] views = new ByteBuffer[buffers.length];
+    for (int i = 0; i < buffers.length; i++) {
+      views[i] = buffers[i].asReadOnlyBuffer();
+    }
+    return views;
+  }
+
+  /**
+   * copy to buffer.
+   * @param dst destination, having remaining at least size
+   * @throws java.nio.BufferOverflowException destination is short
+   */
+  public void copyTo(ByteBuffer dst) {
+    for (ByteBuffer buffer : buffers) {
+      dst.put(buffer.duplicate());
+    }
+  }
+
+  /**
+   * copy to one array.
+   * @return bytes
+   */
+  public byte[] toArray() {
+    byte[] data = new byte[size];
+    int offset = 0;
+    for (ByteBuffer buffer : buffers) {
+      int length = buffer.remaining();
+      buffer.duplicate().get(data, offset, length);
+      offset += length;
+    }
+    return data;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("size:%s, buffers:%s", size, buffers.length);
+  }
+}
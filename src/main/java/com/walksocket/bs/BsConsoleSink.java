@@ -0,0 +1,38 @@
+package com.walksocket.bs;
+
+/**
+ * console sink.
+ * <pre>
+ *   lines with stack trace go to stderr, others to stdout, default.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsConsoleSink implements BsLogSink {
+
+  /**
+   * instance.
+   */
+  public static final BsConsoleSink INSTANCE = new BsConsoleSink();
+
+  /**
+   * constructor.
+   */
+  private BsConsoleSink() {
+  }
+
+  @Override
+  public void write(boolean error, CharSequence line) {
+    if (error) {
+      System.err.println(line);
+    } else {
+      System.out.println(line);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "console";
+  }
+}
@@ -23,6 +23,33 @@ public class BsDate {
    */
   private static int addMilliSeconds = 0;
 
+  /**
+   * clock source of timeouts.
+   */
+  private static volatile BsClock clock = BsSystemClock.INSTANCE;
+
+  /**
+   * set clock source of timeouts.
+   * <pre>
+   *   default BsSystemClock.
+   *   BsCoarseClock removes System#currentTimeMillis from every datagram,
+   *   BsManualClock makes timeouts deterministic in tests.
+   *   set before executors start, log timestamps always use system clock.
+   * </pre>
+   * @param clock clock
+   */
+  public static void setClock(BsClock clock) {
+    BsDate.clock = clock;
+  }
+
+  /**
+   * get clock source of timeouts.
+   * @return clock
+   */
+  public static BsClock getClock() {
+    return clock;
+  }
+
   /**
    * set add milli seconds.
    * <pre>
@@ -35,6 +62,14 @@ public class BsDate {
     BsDate.addMilliSeconds = addMilliSeconds;
   }
 
+  /**
+   * get add milli seconds.
+   * @return milliseconds
+   */
+  static int getAddMilliSeconds() {
+    return addMilliSeconds;
+  }
+
   /**
    * set time zone.
    * <pre>
@@ -52,7 +87,7 @@ public class BsDate {
    * @return timestamp millis
    */
   static long timestampMilliseconds() {
-    return System.currentTimeMillis();
+    return clock.millis();
   }
 
   /**
@@ -0,0 +1,155 @@
+package com.walksocket.bs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * callback dispatcher.
+ * <pre>
+ *   messages are queued in mailbox of each remote,
+ *   and a remote's messages are invoked one at a time in received order
+ *   on whichever worker of callback pool is free.
+ *   pool threads never wait for other threads working on same remote.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsDispatcher {
+
+  /**
+   * max messages invoked for one remote before yielding worker.
+   * <pre>
+   *   bursting remote is requeued at the tail of callback pool,
+   *   so other remotes are not starved.
+   * </pre>
+   */
+  private static final int THROUGHPUT = 64;
+
+  /**
+   * receive callback.
+   */
+  private final BsCallback callback;
+
+  /**
+   * callback pool.
+   */
+  private final ExecutorService callbackPool;
+
+  /**
+   * direct buffer pool.
+   */
+  private final BsBufferPool bufferPool;
+
+  /**
+   * bounded ingress.
+   */
+  private final BsIngress ingress;
+
+  /**
+   * metrics.
+   */
+  private final BsMetrics metrics;
+
+  /**
+   * constructor.
+   * @param callback callback
+   * @param callbackPool callback pool
+   * @param bufferPool direct buffer pool, or null
+   * @param ingress bounded ingress
+   * @param metrics metrics
+   */
+  BsDispatcher(
+      BsCallback callback,
+      ExecutorService callbackPool,
+      BsBufferPool bufferPool,
+      BsIngress ingress,
+      BsMetrics metrics) {
+    this.callback = callback;
+    this.metrics = metrics;
+    this.callbackPool = callbackPool;
+    this.bufferPool = bufferPool;
+    this.ingress = ingress;
+  }
+
+  /**
+   * get bounded ingress.
+   * @return ingress
+   */
+  BsIngress getIngress() {
+    return ingress;
+  }
+
+  /**
+   * dispatch message.
+   * @param incoming message
+   */
+  void dispatch(BsIncoming incoming) {
+    BsMailbox mailbox = incoming.getRemote().getMailbox();
+    if (ingress.offer(incoming, bufferPool) && mailbox.schedule()) {
+      callbackPool.execute(() -> drain(mailbox));
+    }
+  }
+
+  /**
+   * dispatch messages.
+   * <pre>
+   *   mailboxes which became scheduled are drained by one submission.
+   * </pre>
+   * @param incomings messages
+   */
+  void dispatch(List<BsIncoming> incomings) {
+    List<BsMailbox> mailboxes = null;
+    for (BsIncoming incoming : incomings) {
+      BsMailbox mailbox = incoming.getRemote().getMailbox();
+      if (ingress.offer(incoming, bufferPool) && mailbox.schedule()) {
+        if (mailboxes == null) {
+          mailboxes = new ArrayList<>();
+        }
+        mailboxes.add(mailbox);
+      }
+    }
+    if (mailboxes == null) {
+      return;
+    }
+    if (mailboxes.size() == 1) {
+      BsMailbox mailbox = mailboxes.get(0);
+      callbackPool.execute(() -> drain(mailbox));
+      return;
+    }
+    List<BsMailbox> scheduled = mailboxes;
+    callbackPool.execute(() -> {
+      for (BsMailbox mailbox : scheduled) {
+        drain(mailbox);
+      }
+    });
+  }
+
+  /**
+   * drain mailbox.
+   * @param mailbox scheduled mailbox
+   */
+  private void drain(BsMailbox mailbox) {
+    try {
+      for (int i = 0; i < THROUGHPUT; i++) {
+        BsIncoming incoming = mailbox.poll();
+        if (incoming == null) {
+          break;
+        }
+        long start = System.nanoTime();
+        metrics.getQueueWait().record(start - incoming.getReceivedNanos());
+        incoming.invoke(callback, bufferPool, metrics);
+        metrics.getCallbackTime().record(System.nanoTime() - start);
+        ingress.complete(incoming);
+      }
+    } finally {
+      mailbox.unschedule();
+    }
+
+    // offered while draining, or yielded by throughput
+    if (!mailbox.isEmpty() && mailbox.schedule()) {
+      callbackPool.execute(() -> drain(mailbox));
+    }
+  }
+}
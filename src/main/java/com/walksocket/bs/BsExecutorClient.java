@@ -1,15 +1,9 @@
 package com.walksocket.bs;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
-import java.nio.channels.DatagramChannel;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -48,9 +42,24 @@ public class BsExecutorClient {
   private int readBufferSize = 1350;
 
   /**
-   * nonblocking channel seletor.
+   * max datagrams received from one ready channel per select.
    */
-  private Selector selector;
+  private int receiveBatchSize = 1;
+
+  /**
+   * direct buffer receiving.
+   */
+  private boolean directBuffer = false;
+
+  /**
+   * max idle direct buffers kept in pool.
+   */
+  private int directBufferPoolSize = 64;
+
+  /**
+   * selector loop.
+   */
+  private BsSelector selector;
 
   /**
    * selector pool.
@@ -68,6 +77,56 @@ public class BsExecutorClient {
    */
   private ExecutorService callbackPool = Executors.newFixedThreadPool(1);
 
+  /**
+   * use native transport.
+   */
+  private boolean nativeTransport = false;
+
+  /**
+   * ingress policy.
+   */
+  private BsIngressPolicy ingressPolicy = BsIngressPolicy.DROP_NEWEST;
+
+  /**
+   * handler pipeline, or null.
+   */
+  private BsPipeline pipeline;
+
+  /**
+   * max messages waiting for callback.
+   */
+  private int ingressMaxMessages = Integer.MAX_VALUE;
+
+  /**
+   * max bytes waiting for callback.
+   */
+  private long ingressMaxBytes = Long.MAX_VALUE;
+
+  /**
+   * max messages waiting for callback per remote.
+   */
+  private int ingressMaxRemoteMessages = Integer.MAX_VALUE;
+
+  /**
+   * bounded ingress.
+   */
+  private BsIngress ingress;
+
+  /**
+   * max datagrams waiting in outbound queue per local channel.
+   */
+  private int sendQueueCapacity = 1024;
+
+  /**
+   * run callbacks on virtual threads.
+   */
+  private boolean virtualThread = false;
+
+  /**
+   * metrics.
+   */
+  private final BsMetrics metrics = new BsMetrics();
+
   /**
    * remote manager.
    */
@@ -120,6 +179,159 @@ public class BsExecutorClient {
     return this;
   }
 
+  /**
+   * set max datagrams received from one ready channel per select.
+   * <pre>
+   *   default 1, receive once per readiness.
+   *   if greater, selector drains ready channel until empty or this limit,
+   *   and submits whole batch to callback pool at once.
+   *   limit is fairness quantum, other listening ports are served after it.
+   * </pre>
+   * @param receiveBatchSize max datagrams per channel per select
+   * @return this
+   */
+  public BsExecutorClient receiveBatchSize(int receiveBatchSize) {
+    this.receiveBatchSize = receiveBatchSize;
+    return this;
+  }
+
+  /**
+   * set direct buffer receiving.
+   * <pre>
+   *   if true, datagrams are received into pooled direct buffers,
+   *   and BsCallback#incoming(BsRemote, ByteBuffer) is invoked with read-only view.
+   *   buffer is returned to pool when callback finishes,
+   *   so do not keep message reference after callback.
+   * </pre>
+   * @param directBuffer if enabled, set true
+   * @return this
+   */
+  public BsExecutorClient directBuffer(boolean directBuffer) {
+    this.directBuffer = directBuffer;
+    return this;
+  }
+
+  /**
+   * set max idle direct buffers kept in pool.
+   * @param directBufferPoolSize max idle direct buffers
+   * @return this
+   */
+  public BsExecutorClient directBufferPoolSize(int directBufferPoolSize) {
+    this.directBufferPoolSize = directBufferPoolSize;
+    return this;
+  }
+
+  /**
+   * set native transport.
+   * <pre>
+   *   if true, on linux with java 22 and later,
+   *   datagrams are received and sent up to 64 per syscall by recvmmsg and sendmmsg.
+   *   jvm must run with --add-opens java.base/sun.nio.ch=ALL-UNNAMED
+   *   and --enable-native-access=ALL-UNNAMED.
+   *   if unavailable, nio channel is used.
+   * </pre>
+   * @param nativeTransport if enabled, set true
+   * @return this
+   */
+  public BsExecutorClient nativeTransport(boolean nativeTransport) {
+    this.nativeTransport = nativeTransport;
+    return this;
+  }
+
+  /**
+   * set ingress capacity.
+   * <pre>
+   *   received messages waiting for callback are bounded by count and bytes.
+   *   when exceeded, ingress policy is applied.
+   *   default unbounded.
+   * </pre>
+   * @param maxMessages max messages waiting for callback
+   * @param maxBytes max bytes waiting for callback
+   * @return this
+   */
+  public BsExecutorClient ingressCapacity(int maxMessages, long maxBytes) {
+    this.ingressMaxMessages = maxMessages;
+    this.ingressMaxBytes = maxBytes;
+    return this;
+  }
+
+  /**
+   * set ingress capacity per remote.
+   * <pre>
+   *   when exceeded, newest message of the remote is dropped,
+   *   or oldest if ingress policy is DROP_OLDEST.
+   *   default unbounded.
+   * </pre>
+   * @param maxRemoteMessages max messages waiting for callback per remote
+   * @return this
+   */
+  public BsExecutorClient ingressRemoteCapacity(int maxRemoteMessages) {
+    this.ingressMaxRemoteMessages = maxRemoteMessages;
+    return this;
+  }
+
+  /**
+   * set ingress policy.
+   * <pre>
+   *   default DROP_NEWEST.
+   * </pre>
+   * @param ingressPolicy ingress policy
+   * @return this
+   */
+  public BsExecutorClient ingressPolicy(BsIngressPolicy ingressPolicy) {
+    this.ingressPolicy = ingressPolicy;
+    return this;
+  }
+
+  /**
+   * set send queue capacity.
+   * <pre>
+   *   when socket send buffer is full, sent messages wait in outbound queue,
+   *   and are written on OP_WRITE readiness.
+   *   when exceeded, message is dropped and its future is completed with DROPPED.
+   *   default 1024 per local channel.
+   * </pre>
+   * @param sendQueueCapacity max messages waiting in outbound queue per local channel
+   * @return this
+   */
+  public BsExecutorClient sendQueueCapacity(int sendQueueCapacity) {
+    this.sendQueueCapacity = sendQueueCapacity;
+    return this;
+  }
+
+  /**
+   * set virtual thread callback execution.
+   * <pre>
+   *   if true, callback pool is replaced by virtual thread per task executor,
+   *   for callbacks blocking on files, caches and so on.
+   *   messages of same remote are still invoked one at a time in received order.
+   *   requires java 21 and later, otherwise start throws exception.
+   * </pre>
+   * @param virtualThread if enabled, set true
+   * @return this
+   */
+  public BsExecutorClient virtualThread(boolean virtualThread) {
+    this.virtualThread = virtualThread;
+    return this;
+  }
+
+  /**
+   * set handler pipeline.
+   * <pre>
+   *   received datagrams go through inbound handlers on selector thread,
+   *   and only messages passed by last handler are handed to callback pool.
+   *   BsRemote#send of locals goes through outbound handlers.
+   *   broadcast payload is sent as is.
+   *   default none.
+   * </pre>
+   * @param pipeline pipeline
+   * @return this
+   */
+  public BsExecutorClient pipeline(BsPipeline pipeline) {
+    this.pipeline = pipeline;
+    return this;
+  }
+
   /**
    * set shutdown executor.
    * @param shutdownExecutor shutdown executor
@@ -144,14 +356,14 @@ public class BsExecutorClient {
     if (selector != null && selector.isOpen()) {
       return;
     }
-    try {
-      selector = Selector.open();
-      if (!local.getLocalChannel().getChannel().isRegistered()) {
-        local.getLocalChannel().getChannel().register(selector, SelectionKey.OP_READ);
+
+    // virtual thread
+    if (virtualThread) {
+      if (!BsVirtualThread.isSupported()) {
+        throw new BsExecutorClientException(String.format("virtual thread requires java 21 and later."));
       }
-    } catch (IOException e) {
-      BsLogger.error(e);
-      throw new BsExecutorClientException(e);
+      callbackPool.shutdown();
+      callbackPool = BsVirtualThread.newExecutor("bs-client-callback-");
     }
 
     // set shutdown handler
@@ -160,66 +372,54 @@ public class BsExecutorClient {
     Runtime.getRuntime().addShutdownHook(shutdownThread);
 
     // start manager
-    manager = new BsRemoteManager(1, callback, shutdown);
+    manager = new BsRemoteManager(1, callback, shutdown, metrics);
     for (BsRemote remote : remotes) {
       manager.register(remote);
     }
+    if (nativeTransport && !local.getLocalChannel().nativeTransport()) {
+      BsLogger.info(String.format("native transport is unavailable, use nio on %s", local));
+    }
+    local.getLocalChannel().getOutbound().setHighWater(sendQueueCapacity);
+    local.getLocalChannel().setPipeline(pipeline);
+    metrics.addPort(local.getLocalChannel().getMetrics());
+    BsBufferPool bufferPool = directBuffer ? new BsBufferPool(readBufferSize, directBufferPoolSize) : null;
+    ingress = new BsIngress(ingressPolicy, ingressMaxMessages, ingressMaxBytes, ingressMaxRemoteMessages);
+    BsDispatcher dispatcher = new BsDispatcher(callback, callbackPool, bufferPool, ingress, metrics);
+    try {
+      selector = new BsSelector(
+          "client",
+          Collections.singletonMap(local.getLocalChannel().getChannel(), local),
+          manager,
+          dispatcher,
+          readBufferSize,
+          bufferPool,
+          receiveBatchSize,
+          null,
+          pipeline);
+    } catch (IOException e) {
+      BsLogger.error(e);
+      throw new BsExecutorClientException(e);
+    }
     manager.startServiceTimeout();
 
     // execution
-    selectorPool.submit(() -> {
-      while (true) {
-        try {
-          if (selector.select() > 0) {
-            Set<SelectionKey> keys = selector.selectedKeys();
-            for(Iterator<SelectionKey> it = keys.iterator(); it.hasNext();) {
-              SelectionKey key = it.next();
-              it.remove();
-
-              // receive message
-              DatagramChannel localChannel = (DatagramChannel) key.channel();
-              ByteBuffer buffer = ByteBuffer.allocate(readBufferSize);
-              InetSocketAddress remoteAddr = (InetSocketAddress) localChannel.receive(buffer);
-              BsLogger.debug(() -> String.format(
-                  "client received from %s:%s at %s",
-                  remoteAddr.getHostString(),
-                  remoteAddr.getPort(),
-                  local.getLocalChannel().getLocalAddr().getPort()));
-
-              // generate remote
-              BsRemote remote = manager.generate(remoteAddr, local.getLocalChannel());
-
-              // execute callback
-              buffer.flip();
-              byte[] data = new byte[buffer.limit()];
-              buffer.get(data);
-              callbackPool.submit(() -> {
-                synchronized (remote) {
-                  // if remote is active and not timeout, invoke incoming
-                  if (remote.isActive() && !remote.isTimeout()) {
-                    remote.updateTimeout();
-                    callback.incoming(remote, data);
-                  }
-                }
-              });
-            }
-          }
-        } catch (IOException e) {
-          BsLogger.error(e);
-        }
-      }
-    });
+    selectorPool.submit(selector);
 
     // complete client
+    metrics.register("client-" + local.getLocalChannel().getLocalAddr().getPort());
     StringBuffer buffer = new StringBuffer();
     buffer.append(String.format(
         "%s:%s",
         local.getLocalChannel().getLocalAddr().getHostString(),
         local.getLocalChannel().getLocalAddr().getPort()));
     BsLogger.info(String.format(
-        "client listen on %s (readBufferSize:%s)",
+        "client listen on %s (readBufferSize:%s, receiveBatchSize:%s, directBuffer:%s, ingress:(%s), pipeline:(%s))",
         buffer.toString(),
-        readBufferSize));
+        readBufferSize,
+        receiveBatchSize,
+        directBuffer,
+        ingress,
+        pipeline));
   }
 
   /**
@@ -232,18 +432,15 @@ public class BsExecutorClient {
     }
 
     // close selector
-    if (selector != null && selector.isOpen()) {
-      try {
-        selector.close();
-      } catch (IOException e) {
-        BsLogger.error(e);
-      }
+    if (selector != null) {
+      selector.close();
     }
 
     // shutdown manager
     if (manager != null) {
       manager.shutdownServiceTimeout();
     }
+    metrics.unregister();
 
     // shutdown thread pool
     selectorPool.shutdown();
@@ -252,6 +449,94 @@ public class BsExecutorClient {
     BsLogger.info("client shutdown");
   }
 
+  /**
+   * get messages waiting for callback.
+   * @return waiting messages
+   */
+  public long getIngressMessages() {
+    if (ingress == null) {
+      return 0L;
+    }
+    return ingress.getMessages();
+  }
+
+  /**
+   * get bytes waiting for callback.
+   * @return waiting bytes
+   */
+  public long getIngressBytes() {
+    if (ingress == null) {
+      return 0L;
+    }
+    return ingress.getBytes();
+  }
+
+  /**
+   * get messages dropped by ingress capacity.
+   * @return dropped count
+   */
+  public long getIngressDroppedCount() {
+    if (ingress == null) {
+      return 0L;
+    }
+    return ingress.getDroppedCount();
+  }
+
+  /**
+   * get messages dropped by ingress capacity per remote.
+   * @return dropped count
+   */
+  public long getIngressRemoteDroppedCount() {
+    if (ingress == null) {
+      return 0L;
+    }
+    return ingress.getRemoteDroppedCount();
+  }
+
+  /**
+   * get count of paused read by ingress.
+   * @return paused count
+   */
+  public long getIngressPausedCount() {
+    if (ingress == null) {
+      return 0L;
+    }
+    return ingress.getPausedCount();
+  }
+
+  /**
+   * get metrics.
+   * @return metrics
+   */
+  public BsMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * get messages waiting in outbound queue.
+   * @return waiting messages
+   */
+  public long getSendQueueSize() {
+    if (local == null) {
+      return 0L;
+    }
+    return local.getLocalChannel().getOutbound().size();
+  }
+
+  /**
+   * get dropped send count.
+   * <pre>
+   *   over send queue capacity, send error or shutdown.
+   * </pre>
+   * @return dropped send count
+   */
+  public long getSendDroppedCount() {
+    if (local == null) {
+      return 0L;
+    }
+    return local.getLocalChannel().getOutbound().getDroppedCount();
+  }
+
   /**
    * client exception.
    * @author shigenobu
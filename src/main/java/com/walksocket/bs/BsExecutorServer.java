@@ -3,10 +3,13 @@ package com.walksocket.bs;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.*;
+import java.nio.channels.DatagramChannel;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
 
 /**
  * udp server.
@@ -34,32 +37,176 @@ public class BsExecutorServer {
    */
   private int readBufferSize = 1350;
 
+  /**
+   * max datagrams received from one ready channel per select.
+   */
+  private int receiveBatchSize = 1;
+
+  /**
+   * direct buffer receiving.
+   */
+  private boolean directBuffer = false;
+
+  /**
+   * max idle direct buffers kept in pool.
+   */
+  private int directBufferPoolSize = 1024;
+
   /**
    * remote timeout check devide number.
    */
   private int devide = 10;
 
   /**
-   * nonblocking channel seletor.
+   * selector threads.
+   */
+  private int selectorThreads = 1;
+
+  /**
+   * selector loops.
    */
-  private Selector selector;
+  private List<BsSelector> selectors;
 
   /**
    * selector pool.
    * <pre>
-   *   single thread.
+   *   thread per selector.
    * </pre>
    */
-  private ExecutorService selectorPool = Executors.newFixedThreadPool(1);
+  private ExecutorService selectorPool;
+
+  /**
+   * broadcast pool.
+   * <pre>
+   *   if listening on multi ports, channels are written in parallel.
+   * </pre>
+   */
+  private ExecutorService broadcastPool;
 
   /**
    * callback pool.
    * <pre>
    *   multi threads.
+   *   messages of same remote are invoked one at a time in received order.
    * </pre>
    */
   private ExecutorService callbackPool = Executors.newWorkStealingPool();
 
+  /**
+   * callback pool is given by caller.
+   */
+  private boolean callbackPoolGiven = false;
+
+  /**
+   * use native transport.
+   */
+  private boolean nativeTransport = false;
+
+  /**
+   * ingress policy.
+   */
+  private BsIngressPolicy ingressPolicy = BsIngressPolicy.DROP_NEWEST;
+
+  /**
+   * handler pipeline, or null.
+   */
+  private BsPipeline pipeline;
+
+  /**
+   * max messages waiting for callback.
+   */
+  private int ingressMaxMessages = Integer.MAX_VALUE;
+
+  /**
+   * max bytes waiting for callback.
+   */
+  private long ingressMaxBytes = Long.MAX_VALUE;
+
+  /**
+   * max messages waiting for callback per remote.
+   */
+  private int ingressMaxRemoteMessages = Integer.MAX_VALUE;
+
+  /**
+   * bounded ingress.
+   */
+  private BsIngress ingress;
+
+  /**
+   * max datagrams waiting in outbound queue per local channel.
+   */
+  private int sendQueueCapacity = 1024;
+
+  /**
+   * run callbacks on virtual threads.
+   */
+  private boolean virtualThread = false;
+
+  /**
+   * max off-heap remotes, 0 is disabled.
+   */
+  private int offHeapCapacity = 0;
+
+  /**
+   * user state bytes per off-heap remote.
+   */
+  private int offHeapStateBytes = 0;
+
+  /**
+   * rate limit action.
+   */
+  private BsRateLimitAction rateLimitAction = BsRateLimitAction.DROP;
+
+  /**
+   * tokens per second per remote address, 0 is disabled.
+   */
+  private double rateLimitRemoteRate = 0;
+
+  /**
+   * bucket size per remote address.
+   */
+  private int rateLimitRemoteBurst = 1;
+
+  /**
+   * tokens per second per prefix, 0 is disabled.
+   */
+  private double rateLimitPrefixRate = 0;
+
+  /**
+   * bucket size per prefix.
+   */
+  private int rateLimitPrefixBurst = 1;
+
+  /**
+   * ipv4 prefix length of rate limit.
+   */
+  private int rateLimitIpv4PrefixLength = 24;
+
+  /**
+   * ipv6 prefix length of rate limit.
+   */
+  private int rateLimitIpv6PrefixLength = 64;
+
+  /**
+   * rate limit bucket slots.
+   */
+  private int rateLimitBuckets = 65536;
+
+  /**
+   * rate limiter.
+   */
+  private BsRateLimiter rateLimiter;
+
+  /**
+   * cidr table.
+   */
+  private volatile BsCidrTable cidrTable;
+
+  /**
+   * metrics.
+   */
+  private final BsMetrics metrics = new BsMetrics();
+
   /**
    * remote manager.
    */
@@ -114,6 +261,64 @@ public class BsExecutorServer {
     return this;
   }
 
+  /**
+   * set max datagrams received from one ready channel per select.
+   * <pre>
+   *   default 1, receive once per readiness.
+   *   if greater, selector drains ready channel until empty or this limit,
+   *   and submits whole batch to callback pool at once.
+   *   limit is fairness quantum, other listening ports are served after it.
+   * </pre>
+   * @param receiveBatchSize max datagrams per channel per select
+   * @return this
+   */
+  public BsExecutorServer receiveBatchSize(int receiveBatchSize) {
+    this.receiveBatchSize = receiveBatchSize;
+    return this;
+  }
+
+  /**
+   * set direct buffer receiving.
+   * <pre>
+   *   if true, datagrams are received into pooled direct buffers,
+   *   and BsCallback#incoming(BsRemote, ByteBuffer) is invoked with read-only view.
+   *   buffer is returned to pool when callback finishes,
+   *   so do not keep message reference after callback.
+   * </pre>
+   * @param directBuffer if enabled, set true
+   * @return this
+   */
+  public BsExecutorServer directBuffer(boolean directBuffer) {
+    this.directBuffer = directBuffer;
+    return this;
+  }
+
+  /**
+   * set max idle direct buffers kept in pool.
+   * @param directBufferPoolSize max idle direct buffers
+   * @return this
+   */
+  public BsExecutorServer directBufferPoolSize(int directBufferPoolSize) {
+    this.directBufferPoolSize = directBufferPoolSize;
+    return this;
+  }
+
+  /**
+   * set selector threads.
+   * <pre>
+   *   if greater than 1, every local opens channels on same port with SO_REUSEPORT,
+   *   and each selector thread receives on its own channel.
+   *   kernel spreads flows across channels by 4-tuple hash.
+   *   SO_REUSEPORT requires java 9 and later.
+   * </pre>
+   * @param selectorThreads selector threads
+   * @return this
+   */
+  public BsExecutorServer selectorThreads(int selectorThreads) {
+    this.selectorThreads = selectorThreads;
+    return this;
+  }
+
   /**
    * set timeout check devide number.
    * @param devide timeout check devide number
@@ -126,11 +331,250 @@ public class BsExecutorServer {
 
   /**
    * set callback pool.
+   * <pre>
+   *   not used with virtual thread, start throws exception.
+   * </pre>
    * @param callbackPool callback pool
    * @return this
    */
   public BsExecutorServer callbackPool(ExecutorService callbackPool) {
     this.callbackPool = callbackPool;
+    this.callbackPoolGiven = true;
+    return this;
+  }
+
+  /**
+   * set native transport.
+   * <pre>
+   *   if true, on linux with java 22 and later,
+   *   datagrams are received and sent up to 64 per syscall by recvmmsg and sendmmsg.
+   *   jvm must run with --add-opens java.base/sun.nio.ch=ALL-UNNAMED
+   *   and --enable-native-access=ALL-UNNAMED.
+   *   if unavailable, nio channel is used.
+   * </pre>
+   * @param nativeTransport if enabled, set true
+   * @return this
+   */
+  public BsExecutorServer nativeTransport(boolean nativeTransport) {
+    this.nativeTransport = nativeTransport;
+    return this;
+  }
+
+  /**
+   * set ingress capacity.
+   * <pre>
+   *   received messages waiting for callback are bounded by count and bytes.
+   *   when exceeded, ingress policy is applied.
+   *   default unbounded.
+   * </pre>
+   * @param maxMessages max messages waiting for callback
+   * @param maxBytes max bytes waiting for callback
+   * @return this
+   */
+  public BsExecutorServer ingressCapacity(int maxMessages, long maxBytes) {
+    this.ingressMaxMessages = maxMessages;
+    this.ingressMaxBytes = maxBytes;
+    return this;
+  }
+
+  /**
+   * set ingress capacity per remote.
+   * <pre>
+   *   when exceeded, newest message of the remote is dropped,
+   *   or oldest if ingress policy is DROP_OLDEST.
+   *   default unbounded.
+   * </pre>
+   * @param maxRemoteMessages max messages waiting for callback per remote
+   * @return this
+   */
+  public BsExecutorServer ingressRemoteCapacity(int maxRemoteMessages) {
+    this.ingressMaxRemoteMessages = maxRemoteMessages;
+    return this;
+  }
+
+  /**
+   * set ingress policy.
+   * <pre>
+   *   default DROP_NEWEST.
+   * </pre>
+   * @param ingressPolicy ingress policy
+   * @return this
+   */
+  public BsExecutorServer ingressPolicy(BsIngressPolicy ingressPolicy) {
+    this.ingressPolicy = ingressPolicy;
+    return this;
+  }
+
+  /**
+   * set send queue capacity.
+   * <pre>
+   *   when socket send buffer is full, sent messages wait in outbound queue,
+   *   and are written on OP_WRITE readiness.
+   *   when exceeded, message is dropped and its future is completed with DROPPED.
+   *   default 1024 per local channel.
+   * </pre>
+   * @param sendQueueCapacity max messages waiting in outbound queue per local channel
+   * @return this
+   */
+  public BsExecutorServer sendQueueCapacity(int sendQueueCapacity) {
+    this.sendQueueCapacity = sendQueueCapacity;
+    return this;
+  }
+
+  /**
+   * set virtual thread callback execution.
+   * <pre>
+   *   if true, default callback pool is replaced by virtual thread per task executor,
+   *   for callbacks blocking on files, caches and so on.
+   *   not used with callback pool, start throws exception.
+   *   messages of same remote are still invoked one at a time in received order.
+   *   requires java 21 and later, otherwise start throws exception.
+   * </pre>
+   * @param virtualThread if enabled, set true
+   * @return this
+   */
+  public BsExecutorServer virtualThread(boolean virtualThread) {
+    this.virtualThread = virtualThread;
+    return this;
+  }
+
+  /**
+   * set off-heap remotes.
+   * <pre>
+   *   for millions of mostly idle ipv4 remotes.
+   *   lifetime, active flag and int or long attributes of remote live in off-heap records,
+   *   and BsRemote passed to callback is light handle created per message.
+   *   handle kept after remote is removed is seen as not active, and send is rejected.
+   *   int and long attribute keys take 8 bytes of state each, in registration order of process,
+   *   so state bytes must cover every int and long key registered before it is set.
+   *   and object values, setValue or object attribute keys, are not allowed.
+   *   messages of remotes sharing lane are invoked one at a time,
+   *   and timeout is checked once per second.
+   *   when capacity is full, or remote is ipv6, remote is kept on heap.
+   *   default disabled.
+   * </pre>
+   * @param capacity max off-heap remotes
+   * @param stateBytes state bytes per remote, 8 per int or long attribute key
+   * @return this
+   */
+  public BsExecutorServer offHeapRemotes(int capacity, int stateBytes) {
+    this.offHeapCapacity = capacity;
+    this.offHeapStateBytes = stateBytes;
+    return this;
+  }
+
+  /**
+   * set rate limit per remote address.
+   * <pre>
+   *   token bucket per remote ip and port, checked on selector thread
+   *   before remote is generated and datagram is copied.
+   *   bucket refills rate tokens per second, and holds up to burst tokens.
+   *   default disabled.
+   * </pre>
+   * @param rate tokens per second, 0 is disabled
+   * @param burst bucket size
+   * @return this
+   */
+  public BsExecutorServer rateLimitRemote(double rate, int burst) {
+    this.rateLimitRemoteRate = rate;
+    this.rateLimitRemoteBurst = burst;
+    return this;
+  }
+
+  /**
+   * set rate limit per cidr prefix.
+   * <pre>
+   *   token bucket per prefix of remote ip, for floods from many ports or spoofed addresses.
+   *   remotes in same /ipv4PrefixLength or /ipv6PrefixLength share one bucket.
+   *   default disabled, and prefix lengths are 24 and 64.
+   * </pre>
+   * @param ipv4PrefixLength ipv4 prefix length, 0 to 32
+   * @param ipv6PrefixLength ipv6 prefix length, 0 to 128
+   * @param rate tokens per second, 0 is disabled
+   * @param burst bucket size
+   * @return this
+   */
+  public BsExecutorServer rateLimitPrefix(int ipv4PrefixLength, int ipv6PrefixLength, double rate, int burst) {
+    this.rateLimitIpv4PrefixLength = ipv4PrefixLength;
+    this.rateLimitIpv6PrefixLength = ipv6PrefixLength;
+    this.rateLimitPrefixRate = rate;
+    this.rateLimitPrefixBurst = burst;
+    return this;
+  }
+
+  /**
+   * set rate limit action.
+   * <pre>
+   *   default DROP.
+   *   COUNT_ONLY counts exceeded datagrams, and passes them to callback.
+   * </pre>
+   * @param rateLimitAction rate limit action
+   * @return this
+   */
+  public BsExecutorServer rateLimitAction(BsRateLimitAction rateLimitAction) {
+    this.rateLimitAction = rateLimitAction;
+    return this;
+  }
+
+  /**
+   * set rate limit bucket slots.
+   * <pre>
+   *   buckets are hashed slots keeping their address, probed on collision.
+   *   address shares bucket only when every probed slot is used by other busy address,
+   *   so keep above active remotes, or prefixes.
+   *   default 65536, 1m bytes per limit.
+   * </pre>
+   * @param rateLimitBuckets bucket slots, rounded up to power of 2
+   * @return this
+   */
+  public BsExecutorServer rateLimitBuckets(int rateLimitBuckets) {
+    this.rateLimitBuckets = rateLimitBuckets;
+    return this;
+  }
+
+  /**
+   * set cidr filter.
+   * <pre>
+   *   checked on selector thread right after receive,
+   *   before rate limit, remote generation and copy.
+   *   denied datagram is counted as receiveDenied of port metrics.
+   *   may be called after start to swap filter without pause,
+   *   and datagrams already being received finish on previous one.
+   *   filter is compiled here, changes to it after this call are not seen.
+   *   if null, filter is removed.
+   * </pre>
+   * @param cidrFilter cidr filter, or null
+   * @return this
+   */
+  public BsExecutorServer cidrFilter(BsCidrFilter cidrFilter) {
+    BsCidrTable table = cidrFilter != null ? cidrFilter.compile() : null;
+    synchronized (this) {
+      cidrTable = table;
+      List<BsSelector> current = selectors;
+      if (current != null) {
+        for (BsSelector selector : current) {
+          selector.setCidrTable(table);
+        }
+      }
+    }
+    BsLogger.info(String.format("cidr filter is set (%s)", table));
+    return this;
+  }
+
+  /**
+   * set handler pipeline.
+   * <pre>
+   *   received datagrams go through inbound handlers on selector thread,
+   *   and only messages passed by last handler are handed to callback pool.
+   *   BsRemote#send of locals goes through outbound handlers.
+   *   broadcast payload is sent as is.
+   *   default none.
+   * </pre>
+   * @param pipeline pipeline
+   * @return this
+   */
+  public BsExecutorServer pipeline(BsPipeline pipeline) {
+    this.pipeline = pipeline;
     return this;
   }
 
@@ -156,19 +600,28 @@ public class BsExecutorServer {
     }
 
     // open selector
-    if (selector != null && selector.isOpen()) {
+    if (selectors != null && selectors.get(0).isOpen()) {
       return;
     }
-    try {
-      selector = Selector.open();
-      for (DatagramChannel channel : localMaps.keySet()) {
-        if (!channel.isRegistered()) {
-          channel.register(selector, SelectionKey.OP_READ);
-        }
+    if (selectorThreads < 1) {
+      throw new BsExecutorServerException(String.format("selector threads is at least 1."));
+    }
+    if (rateLimitIpv4PrefixLength < 0 || rateLimitIpv4PrefixLength > 32
+        || rateLimitIpv6PrefixLength < 0 || rateLimitIpv6PrefixLength > 128) {
+      throw new BsExecutorServerException(String.format(
+          "rate limit prefix length is invalid (ipv4:%s, ipv6:%s).", rateLimitIpv4PrefixLength, rateLimitIpv6PrefixLength));
+    }
+
+    // virtual thread
+    if (virtualThread) {
+      if (callbackPoolGiven) {
+        throw new BsExecutorServerException(String.format("callback pool is not used with virtual thread."));
       }
-    } catch (IOException e) {
-      BsLogger.error(e);
-      throw new BsExecutorServerException(e);
+      if (!BsVirtualThread.isSupported()) {
+        throw new BsExecutorServerException(String.format("virtual thread requires java 21 and later."));
+      }
+      callbackPool.shutdown();
+      callbackPool = BsVirtualThread.newExecutor("bs-server-callback-");
     }
 
     // set shutdown handler
@@ -177,61 +630,91 @@ public class BsExecutorServer {
     Runtime.getRuntime().addShutdownHook(shutdownThread);
 
     // create manager
-    manager = new BsRemoteManager(devide, callback, shutdown);
-    manager.startServiceTimeout();
+    manager = new BsRemoteManager(devide, callback, shutdown, metrics);
+    if (offHeapCapacity > 0) {
+      manager.setSlab(new BsRemoteSlab(offHeapCapacity, offHeapStateBytes, devide));
+    }
+    BsBufferPool bufferPool = directBuffer ? new BsBufferPool(readBufferSize, directBufferPoolSize) : null;
+    ingress = new BsIngress(ingressPolicy, ingressMaxMessages, ingressMaxBytes, ingressMaxRemoteMessages);
+    BsDispatcher dispatcher = new BsDispatcher(callback, callbackPool, bufferPool, ingress, metrics);
+    rateLimiter = null;
+    if (rateLimitRemoteRate > 0 || rateLimitPrefixRate > 0) {
+      rateLimiter = new BsRateLimiter(
+          rateLimitAction,
+          rateLimitRemoteRate,
+          rateLimitRemoteBurst,
+          rateLimitIpv4PrefixLength,
+          rateLimitIpv6PrefixLength,
+          rateLimitPrefixRate,
+          rateLimitPrefixBurst,
+          rateLimitBuckets);
+    }
+    metrics.setRateLimiter(rateLimiter);
+    selectors = new ArrayList<>(selectorThreads);
+    try {
+      // shard channels, and assign one channel of every local to each selector
+      List<Map<DatagramChannel, BsLocal>> shardMaps = new ArrayList<>(selectorThreads);
+      for (int i = 0; i < selectorThreads; i++) {
+        shardMaps.add(new HashMap<>());
+      }
+      Map<DatagramChannel, BsLocal> shardedLocalMaps = new HashMap<>();
+      for (BsLocal local : localMaps.values()) {
+        local.getLocalChannel().shard(selectorThreads);
+        local.getLocalChannel().getOutbound().setHighWater(sendQueueCapacity);
+        local.getLocalChannel().setPipeline(pipeline);
+        metrics.addPort(local.getLocalChannel().getMetrics());
+        if (nativeTransport && !local.getLocalChannel().nativeTransport()) {
+          BsLogger.info(String.format("native transport is unavailable, use nio on %s", local));
+        }
+        DatagramChannel[] channels = local.getLocalChannel().getChannels();
+        for (int i = 0; i < channels.length; i++) {
+          shardMaps.get(i % selectorThreads).put(channels[i], local);
+        }
+        shardedLocalMaps.put(local.getLocalChannel().getChannel(), local);
+      }
+      localMaps = shardedLocalMaps;
 
-    // execution
-    selectorPool.submit(() -> {
-      while (true) {
-        try {
-          if (selector.select() > 0) {
-            Set<SelectionKey> keys = selector.selectedKeys();
-            for(Iterator<SelectionKey> it = keys.iterator(); it.hasNext();) {
-              SelectionKey key = it.next();
-              it.remove();
-
-              // receive message
-              DatagramChannel localChannel = (DatagramChannel) key.channel();
-              ByteBuffer buffer = ByteBuffer.allocate(readBufferSize);
-              InetSocketAddress remoteAddr = (InetSocketAddress) localChannel.receive(buffer);
-
-              // confirm which local binding port was received
-              BsLocal local = localMaps.get(localChannel);
-              if (local == null) {
-                BsLogger.error(localChannel);
-                continue;
-              }
-              BsLogger.debug(() -> String.format(
-                  "server received from %s:%s at %s",
-                  remoteAddr.getHostString(),
-                  remoteAddr.getPort(),
-                  local.getLocalChannel().getLocalAddr().getPort()));
-
-              // generate remote
-              BsRemote remote = manager.generate(remoteAddr, local.getLocalChannel());
-
-              // execute callback
-              buffer.flip();
-              byte[] data = new byte[buffer.limit()];
-              buffer.get(data);
-              callbackPool.submit(() -> {
-                synchronized (remote) {
-                  // if remote is active and not timeout, invoke incoming
-                  if (remote.isActive() && !remote.isTimeout()) {
-                    remote.updateTimeout();
-                    callback.incoming(remote, data);
-                  }
-                }
-              });
-            }
-          }
-        } catch (IOException e) {
-          BsLogger.error(e);
+      for (Map<DatagramChannel, BsLocal> shardMap : shardMaps) {
+        BsSelector selector = new BsSelector(
+            "server",
+            shardMap,
+            manager,
+            dispatcher,
+            readBufferSize,
+            bufferPool,
+            receiveBatchSize,
+            rateLimiter,
+            pipeline);
+        synchronized (this) {
+          selector.setCidrTable(cidrTable);
+          selectors.add(selector);
         }
       }
-    });
+    } catch (IOException e) {
+      BsLogger.error(e);
+      for (BsSelector selector : selectors) {
+        selector.close();
+      }
+      throw new BsExecutorServerException(e);
+    }
+    manager.startServiceTimeout();
+
+    // execution
+    if (localMaps.size() > 1) {
+      broadcastPool = Executors.newFixedThreadPool(
+          Math.min(localMaps.size() - 1, Runtime.getRuntime().availableProcessors()));
+    }
+    selectorPool = Executors.newFixedThreadPool(selectorThreads);
+    for (BsSelector selector : selectors) {
+      selectorPool.submit(selector);
+    }
 
     // complete server
+    int firstPort = Integer.MAX_VALUE;
+    for (BsLocal local : localMaps.values()) {
+      firstPort = Math.min(firstPort, local.getLocalChannel().getLocalAddr().getPort());
+    }
+    metrics.register("server-" + firstPort);
     StringBuffer buffer = new StringBuffer();
     String sep = "";
     for (BsLocal local : localMaps.values()) {
@@ -243,9 +726,15 @@ public class BsExecutorServer {
       sep = ",";
     }
     BsLogger.info(String.format(
-        "server listen on %s (readBufferSize:%s, callbackPool:%s)",
+        "server listen on %s (readBufferSize:%s, receiveBatchSize:%s, directBuffer:%s, selectorThreads:%s, ingress:(%s), rateLimiter:(%s), pipeline:(%s), callbackPool:%s)",
         buffer.toString(),
         readBufferSize,
+        receiveBatchSize,
+        directBuffer,
+        selectorThreads,
+        ingress,
+        rateLimiter,
+        pipeline,
         callbackPool));
   }
 
@@ -261,11 +750,9 @@ public class BsExecutorServer {
     }
 
     // close selector
-    if (selector != null && selector.isOpen()) {
-      try {
+    if (selectors != null) {
+      for (BsSelector selector : selectors) {
         selector.close();
-      } catch (IOException e) {
-        BsLogger.error(e);
       }
     }
 
@@ -273,14 +760,100 @@ public class BsExecutorServer {
     if (manager != null) {
       manager.shutdownServiceTimeout();
     }
+    metrics.unregister();
 
     // shutdown thread pool
     callbackPool.shutdown();
-    selectorPool.shutdown();
+    if (broadcastPool != null) {
+      broadcastPool.shutdown();
+    }
+    if (selectorPool != null) {
+      selectorPool.shutdown();
+    }
 
     BsLogger.info("server shutdown");
   }
 
+  /**
+   * broadcast to every remote.
+   * @param payload message
+   * @return result
+   */
+  public BsBroadcastResult broadcast(byte[] payload) {
+    return broadcast(payload, null);
+  }
+
+  /**
+   * broadcast to remotes.
+   * <pre>
+   *   payload is copied once to shared read-only direct buffer,
+   *   and remotes are grouped by listening channel.
+   *   each channel is written in batches, in parallel with other channels.
+   *   escaped or inactive remotes are skipped.
+   *   like BsRemote#send, never blocks, and rest are queued when socket send buffer is full.
+   * </pre>
+   * @param payload message
+   * @param predicate remote filter, or null for all
+   * @return result
+   */
+  public BsBroadcastResult broadcast(byte[] payload, Predicate<BsRemote> predicate) {
+    BsBroadcastResult result = new BsBroadcastResult();
+    if (manager == null) {
+      return result;
+    }
+
+    // encode once
+    ByteBuffer buffer = ByteBuffer.allocateDirect(payload.length);
+    buffer.put(payload);
+    buffer.flip();
+    ByteBuffer shared = buffer.asReadOnlyBuffer();
+
+    // walk shards, and group by channel
+    Map<BsLocalChannel, List<InetSocketAddress>> groups = new HashMap<>();
+    manager.forEach(remote -> {
+      if (remote.isEscaped() || !remote.isActive()) {
+        return;
+      }
+      if (predicate != null && !predicate.test(remote)) {
+        return;
+      }
+      groups.computeIfAbsent(remote.getLocalChannel(), k -> new ArrayList<>()).add(remote.getRemoteAddr());
+    });
+
+    // write channels in parallel, and last one on caller thread
+    List<Future<BsBroadcastResult>> futures = new ArrayList<>();
+    Iterator<Map.Entry<BsLocalChannel, List<InetSocketAddress>>> it = groups.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<BsLocalChannel, List<InetSocketAddress>> group = it.next();
+      if (it.hasNext() && broadcastPool != null) {
+        futures.add(broadcastPool.submit(() -> group.getKey().broadcast(shared, group.getValue())));
+      } else {
+        result.merge(group.getKey().broadcast(shared, group.getValue()));
+      }
+    }
+    for (Future<BsBroadcastResult> future : futures) {
+      try {
+        result.merge(future.get());
+      } catch (InterruptedException e) {
+        BsLogger.error(e);
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ExecutionException e) {
+        BsLogger.error(e);
+      }
+    }
+    BsLogger.debug(() -> String.format("broadcast %s bytes (%s)", payload.length, result));
+    return result;
+  }
+
+  /**
+   * get metrics.
+   * @return metrics
+   */
+  public BsMetrics getMetrics() {
+    return metrics;
+  }
+
   /**
    * get remote count.
    * @return remote count.
@@ -292,6 +865,185 @@ public class BsExecutorServer {
     return manager.getRemoteCount();
   }
 
+  /**
+   * get received datagram count.
+   * @return received datagram count
+   */
+  public long getReceivedCount() {
+    long count = 0;
+    if (selectors != null) {
+      for (BsSelector selector : selectors) {
+        count += selector.getReceivedCount();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * get received batch count.
+   * <pre>
+   *   received datagram count / received batch count is average batch size.
+   * </pre>
+   * @return received batch count
+   */
+  public long getReceivedBatchCount() {
+    long count = 0;
+    if (selectors != null) {
+      for (BsSelector selector : selectors) {
+        count += selector.getReceivedBatchCount();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * get batch count reached receive batch size.
+   * <pre>
+   *   channel still had datagrams, and yielded to other listening ports.
+   *   if this is close to received batch count, consider larger receive batch size.
+   * </pre>
+   * @return batch count reached limit
+   */
+  public long getReceivedFullBatchCount() {
+    long count = 0;
+    if (selectors != null) {
+      for (BsSelector selector : selectors) {
+        count += selector.getReceivedFullBatchCount();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * get messages waiting for callback.
+   * @return waiting messages
+   */
+  public long getIngressMessages() {
+    if (ingress == null) {
+      return 0L;
+    }
+    return ingress.getMessages();
+  }
+
+  /**
+   * get bytes waiting for callback.
+   * @return waiting bytes
+   */
+  public long getIngressBytes() {
+    if (ingress == null) {
+      return 0L;
+    }
+    return ingress.getBytes();
+  }
+
+  /**
+   * get messages dropped by ingress capacity.
+   * @return dropped count
+   */
+  public long getIngressDroppedCount() {
+    if (ingress == null) {
+      return 0L;
+    }
+    return ingress.getDroppedCount();
+  }
+
+  /**
+   * get messages dropped by ingress capacity per remote.
+   * @return dropped count
+   */
+  public long getIngressRemoteDroppedCount() {
+    if (ingress == null) {
+      return 0L;
+    }
+    return ingress.getRemoteDroppedCount();
+  }
+
+  /**
+   * get count of paused read by ingress.
+   * @return paused count
+   */
+  public long getIngressPausedCount() {
+    if (ingress == null) {
+      return 0L;
+    }
+    return ingress.getPausedCount();
+  }
+
+  /**
+   * get datagrams exceeded rate limit per remote address.
+   * @return exceeded count
+   */
+  public long getRateLimitRemoteExceededCount() {
+    if (rateLimiter == null) {
+      return 0L;
+    }
+    return rateLimiter.getRemoteExceededCount();
+  }
+
+  /**
+   * get datagrams exceeded rate limit per prefix.
+   * @return exceeded count
+   */
+  public long getRateLimitPrefixExceededCount() {
+    if (rateLimiter == null) {
+      return 0L;
+    }
+    return rateLimiter.getPrefixExceededCount();
+  }
+
+  /**
+   * get datagrams dropped by rate limit.
+   * <pre>
+   *   always 0 if rate limit action is COUNT_ONLY.
+   * </pre>
+   * @return dropped count
+   */
+  public long getRateLimitDroppedCount() {
+    if (rateLimiter == null) {
+      return 0L;
+    }
+    return rateLimiter.getDroppedCount();
+  }
+
+  /**
+   * get datagrams denied by cidr filter.
+   * @return denied count
+   */
+  public long getCidrDeniedCount() {
+    long count = 0;
+    for (BsPortMetrics port : metrics.getPorts()) {
+      count += port.getReceiveDenied();
+    }
+    return count;
+  }
+
+  /**
+   * get messages waiting in outbound queue.
+   * @return waiting messages
+   */
+  public long getSendQueueSize() {
+    long size = 0;
+    for (BsLocal local : localMaps.values()) {
+      size += local.getLocalChannel().getOutbound().size();
+    }
+    return size;
+  }
+
+  /**
+   * get dropped send count.
+   * <pre>
+   *   over send queue capacity, send error or shutdown.
+   * </pre>
+   * @return dropped send count
+   */
+  public long getSendDroppedCount() {
+    long count = 0;
+    for (BsLocal local : localMaps.values()) {
+      count += local.getLocalChannel().getOutbound().getDroppedCount();
+    }
+    return count;
+  }
+
   /**
    * server exception.
    * @author shigenobu
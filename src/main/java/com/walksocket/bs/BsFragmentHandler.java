@@ -0,0 +1,576 @@
+package com.walksocket.bs;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * handler fragmenting message larger than datagram, and reassembling it.
+ * <pre>
+ *   message fitting in max datagram size is sent in one datagram with 1 byte header.
+ *   larger one is split into fragments with 9 bytes header, id, index and count,
+ *   and its future completes with written when every fragment is written.
+ *   receiver copies fragment out of read buffer, and passes completed message
+ *   as BsCompositeBuffer over fragments, not concatenated.
+ *   incomplete message is dropped when it is older than idle timeout of remote,
+ *   or when remote is removed by timeout or shutdown.
+ *   reassembly memory is bounded per remote by pending messages and max message size,
+ *   and globally by max reassembly bytes.
+ *   add it first, so that other handlers see whole messages.
+ *   both sides need this handler.
+ *
+ *   executor4Server.pipeline(new BsPipeline()
+ *       .addLast(new BsFragmentHandler().maxMessageSize(1024 * 1024)));
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsFragmentHandler implements BsHandler {
+
+  /**
+   * kind of datagram having whole message.
+   */
+  private static final byte WHOLE = 0;
+
+  /**
+   * kind of datagram having fragment.
+   */
+  private static final byte FRAGMENT = 1;
+
+  /**
+   * fragment header bytes, kind, id, index and count.
+   */
+  static final int HEADER = 1 + 4 + 2 + 2;
+
+  /**
+   * max fragments of message.
+   */
+  private static final int MAX_FRAGMENTS = 0xffff;
+
+  /**
+   * max datagram size.
+   */
+  private int maxDatagramSize = 1350;
+
+  /**
+   * max message size.
+   */
+  private int maxMessageSize = 1024 * 1024;
+
+  /**
+   * max pending messages per remote.
+   */
+  private int maxPendingMessages = 4;
+
+  /**
+   * max reassembly bytes of all remotes.
+   */
+  private long maxReassemblyBytes = 64L * 1024 * 1024;
+
+  /**
+   * message id.
+   */
+  private final AtomicInteger messageId = new AtomicInteger();
+
+  /**
+   * reassembling messages by local channel and remote address.
+   */
+  private final Map<BsLocalChannel, Map<InetSocketAddress, BsFragmentRemote>> pendings = new ConcurrentHashMap<>();
+
+  /**
+   * reassembly bytes in use.
+   */
+  private final AtomicLong reassemblyBytes = new AtomicLong();
+
+  /**
+   * messages being reassembled.
+   */
+  private final AtomicLong pendingMessages = new AtomicLong();
+
+  /**
+   * sent messages.
+   */
+  private final LongAdder sentMessages = new LongAdder();
+
+  /**
+   * sent datagrams.
+   */
+  private final LongAdder sentDatagrams = new LongAdder();
+
+  /**
+   * received datagrams.
+   */
+  private final LongAdder receivedDatagrams = new LongAdder();
+
+  /**
+   * reassembled messages.
+   */
+  private final LongAdder reassembledMessages = new LongAdder();
+
+  /**
+   * incomplete messages dropped by timeout.
+   */
+  private final LongAdder expiredMessages = new LongAdder();
+
+  /**
+   * incomplete messages dropped by limits.
+   */
+  private final LongAdder droppedMessages = new LongAdder();
+
+  /**
+   * received datagrams having malformed header.
+   */
+  private final LongAdder malformedDatagrams = new LongAdder();
+
+  /**
+   * set max datagram size.
+   * <pre>
+   *   default 1350, same as default read buffer size.
+   *   keep it up to read buffer size of receiver.
+   * </pre>
+   * @param maxDatagramSize max datagram size, larger than fragment header
+   * @return this
+   * @throws IllegalArgumentException too small
+   */
+  public BsFragmentHandler maxDatagramSize(int maxDatagramSize) {
+    if (maxDatagramSize <= HEADER) {
+      throw new IllegalArgumentException(String.format("max datagram size %s is too small.", maxDatagramSize));
+    }
+    this.maxDatagramSize = maxDatagramSize;
+    return this;
+  }
+
+  /**
+   * set max message size.
+   * <pre>
+   *   default 1 MiB.
+   *   sender refuses larger message, and receiver drops it.
+   * </pre>
+   * @param maxMessageSize max message size
+   * @return this
+   */
+  public BsFragmentHandler maxMessageSize(int maxMessageSize) {
+    this.maxMessageSize = maxMessageSize;
+    return this;
+  }
+
+  /**
+   * set max pending messages per remote.
+   * <pre>
+   *   default 4.
+   *   when new message exceeds it, oldest incomplete message of remote is dropped.
+   * </pre>
+   * @param maxPendingMessages max pending messages
+   * @return this
+   */
+  public BsFragmentHandler maxPendingMessages(int maxPendingMessages) {
+    this.maxPendingMessages = maxPendingMessages;
+    return this;
+  }
+
+  /**
+   * set max reassembly bytes of all remotes.
+   * <pre>
+   *   default 64 MiB.
+   *   fragment exceeding it drops its message.
+   * </pre>
+   * @param maxReassemblyBytes max reassembly bytes
+   * @return this
+   */
+  public BsFragmentHandler maxReassemblyBytes(long maxReassemblyBytes) {
+    this.maxReassemblyBytes = maxReassemblyBytes;
+    return this;
+  }
+
+  @Override
+  public void inbound(BsHandlerContext ctx, BsRemote remote, Object message) {
+    ByteBuffer buffer = message instanceof byte[] ? ByteBuffer.wrap((byte[]) message) : (ByteBuffer) message;
+    receivedDatagrams.increment();
+    if (!buffer.hasRemaining()) {
+      malformedDatagrams.increment();
+      return;
+    }
+    byte kind = buffer.get();
+    if (kind == WHOLE) {
+      // same buffer, so received datagram is still handed without copy
+      ctx.fireInbound(remote, buffer);
+      return;
+    }
+    if (kind != FRAGMENT || buffer.remaining() < HEADER - 1) {
+      malformedDatagrams.increment();
+      return;
+    }
+    int id = buffer.getInt();
+    int index = buffer.getShort() & 0xffff;
+    int count = buffer.getShort() & 0xffff;
+    if (count < 2 || index >= count) {
+      malformedDatagrams.increment();
+      return;
+    }
+
+    // read buffer is reused, so copy fragment once
+    byte[] part = new byte[buffer.remaining()];
+    buffer.get(part);
+    BsCompositeBuffer composite = reassemble(remote, id, index, count, part);
+    if (composite != null) {
+      reassembledMessages.increment();
+      ctx.fireInbound(remote, composite);
+    }
+  }
+
+  /**
+   * add fragment to its message.
+   * @param remote remote
+   * @param id message id
+   * @param index fragment index
+   * @param count fragment count
+   * @param part fragment
+   * @return completed message, or null
+   */
+  private BsCompositeBuffer reassemble(BsRemote remote, int id, int index, int count, byte[] part) {
+    Map<InetSocketAddress, BsFragmentRemote> remotes = pendings.computeIfAbsent(
+        remote.getLocalChannel(), k -> new ConcurrentHashMap<>());
+    long now = BsDate.timestampMilliseconds();
+    while (true) {
+      BsFragmentRemote state = remotes.computeIfAbsent(remote.getRemoteAddr(), k -> new BsFragmentRemote());
+      synchronized (state) {
+        if (state.closed) {
+          // removed, take new one
+          continue;
+        }
+        try {
+          expire(state, now, remote.getIdleMilliSeconds());
+          BsFragmentMessage pending = state.messages.get(id);
+          if (pending == null) {
+            if (!state.messages.isEmpty() && state.messages.size() >= maxPendingMessages) {
+              Iterator<BsFragmentMessage> oldest = state.messages.values().iterator();
+              discard(oldest.next());
+              oldest.remove();
+              droppedMessages.increment();
+            }
+            // array of fragments is reserved too, count is given by peer
+            long reserved = (long) count * 8;
+            if (count > maxMessageSize || !reserve(reserved)) {
+              droppedMessages.increment();
+              return null;
+            }
+            pending = new BsFragmentMessage(count, now, reserved);
+            state.messages.put(id, pending);
+            pendingMessages.incrementAndGet();
+          }
+          if (count != pending.parts.length) {
+            // count differs from first fragment of same id
+            malformedDatagrams.increment();
+            return null;
+          }
+          if (pending.parts[index] != null) {
+            // duplicated
+            return null;
+          }
+          if (pending.size + part.length > maxMessageSize || !reserve(part.length)) {
+            discard(state.messages.remove(id));
+            droppedMessages.increment();
+            return null;
+          }
+          pending.parts[index] = ByteBuffer.wrap(part);
+          pending.received++;
+          pending.size += part.length;
+          pending.reserved += part.length;
+          if (pending.received < count) {
+            return null;
+          }
+          discard(state.messages.remove(id));
+          return new BsCompositeBuffer(pending.parts);
+        } finally {
+          if (state.messages.isEmpty()) {
+            state.closed = true;
+            remotes.remove(remote.getRemoteAddr(), state);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * drop incomplete messages older than idle timeout, holding lock of remote.
+   * @param state reassembling messages of remote
+   * @param now now timestamp milliseconds
+   * @param idleMilliSeconds idle milliseconds of remote
+   */
+  private void expire(BsFragmentRemote state, long now, int idleMilliSeconds) {
+    Iterator<BsFragmentMessage> it = state.messages.values().iterator();
+    while (it.hasNext()) {
+      BsFragmentMessage pending = it.next();
+      if (now - pending.startedMilliseconds <= idleMilliSeconds) {
+        // insertion order, rest are newer
+        break;
+      }
+      discard(pending);
+      it.remove();
+      expiredMessages.increment();
+    }
+  }
+
+  /**
+   * release memory of message.
+   * @param pending message
+   */
+  private void discard(BsFragmentMessage pending) {
+    reassemblyBytes.addAndGet(-pending.reserved);
+    pendingMessages.decrementAndGet();
+  }
+
+  /**
+   * reserve reassembly bytes.
+   * @param bytes bytes
+   * @return if reserved, true
+   */
+  private boolean reserve(long bytes) {
+    while (true) {
+      long current = reassemblyBytes.get();
+      if (current + bytes > maxReassemblyBytes) {
+        return false;
+      }
+      if (reassemblyBytes.compareAndSet(current, current + bytes)) {
+        return true;
+      }
+    }
+  }
+
+  @Override
+  public void removed(BsRemote remote) {
+    Map<InetSocketAddress, BsFragmentRemote> remotes = pendings.get(remote.getLocalChannel());
+    if (remotes == null) {
+      return;
+    }
+    BsFragmentRemote state = remotes.remove(remote.getRemoteAddr());
+    if (state == null) {
+      return;
+    }
+    synchronized (state) {
+      state.closed = true;
+      for (BsFragmentMessage pending : state.messages.values()) {
+        discard(pending);
+        expiredMessages.increment();
+      }
+      state.messages.clear();
+    }
+  }
+
+  @Override
+  public CompletableFuture<BsSendStatus> outbound(BsHandlerContext ctx, BsRemote remote, Object message) {
+    ByteBuffer payload;
+    if (message instanceof ByteBuffer) {
+      payload = ((ByteBuffer) message).duplicate();
+    } else if (message instanceof byte[]) {
+      payload = ByteBuffer.wrap((byte[]) message);
+    } else {
+      throw new IllegalStateException(String.format(
+          "fragment handler needs byte array or ByteBuffer, but %s.", message == null ? null : message.getClass().getName()));
+    }
+    int length = payload.remaining();
+    if (length + 1 <= maxDatagramSize) {
+      byte[] datagram = new byte[length + 1];
+      datagram[0] = WHOLE;
+      payload.get(datagram, 1, length);
+      sentMessages.increment();
+      sentDatagrams.increment();
+      return ctx.write(remote, ByteBuffer.wrap(datagram));
+    }
+
+    // fragments
+    int chunk = maxDatagramSize - HEADER;
+    int count = (length + chunk - 1) / chunk;
+    if (length > maxMessageSize || count > MAX_FRAGMENTS) {
+      throw new IllegalStateException(String.format(
+          "message size %s exceeds max message size %s.", length, maxMessageSize));
+    }
+    sentMessages.increment();
+    int id = messageId.incrementAndGet();
+    List<CompletableFuture<BsSendStatus>> futures = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int size = Math.min(chunk, payload.remaining());
+      ByteBuffer datagram = ByteBuffer.allocate(HEADER + size);
+      datagram.put(FRAGMENT).putInt(id).putShort((short) i).putShort((short) count);
+      ByteBuffer part = payload.slice();
+      part.limit(size);
+      datagram.put(part);
+      datagram.flip();
+      payload.position(payload.position() + size);
+      sentDatagrams.increment();
+      futures.add(ctx.write(remote, datagram));
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((v, e) -> {
+      if (e != null) {
+        return BsSendStatus.DROPPED;
+      }
+      for (CompletableFuture<BsSendStatus> future : futures) {
+        if (future.join() != BsSendStatus.WRITTEN) {
+          return BsSendStatus.DROPPED;
+        }
+      }
+      return BsSendStatus.WRITTEN;
+    });
+  }
+
+  /**
+   * get sent messages.
+   * @return sent messages
+   */
+  public long getSentMessages() {
+    return sentMessages.sum();
+  }
+
+  /**
+   * get sent datagrams.
+   * @return sent datagrams
+   */
+  public long getSentDatagrams() {
+    return sentDatagrams.sum();
+  }
+
+  /**
+   * get received datagrams.
+   * @return received datagrams
+   */
+  public long getReceivedDatagrams() {
+    return receivedDatagrams.sum();
+  }
+
+  /**
+   * get reassembled messages.
+   * @return reassembled messages
+   */
+  public long getReassembledMessages() {
+    return reassembledMessages.sum();
+  }
+
+  /**
+   * get messages being reassembled now.
+   * @return pending messages
+   */
+  public long getPendingMessages() {
+    return pendingMessages.get();
+  }
+
+  /**
+   * get reassembly bytes in use now.
+   * <pre>
+   *   up to max reassembly bytes.
+   * </pre>
+   * @return reassembly bytes
+   */
+  public long getReassemblyBytes() {
+    return reassemblyBytes.get();
+  }
+
+  /**
+   * get incomplete messages dropped by timeout or removal of remote.
+   * @return expired messages
+   */
+  public long getExpiredMessages() {
+    return expiredMessages.sum();
+  }
+
+  /**
+   * get incomplete messages dropped by limits.
+   * @return dropped messages
+   */
+  public long getDroppedMessages() {
+    return droppedMessages.sum();
+  }
+
+  /**
+   * get received datagrams having malformed header.
+   * @return malformed datagrams
+   */
+  public long getMalformedDatagrams() {
+    return malformedDatagrams.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "maxDatagramSize:%s, maxMessageSize:%s, maxPendingMessages:%s, maxReassemblyBytes:%s, "
+            + "reassemblyBytes:%s, pendingMessages:%s",
+        maxDatagramSize,
+        maxMessageSize,
+        maxPendingMessages,
+        maxReassemblyBytes,
+        getReassemblyBytes(),
+        getPendingMessages());
+  }
+
+  /**
+   * reassembling messages of one remote.
+   * @author shigenobu
+   *
+   */
+  private static class BsFragmentRemote {
+
+    /**
+     * messages by id, oldest first.
+     */
+    private final Map<Integer, BsFragmentMessage> messages = new LinkedHashMap<>();
+
+    /**
+     * removed.
+     */
+    private boolean closed = false;
+  }
+
+  /**
+   * message being reassembled.
+   * @author shigenobu
+   *
+   */
+  private static class BsFragmentMessage {
+
+    /**
+     * fragments by index.
+     */
+    private final ByteBuffer[] parts;
+
+    /**
+     * started timestamp milliseconds.
+     */
+    private final long startedMilliseconds;
+
+    /**
+     * received fragments.
+     */
+    private int received = 0;
+
+    /**
+     * received bytes.
+     */
+    private int size = 0;
+
+    /**
+     * reserved reassembly bytes.
+     */
+    private long reserved;
+
+    /**
+     * constructor.
+     * @param count fragment count
+     * @param startedMilliseconds started timestamp milliseconds
+     * @param reserved reserved reassembly bytes
+     */
+    private BsFragmentMessage(int count, long startedMilliseconds, long reserved) {
+      this.parts = new ByteBuffer[count];
+      this.startedMilliseconds = startedMilliseconds;
+      this.reserved = reserved;
+    }
+  }
+}
@@ -0,0 +1,483 @@
+package com.walksocket.bs;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * handler coalescing small messages into one datagram.
+ * <pre>
+ *   each message is framed by varint length prefix,
+ *   and messages sent to same remote are packed up to max datagram size.
+ *   datagram is flushed when next message does not fit, or after flush delay
+ *   from first message, like nagle.
+ *   every message of datagram completes with same future when datagram is written.
+ *   receiver splits frames, and passes them one by one, or as one list of byte arrays.
+ *   both sides need this handler.
+ *
+ *   executor4Server.pipeline(new BsPipeline()
+ *       .addLast(new BsFrameHandler().maxDatagramSize(1350).flushDelayMicros(200)));
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsFrameHandler implements BsHandler {
+
+  /**
+   * flush timer, shared by every frame handler.
+   */
+  private static volatile ScheduledExecutorService timer;
+
+  /**
+   * max datagram size.
+   */
+  private int maxDatagramSize = 1350;
+
+  /**
+   * flush delay nanoseconds.
+   */
+  private long flushDelayNanos = TimeUnit.MICROSECONDS.toNanos(500);
+
+  /**
+   * pass frames of datagram as one list.
+   */
+  private boolean batch = false;
+
+  /**
+   * pending datagrams by local channel and remote address.
+   */
+  private final Map<BsLocalChannel, Map<InetSocketAddress, BsFramePending>> pendings = new ConcurrentHashMap<>();
+
+  /**
+   * sent messages.
+   */
+  private final LongAdder sentMessages = new LongAdder();
+
+  /**
+   * sent datagrams.
+   */
+  private final LongAdder sentDatagrams = new LongAdder();
+
+  /**
+   * received messages.
+   */
+  private final LongAdder receivedMessages = new LongAdder();
+
+  /**
+   * received datagrams.
+   */
+  private final LongAdder receivedDatagrams = new LongAdder();
+
+  /**
+   * received datagrams having malformed frame.
+   */
+  private final LongAdder malformedDatagrams = new LongAdder();
+
+  /**
+   * set max datagram size.
+   * <pre>
+   *   default 1350, same as default read buffer size.
+   *   keep it up to read buffer size of receiver.
+   *   message larger than this is sent alone in one frame.
+   * </pre>
+   * @param maxDatagramSize max datagram size
+   * @return this
+   */
+  public BsFrameHandler maxDatagramSize(int maxDatagramSize) {
+    this.maxDatagramSize = maxDatagramSize;
+    return this;
+  }
+
+  /**
+   * set flush delay.
+   * <pre>
+   *   default 500 microseconds, latency added to message at most.
+   *   if 0, every message is sent at once in its own frame.
+   * </pre>
+   * @param flushDelayMicros flush delay microseconds
+   * @return this
+   */
+  public BsFrameHandler flushDelayMicros(long flushDelayMicros) {
+    this.flushDelayNanos = TimeUnit.MICROSECONDS.toNanos(flushDelayMicros);
+    return this;
+  }
+
+  /**
+   * set batch receiving.
+   * <pre>
+   *   if false, default, frames are passed one by one,
+   *   and callback is invoked per message.
+   *   if true, frames of datagram are passed as one List of byte array,
+   *   and BsCallback#decoded is invoked per datagram.
+   * </pre>
+   * @param batch if enabled, set true
+   * @return this
+   */
+  public BsFrameHandler batch(boolean batch) {
+    this.batch = batch;
+    return this;
+  }
+
+  @Override
+  public void inbound(BsHandlerContext ctx, BsRemote remote, Object message) {
+    ByteBuffer buffer;
+    if (message instanceof byte[]) {
+      buffer = ByteBuffer.wrap((byte[]) message);
+    } else if (message instanceof BsCompositeBuffer) {
+      // reassembled by fragment handler, frames may cross fragments
+      buffer = ByteBuffer.wrap(((BsCompositeBuffer) message).toArray());
+    } else {
+      buffer = (ByteBuffer) message;
+    }
+    receivedDatagrams.increment();
+    List<byte[]> frames = batch ? new ArrayList<>() : null;
+    while (buffer.hasRemaining()) {
+      int length = readVarint(buffer);
+      if (length < 0 || length > buffer.remaining()) {
+        malformedDatagrams.increment();
+        break;
+      }
+      receivedMessages.increment();
+      if (frames != null) {
+        byte[] frame = new byte[length];
+        buffer.get(frame);
+        frames.add(frame);
+      } else {
+        ByteBuffer frame = buffer.slice();
+        frame.limit(length);
+        buffer.position(buffer.position() + length);
+        ctx.fireInbound(remote, frame);
+      }
+    }
+    if (frames != null && !frames.isEmpty()) {
+      ctx.fireInbound(remote, frames);
+    }
+  }
+
+  @Override
+  public CompletableFuture<BsSendStatus> outbound(BsHandlerContext ctx, BsRemote remote, Object message) {
+    ByteBuffer payload;
+    if (message instanceof ByteBuffer) {
+      payload = (ByteBuffer) message;
+    } else if (message instanceof byte[]) {
+      payload = ByteBuffer.wrap((byte[]) message);
+    } else {
+      throw new IllegalStateException(String.format(
+          "frame handler needs byte array or ByteBuffer, but %s.", message == null ? null : message.getClass().getName()));
+    }
+    sentMessages.increment();
+    int length = payload.remaining();
+    int framed = varintSize(length) + length;
+
+    if (flushDelayNanos <= 0) {
+      // nothing is pending, frame alone
+      byte[] datagram = new byte[framed];
+      payload.duplicate().get(datagram, writeVarint(datagram, 0, length), length);
+      sentDatagrams.increment();
+      return ctx.write(remote, ByteBuffer.wrap(datagram));
+    }
+    Map<InetSocketAddress, BsFramePending> remotes = pendings.computeIfAbsent(
+        remote.getLocalChannel(), k -> new ConcurrentHashMap<>());
+    while (true) {
+      BsFramePending pending = remotes.computeIfAbsent(remote.getRemoteAddr(), k -> new BsFramePending(ctx, remote));
+      pending.lock.lock();
+      try {
+        if (pending.closed) {
+          // flushed and removed by timer, take new one
+          continue;
+        }
+        if (pending.size > 0 && pending.size + framed > maxDatagramSize) {
+          flush(pending);
+        }
+        if (framed >= maxDatagramSize) {
+          // alone, and in order after pending
+          pending.append(payload, length, framed);
+          CompletableFuture<BsSendStatus> future = pending.future;
+          flush(pending);
+          close(remotes, pending);
+          return future;
+        }
+        pending.append(payload, length, framed);
+        if (!pending.scheduled) {
+          pending.scheduled = true;
+          timer().schedule(() -> flushScheduled(remotes, pending), flushDelayNanos, TimeUnit.NANOSECONDS);
+        }
+        return pending.future;
+      } finally {
+        pending.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * flush pending datagram by timer, and remove it.
+   * @param remotes pending datagrams of local channel
+   * @param pending pending datagram
+   */
+  private void flushScheduled(Map<InetSocketAddress, BsFramePending> remotes, BsFramePending pending) {
+    pending.lock.lock();
+    try {
+      flush(pending);
+      close(remotes, pending);
+    } finally {
+      pending.lock.unlock();
+    }
+  }
+
+  /**
+   * remove pending datagram, new message takes new one.
+   * @param remotes pending datagrams of local channel
+   * @param pending pending datagram
+   */
+  private static void close(Map<InetSocketAddress, BsFramePending> remotes, BsFramePending pending) {
+    pending.closed = true;
+    remotes.remove(pending.remote.getRemoteAddr(), pending);
+  }
+
+  /**
+   * write pending datagram, holding its lock.
+   * @param pending pending datagram
+   */
+  private void flush(BsFramePending pending) {
+    if (pending.size == 0) {
+      return;
+    }
+    ByteBuffer datagram = ByteBuffer.wrap(Arrays.copyOf(pending.buffer, pending.size));
+    CompletableFuture<BsSendStatus> future = pending.future;
+    pending.size = 0;
+    pending.future = new CompletableFuture<>();
+    sentDatagrams.increment();
+    try {
+      pending.ctx.write(pending.remote, datagram).whenComplete((status, e) ->
+          future.complete(e != null ? BsSendStatus.DROPPED : status));
+    } catch (RuntimeException e) {
+      BsLogger.error(e);
+      future.complete(BsSendStatus.DROPPED);
+    }
+  }
+
+  /**
+   * flush every pending datagram now.
+   */
+  public void flush() {
+    for (Map<InetSocketAddress, BsFramePending> remotes : pendings.values()) {
+      for (BsFramePending pending : remotes.values()) {
+        flushScheduled(remotes, pending);
+      }
+    }
+  }
+
+  /**
+   * get flush timer.
+   * @return timer
+   */
+  private static ScheduledExecutorService timer() {
+    ScheduledExecutorService t = timer;
+    if (t == null) {
+      synchronized (BsFrameHandler.class) {
+        t = timer;
+        if (t == null) {
+          ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "bs-frame-flush");
+            thread.setDaemon(true);
+            return thread;
+          });
+          executor.setRemoveOnCancelPolicy(true);
+          timer = t = executor;
+        }
+      }
+    }
+    return t;
+  }
+
+  /**
+   * get varint size.
+   * @param value unsigned value
+   * @return bytes
+   */
+  static int varintSize(int value) {
+    int size = 1;
+    while ((value & ~0x7f) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  /**
+   * write varint.
+   * @param buffer buffer
+   * @param offset offset
+   * @param value unsigned value
+   * @return next offset
+   */
+  static int writeVarint(byte[] buffer, int offset, int value) {
+    while ((value & ~0x7f) != 0) {
+      buffer[offset++] = (byte) ((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    buffer[offset++] = (byte) value;
+    return offset;
+  }
+
+  /**
+   * read varint.
+   * @param buffer buffer
+   * @return unsigned value, or -1 if malformed
+   */
+  static int readVarint(ByteBuffer buffer) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      byte b = buffer.get();
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * get sent messages.
+   * @return sent messages
+   */
+  public long getSentMessages() {
+    return sentMessages.sum();
+  }
+
+  /**
+   * get sent datagrams.
+   * <pre>
+   *   sent messages / sent datagrams is coalescing ratio.
+   * </pre>
+   * @return sent datagrams
+   */
+  public long getSentDatagrams() {
+    return sentDatagrams.sum();
+  }
+
+  /**
+   * get received messages.
+   * @return received messages
+   */
+  public long getReceivedMessages() {
+    return receivedMessages.sum();
+  }
+
+  /**
+   * get received datagrams.
+   * @return received datagrams
+   */
+  public long getReceivedDatagrams() {
+    return receivedDatagrams.sum();
+  }
+
+  /**
+   * get received datagrams having malformed frame.
+   * <pre>
+   *   frames before malformed one are passed.
+   * </pre>
+   * @return malformed datagrams
+   */
+  public long getMalformedDatagrams() {
+    return malformedDatagrams.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "maxDatagramSize:%s, flushDelayNanos:%s, batch:%s, sentMessages:%s, sentDatagrams:%s",
+        maxDatagramSize,
+        flushDelayNanos,
+        batch,
+        getSentMessages(),
+        getSentDatagrams());
+  }
+
+  /**
+   * datagram being packed for one remote.
+   * @author shigenobu
+   *
+   */
+  private static class BsFramePending {
+
+    /**
+     * context to write.
+     */
+    private final BsHandlerContext ctx;
+
+    /**
+     * remote.
+     */
+    private final BsRemote remote;
+
+    /**
+     * lock.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * packed frames, grows up to max datagram size.
+     */
+    private byte[] buffer = new byte[64];
+
+    /**
+     * packed bytes.
+     */
+    private int size = 0;
+
+    /**
+     * future of packed messages.
+     */
+    private CompletableFuture<BsSendStatus> future = new CompletableFuture<>();
+
+    /**
+     * flush is scheduled.
+     */
+    private boolean scheduled = false;
+
+    /**
+     * flushed and removed.
+     */
+    private boolean closed = false;
+
+    /**
+     * constructor.
+     * @param ctx context to write
+     * @param remote remote
+     */
+    private BsFramePending(BsHandlerContext ctx, BsRemote remote) {
+      this.ctx = ctx;
+      this.remote = remote;
+    }
+
+    /**
+     * append frame.
+     * @param payload message
+     * @param length message length
+     * @param framed frame length
+     */
+    private void append(ByteBuffer payload, int length, int framed) {
+      if (size + framed > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + framed));
+      }
+      int offset = writeVarint(buffer, size, length);
+      payload.duplicate().get(buffer, offset, length);
+      size = offset + length;
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package com.walksocket.bs;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * handler of pipeline.
+ * <pre>
+ *   inbound runs on selector thread for every received datagram, first handler to last.
+ *   first handler gets received datagram as ByteBuffer,
+ *   valid only while inbound runs, so copy what is kept after return.
+ *   handler passes zero or more messages to next by ctx.fireInbound,
+ *   and not passing drops datagram before callback pool.
+ *   keep it cheap, header decode, validation or routing,
+ *   because selector thread receives nothing while it runs.
+ *
+ *   outbound runs on sender thread for BsRemote#send, last handler to first,
+ *   and passes zero or more messages to previous by ctx.write.
+ *   message reaching head must be byte array or ByteBuffer.
+ *
+ *   removed runs on timeout thread when remote is removed by timeout or shutdown,
+ *   so drop state kept for remote there.
+ *
+ *   one handler instance is shared by every selector and sender, so keep it thread safe.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public interface BsHandler {
+
+  /**
+   * inbound.
+   * <pre>
+   *   default passes message to next.
+   * </pre>
+   * @param ctx context
+   * @param remote remote
+   * @param message received datagram as ByteBuffer, or message of previous handler
+   */
+  default void inbound(BsHandlerContext ctx, BsRemote remote, Object message) {
+    ctx.fireInbound(remote, message);
+  }
+
+  /**
+   * outbound.
+   * <pre>
+   *   default passes message to previous.
+   * </pre>
+   * @param ctx context
+   * @param remote remote
+   * @param message sent message as ByteBuffer, or message of next handler
+   * @return future completed with written or dropped
+   */
+  default CompletableFuture<BsSendStatus> outbound(BsHandlerContext ctx, BsRemote remote, Object message) {
+    return ctx.write(remote, message);
+  }
+
+  /**
+   * remote is removed.
+   * <pre>
+   *   default does nothing.
+   * </pre>
+   * @param remote remote, not active
+   */
+  default void removed(BsRemote remote) {
+  }
+}
@@ -0,0 +1,94 @@
+package com.walksocket.bs;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * context of handler in pipeline.
+ * <pre>
+ *   links handler to next for inbound and previous for outbound.
+ *   inbound contexts are bound to selector, and outbound contexts are shared.
+ *   handler may keep context given to outbound, and write later from other thread.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public final class BsHandlerContext {
+
+  /**
+   * handler.
+   */
+  private final BsHandler handler;
+
+  /**
+   * position in chain.
+   */
+  private final int index;
+
+  /**
+   * chain this context belongs to.
+   */
+  private final BsHandlerContext[] chain;
+
+  /**
+   * receiver of message passed by last handler, or null for outbound chain.
+   */
+  private final BiConsumer<BsRemote, Object> sink;
+
+  /**
+   * constructor.
+   * @param handler handler
+   * @param index position in chain
+   * @param chain chain
+   * @param sink receiver of message passed by last handler, or null
+   */
+  BsHandlerContext(BsHandler handler, int index, BsHandlerContext[] chain, BiConsumer<BsRemote, Object> sink) {
+    this.handler = handler;
+    this.index = index;
+    this.chain = chain;
+    this.sink = sink;
+  }
+
+  /**
+   * get handler.
+   * @return handler
+   */
+  public BsHandler getHandler() {
+    return handler;
+  }
+
+  /**
+   * pass inbound message to next handler, or to callback after last.
+   * @param remote remote
+   * @param message message
+   * @throws IllegalStateException called out of inbound
+   */
+  public void fireInbound(BsRemote remote, Object message) {
+    if (sink == null) {
+      throw new IllegalStateException("inbound is fired out of receive.");
+    }
+    int next = index + 1;
+    if (next < chain.length) {
+      chain[next].handler.inbound(chain[next], remote, message);
+    } else {
+      sink.accept(remote, message);
+    }
+  }
+
+  /**
+   * pass outbound message to previous handler, or to channel after first.
+   * @param remote remote
+   * @param message message
+   * @return future completed with written or dropped
+   * @throws IllegalStateException message reaching channel is not byte array or ByteBuffer
+   * @throws java.io.UncheckedIOException send exception
+   */
+  public CompletableFuture<BsSendStatus> write(BsRemote remote, Object message) {
+    int previous = index - 1;
+    if (previous >= 0) {
+      return chain[previous].handler.outbound(chain[previous], remote, message);
+    }
+    return BsPipeline.head(remote, message);
+  }
+}
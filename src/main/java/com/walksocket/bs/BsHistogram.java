@@ -0,0 +1,121 @@
+package com.walksocket.bs;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * histogram of nanoseconds.
+ * <pre>
+ *   power of two buckets of striped counters,
+ *   so record is a few uncontended adds and never allocates.
+ *   percentile is upper bound of bucket, within factor of two.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsHistogram {
+
+  /**
+   * buckets, index 0 counts 0, and index i counts values in [2^(i-1), 2^i).
+   */
+  private final LongAdder[] buckets = new LongAdder[64];
+
+  /**
+   * sum.
+   */
+  private final LongAdder sum = new LongAdder();
+
+  /**
+   * max.
+   */
+  private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+  /**
+   * constructor.
+   */
+  BsHistogram() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * record value.
+   * @param nanos nanoseconds, negative is recorded as 0
+   */
+  void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+    sum.add(nanos);
+    max.accumulate(nanos);
+  }
+
+  /**
+   * get count.
+   * @return count
+   */
+  public long getCount() {
+    long count = 0;
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  /**
+   * get mean.
+   * @return mean nanoseconds
+   */
+  public long getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : sum.sum() / count;
+  }
+
+  /**
+   * get max.
+   * @return max nanoseconds
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * get percentile.
+   * @param percentile 0 to 100
+   * @return upper bound nanoseconds of bucket including percentile
+   */
+  public long getPercentile(double percentile) {
+    long[] counts = new long[buckets.length];
+    long count = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      counts[i] = buckets[i].sum();
+      count += counts[i];
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(count * percentile / 100.0);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank && counts[i] > 0) {
+        return Math.min(i == 0 ? 0 : (1L << i) - 1, getMax());
+      }
+    }
+    return getMax();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "count:%s, mean:%s, p50:%s, p99:%s, max:%s",
+        getCount(),
+        getMean(),
+        getPercentile(50),
+        getPercentile(99),
+        getMax());
+  }
+}
@@ -0,0 +1,160 @@
+package com.walksocket.bs;
+
+import java.nio.ByteBuffer;
+
+/**
+ * incoming message.
+ * <pre>
+ *   received datagram waiting for callback.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsIncoming {
+
+  /**
+   * remote.
+   */
+  private final BsRemote remote;
+
+  /**
+   * message copied to byte array.
+   */
+  private final byte[] data;
+
+  /**
+   * message in pooled direct buffer.
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * message decoded by pipeline.
+   */
+  private final Object decoded;
+
+  /**
+   * received nano time.
+   */
+  private final long receivedNanos;
+
+  /**
+   * constructor for byte array.
+   * @param remote remote
+   * @param data message
+   * @param receivedNanos received nano time
+   */
+  BsIncoming(BsRemote remote, byte[] data, long receivedNanos) {
+    this.remote = remote;
+    this.data = data;
+    this.buffer = null;
+    this.decoded = null;
+    this.receivedNanos = receivedNanos;
+  }
+
+  /**
+   * constructor for pooled direct buffer.
+   * @param remote remote
+   * @param buffer flipped buffer
+   * @param receivedNanos received nano time
+   */
+  BsIncoming(BsRemote remote, ByteBuffer buffer, long receivedNanos) {
+    this.remote = remote;
+    this.data = null;
+    this.buffer = buffer;
+    this.decoded = null;
+    this.receivedNanos = receivedNanos;
+  }
+
+  /**
+   * constructor for message decoded by pipeline.
+   * @param remote remote
+   * @param decoded decoded message
+   * @param receivedNanos received nano time
+   */
+  BsIncoming(BsRemote remote, Object decoded, long receivedNanos) {
+    this.remote = remote;
+    this.data = null;
+    this.buffer = null;
+    this.decoded = decoded;
+    this.receivedNanos = receivedNanos;
+  }
+
+  /**
+   * get received nano time.
+   * @return received nano time
+   */
+  long getReceivedNanos() {
+    return receivedNanos;
+  }
+
+  /**
+   * get remote.
+   * @return remote
+   */
+  BsRemote getRemote() {
+    return remote;
+  }
+
+  /**
+   * get message size.
+   * @return bytes, 0 for decoded message
+   */
+  int size() {
+    if (buffer != null) {
+      return buffer.remaining();
+    }
+    return data != null ? data.length : 0;
+  }
+
+  /**
+   * discard without callback.
+   * @param bufferPool direct buffer pool, or null
+   */
+  void discard(BsBufferPool bufferPool) {
+    if (buffer != null) {
+      bufferPool.release(buffer);
+    }
+  }
+
+  /**
+   * invoke callback.
+   * <pre>
+   *   if remote is active and not timeout, invoke incoming.
+   *   mailbox already serializes messages of remote,
+   *   so lock is contended only by timeout and shutdown of remote manager.
+   *   buffer is returned to pool, even if callback throws.
+   * </pre>
+   * @param callback callback
+   * @param bufferPool direct buffer pool, or null
+   * @param metrics metrics
+   */
+  void invoke(BsCallback callback, BsBufferPool bufferPool, BsMetrics metrics) {
+    try {
+      remote.lock();
+      try {
+        // one clock read per message
+        long now = BsDate.timestampMilliseconds();
+        if (remote.isActive() && !remote.isTimeout(now)) {
+          remote.updateTimeout(now);
+          if (buffer != null) {
+            callback.incoming(remote, buffer.asReadOnlyBuffer());
+          } else if (data != null) {
+            callback.incoming(remote, data);
+          } else {
+            callback.decoded(remote, decoded);
+          }
+        }
+      } finally {
+        remote.unlock();
+      }
+    } catch (RuntimeException e) {
+      metrics.callbackException();
+      BsLogger.error(e);
+    } finally {
+      if (buffer != null) {
+        bufferPool.release(buffer);
+      }
+    }
+  }
+}
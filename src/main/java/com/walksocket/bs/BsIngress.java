@@ -0,0 +1,241 @@
+package com.walksocket.bs;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * bounded ingress between selector and callbacks.
+ * <pre>
+ *   counts messages and bytes waiting in mailboxes,
+ *   and decides admission by capacity and policy.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsIngress {
+
+  /**
+   * policy.
+   */
+  private final BsIngressPolicy policy;
+
+  /**
+   * max waiting messages.
+   */
+  private final int maxMessages;
+
+  /**
+   * max waiting bytes.
+   */
+  private final long maxBytes;
+
+  /**
+   * max waiting messages per remote.
+   */
+  private final int maxRemoteMessages;
+
+  /**
+   * waiting messages.
+   */
+  private final AtomicInteger messages = new AtomicInteger(0);
+
+  /**
+   * waiting bytes.
+   */
+  private final AtomicLong bytes = new AtomicLong(0);
+
+  /**
+   * dropped by capacity.
+   */
+  private final LongAdder droppedCount = new LongAdder();
+
+  /**
+   * dropped by per remote capacity.
+   */
+  private final LongAdder remoteDroppedCount = new LongAdder();
+
+  /**
+   * paused count.
+   */
+  private final LongAdder pausedCount = new LongAdder();
+
+  /**
+   * paused selectors.
+   */
+  private final List<BsSelector> pausedSelectors = new CopyOnWriteArrayList<>();
+
+  /**
+   * constructor.
+   * @param policy policy
+   * @param maxMessages max waiting messages
+   * @param maxBytes max waiting bytes
+   * @param maxRemoteMessages max waiting messages per remote
+   */
+  BsIngress(BsIngressPolicy policy, int maxMessages, long maxBytes, int maxRemoteMessages) {
+    this.policy = policy;
+    this.maxMessages = maxMessages;
+    this.maxBytes = maxBytes;
+    this.maxRemoteMessages = maxRemoteMessages;
+  }
+
+  /**
+   * offer message to mailbox of remote.
+   * <pre>
+   *   called by selector thread.
+   * </pre>
+   * @param incoming message
+   * @param bufferPool direct buffer pool, or null
+   * @return if queued, true
+   */
+  boolean offer(BsIncoming incoming, BsBufferPool bufferPool) {
+    BsMailbox mailbox = incoming.getRemote().getMailbox();
+
+    // per remote capacity
+    if (mailbox.size() >= maxRemoteMessages) {
+      if (policy != BsIngressPolicy.DROP_OLDEST || !dropOldest(mailbox, bufferPool)) {
+        remoteDroppedCount.increment();
+        incoming.discard(bufferPool);
+        return false;
+      }
+      remoteDroppedCount.increment();
+    }
+
+    // capacity, pause read is decided before receive
+    if (policy != BsIngressPolicy.PAUSE_READ
+        && (messages.get() >= maxMessages || bytes.get() + incoming.size() > maxBytes)) {
+      if (policy != BsIngressPolicy.DROP_OLDEST || !dropOldest(mailbox, bufferPool)) {
+        droppedCount.increment();
+        incoming.discard(bufferPool);
+        return false;
+      }
+      droppedCount.increment();
+    }
+
+    messages.incrementAndGet();
+    bytes.addAndGet(incoming.size());
+    mailbox.offer(incoming);
+    return true;
+  }
+
+  /**
+   * drop oldest message of remote.
+   * @param mailbox mailbox of remote
+   * @param bufferPool direct buffer pool, or null
+   * @return if dropped, true
+   */
+  private boolean dropOldest(BsMailbox mailbox, BsBufferPool bufferPool) {
+    BsIncoming oldest = mailbox.poll();
+    if (oldest == null) {
+      return false;
+    }
+    complete(oldest);
+    oldest.discard(bufferPool);
+    return true;
+  }
+
+  /**
+   * complete message.
+   * <pre>
+   *   called after callback was invoked or message was dropped from mailbox.
+   *   if drained to half of capacity, wake paused selectors up.
+   * </pre>
+   * @param incoming message
+   */
+  void complete(BsIncoming incoming) {
+    int remainMessages = messages.decrementAndGet();
+    long remainBytes = bytes.addAndGet(-incoming.size());
+    if (!pausedSelectors.isEmpty() && remainMessages <= maxMessages / 2 && remainBytes <= maxBytes / 2) {
+      for (BsSelector selector : pausedSelectors) {
+        selector.wakeup();
+      }
+    }
+  }
+
+  /**
+   * should pause read.
+   * @return if policy is pause read and capacity is exceeded, true
+   */
+  boolean shouldPause() {
+    return policy == BsIngressPolicy.PAUSE_READ
+        && (messages.get() >= maxMessages || bytes.get() >= maxBytes);
+  }
+
+  /**
+   * can resume read.
+   * @return if drained to half of capacity, true
+   */
+  boolean canResume() {
+    return messages.get() <= maxMessages / 2 && bytes.get() <= maxBytes / 2;
+  }
+
+  /**
+   * paused selector.
+   * @param selector selector
+   */
+  void paused(BsSelector selector) {
+    pausedCount.increment();
+    pausedSelectors.add(selector);
+  }
+
+  /**
+   * resumed selector.
+   * @param selector selector
+   */
+  void resumed(BsSelector selector) {
+    pausedSelectors.remove(selector);
+  }
+
+  /**
+   * get waiting messages.
+   * @return waiting messages
+   */
+  int getMessages() {
+    return messages.get();
+  }
+
+  /**
+   * get waiting bytes.
+   * @return waiting bytes
+   */
+  long getBytes() {
+    return bytes.get();
+  }
+
+  /**
+   * get dropped count by capacity.
+   * @return dropped count
+   */
+  long getDroppedCount() {
+    return droppedCount.sum();
+  }
+
+  /**
+   * get dropped count by per remote capacity.
+   * @return dropped count
+   */
+  long getRemoteDroppedCount() {
+    return remoteDroppedCount.sum();
+  }
+
+  /**
+   * get paused count.
+   * @return paused count
+   */
+  long getPausedCount() {
+    return pausedCount.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "policy:%s, maxMessages:%s, maxBytes:%s, maxRemoteMessages:%s",
+        policy,
+        maxMessages,
+        maxBytes,
+        maxRemoteMessages);
+  }
+}
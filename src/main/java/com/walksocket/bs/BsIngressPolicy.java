@@ -0,0 +1,34 @@
+package com.walksocket.bs;
+
+/**
+ * ingress policy.
+ * <pre>
+ *   what to do when received messages waiting for callback exceed capacity.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public enum BsIngressPolicy {
+
+  /**
+   * drop received message.
+   */
+  DROP_NEWEST,
+
+  /**
+   * drop oldest waiting message of same remote, and queue received message.
+   * <pre>
+   *   if same remote has no waiting message, received message is dropped.
+   * </pre>
+   */
+  DROP_OLDEST,
+
+  /**
+   * stop reading channels until half of capacity is drained.
+   * <pre>
+   *   kernel socket buffer absorbs burst, and kernel drops when it is full.
+   * </pre>
+   */
+  PAUSE_READ,
+}
@@ -2,9 +2,13 @@ package com.walksocket.bs;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketOption;
 import java.net.StandardProtocolFamily;
 import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * udp local channel.
@@ -24,6 +28,43 @@ public class BsLocalChannel {
    */
   private DatagramChannel channel;
 
+  /**
+   * udp receive channels bound on same port.
+   * <pre>
+   *   first is same as channel.
+   *   if sharded, every channel is opened with SO_REUSEPORT.
+   * </pre>
+   */
+  private DatagramChannel[] channels;
+
+  /**
+   * transport.
+   */
+  private BsTransport transport = BsNioTransport.INSTANCE;
+
+  /**
+   * port metrics.
+   */
+  private final BsPortMetrics metrics;
+
+  /**
+   * outbound queue.
+   */
+  private final BsOutbound outbound;
+
+  /**
+   * selector which flushes outbound queue.
+   * <pre>
+   *   if null, channel is not run by executor, and send is not queued.
+   * </pre>
+   */
+  private volatile BsSelector flusher;
+
+  /**
+   * pipeline, or null.
+   */
+  private volatile BsPipeline pipeline;
+
   /**
    * constructor.
    * @param host host
@@ -32,10 +73,13 @@ public class BsLocalChannel {
    */
   BsLocalChannel(String host, int port) throws IOException {
     localAddr = new InetSocketAddress(host, port);
+    metrics = new BsPortMetrics(port);
+    outbound = new BsOutbound(metrics);
     channel = DatagramChannel.open(StandardProtocolFamily.INET);
     channel.bind(localAddr);
     channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
     channel.configureBlocking(false);
+    channels = new DatagramChannel[] {channel};
   }
 
   /**
@@ -55,23 +99,289 @@ public class BsLocalChannel {
   }
 
   /**
-   * destroy.
+   * get channels bound on same port.
+   * @return channels
    */
-  void destroy() {
-    if (channel != null && channel.isOpen()) {
+  DatagramChannel[] getChannels() {
+    return channels;
+  }
+
+  /**
+   * get port metrics.
+   * @return port metrics
+   */
+  BsPortMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * get outbound queue.
+   * @return outbound queue
+   */
+  BsOutbound getOutbound() {
+    return outbound;
+  }
+
+  /**
+   * attach selector which flushes outbound queue.
+   * @param flusher selector, or null
+   */
+  void attach(BsSelector flusher) {
+    this.flusher = flusher;
+  }
+
+  /**
+   * get pipeline.
+   * @return pipeline, or null
+   */
+  BsPipeline getPipeline() {
+    return pipeline;
+  }
+
+  /**
+   * set pipeline.
+   * @param pipeline pipeline, or null
+   */
+  void setPipeline(BsPipeline pipeline) {
+    this.pipeline = pipeline;
+  }
+
+  /**
+   * send datagram.
+   * <pre>
+   *   if socket send buffer is full, or datagrams are already waiting,
+   *   datagram is queued and written by selector on OP_WRITE readiness.
+   *   if queue is over high water mark, datagram is dropped.
+   * </pre>
+   * @param buffer datagram
+   * @param remoteAddr destination
+   * @return future completed with written or dropped
+   * @throws IOException send exception
+   */
+  CompletableFuture<BsSendStatus> send(ByteBuffer buffer, InetSocketAddress remoteAddr) throws IOException {
+    BsSelector selector = flusher;
+    if (outbound.isEmpty() || selector == null) {
+      // 0 is also returned when empty datagram is sent
+      int length = buffer.remaining();
+      if (channel.send(buffer, remoteAddr) == length) {
+        metrics.sent(1, length);
+        return BsOutbound.written();
+      }
+      if (selector == null) {
+        return outbound.dropped();
+      }
+    }
+    CompletableFuture<BsSendStatus> future = outbound.offer(buffer, remoteAddr);
+    if (outbound.requestFlush()) {
+      selector.wakeup();
+    }
+    return future;
+  }
+
+  /**
+   * broadcast same payload.
+   * <pre>
+   *   every destination shares payload content through duplicated view,
+   *   and datagrams are written up to vlen per transport call.
+   *   when socket send buffer is full, rest are queued to outbound queue.
+   * </pre>
+   * @param payload read-only direct payload, position is 0
+   * @param remoteAddrs destinations
+   * @return result
+   */
+  BsBroadcastResult broadcast(ByteBuffer payload, List<InetSocketAddress> remoteAddrs) {
+    BsBroadcastResult result = new BsBroadcastResult();
+    BsSelector selector = flusher;
+    int total = remoteAddrs.size();
+    int index = 0;
+
+    // write batch, while nothing waits in outbound queue
+    ByteBuffer[] buffers = new ByteBuffer[Math.min(total, BsTransport.VLEN)];
+    InetSocketAddress[] addrs = new InetSocketAddress[buffers.length];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = payload.duplicate();
+    }
+    while (index < total && (outbound.isEmpty() || selector == null)) {
+      int n = Math.min(buffers.length, total - index);
+      for (int i = 0; i < n; i++) {
+        buffers[i].rewind();
+        addrs[i] = remoteAddrs.get(index + i);
+      }
+      int sent;
+      boolean failed = false;
       try {
-        channel.close();
+        sent = transport.send(channel, buffers, addrs, 0, n);
+      } catch (BsTransport.BsTransportException e) {
+        BsLogger.error(e);
+        sent = e.getSent();
+        failed = true;
+      }
+      result.written(sent);
+      metrics.sent(sent, (long) sent * payload.remaining());
+      index += sent;
+      if (failed) {
+        if (!channel.isOpen()) {
+          break;
+        }
+        // drop failed one, and try others
+        result.dropped();
+        outbound.dropped();
+        index++;
+        continue;
+      }
+      if (sent < n) {
+        break;
+      }
+    }
+
+    // queue rest
+    boolean queued = false;
+    for (; index < total; index++) {
+      if (selector == null || !channel.isOpen()) {
+        result.dropped();
+        outbound.dropped();
+        continue;
+      }
+      if (outbound.offer(payload.duplicate(), remoteAddrs.get(index)).getNow(null) == BsSendStatus.DROPPED) {
+        result.dropped();
+      } else {
+        result.queued();
+        queued = true;
+      }
+    }
+    if (queued && outbound.requestFlush()) {
+      selector.wakeup();
+    }
+    return result;
+  }
+
+  /**
+   * get transport.
+   * @return transport
+   */
+  BsTransport getTransport() {
+    return transport;
+  }
+
+  /**
+   * set transport.
+   * @param transport transport
+   */
+  void setTransport(BsTransport transport) {
+    this.transport = transport;
+  }
+
+  /**
+   * use native transport.
+   * <pre>
+   *   if unavailable, nio transport is kept.
+   * </pre>
+   * @return if native transport is used, true
+   */
+  boolean nativeTransport() {
+    BsTransport nativeTransport = BsNativeTransport.open(BsTransport.VLEN);
+    if (nativeTransport == null) {
+      return false;
+    }
+    transport = nativeTransport;
+    return true;
+  }
+
+  /**
+   * shard into channels bound on same port with SO_REUSEPORT.
+   * <pre>
+   *   kernel spreads flows across channels by 4-tuple hash.
+   *   first channel was bound without SO_REUSEPORT,
+   *   so every channel is bound again to its bound port, also when port was 0,
+   *   and first channel is closed after all are bound.
+   *   if bind error, first channel is kept as it was.
+   *   call before channels are registered to selector.
+   * </pre>
+   * @param size channel size
+   * @throws IOException if SO_REUSEPORT is not supported or bind error
+   */
+  void shard(int size) throws IOException {
+    if (size <= channels.length) {
+      return;
+    }
+    SocketOption<Boolean> reusePort = reusePortOption();
+    if (reusePort == null || !channel.supportedOptions().contains(reusePort)) {
+      throw new IOException("SO_REUSEPORT is not supported on this platform.");
+    }
+
+    // bind new channels while first channel is still open
+    InetSocketAddress bound = (InetSocketAddress) channel.getLocalAddress();
+    channel.setOption(reusePort, true);
+    DatagramChannel[] opened = new DatagramChannel[size];
+    try {
+      for (int i = 0; i < size; i++) {
+        opened[i] = DatagramChannel.open(StandardProtocolFamily.INET);
+        opened[i].setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        opened[i].setOption(reusePort, true);
+        opened[i].bind(i == 0 ? bound : opened[0].getLocalAddress());
+        opened[i].configureBlocking(false);
+      }
+    } catch (IOException e) {
+      for (DatagramChannel c : opened) {
+        if (c != null) {
+          c.close();
+        }
+      }
+      throw e;
+    }
+
+    // swap, and close old
+    DatagramChannel[] old = channels;
+    channels = opened;
+    channel = opened[0];
+    for (DatagramChannel c : old) {
+      try {
+        c.close();
       } catch (IOException e) {
         BsLogger.error(e);
       }
     }
   }
 
+  /**
+   * get SO_REUSEPORT option.
+   * <pre>
+   *   StandardSocketOptions.SO_REUSEPORT exists on java 9 and later.
+   * </pre>
+   * @return option, or null on java 8
+   */
+  @SuppressWarnings("unchecked")
+  private static SocketOption<Boolean> reusePortOption() {
+    try {
+      return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * destroy.
+   */
+  void destroy() {
+    outbound.drop();
+    for (DatagramChannel c : channels) {
+      if (c != null && c.isOpen()) {
+        try {
+          c.close();
+        } catch (IOException e) {
+          BsLogger.error(e);
+        }
+      }
+    }
+  }
+
   @Override
   public String toString() {
     return String.format(
-        "localAddr:%s, channel:%s",
+        "localAddr:%s, channel:%s, channels:%s, transport:%s",
         localAddr,
-        channel);
+        channel,
+        channels.length,
+        transport);
   }
 }
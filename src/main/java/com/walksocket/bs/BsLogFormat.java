@@ -0,0 +1,104 @@
+package com.walksocket.bs;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * log line format.
+ * <pre>
+ *   [yyyy-MM-dd HH:mm:ss.SSS][RC-level][thread id]message
+ *   timestamp is formatted once per millisecond, and builder is reused.
+ *   not thread safe, one instance per formatting thread.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsLogFormat {
+
+  /**
+   * date format.
+   */
+  private final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+  /**
+   * date.
+   */
+  private final Date date = new Date();
+
+  /**
+   * line builder.
+   */
+  private final StringBuilder builder = new StringBuilder(256);
+
+  /**
+   * last formatted timestamp milliseconds.
+   */
+  private long lastMilliseconds = Long.MIN_VALUE;
+
+  /**
+   * last formatted timestamp.
+   */
+  private String lastTimestamp;
+
+  /**
+   * constructor.
+   */
+  BsLogFormat() {
+    sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
+  }
+
+  /**
+   * format line.
+   * @param level level name
+   * @param threadId thread id
+   * @param milliseconds timestamp milliseconds
+   * @param message message
+   * @return builder, reused on next format
+   */
+  StringBuilder format(String level, long threadId, long milliseconds, Object message) {
+    builder.setLength(0);
+    builder.append("[");
+    builder.append(timestamp(milliseconds + BsDate.getAddMilliSeconds()));
+    builder.append("]");
+    builder.append("[");
+    builder.append("RC");
+    builder.append("-");
+    builder.append(level);
+    builder.append("]");
+    builder.append("[");
+    String id = Long.toString(threadId);
+    for (int i = id.length(); i < 10; i++) {
+      builder.append('0');
+    }
+    builder.append(id);
+    builder.append("]");
+    builder.append(message);
+    if (message instanceof Throwable) {
+      StackTraceElement[] stacks = ((Throwable) message).getStackTrace();
+      for (StackTraceElement stack : stacks) {
+        builder.append("\n");
+        builder.append("(C:").append(stack.getClassName()).append(")");
+        builder.append("(F:").append(stack.getFileName()).append(")");
+        builder.append("(L:").append(stack.getLineNumber()).append(")");
+        builder.append("(M:").append(stack.getMethodName()).append(")");
+      }
+    }
+    return builder;
+  }
+
+  /**
+   * format timestamp, cached per millisecond.
+   * @param milliseconds timestamp milliseconds
+   * @return timestamp
+   */
+  private String timestamp(long milliseconds) {
+    if (milliseconds != lastMilliseconds) {
+      date.setTime(milliseconds);
+      lastTimestamp = sdf.format(date);
+      lastMilliseconds = milliseconds;
+    }
+    return lastTimestamp;
+  }
+}
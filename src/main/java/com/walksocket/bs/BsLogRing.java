@@ -0,0 +1,270 @@
+package com.walksocket.bs;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * bounded ring buffer of async logger.
+ * <pre>
+ *   callers claim preallocated entry by cas, and never block.
+ *   when full, line is dropped and counted.
+ *   logger thread formats and writes entries to sink.
+ *   message other than throwable is rendered by toString when logged,
+ *   and logger thread formats line of rendered message.
+ *   after close, offer is refused, and caller writes line by itself.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsLogRing implements Runnable {
+
+  /**
+   * idle park nanoseconds of logger thread.
+   */
+  private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /**
+   * entries.
+   */
+  private final BsLogEntry[] entries;
+
+  /**
+   * sequence per entry.
+   * <pre>
+   *   equals position when free for producer,
+   *   position + 1 when published for consumer.
+   * </pre>
+   */
+  private final AtomicLongArray sequences;
+
+  /**
+   * index mask.
+   */
+  private final int mask;
+
+  /**
+   * producer position.
+   */
+  private final AtomicLong tail = new AtomicLong(0);
+
+  /**
+   * consumer position, only touched by logger thread.
+   */
+  private long head = 0;
+
+  /**
+   * dropped line count.
+   */
+  private final AtomicLong droppedCount;
+
+  /**
+   * sink.
+   */
+  private final BsLogSink sink;
+
+  /**
+   * format, only touched by logger thread.
+   */
+  private final BsLogFormat format = new BsLogFormat();
+
+  /**
+   * accepting offers.
+   */
+  private volatile boolean running = true;
+
+  /**
+   * offers in progress.
+   */
+  private final AtomicLong offering = new AtomicLong(0);
+
+  /**
+   * stop after remaining lines, set when no offer is in progress.
+   */
+  private volatile boolean stopped = false;
+
+  /**
+   * logger thread.
+   */
+  private final Thread thread;
+
+  /**
+   * constructor.
+   * @param capacity capacity, rounded up to power of two
+   * @param sink sink
+   * @param droppedCount dropped line count
+   */
+  BsLogRing(int capacity, BsLogSink sink, AtomicLong droppedCount) {
+    int size = 2;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    this.entries = new BsLogEntry[size];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      entries[i] = new BsLogEntry();
+      sequences.set(i, i);
+    }
+    this.mask = size - 1;
+    this.sink = sink;
+    this.droppedCount = droppedCount;
+    this.thread = new Thread(this, "bs-logger");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * offer line.
+   * @param level level name
+   * @param threadId thread id
+   * @param milliseconds timestamp milliseconds
+   * @param message message
+   * @return if accepted or dropped as full, true, if closed, false
+   */
+  boolean offer(String level, long threadId, long milliseconds, Object message) {
+    // mutable object may change after return
+    Object rendered = message instanceof Throwable ? message : String.valueOf(message);
+    offering.incrementAndGet();
+    try {
+      if (!running) {
+        return false;
+      }
+      publish(level, threadId, milliseconds, rendered);
+      return true;
+    } finally {
+      offering.decrementAndGet();
+    }
+  }
+
+  /**
+   * publish line to free entry.
+   * @param level level name
+   * @param threadId thread id
+   * @param milliseconds timestamp milliseconds
+   * @param message rendered message
+   */
+  private void publish(String level, long threadId, long milliseconds, Object message) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long diff = sequences.get(index) - position;
+      if (diff == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          BsLogEntry entry = entries[index];
+          entry.level = level;
+          entry.threadId = threadId;
+          entry.milliseconds = milliseconds;
+          entry.message = message;
+          sequences.set(index, position + 1);
+          return;
+        }
+        position = tail.get();
+      } else if (diff < 0) {
+        // full
+        droppedCount.incrementAndGet();
+        return;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      boolean stopping = stopped;
+      if (drain() == 0) {
+        if (stopping) {
+          break;
+        }
+        LockSupport.parkNanos(IDLE_NANOS);
+      }
+    }
+  }
+
+  /**
+   * drain published entries to sink.
+   * @return drained count
+   */
+  private int drain() {
+    int drained = 0;
+    while (true) {
+      int index = (int) (head & mask);
+      if (sequences.get(index) != head + 1) {
+        break;
+      }
+      BsLogEntry entry = entries[index];
+      try {
+        sink.write(
+            entry.message instanceof Throwable,
+            format.format(entry.level, entry.threadId, entry.milliseconds, entry.message));
+      } catch (IOException | RuntimeException e) {
+        e.printStackTrace();
+      }
+      entry.message = null;
+      sequences.set(index, head + entries.length);
+      head++;
+      drained++;
+    }
+    if (drained > 0) {
+      try {
+        sink.flush();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+    return drained;
+  }
+
+  /**
+   * stop logger thread after remaining lines are written.
+   * @throws InterruptedException interrupted
+   */
+  void close() throws InterruptedException {
+    // offers which saw running are published before stop
+    running = false;
+    while (offering.get() > 0) {
+      Thread.yield();
+    }
+    stopped = true;
+    LockSupport.unpark(thread);
+    thread.join();
+  }
+
+  /**
+   * get sink.
+   * @return sink
+   */
+  BsLogSink getSink() {
+    return sink;
+  }
+
+  /**
+   * log entry.
+   */
+  private static class BsLogEntry {
+
+    /**
+     * level name.
+     */
+    private String level;
+
+    /**
+     * thread id.
+     */
+    private long threadId;
+
+    /**
+     * timestamp milliseconds.
+     */
+    private long milliseconds;
+
+    /**
+     * message.
+     */
+    private Object message;
+  }
+}
@@ -0,0 +1,44 @@
+package com.walksocket.bs;
+
+import java.io.IOException;
+
+/**
+ * log sink.
+ * <pre>
+ *   receives formatted lines from BsLogger.
+ *   in async mode, only logger thread calls it.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public interface BsLogSink {
+
+  /**
+   * write line.
+   * <pre>
+   *   line is reused after return, so do not keep reference.
+   * </pre>
+   * @param error if line has stack trace, true
+   * @param line line without line separator
+   * @throws IOException write exception
+   */
+  void write(boolean error, CharSequence line) throws IOException;
+
+  /**
+   * flush.
+   * <pre>
+   *   called after each drained batch in async mode.
+   * </pre>
+   * @throws IOException flush exception
+   */
+  default void flush() throws IOException {
+  }
+
+  /**
+   * close.
+   * @throws IOException close exception
+   */
+  default void close() throws IOException {
+  }
+}
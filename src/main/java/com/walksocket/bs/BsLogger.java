@@ -1,9 +1,16 @@
 package com.walksocket.bs;
 
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 /**
  * logger for stdout.
+ * <pre>
+ *   default synchronous to console.
+ *   in async mode, callers only render message and put line into bounded ring buffer,
+ *   and logger thread formats and writes them to sink.
+ * </pre>
  * @author shigenobu
  * @version 0.0.3
  *
@@ -15,6 +22,26 @@ public final class BsLogger {
    */
   private static boolean verbose = false;
 
+  /**
+   * sink.
+   */
+  private static volatile BsLogSink sink = BsConsoleSink.INSTANCE;
+
+  /**
+   * ring buffer of async mode, or null.
+   */
+  private static volatile BsLogRing ring;
+
+  /**
+   * dropped line count of async mode.
+   */
+  private static final AtomicLong droppedCount = new AtomicLong(0);
+
+  /**
+   * format per thread of sync mode.
+   */
+  private static final ThreadLocal<BsLogFormat> formats = ThreadLocal.withInitial(BsLogFormat::new);
+
   /**
    * set vervose.
    * <pre>
@@ -26,6 +53,77 @@ public final class BsLogger {
     BsLogger.verbose = verbose;
   }
 
+  /**
+   * set sink of sync mode.
+   * <pre>
+   *   default BsConsoleSink.
+   *   sync mode writes on caller thread, so sink must be thread safe.
+   * </pre>
+   * @param sink sink
+   */
+  public static synchronized void setSink(BsLogSink sink) {
+    BsLogger.sink = sink;
+  }
+
+  /**
+   * start async mode.
+   * <pre>
+   *   lines are put into bounded ring buffer without lock,
+   *   and formatted and written by logger thread.
+   *   when ring buffer is full, line is dropped and counted.
+   *   if already async, previous ring is drained and replaced.
+   * </pre>
+   * @param capacity ring buffer capacity
+   * @param sink sink, only logger thread writes
+   */
+  public static synchronized void setAsync(int capacity, BsLogSink sink) {
+    BsLogRing previous = ring;
+    ring = new BsLogRing(capacity, sink, droppedCount);
+    close(previous, sink);
+  }
+
+  /**
+   * stop async mode.
+   * <pre>
+   *   remaining lines are written, and sink of async mode is closed.
+   *   after that, lines are written synchronously to sink of sync mode.
+   * </pre>
+   */
+  public static synchronized void setSync() {
+    BsLogRing previous = ring;
+    ring = null;
+    close(previous, sink);
+  }
+
+  /**
+   * close ring.
+   * @param previous ring, or null
+   * @param next sink used from now, not closed
+   */
+  private static void close(BsLogRing previous, BsLogSink next) {
+    if (previous == null) {
+      return;
+    }
+    try {
+      previous.close();
+      if (previous.getSink() != next) {
+        previous.getSink().close();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * get dropped line count of async mode.
+   * @return dropped line count
+   */
+  public static long getDroppedCount() {
+    return droppedCount.get();
+  }
+
   /**
    * loggin error level.
    * @param message
@@ -70,31 +168,19 @@ public final class BsLogger {
    * @param message logging message.
    */
   private static void out(String level, Object message) {
-    StringBuilder builder = new StringBuilder();
-    builder.append("[");
-    builder.append(BsDate.now());
-    builder.append("]");
-    builder.append("[");
-    builder.append("RC");
-    builder.append("-");
-    builder.append(level);
-    builder.append("]");
-    builder.append("[");
-    builder.append(String.format("%010d", Thread.currentThread().getId()));
-    builder.append("]");
-    builder.append(message.toString());
-    if (message instanceof Throwable) {
-      StackTraceElement[] stacks = ((Throwable) message).getStackTrace();
-      for (StackTraceElement stack : stacks) {
-        builder.append("\n");
-        builder.append("(C:" + stack.getClassName() + ")");
-        builder.append("(F:" + stack.getFileName() + ")");
-        builder.append("(L:" + stack.getLineNumber() + ")");
-        builder.append("(M:" + stack.getMethodName() + ")");
+    long threadId = Thread.currentThread().getId();
+    long milliseconds = System.currentTimeMillis();
+    // ring is replaced before previous one is closed, so read again if refused
+    BsLogRing r;
+    while ((r = ring) != null) {
+      if (r.offer(level, threadId, milliseconds, message)) {
+        return;
       }
-      System.err.println(builder.toString());
-    } else {
-      System.out.println(builder.toString());
+    }
+    try {
+      sink.write(message instanceof Throwable, formats.get().format(level, threadId, milliseconds, message));
+    } catch (IOException e) {
+      e.printStackTrace();
     }
   }
 }
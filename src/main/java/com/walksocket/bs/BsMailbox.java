@@ -0,0 +1,101 @@
+package com.walksocket.bs;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * remote mailbox.
+ * <pre>
+ *   multi producer, single consumer queue with scheduled flag.
+ *   while scheduled, exactly one worker drains messages of the remote.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsMailbox {
+
+  /**
+   * messages.
+   */
+  private final Queue<BsIncoming> messages = new ConcurrentLinkedQueue<>();
+
+  /**
+   * message count.
+   * <pre>
+   *   ConcurrentLinkedQueue#size is O(n), so count is held separately.
+   * </pre>
+   */
+  private final AtomicInteger size = new AtomicInteger(0);
+
+  /**
+   * is idle.
+   * @return if no message and not scheduled, true
+   */
+  boolean isIdle() {
+    return size.get() == 0 && !scheduled.get();
+  }
+
+  /**
+   * scheduled flag.
+   */
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+  /**
+   * offer message.
+   * @param incoming message
+   */
+  void offer(BsIncoming incoming) {
+    size.incrementAndGet();
+    messages.offer(incoming);
+  }
+
+  /**
+   * poll message.
+   * @return message, or null if empty
+   */
+  BsIncoming poll() {
+    BsIncoming incoming = messages.poll();
+    if (incoming != null) {
+      size.decrementAndGet();
+    }
+    return incoming;
+  }
+
+  /**
+   * get size.
+   * @return message count
+   */
+  int size() {
+    return size.get();
+  }
+
+  /**
+   * is empty.
+   * @return if no message, true
+   */
+  boolean isEmpty() {
+    return messages.isEmpty();
+  }
+
+  /**
+   * try to schedule.
+   * @return if this caller must submit drain, true
+   */
+  boolean schedule() {
+    return scheduled.compareAndSet(false, true);
+  }
+
+  /**
+   * unschedule.
+   * <pre>
+   *   after this, drainer must check empty and try to schedule again,
+   *   because producer may have offered before this.
+   * </pre>
+   */
+  void unschedule() {
+    scheduled.set(false);
+  }
+}
@@ -0,0 +1,52 @@
+package com.walksocket.bs;
+
+/**
+ * manual clock.
+ * <pre>
+ *   advanced only by caller, for deterministic tests of timeouts.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsManualClock implements BsClock {
+
+  /**
+   * timestamp milliseconds.
+   */
+  private volatile long millis;
+
+  /**
+   * constructor.
+   * @param millis start timestamp milliseconds
+   */
+  public BsManualClock(long millis) {
+    this.millis = millis;
+  }
+
+  @Override
+  public long millis() {
+    return millis;
+  }
+
+  /**
+   * set timestamp.
+   * @param millis timestamp milliseconds
+   */
+  public void set(long millis) {
+    this.millis = millis;
+  }
+
+  /**
+   * advance timestamp.
+   * @param deltaMilliseconds delta milliseconds
+   */
+  public synchronized void advance(long deltaMilliseconds) {
+    this.millis += deltaMilliseconds;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("manual(millis:%s)", millis);
+  }
+}
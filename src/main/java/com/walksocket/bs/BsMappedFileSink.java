@@ -0,0 +1,122 @@
+package com.walksocket.bs;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * memory mapped file sink.
+ * <pre>
+ *   lines are encoded to utf-8 directly into mapped region, without write syscall.
+ *   when region is full, next region is mapped after it.
+ *   lines are appended to existing file, and file is truncated to written length on close.
+ *   not thread safe, use with async logger or from one thread.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsMappedFileSink implements BsLogSink {
+
+  /**
+   * line separator.
+   */
+  private static final CharBuffer SEPARATOR = CharBuffer.wrap("\n").asReadOnlyBuffer();
+
+  /**
+   * file channel.
+   */
+  private final FileChannel channel;
+
+  /**
+   * region size.
+   */
+  private final int regionSize;
+
+  /**
+   * encoder.
+   */
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+  /**
+   * file position of current region.
+   */
+  private long regionPosition;
+
+  /**
+   * current region.
+   */
+  private MappedByteBuffer region;
+
+  /**
+   * constructor.
+   * @param path file path
+   * @param regionSize mapped region size
+   * @throws IOException open exception
+   */
+  public BsMappedFileSink(Path path, int regionSize) throws IOException {
+    this.channel = FileChannel.open(
+        path,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    this.regionSize = regionSize;
+    this.regionPosition = channel.size();
+    this.region = channel.map(FileChannel.MapMode.READ_WRITE, regionPosition, regionSize);
+  }
+
+  @Override
+  public void write(boolean error, CharSequence line) throws IOException {
+    encode(CharBuffer.wrap(line));
+    encode(SEPARATOR.duplicate());
+  }
+
+  /**
+   * encode into region, and map next region on overflow.
+   * @param chars chars
+   * @throws IOException map exception
+   */
+  private void encode(CharBuffer chars) throws IOException {
+    encoder.reset();
+    while (true) {
+      CoderResult result = encoder.encode(chars, region, true);
+      if (result.isOverflow()) {
+        next();
+        continue;
+      }
+      if (result.isError()) {
+        result.throwException();
+      }
+      return;
+    }
+  }
+
+  /**
+   * map next region.
+   * @throws IOException map exception
+   */
+  private void next() throws IOException {
+    regionPosition += region.position();
+    region = channel.map(FileChannel.MapMode.READ_WRITE, regionPosition, regionSize);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel.isOpen()) {
+      region.force();
+      channel.truncate(regionPosition + region.position());
+      channel.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("mappedFile(regionSize:%s)", regionSize);
+  }
+}
@@ -0,0 +1,318 @@
+package com.walksocket.bs;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * metrics of executor.
+ * <pre>
+ *   always on, striped counters and histograms.
+ *   registered as mbeans while executor runs,
+ *   com.walksocket.bs:type=BsMetrics,name=(server or client)-(first port)
+ *   com.walksocket.bs:type=BsPortMetrics,name=(same),port=(port)
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsMetrics implements BsMetricsMBean {
+
+  /**
+   * mbean domain.
+   */
+  private static final String DOMAIN = "com.walksocket.bs";
+
+  /**
+   * remotes removed by timeout.
+   */
+  private final LongAdder timeouts = new LongAdder();
+
+  /**
+   * remotes removed by shutdown.
+   */
+  private final LongAdder shutdownEvictions = new LongAdder();
+
+  /**
+   * exceptions thrown by incoming callback.
+   */
+  private final LongAdder callbackExceptions = new LongAdder();
+
+  /**
+   * callback execution time.
+   */
+  private final BsHistogram callbackTime = new BsHistogram();
+
+  /**
+   * queue wait from receive to callback.
+   */
+  private final BsHistogram queueWait = new BsHistogram();
+
+  /**
+   * ports.
+   */
+  private final List<BsPortMetrics> ports = new CopyOnWriteArrayList<>();
+
+  /**
+   * rate limiter, or null.
+   */
+  private volatile BsRateLimiter rateLimiter;
+
+  /**
+   * registered mbean names.
+   */
+  private final List<ObjectName> names = new ArrayList<>();
+
+  /**
+   * constructor.
+   */
+  BsMetrics() {
+  }
+
+  /**
+   * add port.
+   * @param port port metrics
+   */
+  void addPort(BsPortMetrics port) {
+    if (!ports.contains(port)) {
+      ports.add(port);
+    }
+  }
+
+  /**
+   * set rate limiter.
+   * @param rateLimiter rate limiter, or null
+   */
+  void setRateLimiter(BsRateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  /**
+   * count timeout.
+   */
+  void timeout() {
+    timeouts.increment();
+  }
+
+  /**
+   * count shutdown eviction.
+   */
+  void shutdownEviction() {
+    shutdownEvictions.increment();
+  }
+
+  /**
+   * count callback exception.
+   */
+  void callbackException() {
+    callbackExceptions.increment();
+  }
+
+  /**
+   * get callback execution time.
+   * @return histogram
+   */
+  public BsHistogram getCallbackTime() {
+    return callbackTime;
+  }
+
+  /**
+   * get queue wait from receive to callback.
+   * @return histogram
+   */
+  public BsHistogram getQueueWait() {
+    return queueWait;
+  }
+
+  /**
+   * get ports.
+   * @return port metrics
+   */
+  public List<BsPortMetrics> getPorts() {
+    return Collections.unmodifiableList(ports);
+  }
+
+  @Override
+  public long getSendFailures() {
+    long failures = 0;
+    for (BsPortMetrics port : ports) {
+      failures += port.getSendDropped() + port.getSendErrors();
+    }
+    return failures;
+  }
+
+  @Override
+  public long getTimeouts() {
+    return timeouts.sum();
+  }
+
+  @Override
+  public long getShutdownEvictions() {
+    return shutdownEvictions.sum();
+  }
+
+  @Override
+  public long getCallbackExceptions() {
+    return callbackExceptions.sum();
+  }
+
+  @Override
+  public long getCallbackCount() {
+    return callbackTime.getCount();
+  }
+
+  @Override
+  public long getCallbackTimeMeanNanos() {
+    return callbackTime.getMean();
+  }
+
+  @Override
+  public long getCallbackTimeP99Nanos() {
+    return callbackTime.getPercentile(99);
+  }
+
+  @Override
+  public long getCallbackTimeMaxNanos() {
+    return callbackTime.getMax();
+  }
+
+  @Override
+  public long getQueueWaitMeanNanos() {
+    return queueWait.getMean();
+  }
+
+  @Override
+  public long getQueueWaitP99Nanos() {
+    return queueWait.getPercentile(99);
+  }
+
+  @Override
+  public long getQueueWaitMaxNanos() {
+    return queueWait.getMax();
+  }
+
+  @Override
+  public long getRateLimitExceeded() {
+    BsRateLimiter limiter = rateLimiter;
+    if (limiter == null) {
+      return 0L;
+    }
+    return limiter.getRemoteExceededCount() + limiter.getPrefixExceededCount();
+  }
+
+  @Override
+  public long getRateLimitDropped() {
+    BsRateLimiter limiter = rateLimiter;
+    if (limiter == null) {
+      return 0L;
+    }
+    return limiter.getDroppedCount();
+  }
+
+  /**
+   * snapshot.
+   * <pre>
+   *   port values are keyed as port.(port).(name).
+   * </pre>
+   * @return name and value, sorted by name
+   */
+  public Map<String, Long> snapshot() {
+    Map<String, Long> snapshot = new TreeMap<>();
+    snapshot.put("sendFailures", getSendFailures());
+    snapshot.put("timeouts", getTimeouts());
+    snapshot.put("shutdownEvictions", getShutdownEvictions());
+    snapshot.put("callbackExceptions", getCallbackExceptions());
+    snapshot.put("callbackCount", getCallbackCount());
+    snapshot.put("callbackTimeMeanNanos", getCallbackTimeMeanNanos());
+    snapshot.put("callbackTimeP50Nanos", callbackTime.getPercentile(50));
+    snapshot.put("callbackTimeP99Nanos", getCallbackTimeP99Nanos());
+    snapshot.put("callbackTimeMaxNanos", getCallbackTimeMaxNanos());
+    snapshot.put("queueWaitMeanNanos", getQueueWaitMeanNanos());
+    snapshot.put("queueWaitP50Nanos", queueWait.getPercentile(50));
+    snapshot.put("queueWaitP99Nanos", getQueueWaitP99Nanos());
+    snapshot.put("queueWaitMaxNanos", getQueueWaitMaxNanos());
+    snapshot.put("rateLimitExceeded", getRateLimitExceeded());
+    snapshot.put("rateLimitDropped", getRateLimitDropped());
+    for (BsPortMetrics port : ports) {
+      String prefix = "port." + port.getPort() + ".";
+      snapshot.put(prefix + "receivedPackets", port.getReceivedPackets());
+      snapshot.put(prefix + "receivedBytes", port.getReceivedBytes());
+      snapshot.put(prefix + "receiveDenied", port.getReceiveDenied());
+      snapshot.put(prefix + "sentPackets", port.getSentPackets());
+      snapshot.put(prefix + "sentBytes", port.getSentBytes());
+      snapshot.put(prefix + "sendDropped", port.getSendDropped());
+      snapshot.put(prefix + "sendErrors", port.getSendErrors());
+    }
+    return Collections.unmodifiableMap(snapshot);
+  }
+
+  /**
+   * register mbeans.
+   * <pre>
+   *   if same name is already registered, logged and skipped.
+   * </pre>
+   * @param name executor name
+   */
+  synchronized void register(String name) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      register(server, new ObjectName(DOMAIN + ":type=BsMetrics,name=" + name), this);
+      for (BsPortMetrics port : ports) {
+        register(server, new ObjectName(DOMAIN + ":type=BsPortMetrics,name=" + name + ",port=" + port.getPort()), port);
+      }
+    } catch (JMException e) {
+      BsLogger.error(e);
+    }
+  }
+
+  /**
+   * register mbean.
+   * @param server mbean server
+   * @param objectName object name
+   * @param mbean mbean
+   */
+  private void register(MBeanServer server, ObjectName objectName, Object mbean) {
+    try {
+      server.registerMBean(mbean, objectName);
+      names.add(objectName);
+    } catch (JMException e) {
+      BsLogger.info(String.format("mbean %s is not registered (%s)", objectName, e));
+    }
+  }
+
+  /**
+   * unregister mbeans.
+   */
+  synchronized void unregister() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName objectName : names) {
+      try {
+        server.unregisterMBean(objectName);
+      } catch (JMException e) {
+        BsLogger.error(e);
+      }
+    }
+    names.clear();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "sendFailures:%s, timeouts:%s, shutdownEvictions:%s, callbackExceptions:%s, callbackTime:(%s), queueWait:(%s), ports:%s",
+        getSendFailures(),
+        getTimeouts(),
+        getShutdownEvictions(),
+        getCallbackExceptions(),
+        callbackTime,
+        queueWait,
+        ports);
+  }
+}
@@ -0,0 +1,88 @@
+package com.walksocket.bs;
+
+/**
+ * executor metrics mbean.
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public interface BsMetricsMBean {
+
+  /**
+   * get send failures of all ports, dropped and errors.
+   * @return send failures
+   */
+  long getSendFailures();
+
+  /**
+   * get remotes removed by timeout.
+   * @return timeouts
+   */
+  long getTimeouts();
+
+  /**
+   * get remotes removed by shutdown.
+   * @return shutdown evictions
+   */
+  long getShutdownEvictions();
+
+  /**
+   * get exceptions thrown by incoming callback.
+   * @return callback exceptions
+   */
+  long getCallbackExceptions();
+
+  /**
+   * get invoked callback count.
+   * @return callback count
+   */
+  long getCallbackCount();
+
+  /**
+   * get mean of callback execution time.
+   * @return nanoseconds
+   */
+  long getCallbackTimeMeanNanos();
+
+  /**
+   * get 99 percentile of callback execution time.
+   * @return nanoseconds
+   */
+  long getCallbackTimeP99Nanos();
+
+  /**
+   * get max of callback execution time.
+   * @return nanoseconds
+   */
+  long getCallbackTimeMaxNanos();
+
+  /**
+   * get mean of queue wait from receive to callback.
+   * @return nanoseconds
+   */
+  long getQueueWaitMeanNanos();
+
+  /**
+   * get 99 percentile of queue wait from receive to callback.
+   * @return nanoseconds
+   */
+  long getQueueWaitP99Nanos();
+
+  /**
+   * get max of queue wait from receive to callback.
+   * @return nanoseconds
+   */
+  long getQueueWaitMaxNanos();
+
+  /**
+   * get datagrams exceeded rate limit, per remote and per prefix.
+   * @return exceeded count
+   */
+  long getRateLimitExceeded();
+
+  /**
+   * get datagrams dropped by rate limit.
+   * @return dropped count
+   */
+  long getRateLimitDropped();
+}
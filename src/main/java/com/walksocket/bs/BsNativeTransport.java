@@ -0,0 +1,24 @@
+package com.walksocket.bs;
+
+/**
+ * native transport.
+ * <pre>
+ *   this is java 8 version, native transport is not supported.
+ *   java 22 version using recvmmsg and sendmmsg by foreign function api
+ *   is packed in META-INF/versions/22 of multi-release jar.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsNativeTransport {
+
+  /**
+   * open.
+   * @param vlen max datagrams per syscall
+   * @return transport, or null if not supported
+   */
+  static BsTransport open(int vlen) {
+    return null;
+  }
+}
@@ -0,0 +1,69 @@
+package com.walksocket.bs;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * nio transport.
+ * <pre>
+ *   one syscall per datagram by DatagramChannel.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsNioTransport implements BsTransport {
+
+  /**
+   * instance.
+   */
+  static final BsNioTransport INSTANCE = new BsNioTransport();
+
+  /**
+   * constructor.
+   */
+  private BsNioTransport() {
+  }
+
+  @Override
+  public int receive(DatagramChannel channel, ByteBuffer[] buffers, InetSocketAddress[] remoteAddrs, int max)
+      throws IOException {
+    for (int i = 0; i < max; i++) {
+      remoteAddrs[i] = (InetSocketAddress) channel.receive(buffers[i]);
+      if (remoteAddrs[i] == null) {
+        return i;
+      }
+    }
+    return max;
+  }
+
+  @Override
+  public int send(DatagramChannel channel, ByteBuffer[] buffers, InetSocketAddress[] remoteAddrs, int offset, int count)
+      throws BsTransportException {
+    for (int i = 0; i < count; i++) {
+      // 0 is also returned when empty datagram is sent
+      ByteBuffer buffer = buffers[offset + i];
+      int length = buffer.remaining();
+      try {
+        if (channel.send(buffer, remoteAddrs[offset + i]) != length) {
+          return i;
+        }
+      } catch (IOException e) {
+        throw new BsTransportException(i, e);
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public boolean isDirectOnly() {
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "nio";
+  }
+}
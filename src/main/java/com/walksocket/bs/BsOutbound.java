@@ -0,0 +1,289 @@
+package com.walksocket.bs;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * outbound queue of local channel.
+ * <pre>
+ *   when socket send buffer is full, datagrams wait here,
+ *   and selector flushes them on OP_WRITE readiness.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsOutbound {
+
+  /**
+   * waiting datagrams.
+   */
+  private final Queue<BsOutgoing> outgoings = new ConcurrentLinkedQueue<>();
+
+  /**
+   * waiting count.
+   */
+  private final AtomicInteger size = new AtomicInteger(0);
+
+  /**
+   * port metrics.
+   */
+  private final BsPortMetrics metrics;
+
+  /**
+   * flush requested to selector.
+   */
+  private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+
+  /**
+   * high water mark.
+   */
+  private volatile int highWater = 1024;
+
+  /**
+   * flush buffers.
+   * <pre>
+   *   only touched by selector thread.
+   * </pre>
+   */
+  private final ByteBuffer[] buffers = new ByteBuffer[BsTransport.VLEN];
+
+  /**
+   * flush destinations.
+   */
+  private final InetSocketAddress[] remoteAddrs = new InetSocketAddress[BsTransport.VLEN];
+
+  /**
+   * flush futures.
+   */
+  private final BsOutgoing[] flushing = new BsOutgoing[BsTransport.VLEN];
+
+  /**
+   * constructor.
+   * @param metrics port metrics
+   */
+  BsOutbound(BsPortMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * set high water mark.
+   * @param highWater max waiting datagrams
+   */
+  void setHighWater(int highWater) {
+    this.highWater = highWater;
+  }
+
+  /**
+   * is empty.
+   * @return if no waiting datagram, true
+   */
+  boolean isEmpty() {
+    return outgoings.isEmpty();
+  }
+
+  /**
+   * get waiting count.
+   * @return waiting count
+   */
+  int size() {
+    return size.get();
+  }
+
+  /**
+   * offer datagram.
+   * @param buffer datagram
+   * @param remoteAddr destination
+   * @return future completed by flush, or dropped if over high water mark
+   */
+  CompletableFuture<BsSendStatus> offer(ByteBuffer buffer, InetSocketAddress remoteAddr) {
+    if (size.incrementAndGet() > highWater) {
+      size.decrementAndGet();
+      return dropped();
+    }
+    BsOutgoing outgoing = new BsOutgoing(buffer, remoteAddr);
+    outgoings.offer(outgoing);
+    return outgoing.future;
+  }
+
+  /**
+   * get future of datagram written at once.
+   * <pre>
+   *   new future per send, because caller may obtrude it.
+   * </pre>
+   * @return written future
+   */
+  static CompletableFuture<BsSendStatus> written() {
+    return CompletableFuture.completedFuture(BsSendStatus.WRITTEN);
+  }
+
+  /**
+   * count dropped datagram.
+   * @return new dropped future
+   */
+  CompletableFuture<BsSendStatus> dropped() {
+    metrics.sendDropped();
+    return CompletableFuture.completedFuture(BsSendStatus.DROPPED);
+  }
+
+  /**
+   * get dropped count.
+   * @return dropped count
+   */
+  long getDroppedCount() {
+    return metrics.getSendDropped();
+  }
+
+  /**
+   * request flush.
+   * @return if this caller must wake selector up, true
+   */
+  boolean requestFlush() {
+    return flushRequested.compareAndSet(false, true);
+  }
+
+  /**
+   * take flush request.
+   * <pre>
+   *   cleared before flush, so offers while flushing request again.
+   * </pre>
+   * @return if requested, true
+   */
+  boolean takeFlushRequest() {
+    return flushRequested.getAndSet(false);
+  }
+
+  /**
+   * flush waiting datagrams until socket send buffer is full.
+   * <pre>
+   *   called by selector thread.
+   * </pre>
+   * @param channel channel
+   * @param transport transport
+   * @return if all flushed, true
+   */
+  boolean flush(DatagramChannel channel, BsTransport transport) {
+    while (true) {
+      int n = 0;
+      for (BsOutgoing outgoing : outgoings) {
+        if (n >= flushing.length) {
+          break;
+        }
+        flushing[n] = outgoing;
+        buffers[n] = outgoing.buffer;
+        remoteAddrs[n] = outgoing.remoteAddr;
+        n++;
+      }
+      if (n == 0) {
+        return true;
+      }
+
+      int sent;
+      boolean failed = false;
+      try {
+        sent = transport.send(channel, buffers, remoteAddrs, 0, n);
+      } catch (BsTransport.BsTransportException e) {
+        BsLogger.error(e);
+        sent = e.getSent();
+        failed = true;
+      }
+      for (int i = 0; i < sent; i++) {
+        completeHead(BsSendStatus.WRITTEN);
+      }
+      for (int i = 0; i < n; i++) {
+        flushing[i] = null;
+        buffers[i] = null;
+        remoteAddrs[i] = null;
+      }
+      if (failed) {
+        if (!channel.isOpen()) {
+          drop();
+          return true;
+        }
+        // drop failed one, and try others
+        completeHead(BsSendStatus.DROPPED);
+        continue;
+      }
+
+      // socket send buffer is full
+      if (sent < n) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * complete head.
+   * <pre>
+   *   only selector thread removes head.
+   * </pre>
+   * @param status status
+   */
+  private void completeHead(BsSendStatus status) {
+    BsOutgoing outgoing = outgoings.poll();
+    if (outgoing != null) {
+      size.decrementAndGet();
+      if (status == BsSendStatus.DROPPED) {
+        metrics.sendDropped();
+      } else {
+        metrics.sent(1, outgoing.length);
+      }
+      outgoing.future.complete(status);
+    }
+  }
+
+  /**
+   * drop all waiting datagrams.
+   */
+  void drop() {
+    BsOutgoing outgoing;
+    while ((outgoing = outgoings.poll()) != null) {
+      size.decrementAndGet();
+      metrics.sendDropped();
+      outgoing.future.complete(BsSendStatus.DROPPED);
+    }
+  }
+
+  /**
+   * waiting datagram.
+   */
+  private static class BsOutgoing {
+
+    /**
+     * datagram.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * destination.
+     */
+    private final InetSocketAddress remoteAddr;
+
+    /**
+     * datagram length.
+     */
+    private final int length;
+
+    /**
+     * future.
+     */
+    private final CompletableFuture<BsSendStatus> future = new CompletableFuture<>();
+
+    /**
+     * constructor.
+     * @param buffer datagram
+     * @param remoteAddr destination
+     */
+    private BsOutgoing(ByteBuffer buffer, InetSocketAddress remoteAddr) {
+      this.buffer = buffer;
+      this.remoteAddr = remoteAddr;
+      this.length = buffer.remaining();
+    }
+  }
+}
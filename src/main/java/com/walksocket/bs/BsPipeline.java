@@ -0,0 +1,173 @@
+package com.walksocket.bs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * pipeline of handlers.
+ * <pre>
+ *   set to executor before start, and shared by its selectors and BsRemote#send of its locals.
+ *   received datagram goes through handlers first to last on selector thread,
+ *   and only messages passed by last handler are handed to callback pool.
+ *   byte array or ByteBuffer is invoked as incoming(BsRemote, byte[]),
+ *   and other object as decoded(BsRemote, Object).
+ *   handlers are told when remote is removed, to drop state kept for it.
+ *   ByteBuffer is copied, except received datagram itself with direct buffer receiving.
+ *
+ *   BsPipeline pipeline = new BsPipeline()
+ *       .addLast(new HeaderDecoder())
+ *       .addLast(new Router());
+ *   executor4Server.pipeline(pipeline);
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsPipeline {
+
+  /**
+   * handlers.
+   */
+  private final List<BsHandler> handlers = new ArrayList<>();
+
+  /**
+   * outbound chain, or null until used.
+   */
+  private volatile BsHandlerContext[] outbound;
+
+  /**
+   * bound to selector or sender, and handler is not added.
+   */
+  private boolean bound = false;
+
+  /**
+   * add handler to last.
+   * @param handler handler
+   * @return this
+   * @throws IllegalStateException pipeline is already used
+   */
+  public synchronized BsPipeline addLast(BsHandler handler) {
+    if (bound) {
+      throw new IllegalStateException("pipeline is already used.");
+    }
+    handlers.add(handler);
+    return this;
+  }
+
+  /**
+   * get handlers.
+   * @return handlers
+   */
+  public synchronized List<BsHandler> getHandlers() {
+    return Collections.unmodifiableList(new ArrayList<>(handlers));
+  }
+
+  /**
+   * bind chain.
+   * <pre>
+   *   after this, handler is not added.
+   * </pre>
+   * @param sink receiver of message passed by last handler, or null for outbound
+   * @return chain
+   */
+  synchronized BsHandlerContext[] bind(BiConsumer<BsRemote, Object> sink) {
+    BsHandlerContext[] chain = new BsHandlerContext[handlers.size()];
+    for (int i = 0; i < chain.length; i++) {
+      chain[i] = new BsHandlerContext(handlers.get(i), i, chain, sink);
+    }
+    bound = true;
+    return chain;
+  }
+
+  /**
+   * pass received datagram to first handler.
+   * @param chain chain bound to selector
+   * @param sink receiver of message passed by last handler
+   * @param remote remote
+   * @param message received datagram
+   */
+  static void inbound(BsHandlerContext[] chain, BiConsumer<BsRemote, Object> sink, BsRemote remote, Object message) {
+    if (chain.length == 0) {
+      sink.accept(remote, message);
+      return;
+    }
+    chain[0].getHandler().inbound(chain[0], remote, message);
+  }
+
+  /**
+   * pass sent message to last handler.
+   * @param remote remote
+   * @param message message
+   * @return future completed with written or dropped
+   */
+  CompletableFuture<BsSendStatus> outbound(BsRemote remote, Object message) {
+    BsHandlerContext[] chain = outbound;
+    if (chain == null) {
+      synchronized (this) {
+        if (outbound == null) {
+          outbound = bind(null);
+        }
+        chain = outbound;
+      }
+    }
+    if (chain.length == 0) {
+      return head(remote, message);
+    }
+    BsHandlerContext last = chain[chain.length - 1];
+    return last.getHandler().outbound(last, remote, message);
+  }
+
+  /**
+   * write message passed by first handler to channel.
+   * @param remote remote
+   * @param message byte array or ByteBuffer
+   * @return future completed with written or dropped
+   */
+  static CompletableFuture<BsSendStatus> head(BsRemote remote, Object message) {
+    ByteBuffer buffer;
+    if (message instanceof ByteBuffer) {
+      buffer = (ByteBuffer) message;
+    } else if (message instanceof byte[]) {
+      buffer = ByteBuffer.wrap((byte[]) message);
+    } else {
+      throw new IllegalStateException(String.format(
+          "no encoder for %s.", message == null ? null : message.getClass().getName()));
+    }
+    BsLocalChannel localChannel = remote.getLocalChannel();
+    try {
+      return localChannel.send(buffer, remote.getRemoteAddr());
+    } catch (IOException e) {
+      localChannel.getMetrics().sendError();
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * notify handlers that remote is removed.
+   * @param remote remote
+   */
+  synchronized void removed(BsRemote remote) {
+    for (BsHandler handler : handlers) {
+      try {
+        handler.removed(remote);
+      } catch (RuntimeException e) {
+        BsLogger.error(e);
+      }
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    List<String> names = new ArrayList<>();
+    for (BsHandler handler : handlers) {
+      names.add(handler.getClass().getSimpleName());
+    }
+    return String.format("handlers:%s", names);
+  }
+}
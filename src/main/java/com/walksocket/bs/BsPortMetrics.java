@@ -0,0 +1,159 @@
+package com.walksocket.bs;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * metrics of local port.
+ * <pre>
+ *   striped counters, cheap enough on every datagram.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsPortMetrics implements BsPortMetricsMBean {
+
+  /**
+   * port.
+   */
+  private final int port;
+
+  /**
+   * received packets.
+   */
+  private final LongAdder receivedPackets = new LongAdder();
+
+  /**
+   * received bytes.
+   */
+  private final LongAdder receivedBytes = new LongAdder();
+
+  /**
+   * received packets denied by cidr filter.
+   */
+  private final LongAdder receiveDenied = new LongAdder();
+
+  /**
+   * sent packets.
+   */
+  private final LongAdder sentPackets = new LongAdder();
+
+  /**
+   * sent bytes.
+   */
+  private final LongAdder sentBytes = new LongAdder();
+
+  /**
+   * dropped sends.
+   */
+  private final LongAdder sendDropped = new LongAdder();
+
+  /**
+   * send errors.
+   */
+  private final LongAdder sendErrors = new LongAdder();
+
+  /**
+   * constructor.
+   * @param port port
+   */
+  BsPortMetrics(int port) {
+    this.port = port;
+  }
+
+  /**
+   * count received.
+   * @param packets packets
+   * @param bytes bytes
+   */
+  void received(long packets, long bytes) {
+    receivedPackets.add(packets);
+    receivedBytes.add(bytes);
+  }
+
+  /**
+   * count denied by cidr filter.
+   * @param packets packets
+   */
+  void receiveDenied(long packets) {
+    receiveDenied.add(packets);
+  }
+
+  /**
+   * count sent.
+   * @param packets packets
+   * @param bytes bytes
+   */
+  void sent(long packets, long bytes) {
+    sentPackets.add(packets);
+    sentBytes.add(bytes);
+  }
+
+  /**
+   * count dropped send.
+   */
+  void sendDropped() {
+    sendDropped.increment();
+  }
+
+  /**
+   * count send error.
+   */
+  void sendError() {
+    sendErrors.increment();
+  }
+
+  @Override
+  public int getPort() {
+    return port;
+  }
+
+  @Override
+  public long getReceivedPackets() {
+    return receivedPackets.sum();
+  }
+
+  @Override
+  public long getReceivedBytes() {
+    return receivedBytes.sum();
+  }
+
+  @Override
+  public long getReceiveDenied() {
+    return receiveDenied.sum();
+  }
+
+  @Override
+  public long getSentPackets() {
+    return sentPackets.sum();
+  }
+
+  @Override
+  public long getSentBytes() {
+    return sentBytes.sum();
+  }
+
+  @Override
+  public long getSendDropped() {
+    return sendDropped.sum();
+  }
+
+  @Override
+  public long getSendErrors() {
+    return sendErrors.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "port:%s, receivedPackets:%s, receivedBytes:%s, receiveDenied:%s, sentPackets:%s, sentBytes:%s, sendDropped:%s, sendErrors:%s",
+        port,
+        getReceivedPackets(),
+        getReceivedBytes(),
+        getReceiveDenied(),
+        getSentPackets(),
+        getSentBytes(),
+        getSendDropped(),
+        getSendErrors());
+  }
+}
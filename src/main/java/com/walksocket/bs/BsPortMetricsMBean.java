@@ -0,0 +1,58 @@
+package com.walksocket.bs;
+
+/**
+ * port metrics mbean.
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public interface BsPortMetricsMBean {
+
+  /**
+   * get port.
+   * @return port
+   */
+  int getPort();
+
+  /**
+   * get received packets.
+   * @return received packets
+   */
+  long getReceivedPackets();
+
+  /**
+   * get received bytes.
+   * @return received bytes
+   */
+  long getReceivedBytes();
+
+  /**
+   * get received packets denied by cidr filter.
+   * @return packets
+   */
+  long getReceiveDenied();
+
+  /**
+   * get sent packets.
+   * @return sent packets
+   */
+  long getSentPackets();
+
+  /**
+   * get sent bytes.
+   * @return sent bytes
+   */
+  long getSentBytes();
+
+  /**
+   * get dropped sends.
+   * @return dropped sends
+   */
+  long getSendDropped();
+
+  /**
+   * get send errors.
+   * @return send errors
+   */
+  long getSendErrors();
+}
@@ -0,0 +1,26 @@
+package com.walksocket.bs;
+
+/**
+ * rate limit action.
+ * <pre>
+ *   what to do when received datagram exceeds rate limit.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public enum BsRateLimitAction {
+
+  /**
+   * drop received datagram before remote is generated.
+   */
+  DROP,
+
+  /**
+   * count exceeded datagram, and pass it to callback.
+   * <pre>
+   *   for measuring limits before enforcing them.
+   * </pre>
+   */
+  COUNT_ONLY,
+}
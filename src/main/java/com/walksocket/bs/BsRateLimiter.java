@@ -0,0 +1,377 @@
+package com.walksocket.bs;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * token bucket rate limiter of received datagrams.
+ * <pre>
+ *   checked on selector thread, before remote is generated and datagram is copied.
+ *   one bucket per remote address (ip and port), and one per cidr prefix of remote ip.
+ *   bucket is kept as theoretical arrival time (gcra),
+ *   so one compare and set per datagram refills and takes token at once.
+ *   buckets are fixed hashed slots keeping their key, no allocation per remote.
+ *   address takes slot of its key within few probes, or slot whose bucket is full again,
+ *   which is same as new bucket.
+ *   only when every probed slot is used by other busy address, it shares home slot,
+ *   so keep buckets above active peers.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsRateLimiter {
+
+  /**
+   * probed slots per lookup.
+   */
+  private static final int PROBES = 8;
+
+  /**
+   * action on exceeded.
+   */
+  private final BsRateLimitAction action;
+
+  /**
+   * nanoseconds per token of remote bucket, 0 is disabled.
+   */
+  private final long remoteInterval;
+
+  /**
+   * burst tolerance of remote bucket.
+   */
+  private final long remoteTolerance;
+
+  /**
+   * nanoseconds per token of prefix bucket, 0 is disabled.
+   */
+  private final long prefixInterval;
+
+  /**
+   * burst tolerance of prefix bucket.
+   */
+  private final long prefixTolerance;
+
+  /**
+   * ipv4 prefix length.
+   */
+  private final int ipv4PrefixLength;
+
+  /**
+   * ipv6 prefix length.
+   */
+  private final int ipv6PrefixLength;
+
+  /**
+   * remote buckets, theoretical arrival time.
+   */
+  private final AtomicLongArray remoteBuckets;
+
+  /**
+   * keys of remote buckets.
+   */
+  private final AtomicLongArray remoteKeys;
+
+  /**
+   * prefix buckets, theoretical arrival time.
+   */
+  private final AtomicLongArray prefixBuckets;
+
+  /**
+   * keys of prefix buckets.
+   */
+  private final AtomicLongArray prefixKeys;
+
+  /**
+   * bucket index mask.
+   */
+  private final int mask;
+
+  /**
+   * origin of nano time, buckets start full.
+   */
+  private final long origin = System.nanoTime();
+
+  /**
+   * exceeded remote limit.
+   */
+  private final LongAdder remoteExceededCount = new LongAdder();
+
+  /**
+   * exceeded prefix limit.
+   */
+  private final LongAdder prefixExceededCount = new LongAdder();
+
+  /**
+   * dropped.
+   */
+  private final LongAdder droppedCount = new LongAdder();
+
+  /**
+   * constructor.
+   * @param action action on exceeded
+   * @param remoteRate tokens per second per remote, 0 is disabled
+   * @param remoteBurst bucket size per remote
+   * @param ipv4PrefixLength ipv4 prefix length
+   * @param ipv6PrefixLength ipv6 prefix length
+   * @param prefixRate tokens per second per prefix, 0 is disabled
+   * @param prefixBurst bucket size per prefix
+   * @param buckets bucket slots, rounded up to power of 2
+   */
+  BsRateLimiter(
+      BsRateLimitAction action,
+      double remoteRate,
+      int remoteBurst,
+      int ipv4PrefixLength,
+      int ipv6PrefixLength,
+      double prefixRate,
+      int prefixBurst,
+      int buckets) {
+    if (ipv4PrefixLength < 0 || ipv4PrefixLength > 32 || ipv6PrefixLength < 0 || ipv6PrefixLength > 128) {
+      throw new IllegalArgumentException(String.format("invalid prefix length, ipv4:%s, ipv6:%s", ipv4PrefixLength, ipv6PrefixLength));
+    }
+    int capacity = Integer.highestOneBit(Math.max(2, Math.min(buckets, 1 << 30)) * 2 - 1);
+    this.action = action;
+    this.remoteInterval = interval(remoteRate);
+    this.remoteTolerance = remoteInterval * (Math.max(1, remoteBurst) - 1);
+    this.prefixInterval = interval(prefixRate);
+    this.prefixTolerance = prefixInterval * (Math.max(1, prefixBurst) - 1);
+    this.ipv4PrefixLength = ipv4PrefixLength;
+    this.ipv6PrefixLength = ipv6PrefixLength;
+    this.remoteBuckets = remoteInterval > 0 ? new AtomicLongArray(capacity) : null;
+    this.remoteKeys = remoteInterval > 0 ? new AtomicLongArray(capacity) : null;
+    this.prefixBuckets = prefixInterval > 0 ? new AtomicLongArray(capacity) : null;
+    this.prefixKeys = prefixInterval > 0 ? new AtomicLongArray(capacity) : null;
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * get nanoseconds per token.
+   * @param rate tokens per second
+   * @return nanoseconds, or 0 if disabled
+   */
+  private static long interval(double rate) {
+    if (rate <= 0) {
+      return 0;
+    }
+    return Math.max(1L, Math.round(1_000_000_000d / rate));
+  }
+
+  /**
+   * admit received datagram.
+   * <pre>
+   *   remote bucket is checked first, and prefix bucket is taken only if remote conforms,
+   *   so datagrams over remote limit do not drain prefix shared with others.
+   *   remote bucket is taken only after prefix is taken,
+   *   so datagram rejected by prefix does not cost remote token.
+   *   if COUNT_ONLY, exceeded is counted and always admitted.
+   * </pre>
+   * @param remoteAddr remote address
+   * @param receivedNanos received nano time
+   * @return if admitted, true
+   */
+  boolean admit(InetSocketAddress remoteAddr, long receivedNanos) {
+    long now = receivedNanos - origin;
+    InetAddress address = remoteAddr.getAddress();
+    boolean admitted = true;
+    int remote = -1;
+    if (remoteBuckets != null) {
+      remote = slot(remoteKeys, remoteBuckets, remoteKey(remoteAddr, address), now);
+      if (!conforms(remoteBuckets, remote, now, remoteTolerance)) {
+        remoteExceededCount.increment();
+        admitted = false;
+      }
+    }
+    int prefix = -1;
+    if (admitted && prefixBuckets != null) {
+      prefix = slot(prefixKeys, prefixBuckets, prefixKey(address), now);
+      if (!take(prefixBuckets, prefix, now, prefixInterval, prefixTolerance)) {
+        prefixExceededCount.increment();
+        admitted = false;
+      }
+    }
+    if (admitted && remote >= 0 && !take(remoteBuckets, remote, now, remoteInterval, remoteTolerance)) {
+      // taken by other thread after check, give prefix token back
+      if (prefix >= 0) {
+        refund(prefixBuckets, prefix, prefixInterval);
+      }
+      remoteExceededCount.increment();
+      admitted = false;
+    }
+    if (admitted || action == BsRateLimitAction.COUNT_ONLY) {
+      return true;
+    }
+    droppedCount.increment();
+    return false;
+  }
+
+  /**
+   * find slot of key.
+   * <pre>
+   *   slot having key is used, or first probed slot whose bucket is full is taken over.
+   *   if none, home slot is shared.
+   * </pre>
+   * @param keys keys
+   * @param buckets buckets
+   * @param key key
+   * @param now nano time from origin
+   * @return bucket index
+   */
+  private int slot(AtomicLongArray keys, AtomicLongArray buckets, long key, long now) {
+    int home = index(key);
+    int free = -1;
+    for (int p = 0; p < PROBES; p++) {
+      int i = (home + p) & mask;
+      long current = keys.get(i);
+      if (current == key) {
+        return i;
+      }
+      if (free < 0 && buckets.get(i) <= now) {
+        free = i;
+      }
+    }
+    if (free < 0) {
+      return home;
+    }
+    keys.set(free, key);
+    return free;
+  }
+
+  /**
+   * check token without taking it.
+   * @param buckets buckets
+   * @param i bucket index
+   * @param now nano time from origin
+   * @param tolerance burst tolerance
+   * @return if conforms, true
+   */
+  private static boolean conforms(AtomicLongArray buckets, int i, long now, long tolerance) {
+    return Math.max(buckets.get(i), now) - now <= tolerance;
+  }
+
+  /**
+   * take token.
+   * @param buckets buckets
+   * @param i bucket index
+   * @param now nano time from origin
+   * @param interval nanoseconds per token
+   * @param tolerance burst tolerance
+   * @return if taken, true
+   */
+  private static boolean take(AtomicLongArray buckets, int i, long now, long interval, long tolerance) {
+    while (true) {
+      long tat = buckets.get(i);
+      long start = Math.max(tat, now);
+      if (start - now > tolerance) {
+        return false;
+      }
+      if (buckets.compareAndSet(i, tat, start + interval)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * give token back.
+   * @param buckets buckets
+   * @param i bucket index
+   * @param interval nanoseconds per token
+   */
+  private static void refund(AtomicLongArray buckets, int i, long interval) {
+    buckets.addAndGet(i, -interval);
+  }
+
+  /**
+   * get remote key.
+   * <pre>
+   *   Inet4Address#hashCode is its address, so no byte array is allocated.
+   * </pre>
+   * @param remoteAddr remote address
+   * @param address remote ip
+   * @return key
+   */
+  private static long remoteKey(InetSocketAddress remoteAddr, InetAddress address) {
+    long key = ((address.hashCode() & 0xffffffffL) << 16) | remoteAddr.getPort();
+    return address instanceof Inet4Address ? key : key | (1L << 48);
+  }
+
+  /**
+   * get prefix key.
+   * @param address remote ip
+   * @return key
+   */
+  private long prefixKey(InetAddress address) {
+    if (address instanceof Inet4Address) {
+      long ip = address.hashCode() & 0xffffffffL;
+      return ipv4PrefixLength == 0 ? 0L : ip >>> (32 - ipv4PrefixLength);
+    }
+    byte[] b = address.getAddress();
+    long hi = 0;
+    long lo = 0;
+    for (int i = 0; i < 8; i++) {
+      hi = (hi << 8) | (b[i] & 0xff);
+      lo = (lo << 8) | (b[i + 8] & 0xff);
+    }
+    if (ipv6PrefixLength <= 64) {
+      hi = ipv6PrefixLength == 0 ? 0L : hi >>> (64 - ipv6PrefixLength);
+      lo = 0;
+    } else if (ipv6PrefixLength < 128) {
+      lo = lo >>> (128 - ipv6PrefixLength);
+    }
+    return (hi * 0x9e3779b97f4a7c15L) ^ lo ^ (1L << 63);
+  }
+
+  /**
+   * get bucket index.
+   * @param key key
+   * @return index
+   */
+  private int index(long key) {
+    // murmur3 finalizer
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key & mask;
+  }
+
+  /**
+   * get exceeded count of remote limit.
+   * @return exceeded count
+   */
+  long getRemoteExceededCount() {
+    return remoteExceededCount.sum();
+  }
+
+  /**
+   * get exceeded count of prefix limit.
+   * @return exceeded count
+   */
+  long getPrefixExceededCount() {
+    return prefixExceededCount.sum();
+  }
+
+  /**
+   * get dropped count.
+   * @return dropped count
+   */
+  long getDroppedCount() {
+    return droppedCount.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "action:%s, remoteIntervalNanos:%s, prefixIntervalNanos:%s, ipv4PrefixLength:%s, ipv6PrefixLength:%s, buckets:%s",
+        action,
+        remoteInterval,
+        prefixInterval,
+        ipv4PrefixLength,
+        ipv6PrefixLength,
+        mask + 1);
+  }
+}
@@ -1,12 +1,15 @@
 package com.walksocket.bs;
 
-import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * udp remote configuration.
@@ -17,10 +20,19 @@ import java.util.UUID;
 public class BsRemote {
 
   /**
-   * remote id.
+   * remote id, formatted lazily from rid bits.
    */
   private String rid;
 
+  /**
+   * random bits of remote id.
+   * <pre>
+   *   not UUID#randomUUID, because SecureRandom is slow under contention
+   *   and remote id is only for logging.
+   * </pre>
+   */
+  private final long ridBits;
+
   /**
    * sending remote address.
    */
@@ -34,7 +46,7 @@ public class BsRemote {
   /**
    * life timestamp milliseconds.
    */
-  private long lifeTimestampMilliseconds;
+  private volatile long lifeTimestampMilliseconds;
 
   /**
    * idle milliseconds.
@@ -54,10 +66,80 @@ public class BsRemote {
    */
   private Map<String, Object> values;
 
+  /**
+   * object slots of attribute keys.
+   */
+  private Object[] attributes;
+
+  /**
+   * primitive slots of int and long attribute keys.
+   */
+  private long[] primitives;
+
   /**
    * newest.
    */
-  private boolean newest = true;
+  private volatile boolean newest = true;
+
+  /**
+   * timing wheel scheduling this remote.
+   */
+  private volatile BsTimingWheel wheel;
+
+  /**
+   * scheduled tick in timing wheel, or -1.
+   * <pre>
+   *   wheel fields are only touched with shard lock.
+   * </pre>
+   */
+  long wheelTick = -1;
+
+  /**
+   * level in timing wheel.
+   */
+  int wheelLevel;
+
+  /**
+   * previous remote in timing wheel slot.
+   */
+  BsRemote wheelPrev;
+
+  /**
+   * next remote in timing wheel slot.
+   */
+  BsRemote wheelNext;
+
+  /**
+   * mailbox for ordered callback dispatch.
+   */
+  private final BsMailbox mailbox;
+
+  /**
+   * lock between callbacks and remote manager.
+   * <pre>
+   *   not monitor, because blocking in synchronized pins virtual thread carrier.
+   * </pre>
+   */
+  private final ReentrantLock lock;
+
+  /**
+   * off-heap slab holding this remote, or null.
+   * <pre>
+   *   if not null, this is handle of slab record,
+   *   and lifetime, idle, active and primitive attributes are read from record.
+   * </pre>
+   */
+  private final BsRemoteSlab slab;
+
+  /**
+   * slot in slab.
+   */
+  private final int slot;
+
+  /**
+   * generation of slab record.
+   */
+  private final int generation;
 
   /**
    * constructor.
@@ -75,10 +157,96 @@ public class BsRemote {
    * @param localChannel local channel
    */
   public BsRemote(InetSocketAddress remoteAddr, BsLocalChannel localChannel) {
-    this.rid = UUID.randomUUID().toString();
+    this(remoteAddr, localChannel, new BsMailbox(), new ReentrantLock());
+  }
+
+  /**
+   * constructor with recycled mailbox and lock.
+   * <pre>
+   *   remote object itself is never recycled,
+   *   so reference kept after timeout still means evicted remote, and is not active.
+   * </pre>
+   * @param remoteAddr remote address
+   * @param localChannel local channel
+   * @param mailbox empty mailbox
+   * @param lock unlocked lock
+   */
+  BsRemote(InetSocketAddress remoteAddr, BsLocalChannel localChannel, BsMailbox mailbox, ReentrantLock lock) {
+    this.ridBits = ThreadLocalRandom.current().nextLong();
     this.remoteAddr = remoteAddr;
     this.localChannel = localChannel;
     this.lifeTimestampMilliseconds = BsDate.timestampMilliseconds() + idleMilliSeconds;
+    this.mailbox = mailbox;
+    this.lock = lock;
+    this.slab = null;
+    this.slot = -1;
+    this.generation = 0;
+  }
+
+  /**
+   * constructor of slab handle.
+   * @param slab slab
+   * @param slot slot
+   * @param generation generation of record
+   * @param remoteAddr remote address
+   * @param localChannel local channel
+   */
+  BsRemote(BsRemoteSlab slab, int slot, int generation, InetSocketAddress remoteAddr, BsLocalChannel localChannel) {
+    this.ridBits = ((long) slot << 32) | (generation & 0xffffffffL);
+    this.remoteAddr = remoteAddr;
+    this.localChannel = localChannel;
+    this.mailbox = slab.lane(slot);
+    this.lock = slab.lock(slot);
+    this.slab = slab;
+    this.slot = slot;
+    this.generation = generation;
+  }
+
+  /**
+   * get remote id.
+   * @return remote id
+   */
+  String getRid() {
+    String r = rid;
+    if (r == null) {
+      r = slab != null
+          ? String.format("slab-%s-%s", slot, generation)
+          : String.format("%016x", ridBits);
+      rid = r;
+    }
+    return r;
+  }
+
+  /**
+   * get slot in slab.
+   * @return slot, or -1
+   */
+  int getSlot() {
+    return slot;
+  }
+
+  /**
+   * get generation of slab record.
+   * @return generation
+   */
+  int getGeneration() {
+    return generation;
+  }
+
+  /**
+   * is handle of slab record.
+   * @return if off-heap, true
+   */
+  boolean isOffHeap() {
+    return slab != null;
+  }
+
+  /**
+   * is slab record still this remote.
+   * @return if current, true
+   */
+  private boolean isCurrent() {
+    return slab.isCurrent(slot, generation);
   }
 
   /**
@@ -86,15 +254,114 @@ public class BsRemote {
    * @return if timeout, true
    */
   boolean isTimeout() {
-    return !newest && BsDate.timestampMilliseconds() > lifeTimestampMilliseconds;
+    return isTimeout(BsDate.timestampMilliseconds());
+  }
+
+  /**
+   * is timeout at now.
+   * @param now now timestamp milliseconds
+   * @return if timeout, true
+   */
+  boolean isTimeout(long now) {
+    if (slab != null) {
+      return slab.isTimeout(slot, generation, now);
+    }
+    return !newest && now > lifeTimestampMilliseconds;
   }
 
   /**
    * update timeout.
    */
   void updateTimeout() {
+    updateTimeout(BsDate.timestampMilliseconds());
+  }
+
+  /**
+   * update timeout from now.
+   * @param now now timestamp milliseconds
+   */
+  void updateTimeout(long now) {
+    if (slab != null) {
+      slab.touch(slot, generation, now);
+      return;
+    }
     newest = false;
-    this.lifeTimestampMilliseconds = BsDate.timestampMilliseconds() + idleMilliSeconds;
+    this.lifeTimestampMilliseconds = now + idleMilliSeconds;
+  }
+
+  /**
+   * get life timestamp milliseconds.
+   * @return life timestamp milliseconds, 0 if escaped
+   */
+  long getLifeTimestampMilliseconds() {
+    if (slab != null) {
+      return slab.getLife(slot, generation);
+    }
+    return lifeTimestampMilliseconds;
+  }
+
+  /**
+   * set timing wheel.
+   * @param wheel timing wheel
+   */
+  void setWheel(BsTimingWheel wheel) {
+    this.wheel = wheel;
+  }
+
+  /**
+   * request reschedule of shortened deadline.
+   */
+  private void refresh() {
+    BsTimingWheel w = wheel;
+    if (w != null) {
+      w.refresh(this);
+    }
+  }
+
+  /**
+   * lock.
+   */
+  void lock() {
+    lock.lock();
+  }
+
+  /**
+   * unlock.
+   */
+  void unlock() {
+    lock.unlock();
+  }
+
+  /**
+   * is escaped.
+   * @return if escaped, true
+   */
+  boolean isEscaped() {
+    return getLifeTimestampMilliseconds() == 0;
+  }
+
+  /**
+   * get local channel.
+   * @return local channel
+   */
+  BsLocalChannel getLocalChannel() {
+    return localChannel;
+  }
+
+  /**
+   * get mailbox.
+   * @return mailbox
+   */
+  BsMailbox getMailbox() {
+    return mailbox;
+  }
+
+  /**
+   * get lock.
+   * @return lock
+   */
+  ReentrantLock getLock() {
+    return lock;
   }
 
   /**
@@ -102,6 +369,9 @@ public class BsRemote {
    * @return idle milliseconds
    */
   public int getIdleMilliSeconds() {
+    if (slab != null) {
+      return slab.getIdle(slot, generation);
+    }
     return idleMilliSeconds;
   }
 
@@ -110,6 +380,10 @@ public class BsRemote {
    * @param active active flag
    */
   void setActive(boolean active) {
+    if (slab != null) {
+      slab.setFlag(slot, generation, BsRemoteSlab.ACTIVE, active);
+      return;
+    }
     this.active = active;
   }
 
@@ -118,6 +392,9 @@ public class BsRemote {
    * @return active
    */
   boolean isActive() {
+    if (slab != null) {
+      return (slab.getFlags(slot, generation) & BsRemoteSlab.ACTIVE) != 0;
+    }
     return active;
   }
 
@@ -126,29 +403,66 @@ public class BsRemote {
    * @param idleMilliSeconds idle milliseconds
    */
   public void setIdleMilliSeconds(int idleMilliSeconds) {
+    if (slab != null) {
+      if (slab.setIdle(slot, generation, idleMilliSeconds)) {
+        updateTimeout();
+      }
+      return;
+    }
     this.idleMilliSeconds = idleMilliSeconds;
     updateTimeout();
+    refresh();
   }
 
   /**
    * send message.
+   * <pre>
+   *   never blocks.
+   *   if socket send buffer is full, message waits in outbound queue of local channel,
+   *   and returned future is completed when selector writes or drops it.
+   *   if outbound queue is over high water mark, message is dropped.
+   *   if local channel is not run by executor, message is not queued and dropped.
+   *   if executor has pipeline, message goes through outbound handlers as ByteBuffer.
+   * </pre>
    * @param bytes message
+   * @return future completed with written or dropped
    * @throws BsSendException send exception
    */
-  public void send(byte[] bytes) throws BsSendException {
+  public CompletableFuture<BsSendStatus> send(byte[] bytes) throws BsSendException {
+    return send((Object) ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * send message through pipeline.
+   * <pre>
+   *   outbound handlers encode message to byte array or ByteBuffer.
+   *   without pipeline, only byte array or ByteBuffer is sent.
+   * </pre>
+   * @param message message
+   * @return future completed with written or dropped
+   * @throws BsSendException send exception, or message is not encoded
+   */
+  public CompletableFuture<BsSendStatus> send(Object message) throws BsSendException {
     // if escaped, disallow send
-    if (lifeTimestampMilliseconds == 0) {
-      throw new BsSendException(String.format("remote(%s) is already escaped."));
+    if (isEscaped()) {
+      throw new BsSendException(String.format("remote(%s) is already escaped.", this));
     }
 
     // if not active, disallow send
-    if (!active) {
-      throw new BsSendException(String.format("remote(%s) is not active."));
+    if (!isActive()) {
+      throw new BsSendException(String.format("remote(%s) is not active.", this));
     }
 
+    BsPipeline pipeline = localChannel.getPipeline();
     try {
-      localChannel.getChannel().send(ByteBuffer.wrap(bytes), remoteAddr);
-    } catch (IOException e) {
+      if (pipeline != null) {
+        return pipeline.outbound(this, message);
+      }
+      return BsPipeline.head(this, message);
+    } catch (UncheckedIOException e) {
+      BsLogger.error(e);
+      throw new BsSendException(e.getCause());
+    } catch (RuntimeException e) {
       BsLogger.error(e);
       throw new BsSendException(e);
     }
@@ -159,7 +473,13 @@ public class BsRemote {
    */
   public void escape() {
     // lifetime is force to set 0
+    if (slab != null) {
+      slab.setLife(slot, generation, 0);
+      BsLogger.debug(() -> String.format("escape %s", this));
+      return;
+    }
     lifeTimestampMilliseconds = 0;
+    refresh();
     BsLogger.debug(() -> String.format("escape %s", this));
   }
 
@@ -193,6 +513,7 @@ public class BsRemote {
    * @param value your valut
    */
   public void setValue(String name, Object value) {
+    checkOnHeap();
     if (values == null) {
       values = new HashMap<>();
     }
@@ -224,11 +545,217 @@ public class BsRemote {
     values.remove(name);
   }
 
+  /**
+   * get attribute.
+   * <pre>
+   *   value of int or long key is boxed, use getInt or getLong for it.
+   * </pre>
+   * @param <T> value type
+   * @param key attribute key
+   * @return value, or null (0 for int or long key)
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T getAttribute(BsAttributeKey<T> key) {
+    if (key.isPrimitive()) {
+      long value = primitive(key);
+      if (key.getType() == int.class) {
+        return (T) Integer.valueOf((int) value);
+      }
+      return (T) Long.valueOf(value);
+    }
+    int index = key.getIndex();
+    if (attributes == null || index >= attributes.length) {
+      return null;
+    }
+    return (T) attributes[index];
+  }
+
+  /**
+   * set attribute.
+   * @param <T> value type
+   * @param key attribute key
+   * @param value value, null clears
+   */
+  public <T> void setAttribute(BsAttributeKey<T> key, T value) {
+    if (key.isPrimitive()) {
+      putPrimitive(key, value == null ? 0 : ((Number) value).longValue());
+      return;
+    }
+    checkOnHeap();
+    if (value == null && (attributes == null || key.getIndex() >= attributes.length)) {
+      return;
+    }
+    objectSlots(key)[key.getIndex()] = value;
+  }
+
+  /**
+   * clear attribute.
+   * @param key attribute key
+   */
+  public void clearAttribute(BsAttributeKey<?> key) {
+    if (key.isPrimitive()) {
+      if (slab != null || (primitives != null && key.getIndex() < primitives.length)) {
+        putPrimitive(key, 0);
+      }
+      return;
+    }
+    if (attributes != null && key.getIndex() < attributes.length) {
+      attributes[key.getIndex()] = null;
+    }
+  }
+
+  /**
+   * get int attribute.
+   * @param key int attribute key
+   * @return value, or 0
+   */
+  public int getInt(BsAttributeKey<Integer> key) {
+    checkType(key, int.class);
+    return (int) primitive(key);
+  }
+
+  /**
+   * set int attribute.
+   * @param key int attribute key
+   * @param value value
+   */
+  public void setInt(BsAttributeKey<Integer> key, int value) {
+    checkType(key, int.class);
+    putPrimitive(key, value);
+  }
+
+  /**
+   * get long attribute.
+   * @param key long attribute key
+   * @return value, or 0
+   */
+  public long getLong(BsAttributeKey<Long> key) {
+    checkType(key, long.class);
+    return primitive(key);
+  }
+
+  /**
+   * set long attribute.
+   * @param key long attribute key
+   * @param value value
+   */
+  public void setLong(BsAttributeKey<Long> key, long value) {
+    checkType(key, long.class);
+    putPrimitive(key, value);
+  }
+
+  /**
+   * check type of key.
+   * <pre>
+   *   Integer key of valueOf is not int key.
+   * </pre>
+   * @param key attribute key
+   * @param type expected type
+   */
+  private static void checkType(BsAttributeKey<?> key, Class<?> type) {
+    if (key.getType() != type) {
+      throw new IllegalArgumentException(String.format("key(%s) is not %s key", key.getName(), type));
+    }
+  }
+
+  /**
+   * get primitive slot value.
+   * @param key primitive attribute key
+   * @return value, or 0
+   */
+  private long primitive(BsAttributeKey<?> key) {
+    int index = key.getIndex();
+    if (slab != null) {
+      return slab.getState(slot, generation, index * 8);
+    }
+    if (primitives == null || index >= primitives.length) {
+      return 0;
+    }
+    return primitives[index];
+  }
+
+  /**
+   * put primitive slot value.
+   * <pre>
+   *   off-heap remote keeps it in user state of record, 8 bytes per key.
+   * </pre>
+   * @param key primitive attribute key
+   * @param value value
+   */
+  private void putPrimitive(BsAttributeKey<?> key, long value) {
+    if (slab != null) {
+      slab.setState(slot, generation, key.getIndex() * 8, value);
+      return;
+    }
+    primitiveSlots(key)[key.getIndex()] = value;
+  }
+
+  /**
+   * check remote is on heap.
+   * <pre>
+   *   handle of off-heap remote lives only while callback runs,
+   *   so object values are not kept.
+   * </pre>
+   */
+  private void checkOnHeap() {
+    if (slab != null) {
+      throw new IllegalStateException("off-heap remote keeps only int and long attributes.");
+    }
+  }
+
+  /**
+   * get object slots, allocated or grown to hold key.
+   * @param key attribute key
+   * @return object slots
+   */
+  private Object[] objectSlots(BsAttributeKey<?> key) {
+    if (attributes == null) {
+      attributes = new Object[Math.max(key.getIndex() + 1, BsAttributeKey.objectSlots())];
+    } else if (key.getIndex() >= attributes.length) {
+      attributes = Arrays.copyOf(attributes, Math.max(key.getIndex() + 1, BsAttributeKey.objectSlots()));
+    }
+    return attributes;
+  }
+
+  /**
+   * get primitive slots, allocated or grown to hold key.
+   * @param key attribute key
+   * @return primitive slots
+   */
+  private long[] primitiveSlots(BsAttributeKey<?> key) {
+    if (primitives == null) {
+      primitives = new long[Math.max(key.getIndex() + 1, BsAttributeKey.primitiveSlots())];
+    } else if (key.getIndex() >= primitives.length) {
+      primitives = Arrays.copyOf(primitives, Math.max(key.getIndex() + 1, BsAttributeKey.primitiveSlots()));
+    }
+    return primitives;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (slab == null || !(o instanceof BsRemote)) {
+      return false;
+    }
+    BsRemote other = (BsRemote) o;
+    return slab == other.slab && slot == other.slot && generation == other.generation;
+  }
+
+  @Override
+  public int hashCode() {
+    if (slab == null) {
+      return System.identityHashCode(this);
+    }
+    return slot * 31 + generation;
+  }
+
   @Override
   public String toString() {
     return String.format(
         "rid:%s, remoteAddr:%s, channel:%s",
-        rid,
+        getRid(),
         remoteAddr,
         localChannel.getChannel());
   }
@@ -3,13 +3,12 @@ package com.walksocket.bs;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * remote manager for server.
@@ -42,7 +41,7 @@ class BsRemoteManager {
   /**
    * remotes.
    */
-  private final List<ConcurrentHashMap<InetSocketAddress, BsRemote>> remotes;
+  private final BsRemoteRegistry registry;
 
   /**
    * service timeout.
@@ -50,15 +49,50 @@ class BsRemoteManager {
   private final ScheduledExecutorService serviceTimeout = Executors.newSingleThreadScheduledExecutor();
 
   /**
-   * service no.
+   * timing wheels of remote timeout, one per shard.
    */
-  private final AtomicInteger serviceNo = new AtomicInteger(0);
+  private final List<BsTimingWheel> wheels;
+
+  /**
+   * pools of evicted remotes, one per shard.
+   */
+  private final List<BsRemotePool> pools;
+
+  /**
+   * max pooled per shard.
+   */
+  private static final int POOL_CAPACITY = 1024;
+
+  /**
+   * timing wheel tick milliseconds.
+   */
+  private final int tickMilliseconds;
+
+  /**
+   * expired remotes, only touched by service timeout thread.
+   */
+  private final List<BsRemote> expired = new ArrayList<>();
+
+  /**
+   * metrics.
+   */
+  private final BsMetrics metrics;
 
   /**
    * remote count.
    */
   private final AtomicLong remoteCount = new AtomicLong(0);
 
+  /**
+   * off-heap slab of ipv4 remotes, or null.
+   */
+  private BsRemoteSlab slab;
+
+  /**
+   * next shard of slab sweep, only touched by service timeout thread.
+   */
+  private int sweepNo = 0;
+
   /**
    * constructor.
    * @param devide remote timeout check devide number
@@ -66,6 +100,18 @@ class BsRemoteManager {
    * @param shutdown shutdown executor
    */
   BsRemoteManager(int devide, BsCallback callback, BsShutdown shutdown) {
+    this(devide, callback, shutdown, new BsMetrics());
+  }
+
+  /**
+   * constructor.
+   * @param devide remote timeout check devide number
+   * @param callback callback for timeout
+   * @param shutdown shutdown executor
+   * @param metrics metrics
+   */
+  BsRemoteManager(int devide, BsCallback callback, BsShutdown shutdown, BsMetrics metrics) {
+    this.metrics = metrics;
     this.devide = devide;
     this.callback = callback;
     this.shutdown = shutdown;
@@ -73,28 +119,45 @@ class BsRemoteManager {
     for (int i = 0; i < devide; i++) {
       this.locks.add(new ReentrantLock());
     }
-    this.remotes = new ArrayList<>(devide);
+    this.registry = new BsRemoteRegistry(devide);
+    this.pools = new ArrayList<>(devide);
+    for (int i = 0; i < devide; i++) {
+      this.pools.add(new BsRemotePool(POOL_CAPACITY));
+    }
+    this.tickMilliseconds = Math.max(1, 1000 / devide);
+    long now = BsDate.timestampMilliseconds();
+    this.wheels = new ArrayList<>(devide);
     for (int i = 0; i < devide; i++) {
-      this.remotes.add(new ConcurrentHashMap<>());
+      this.wheels.add(new BsTimingWheel(tickMilliseconds, now));
     }
   }
 
   /**
-   * get mod.
-   * @param remoteAddr remote addr
-   * @return mod
+   * use off-heap slab for ipv4 remotes.
+   * <pre>
+   *   call before start.
+   *   if slab is full, or remote is not ipv4, remote is kept on heap.
+   * </pre>
+   * @param slab slab
    */
-  private int getMod(InetSocketAddress remoteAddr) {
-    int random = System.identityHashCode(remoteAddr);
-    return Math.abs(random % devide);
+  void setSlab(BsRemoteSlab slab) {
+    this.slab = slab;
+  }
+
+  /**
+   * get off-heap slab.
+   * @return slab, or null
+   */
+  BsRemoteSlab getSlab() {
+    return slab;
   }
 
   /**
    * start service timeout.
    */
   void startServiceTimeout() {
-    int start = 1000 / devide;
-    int offset = 1000 / devide;
+    int start = tickMilliseconds;
+    int offset = tickMilliseconds;
     serviceTimeout.scheduleAtFixedRate(
         new Runnable() {
 
@@ -105,51 +168,164 @@ class BsRemoteManager {
               for (int i = 0; i < devide; i++) {
                 final int no = i;
                 locks.get(no).lock();
-                remotes.get(no).forEach((remoteAddr, remote) -> {
-                  synchronized (remote) {
+                registry.forEach(no, (remoteAddr, remote) -> {
+                  remote.lock();
+                  try {
                     // if active, invoke shutdown.
                     if (remote.isActive()) {
                       remote.setActive(false);
                       callback.shutdown(remote);
+                      notifyRemoved(remote);
                     }
-                    if (remotes.get(no).remove(remoteAddr) != null) {
+                    if (registry.remove(remote)) {
                       // decrement
                       remoteCount.decrementAndGet();
+                      metrics.shutdownEviction();
                       BsLogger.debug(() -> String.format("By force shutdown, removed remote:%s", remote));
                     }
+                  } finally {
+                    remote.unlock();
                   }
                 });
                 locks.get(no).unlock();
+                evict(no, "By force shutdown");
               }
               return;
             }
 
-            // timeout
-            int no = serviceNo.getAndIncrement();
-            if (serviceNo.get() >= devide) {
-              serviceNo.set(0);
+            // timeout, only expired remotes are touched
+            long now = BsDate.timestampMilliseconds();
+            for (int i = 0; i < devide; i++) {
+              expire(i, now);
+            }
+
+            // one shard of slab per tick, so every off-heap remote is checked per second
+            if (slab != null) {
+              sweep(sweepNo, now);
+              sweepNo = (sweepNo + 1) % slab.shards();
             }
-            locks.get(no).lock();
-            remotes.get(no).forEach((remoteAddr, remote) -> {
-              synchronized (remote) {
-                // if already timeout and active, invoke timeout.
-                if (remote.isTimeout() && remote.isActive()) {
-                  remote.setActive(false);
-                  callback.timeout(remote);
-
-                  if (remotes.get(no).remove(remoteAddr) != null) {
-                    // decrement
-                    remoteCount.decrementAndGet();
-                    BsLogger.debug(() -> String.format("By timeout, removed remote:%s", remote));
-                  }
-                }
-              }
-            });
-            locks.get(no).unlock();
           }
         }, start, offset, TimeUnit.MILLISECONDS);
   }
 
+  /**
+   * expire remotes of shard.
+   * <pre>
+   *   remote which was not timeout yet, because lifetime was extended after scheduled,
+   *   is scheduled again to current lifetime.
+   * </pre>
+   * @param no shard no
+   * @param now now timestamp milliseconds
+   */
+  private void expire(int no, long now) {
+    BsTimingWheel wheel = wheels.get(no);
+    locks.get(no).lock();
+    try {
+      wheel.advance(now, expired);
+      for (BsRemote remote : expired) {
+        boolean removed = false;
+        remote.lock();
+        try {
+          // if already timeout and active, invoke timeout.
+          if (remote.isTimeout(now) && remote.isActive()) {
+            remote.setActive(false);
+            callback.timeout(remote);
+            notifyRemoved(remote);
+
+            if (registry.remove(remote)) {
+              // decrement
+              remoteCount.decrementAndGet();
+              metrics.timeout();
+              removed = true;
+              BsLogger.debug(() -> String.format("By timeout, removed remote:%s", remote));
+            }
+          } else if (remote.isActive()) {
+            // lazy refresh
+            long deadline = remote.getLifeTimestampMilliseconds();
+            if (deadline <= now) {
+              // not received yet
+              deadline = now + remote.getIdleMilliSeconds();
+            }
+            wheel.schedule(remote, deadline);
+          }
+        } finally {
+          remote.unlock();
+        }
+        if (removed) {
+          pools.get(no).offer(remote);
+        }
+      }
+    } finally {
+      expired.clear();
+      locks.get(no).unlock();
+    }
+  }
+
+  /**
+   * sweep off-heap remotes of shard.
+   * @param no shard no
+   * @param now now timestamp milliseconds
+   */
+  private void sweep(int no, long now) {
+    slab.forEach(no, remote -> {
+      remote.lock();
+      try {
+        // if already timeout and active, invoke timeout.
+        if (remote.isTimeout(now) && remote.isActive()) {
+          remote.setActive(false);
+          callback.timeout(remote);
+          notifyRemoved(remote);
+
+          if (slab.remove(remote)) {
+            metrics.timeout();
+            BsLogger.debug(() -> String.format("By timeout, removed remote:%s", remote));
+          }
+        }
+      } finally {
+        remote.unlock();
+      }
+    });
+  }
+
+  /**
+   * evict off-heap remotes of shard on shutdown.
+   * @param no shard no
+   * @param by reason for log
+   */
+  private void evict(int no, String by) {
+    if (slab == null) {
+      return;
+    }
+    slab.forEach(no, remote -> {
+      remote.lock();
+      try {
+        // if active, invoke shutdown.
+        if (remote.isActive()) {
+          remote.setActive(false);
+          callback.shutdown(remote);
+          notifyRemoved(remote);
+        }
+        if (slab.remove(remote)) {
+          metrics.shutdownEviction();
+          BsLogger.debug(() -> String.format("%s, removed remote:%s", by, remote));
+        }
+      } finally {
+        remote.unlock();
+      }
+    });
+  }
+
+  /**
+   * notify pipeline that remote is removed.
+   * @param remote remote
+   */
+  private static void notifyRemoved(BsRemote remote) {
+    BsPipeline pipeline = remote.getLocalChannel().getPipeline();
+    if (pipeline != null) {
+      pipeline.removed(remote);
+    }
+  }
+
   /**
    * shutdown service timeout.
    */
@@ -158,22 +334,32 @@ class BsRemoteManager {
       for (int i = 0; i < devide; i++) {
         final int no = i;
         locks.get(no).lock();
-        remotes.get(no).forEach((remoteAddr, remote) -> {
-          synchronized (remote) {
+        registry.forEach(no, (remoteAddr, remote) -> {
+          remote.lock();
+          try {
             // if active, invoke shutdown.
             if (remote.isActive()) {
               remote.setActive(false);
               callback.shutdown(remote);
+              notifyRemoved(remote);
             }
-            if (remotes.get(no).remove(remoteAddr) != null) {
+            if (registry.remove(remote)) {
               // decrement
               remoteCount.decrementAndGet();
+              metrics.shutdownEviction();
               BsLogger.debug(() -> String.format("By normal shutdown, removed remote:%s", remote));
             }
+          } finally {
+            remote.unlock();
           }
         });
         locks.get(no).unlock();
       }
+      if (slab != null) {
+        for (int i = 0; i < slab.shards(); i++) {
+          evict(i, "By normal shutdown");
+        }
+      }
       serviceTimeout.shutdown();
     }
   }
@@ -183,35 +369,70 @@ class BsRemoteManager {
    * @param remote remote
    */
   void register(BsRemote remote) {
-    InetSocketAddress remoteAddr = remote.getRemoteAddr();
-    int mod = getMod(remoteAddr);
-    if (!remotes.get(mod).containsKey(remoteAddr)) {
-      locks.get(mod).lock();
-      if (remotes.get(mod).putIfAbsent(remoteAddr, remote) == null) {
-        BsLogger.debug(() -> String.format("register remote:%s", remotes.get(mod).get(remoteAddr)));
-      }
-      locks.get(mod).unlock();
-    }
+    registry.computeIfAbsent(remote.getRemoteAddr(), remoteAddr -> {
+      added(remote);
+      BsLogger.debug(() -> String.format("register remote:%s", remote));
+      return remote;
+    });
   }
 
   /**
    * generate remote.
+   * <pre>
+   *   called by selector threads for every received datagram.
+   *   registered remote is returned without lock.
+   *   off-heap remote is returned as new handle per call.
+   * </pre>
    * @param remoteAddr remote addr
    * @param localChannel local channel
    * @return remote
    */
   BsRemote generate(InetSocketAddress remoteAddr, BsLocalChannel localChannel) {
-    int mod = getMod(remoteAddr);
-    if (!remotes.get(mod).containsKey(remoteAddr)) {
-      locks.get(mod).lock();
-      if (remotes.get(mod).putIfAbsent(remoteAddr, new BsRemote(remoteAddr, localChannel)) == null) {
-        // increment
-        remoteCount.incrementAndGet();
-        BsLogger.debug(() -> String.format("generate remote:%s", remotes.get(mod).get(remoteAddr)));
+    if (slab != null) {
+      long key = BsRemoteTable.pack(remoteAddr);
+      if (key >= 0) {
+        BsRemote remote = slab.generate(remoteAddr, key, localChannel);
+        if (remote != null) {
+          return remote;
+        }
       }
-      locks.get(mod).unlock();
     }
-    return remotes.get(mod).get(remoteAddr);
+    BsRemotePool pool = pools.get(registry.shardOf(remoteAddr));
+    return registry.computeIfAbsent(remoteAddr, addr -> {
+      BsRemote remote = pool.create(addr, localChannel);
+      added(remote);
+      // increment
+      remoteCount.incrementAndGet();
+      BsLogger.debug(() -> String.format("generate remote:%s", remote));
+      return remote;
+    });
+  }
+
+  /**
+   * hand new remote to timing wheel of its shard.
+   * <pre>
+   *   without shard lock, scheduled on next tick.
+   * </pre>
+   * @param remote remote
+   */
+  private void added(BsRemote remote) {
+    BsTimingWheel wheel = wheels.get(registry.shardOf(remote.getRemoteAddr()));
+    remote.setWheel(wheel);
+    wheel.add(remote);
+  }
+
+  /**
+   * walk remotes in every shard.
+   * <pre>
+   *   without shard lock, remotes generated or removed while walking may be missed.
+   * </pre>
+   * @param action action
+   */
+  void forEach(Consumer<BsRemote> action) {
+    registry.forEach(action);
+    if (slab != null) {
+      slab.forEach(action);
+    }
   }
 
   /**
@@ -219,6 +440,9 @@ class BsRemoteManager {
    * @return remote count
    */
   long getRemoteCount() {
+    if (slab != null) {
+      return remoteCount.get() + slab.size();
+    }
     return remoteCount.get();
   }
 }
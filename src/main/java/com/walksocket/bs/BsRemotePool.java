@@ -0,0 +1,115 @@
+package com.walksocket.bs;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * pool of mailboxes and locks of evicted remotes.
+ * <pre>
+ *   one pool per remote manager shard.
+ *   service timeout thread returns them of timeout remotes,
+ *   and selector threads take them for new remotes,
+ *   so one packet peers do not allocate them every time.
+ *   remote itself is not pooled, because user code may keep reference of it.
+ *   mailbox and lock are more than half of bytes of new remote,
+ *   see pooledRemote and newRemote of BsRemoteManagerBenchmark.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsRemotePool {
+
+  /**
+   * pooled mailboxes.
+   */
+  private final BsMailbox[] mailboxes;
+
+  /**
+   * pooled locks.
+   */
+  private final ReentrantLock[] locks;
+
+  /**
+   * pooled count.
+   */
+  private int size = 0;
+
+  /**
+   * pool lock.
+   */
+  private final ReentrantLock poolLock = new ReentrantLock();
+
+  /**
+   * constructor.
+   * @param capacity max pooled
+   */
+  BsRemotePool(int capacity) {
+    this.mailboxes = new BsMailbox[capacity];
+    this.locks = new ReentrantLock[capacity];
+  }
+
+  /**
+   * return mailbox and lock of evicted remote.
+   * <pre>
+   *   call after remote is removed from registry and unlocked.
+   *   mailbox having messages, or lock held, is left to gc.
+   * </pre>
+   * @param remote evicted remote
+   * @return if pooled, true
+   */
+  boolean offer(BsRemote remote) {
+    BsMailbox mailbox = remote.getMailbox();
+    ReentrantLock lock = remote.getLock();
+    if (!mailbox.isIdle() || lock.isLocked()) {
+      return false;
+    }
+    poolLock.lock();
+    try {
+      if (size == mailboxes.length) {
+        return false;
+      }
+      mailboxes[size] = mailbox;
+      locks[size] = lock;
+      size++;
+      return true;
+    } finally {
+      poolLock.unlock();
+    }
+  }
+
+  /**
+   * create remote with pooled mailbox and lock if any.
+   * @param remoteAddr remote address
+   * @param localChannel local channel
+   * @return new remote
+   */
+  BsRemote create(InetSocketAddress remoteAddr, BsLocalChannel localChannel) {
+    BsMailbox mailbox = null;
+    ReentrantLock lock = null;
+    poolLock.lock();
+    try {
+      if (size > 0) {
+        size--;
+        mailbox = mailboxes[size];
+        lock = locks[size];
+        mailboxes[size] = null;
+        locks[size] = null;
+      }
+    } finally {
+      poolLock.unlock();
+    }
+    if (mailbox == null) {
+      return new BsRemote(remoteAddr, localChannel);
+    }
+    return new BsRemote(remoteAddr, localChannel, mailbox, lock);
+  }
+
+  /**
+   * get pooled count.
+   * @return pooled count
+   */
+  int size() {
+    return size;
+  }
+}
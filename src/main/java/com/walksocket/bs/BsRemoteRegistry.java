@@ -0,0 +1,136 @@
+package com.walksocket.bs;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * remote registry.
+ * <pre>
+ *   remotes are sharded by address and port, not by identity,
+ *   because every received datagram carries new address instance.
+ *   lookup of registered remote takes no lock,
+ *   and insert is single pass, remote is created at most once per address.
+ *   ipv4 remotes are kept in primitive keyed table,
+ *   and others, ipv6 or unresolved, in generic map.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsRemoteRegistry {
+
+  /**
+   * shards of ipv4 remotes.
+   */
+  private final List<BsRemoteTable> tables;
+
+  /**
+   * shards of other remotes.
+   */
+  private final List<ConcurrentHashMap<InetSocketAddress, BsRemote>> shards;
+
+  /**
+   * constructor.
+   * @param size shard size
+   */
+  BsRemoteRegistry(int size) {
+    this.tables = new ArrayList<>(size);
+    this.shards = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      this.tables.add(new BsRemoteTable());
+      this.shards.add(new ConcurrentHashMap<>());
+    }
+  }
+
+  /**
+   * get shard no.
+   * @param remoteAddr remote address
+   * @return shard no
+   */
+  int shardOf(InetSocketAddress remoteAddr) {
+    int hash = remoteAddr.hashCode();
+    hash ^= (hash >>> 16);
+    return Math.floorMod(hash, shards.size());
+  }
+
+  /**
+   * get remote.
+   * @param remoteAddr remote address
+   * @return remote, or null
+   */
+  BsRemote get(InetSocketAddress remoteAddr) {
+    long key = BsRemoteTable.pack(remoteAddr);
+    if (key >= 0) {
+      return tables.get(shardOf(remoteAddr)).get(key);
+    }
+    return shards.get(shardOf(remoteAddr)).get(remoteAddr);
+  }
+
+  /**
+   * get remote, or register new one.
+   * <pre>
+   *   hit path is plain get without lock.
+   *   on miss, factory is invoked atomically at most once per address,
+   *   so keep it short and do not touch registry in it.
+   * </pre>
+   * @param remoteAddr remote address
+   * @param factory factory of new remote
+   * @return registered remote
+   */
+  BsRemote computeIfAbsent(InetSocketAddress remoteAddr, Function<InetSocketAddress, BsRemote> factory) {
+    long key = BsRemoteTable.pack(remoteAddr);
+    if (key >= 0) {
+      return tables.get(shardOf(remoteAddr)).computeIfAbsent(key, remoteAddr, factory);
+    }
+    ConcurrentHashMap<InetSocketAddress, BsRemote> shard = shards.get(shardOf(remoteAddr));
+    BsRemote remote = shard.get(remoteAddr);
+    if (remote != null) {
+      return remote;
+    }
+    return shard.computeIfAbsent(remoteAddr, factory);
+  }
+
+  /**
+   * remove remote.
+   * @param remote remote
+   * @return if removed, true
+   */
+  boolean remove(BsRemote remote) {
+    long key = BsRemoteTable.pack(remote.getRemoteAddr());
+    if (key >= 0) {
+      return tables.get(shardOf(remote.getRemoteAddr())).remove(key, remote);
+    }
+    return shards.get(shardOf(remote.getRemoteAddr())).remove(remote.getRemoteAddr(), remote);
+  }
+
+  /**
+   * walk remotes of shard.
+   * @param no shard no
+   * @param action action
+   */
+  void forEach(int no, BiConsumer<InetSocketAddress, BsRemote> action) {
+    tables.get(no).forEach(remote -> action.accept(remote.getRemoteAddr(), remote));
+    shards.get(no).forEach(action);
+  }
+
+  /**
+   * walk remotes in every shard.
+   * <pre>
+   *   remotes registered or removed while walking may be missed.
+   * </pre>
+   * @param action action
+   */
+  void forEach(Consumer<BsRemote> action) {
+    for (BsRemoteTable table : tables) {
+      table.forEach(action);
+    }
+    for (ConcurrentHashMap<InetSocketAddress, BsRemote> shard : shards) {
+      shard.values().forEach(action);
+    }
+  }
+}
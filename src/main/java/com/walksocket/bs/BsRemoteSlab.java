@@ -0,0 +1,970 @@
+package com.walksocket.bs;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * off-heap slab of ipv4 remotes.
+ * <pre>
+ *   remote metadata and fixed size user state live in fixed size records
+ *   of direct buffers, and remote is indexed by packed address in primitive tables.
+ *   there is no object per remote on heap.
+ *   BsRemote is light handle of record, created per received datagram or walk,
+ *   and it checks record generation, so stale handle sees remote as inactive.
+ *
+ *   key, generation and flags of record are kept in atomic arrays beside chunk,
+ *   so lookup without lock confirms key between two reads of same generation,
+ *   and removal bumps generation and clears flags in one write.
+ *   other fields are read and written with lock of slot after generation is checked,
+ *   and removal takes same lock, so handle never touches record of other remote.
+ *
+ *   messages of remote are serialized by lane, and callbacks by lock, picked by slot,
+ *   so remotes sharing lane wait each other, and ingress remote capacity counts lane.
+ *   timeout is checked by sweeping index of shard, not by timing wheel.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsRemoteSlab {
+
+  /**
+   * record bits per chunk.
+   */
+  private static final int CHUNK_BITS = 16;
+
+  /**
+   * records per chunk.
+   */
+  private static final int CHUNK_RECORDS = 1 << CHUNK_BITS;
+
+  /**
+   * lanes, and locks.
+   */
+  private static final int LANES = 4096;
+
+  /**
+   * offset of life timestamp milliseconds.
+   */
+  private static final int LIFE = 0;
+
+  /**
+   * offset of idle milliseconds.
+   */
+  private static final int IDLE = 8;
+
+  /**
+   * offset of local port.
+   */
+  private static final int PORT = 12;
+
+  /**
+   * offset of user state.
+   */
+  private static final int STATE = 16;
+
+  /**
+   * flag of used record.
+   */
+  static final int IN_USE = 1;
+
+  /**
+   * flag of active remote.
+   */
+  static final int ACTIVE = 2;
+
+  /**
+   * flag of remote which has not received yet.
+   */
+  static final int NEWEST = 4;
+
+  /**
+   * default idle milliseconds.
+   */
+  private static final int DEFAULT_IDLE = 10000;
+
+  /**
+   * max records.
+   */
+  private final int capacity;
+
+  /**
+   * user state bytes per record.
+   */
+  private final int stateBytes;
+
+  /**
+   * record bytes.
+   */
+  private final int recordBytes;
+
+  /**
+   * chunks, allocated on demand.
+   */
+  private final ByteBuffer[] chunks;
+
+  /**
+   * keys and stamps of chunks, generation and flags, two longs per record.
+   */
+  private final AtomicLongArray[] stamps;
+
+  /**
+   * index shards.
+   */
+  private final List<BsSlabIndex> indexes;
+
+  /**
+   * lanes of messages.
+   */
+  private final BsMailbox[] lanes = new BsMailbox[LANES];
+
+  /**
+   * locks of callbacks.
+   */
+  private final ReentrantLock[] locks = new ReentrantLock[LANES];
+
+  /**
+   * local channels by port.
+   */
+  private final ConcurrentHashMap<Integer, BsLocalChannel> localChannels = new ConcurrentHashMap<>();
+
+  /**
+   * allocation lock.
+   */
+  private final ReentrantLock allocationLock = new ReentrantLock();
+
+  /**
+   * never used slot.
+   */
+  private int highWater = 0;
+
+  /**
+   * freed slots.
+   */
+  private int[] freeSlots = new int[16];
+
+  /**
+   * freed slot count.
+   */
+  private int freeCount = 0;
+
+  /**
+   * remote count.
+   */
+  private final AtomicLong size = new AtomicLong();
+
+  /**
+   * constructor.
+   * @param capacity max remotes
+   * @param stateBytes user state bytes per remote
+   * @param shards index shard count
+   */
+  BsRemoteSlab(int capacity, int stateBytes, int shards) {
+    this.capacity = capacity;
+    this.stateBytes = (stateBytes + 7) & ~7;
+    this.recordBytes = STATE + this.stateBytes;
+    this.chunks = new ByteBuffer[(capacity + CHUNK_RECORDS - 1) >>> CHUNK_BITS];
+    this.stamps = new AtomicLongArray[chunks.length];
+    this.indexes = new ArrayList<>(shards);
+    for (int i = 0; i < shards; i++) {
+      this.indexes.add(new BsSlabIndex());
+    }
+    for (int i = 0; i < LANES; i++) {
+      this.lanes[i] = new BsMailbox();
+      this.locks[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * get shard no.
+   * @param key packed key
+   * @return shard no
+   */
+  private int shardOf(long key) {
+    int hash = Long.hashCode(key);
+    hash ^= (hash >>> 16);
+    return Math.floorMod(hash, indexes.size());
+  }
+
+  /**
+   * get shard count.
+   * @return shard count
+   */
+  int shards() {
+    return indexes.size();
+  }
+
+  /**
+   * get handle of remote, or register new one.
+   * @param remoteAddr remote address
+   * @param key packed key
+   * @param localChannel local channel
+   * @return handle, or null if slab is full
+   */
+  BsRemote generate(InetSocketAddress remoteAddr, long key, BsLocalChannel localChannel) {
+    BsSlabIndex index = indexes.get(shardOf(key));
+    while (true) {
+      int slot = index.get(key);
+      if (slot < 0) {
+        slot = index.insert(key, localChannel);
+        if (slot < 0) {
+          return null;
+        }
+      }
+      // slot may be removed and taken by other remote after lookup,
+      // so key is confirmed between two reads of same generation
+      long stamp = getStamp(slot);
+      if ((flagsOf(stamp) & IN_USE) != 0
+          && getKey(slot) == key
+          && generationOf(getStamp(slot)) == generationOf(stamp)) {
+        return new BsRemote(this, slot, generationOf(stamp), remoteAddr, localChannel);
+      }
+    }
+  }
+
+  /**
+   * get handle of slot.
+   * @param slot slot
+   * @return handle, or null if removed
+   */
+  private BsRemote handle(int slot) {
+    long key;
+    int generation;
+    int port;
+    ReentrantLock lock = lock(slot);
+    lock.lock();
+    try {
+      long stamp = getStamp(slot);
+      if ((flagsOf(stamp) & IN_USE) == 0) {
+        return null;
+      }
+      key = getKey(slot);
+      generation = generationOf(stamp);
+      port = getInt(slot, PORT);
+    } finally {
+      lock.unlock();
+    }
+    byte[] address = new byte[] {(byte) (key >>> 40), (byte) (key >>> 32), (byte) (key >>> 24), (byte) (key >>> 16)};
+    InetSocketAddress remoteAddr;
+    try {
+      remoteAddr = new InetSocketAddress(InetAddress.getByAddress(address), (int) (key & 0xffff));
+    } catch (UnknownHostException e) {
+      throw new IllegalStateException(e);
+    }
+    return new BsRemote(this, slot, generation, remoteAddr, localChannels.get(port));
+  }
+
+  /**
+   * walk remotes of shard with handle.
+   * @param no shard no
+   * @param action action
+   */
+  void forEach(int no, Consumer<BsRemote> action) {
+    indexes.get(no).forEach(slot -> {
+      BsRemote remote = handle(slot);
+      if (remote != null) {
+        action.accept(remote);
+      }
+    });
+  }
+
+  /**
+   * walk remotes in every shard with handle.
+   * @param action action
+   */
+  void forEach(Consumer<BsRemote> action) {
+    for (int i = 0; i < indexes.size(); i++) {
+      forEach(i, action);
+    }
+  }
+
+  /**
+   * remove remote.
+   * <pre>
+   *   generation is increased and flags are cleared at once with lock of slot,
+   *   so handles of removed remote become stale.
+   * </pre>
+   * @param remote handle
+   * @return if removed, true
+   */
+  boolean remove(BsRemote remote) {
+    int slot = remote.getSlot();
+    int generation = remote.getGeneration();
+    ReentrantLock lock = lock(slot);
+    lock.lock();
+    try {
+      if (!isCurrent(slot, generation)) {
+        return false;
+      }
+      long key = getKey(slot);
+      if (!indexes.get(shardOf(key)).remove(key, slot)) {
+        return false;
+      }
+      setStamp(slot, stamp(generation + 1, 0));
+    } finally {
+      lock.unlock();
+    }
+    allocationLock.lock();
+    try {
+      if (freeCount == freeSlots.length) {
+        freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+      }
+      freeSlots[freeCount++] = slot;
+    } finally {
+      allocationLock.unlock();
+    }
+    size.decrementAndGet();
+    return true;
+  }
+
+  /**
+   * allocate slot.
+   * @return slot, or -1 if full
+   */
+  private int allocate() {
+    allocationLock.lock();
+    try {
+      if (freeCount > 0) {
+        return freeSlots[--freeCount];
+      }
+      if (highWater >= capacity) {
+        return -1;
+      }
+      int slot = highWater;
+      int chunk = slot >>> CHUNK_BITS;
+      if (chunks[chunk] == null) {
+        int records = Math.min(CHUNK_RECORDS, capacity - (chunk << CHUNK_BITS));
+        chunks[chunk] = ByteBuffer.allocateDirect(records * recordBytes).order(ByteOrder.nativeOrder());
+        stamps[chunk] = new AtomicLongArray(records * 2);
+      }
+      highWater++;
+      return slot;
+    } finally {
+      allocationLock.unlock();
+    }
+  }
+
+  /**
+   * initialize record of new remote.
+   * <pre>
+   *   slot is free, so no handle touches record.
+   *   stamp is written last, and publishes other fields.
+   * </pre>
+   * @param slot slot
+   * @param key packed key
+   * @param localChannel local channel
+   */
+  private void initialize(int slot, long key, BsLocalChannel localChannel) {
+    int port = localChannel.getLocalAddr().getPort();
+    localChannels.putIfAbsent(port, localChannel);
+    putLong(slot, LIFE, BsDate.timestampMilliseconds() + DEFAULT_IDLE);
+    putInt(slot, IDLE, DEFAULT_IDLE);
+    putInt(slot, PORT, port);
+    for (int offset = 0; offset < stateBytes; offset += 8) {
+      putLong(slot, STATE + offset, 0);
+    }
+    setKey(slot, key);
+    setStamp(slot, stamp(generationOf(getStamp(slot)), IN_USE | ACTIVE | NEWEST));
+  }
+
+  /**
+   * is handle current.
+   * @param slot slot
+   * @param generation generation of handle
+   * @return if record is used by remote of handle, true
+   */
+  boolean isCurrent(int slot, int generation) {
+    long stamp = getStamp(slot);
+    return (flagsOf(stamp) & IN_USE) != 0 && generationOf(stamp) == generation;
+  }
+
+  /**
+   * get lane of slot.
+   * @param slot slot
+   * @return lane
+   */
+  BsMailbox lane(int slot) {
+    return lanes[slot & (LANES - 1)];
+  }
+
+  /**
+   * get lock of slot.
+   * @param slot slot
+   * @return lock
+   */
+  ReentrantLock lock(int slot) {
+    return locks[slot & (LANES - 1)];
+  }
+
+  /**
+   * is timeout.
+   * @param slot slot
+   * @param generation generation of handle
+   * @param now now timestamp milliseconds
+   * @return if timeout or removed, true
+   */
+  boolean isTimeout(int slot, int generation, long now) {
+    ReentrantLock lock = lock(slot);
+    lock.lock();
+    try {
+      if (!isCurrent(slot, generation)) {
+        return true;
+      }
+      return (getFlags(slot, generation) & NEWEST) == 0 && now > getLong(slot, LIFE);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * extend life from now by idle milliseconds.
+   * @param slot slot
+   * @param generation generation of handle
+   * @param now now timestamp milliseconds
+   */
+  void touch(int slot, int generation, long now) {
+    ReentrantLock lock = lock(slot);
+    lock.lock();
+    try {
+      if (setFlag(slot, generation, NEWEST, false)) {
+        putLong(slot, LIFE, now + getInt(slot, IDLE));
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * get life timestamp milliseconds.
+   * @param slot slot
+   * @param generation generation of handle
+   * @return life timestamp milliseconds, or 0 if removed
+   */
+  long getLife(int slot, int generation) {
+    ReentrantLock lock = lock(slot);
+    lock.lock();
+    try {
+      return isCurrent(slot, generation) ? getLong(slot, LIFE) : 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * set life timestamp milliseconds.
+   * @param slot slot
+   * @param generation generation of handle
+   * @param life life timestamp milliseconds
+   */
+  void setLife(int slot, int generation, long life) {
+    ReentrantLock lock = lock(slot);
+    lock.lock();
+    try {
+      if (isCurrent(slot, generation)) {
+        putLong(slot, LIFE, life);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * get idle milliseconds.
+   * @param slot slot
+   * @param generation generation of handle
+   * @return idle milliseconds, or 0 if removed
+   */
+  int getIdle(int slot, int generation) {
+    ReentrantLock lock = lock(slot);
+    lock.lock();
+    try {
+      return isCurrent(slot, generation) ? getInt(slot, IDLE) : 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * set idle milliseconds.
+   * @param slot slot
+   * @param generation generation of handle
+   * @param idle idle milliseconds
+   * @return if set, true
+   */
+  boolean setIdle(int slot, int generation, int idle) {
+    ReentrantLock lock = lock(slot);
+    lock.lock();
+    try {
+      if (!isCurrent(slot, generation)) {
+        return false;
+      }
+      putInt(slot, IDLE, idle);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * get flags.
+   * @param slot slot
+   * @param generation generation of handle
+   * @return flags, or 0 if removed
+   */
+  int getFlags(int slot, int generation) {
+    long stamp = getStamp(slot);
+    return generationOf(stamp) == generation ? flagsOf(stamp) : 0;
+  }
+
+  /**
+   * set or clear flag.
+   * @param slot slot
+   * @param generation generation of handle
+   * @param flag flag
+   * @param on if set, true
+   * @return if record is current, true
+   */
+  boolean setFlag(int slot, int generation, int flag, boolean on) {
+    AtomicLongArray chunk = stamps[slot >>> CHUNK_BITS];
+    int i = stampIndex(slot) + 1;
+    while (true) {
+      long stamp = chunk.get(i);
+      if ((flagsOf(stamp) & IN_USE) == 0 || generationOf(stamp) != generation) {
+        return false;
+      }
+      int flags = on ? flagsOf(stamp) | flag : flagsOf(stamp) & ~flag;
+      if (chunk.compareAndSet(i, stamp, stamp(generation, flags))) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * get user state.
+   * @param slot slot
+   * @param generation generation of handle
+   * @param offset offset in user state, multiple of 8
+   * @return value, or 0 if removed
+   */
+  long getState(int slot, int generation, int offset) {
+    checkState(offset);
+    ReentrantLock lock = lock(slot);
+    lock.lock();
+    try {
+      return isCurrent(slot, generation) ? getLong(slot, STATE + offset) : 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * set user state.
+   * @param slot slot
+   * @param generation generation of handle
+   * @param offset offset in user state, multiple of 8
+   * @param value value
+   */
+  void setState(int slot, int generation, int offset, long value) {
+    checkState(offset);
+    ReentrantLock lock = lock(slot);
+    lock.lock();
+    try {
+      if (isCurrent(slot, generation)) {
+        putLong(slot, STATE + offset, value);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * check offset of user state.
+   * @param offset offset in user state
+   */
+  private void checkState(int offset) {
+    if (offset < 0 || offset + 8 > stateBytes) {
+      throw new IllegalStateException(String.format("state offset(%s) is over state bytes(%s)", offset, stateBytes));
+    }
+  }
+
+  /**
+   * get remote count.
+   * @return remote count
+   */
+  long size() {
+    return size.get();
+  }
+
+  /**
+   * get allocated off-heap bytes.
+   * @return bytes
+   */
+  long offHeapBytes() {
+    allocationLock.lock();
+    try {
+      long bytes = 0;
+      for (ByteBuffer chunk : chunks) {
+        if (chunk != null) {
+          bytes += chunk.capacity();
+        }
+      }
+      return bytes;
+    } finally {
+      allocationLock.unlock();
+    }
+  }
+
+  /**
+   * get index of key in stamps of chunk, stamp is next.
+   * @param slot slot
+   * @return index
+   */
+  private static int stampIndex(int slot) {
+    return (slot & (CHUNK_RECORDS - 1)) << 1;
+  }
+
+  /**
+   * get packed key of record.
+   * @param slot slot
+   * @return packed key
+   */
+  private long getKey(int slot) {
+    return stamps[slot >>> CHUNK_BITS].get(stampIndex(slot));
+  }
+
+  /**
+   * set packed key of record.
+   * @param slot slot
+   * @param key packed key
+   */
+  private void setKey(int slot, long key) {
+    stamps[slot >>> CHUNK_BITS].set(stampIndex(slot), key);
+  }
+
+  /**
+   * get stamp of record, generation and flags.
+   * @param slot slot
+   * @return stamp
+   */
+  private long getStamp(int slot) {
+    return stamps[slot >>> CHUNK_BITS].get(stampIndex(slot) + 1);
+  }
+
+  /**
+   * set stamp of record.
+   * @param slot slot
+   * @param stamp stamp
+   */
+  private void setStamp(int slot, long stamp) {
+    stamps[slot >>> CHUNK_BITS].set(stampIndex(slot) + 1, stamp);
+  }
+
+  /**
+   * pack stamp.
+   * @param generation generation
+   * @param flags flags
+   * @return stamp
+   */
+  private static long stamp(int generation, int flags) {
+    return ((long) generation << 32) | (flags & 0xffffffffL);
+  }
+
+  /**
+   * get generation of stamp.
+   * @param stamp stamp
+   * @return generation
+   */
+  private static int generationOf(long stamp) {
+    return (int) (stamp >>> 32);
+  }
+
+  /**
+   * get flags of stamp.
+   * @param stamp stamp
+   * @return flags
+   */
+  private static int flagsOf(long stamp) {
+    return (int) stamp;
+  }
+
+  /**
+   * get long of record.
+   * @param slot slot
+   * @param offset offset in record
+   * @return value
+   */
+  private long getLong(int slot, int offset) {
+    return chunks[slot >>> CHUNK_BITS].getLong((slot & (CHUNK_RECORDS - 1)) * recordBytes + offset);
+  }
+
+  /**
+   * put long of record.
+   * @param slot slot
+   * @param offset offset in record
+   * @param value value
+   */
+  private void putLong(int slot, int offset, long value) {
+    chunks[slot >>> CHUNK_BITS].putLong((slot & (CHUNK_RECORDS - 1)) * recordBytes + offset, value);
+  }
+
+  /**
+   * get int of record.
+   * @param slot slot
+   * @param offset offset in record
+   * @return value
+   */
+  private int getInt(int slot, int offset) {
+    return chunks[slot >>> CHUNK_BITS].getInt((slot & (CHUNK_RECORDS - 1)) * recordBytes + offset);
+  }
+
+  /**
+   * put int of record.
+   * @param slot slot
+   * @param offset offset in record
+   * @param value value
+   */
+  private void putInt(int slot, int offset, int value) {
+    chunks[slot >>> CHUNK_BITS].putInt((slot & (CHUNK_RECORDS - 1)) * recordBytes + offset, value);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "capacity:%s, recordBytes:%s, size:%s, offHeapBytes:%s",
+        capacity,
+        recordBytes,
+        size.get(),
+        offHeapBytes());
+  }
+
+  /**
+   * index of shard, packed key to slot.
+   * <pre>
+   *   open addressing like BsRemoteTable.
+   *   lookup takes no lock, and caller confirms key of record.
+   * </pre>
+   */
+  private class BsSlabIndex {
+
+    /**
+     * keys, 0 is empty and -1 is removed.
+     */
+    private volatile AtomicLongArray keys = new AtomicLongArray(16);
+
+    /**
+     * slots.
+     */
+    private volatile AtomicIntegerArray slots = new AtomicIntegerArray(16);
+
+    /**
+     * index lock.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * used slot count, remotes and removed.
+     */
+    private int used = 0;
+
+    /**
+     * remote count.
+     */
+    private int count = 0;
+
+    /**
+     * get first probe index.
+     * @param key packed key
+     * @param mask mask
+     * @return index
+     */
+    private int probe(long key, int mask) {
+      // murmur3 finalizer
+      key ^= key >>> 33;
+      key *= 0xff51afd7ed558ccdL;
+      key ^= key >>> 33;
+      return (int) key & mask;
+    }
+
+    /**
+     * get slot.
+     * @param key packed key
+     * @return slot, or -1
+     */
+    private int get(long key) {
+      AtomicIntegerArray s = slots;
+      AtomicLongArray k = keys;
+      if (s.length() != k.length()) {
+        // resizing
+        return -1;
+      }
+      int mask = k.length() - 1;
+      int i = probe(key, mask);
+      while (true) {
+        long current = k.get(i);
+        if (current == 0) {
+          return -1;
+        }
+        if (current == key) {
+          return s.get(i);
+        }
+        i = (i + 1) & mask;
+      }
+    }
+
+    /**
+     * insert new remote, or get registered one.
+     * @param key packed key
+     * @param localChannel local channel
+     * @return slot, or -1 if slab is full
+     */
+    private int insert(long key, BsLocalChannel localChannel) {
+      lock.lock();
+      try {
+        int mask = keys.length() - 1;
+        int i = probe(key, mask);
+        int reuse = -1;
+        while (true) {
+          long current = keys.get(i);
+          if (current == 0) {
+            break;
+          }
+          if (current == key) {
+            return slots.get(i);
+          }
+          if (current == -1 && reuse < 0) {
+            reuse = i;
+          }
+          i = (i + 1) & mask;
+        }
+
+        int slot = allocate();
+        if (slot < 0) {
+          return -1;
+        }
+        initialize(slot, key, localChannel);
+        if (reuse < 0 && (used + 1) * 2 > keys.length()) {
+          resize();
+          mask = keys.length() - 1;
+          i = probe(key, mask);
+          while (keys.get(i) != 0) {
+            i = (i + 1) & mask;
+          }
+        } else if (reuse >= 0) {
+          i = reuse;
+        }
+        if (keys.get(i) == 0) {
+          used++;
+        }
+        slots.set(i, slot);
+        keys.set(i, key);
+        count++;
+        size.incrementAndGet();
+        BsLogger.debug(() -> String.format("generate remote of slot:%s", slot));
+        return slot;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * remove remote.
+     * @param key packed key
+     * @param slot slot
+     * @return if removed, true
+     */
+    private boolean remove(long key, int slot) {
+      lock.lock();
+      try {
+        int mask = keys.length() - 1;
+        int i = probe(key, mask);
+        while (true) {
+          long current = keys.get(i);
+          if (current == 0) {
+            return false;
+          }
+          if (current == key) {
+            if (slots.get(i) != slot) {
+              return false;
+            }
+            keys.set(i, -1);
+            slots.set(i, -1);
+            count--;
+            return true;
+          }
+          i = (i + 1) & mask;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * resize with index lock.
+     * <pre>
+     *   slots are published before keys, so reader sees same length or misses.
+     * </pre>
+     */
+    private void resize() {
+      AtomicLongArray oldKeys = keys;
+      AtomicIntegerArray oldSlots = slots;
+      int length = oldKeys.length();
+      if ((count + 1) * 4 > length) {
+        length <<= 1;
+      }
+      AtomicLongArray newKeys = new AtomicLongArray(length);
+      AtomicIntegerArray newSlots = new AtomicIntegerArray(length);
+      int mask = length - 1;
+      for (int j = 0; j < oldKeys.length(); j++) {
+        long key = oldKeys.get(j);
+        if (key == 0 || key == -1) {
+          continue;
+        }
+        int i = probe(key, mask);
+        while (newKeys.get(i) != 0) {
+          i = (i + 1) & mask;
+        }
+        newSlots.set(i, oldSlots.get(j));
+        newKeys.set(i, key);
+      }
+      used = count;
+      slots = newSlots;
+      keys = newKeys;
+    }
+
+    /**
+     * walk slots.
+     * <pre>
+     *   remotes inserted or removed while walking may be missed.
+     * </pre>
+     * @param action action
+     */
+    private void forEach(IntConsumer action) {
+      AtomicLongArray k = keys;
+      AtomicIntegerArray s = slots;
+      int length = Math.min(k.length(), s.length());
+      for (int i = 0; i < length; i++) {
+        long key = k.get(i);
+        if (key == 0 || key == -1) {
+          continue;
+        }
+        int slot = s.get(i);
+        if (slot >= 0) {
+          action.accept(slot);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,308 @@
+package com.walksocket.bs;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * remote table of ipv4 peers.
+ * <pre>
+ *   keyed by packed long of 32 bits address and 16 bits port,
+ *   open addressing with linear probing on primitive key array.
+ *   key is packed from received address without allocation,
+ *   and there is no entry object per remote.
+ *   lookup takes no lock, insert and remove are guarded by table lock.
+ *   value is written before key, and removed key becomes tombstone,
+ *   so reader sees matched remote, or misses and falls back to locked insert.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsRemoteTable {
+
+  /**
+   * empty key.
+   * <pre>
+   *   0.0.0.0:0 never sends datagram.
+   * </pre>
+   */
+  private static final long EMPTY = 0L;
+
+  /**
+   * removed key.
+   * <pre>
+   *   packed key is 48 bits, never negative.
+   * </pre>
+   */
+  private static final long TOMBSTONE = -1L;
+
+  /**
+   * initial capacity.
+   */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * slots, replaced on resize.
+   */
+  private volatile BsSlots slots = new BsSlots(INITIAL_CAPACITY);
+
+  /**
+   * table lock.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * remote count.
+   */
+  private int size = 0;
+
+  /**
+   * used slot count, remotes and tombstones.
+   */
+  private int used = 0;
+
+  /**
+   * pack ipv4 address.
+   * <pre>
+   *   Inet4Address#hashCode is its address, so no byte array is allocated.
+   * </pre>
+   * @param remoteAddr remote address
+   * @return packed key, or -1 if not ipv4
+   */
+  static long pack(InetSocketAddress remoteAddr) {
+    InetAddress address = remoteAddr.getAddress();
+    if (!(address instanceof Inet4Address)) {
+      return -1L;
+    }
+    return ((address.hashCode() & 0xffffffffL) << 16) | remoteAddr.getPort();
+  }
+
+  /**
+   * get remote.
+   * @param key packed key
+   * @return remote, or null
+   */
+  BsRemote get(long key) {
+    BsSlots s = slots;
+    int i = s.index(key);
+    while (true) {
+      long k = s.keys.get(i);
+      if (k == EMPTY) {
+        return null;
+      }
+      if (k == key) {
+        // slot may be reused while reading, so confirm remote
+        BsRemote remote = s.values.get(i);
+        if (remote != null && pack(remote.getRemoteAddr()) == key) {
+          return remote;
+        }
+        return null;
+      }
+      i = (i + 1) & s.mask;
+    }
+  }
+
+  /**
+   * get remote, or insert new one.
+   * @param key packed key
+   * @param remoteAddr remote address
+   * @param factory factory of new remote, invoked with table lock
+   * @return registered remote
+   */
+  BsRemote computeIfAbsent(long key, InetSocketAddress remoteAddr, Function<InetSocketAddress, BsRemote> factory) {
+    BsRemote remote = get(key);
+    if (remote != null) {
+      return remote;
+    }
+
+    lock.lock();
+    try {
+      BsSlots s = slots;
+      int i = s.index(key);
+      int reuse = -1;
+      while (true) {
+        long k = s.keys.get(i);
+        if (k == EMPTY) {
+          break;
+        }
+        if (k == key) {
+          return s.values.get(i);
+        }
+        if (k == TOMBSTONE && reuse < 0) {
+          reuse = i;
+        }
+        i = (i + 1) & s.mask;
+      }
+
+      remote = factory.apply(remoteAddr);
+      if (reuse < 0 && (used + 1) * 2 > s.keys.length()) {
+        // resize, and probe again on new slots
+        s = resize();
+        i = s.index(key);
+        while (s.keys.get(i) != EMPTY) {
+          i = (i + 1) & s.mask;
+        }
+      } else if (reuse >= 0) {
+        i = reuse;
+      }
+      if (s.keys.get(i) == EMPTY) {
+        used++;
+      }
+      s.values.set(i, remote);
+      s.keys.set(i, key);
+      size++;
+      return remote;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * remove remote.
+   * @param key packed key
+   * @param remote remote
+   * @return if removed, true
+   */
+  boolean remove(long key, BsRemote remote) {
+    lock.lock();
+    try {
+      BsSlots s = slots;
+      int i = s.index(key);
+      while (true) {
+        long k = s.keys.get(i);
+        if (k == EMPTY) {
+          return false;
+        }
+        if (k == key) {
+          if (s.values.get(i) != remote) {
+            return false;
+          }
+          s.keys.set(i, TOMBSTONE);
+          s.values.set(i, null);
+          size--;
+          return true;
+        }
+        i = (i + 1) & s.mask;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * resize.
+   * <pre>
+   *   call with table lock.
+   *   tombstones are dropped, and capacity is doubled only if remotes need it.
+   * </pre>
+   * @return new slots
+   */
+  private BsSlots resize() {
+    BsSlots old = slots;
+    int capacity = old.keys.length();
+    if ((size + 1) * 4 > capacity) {
+      capacity <<= 1;
+    }
+    BsSlots s = new BsSlots(capacity);
+    for (int j = 0; j < old.keys.length(); j++) {
+      long k = old.keys.get(j);
+      if (k == EMPTY || k == TOMBSTONE) {
+        continue;
+      }
+      int i = s.index(k);
+      while (s.keys.get(i) != EMPTY) {
+        i = (i + 1) & s.mask;
+      }
+      s.values.set(i, old.values.get(j));
+      s.keys.set(i, k);
+    }
+    used = size;
+    slots = s;
+    return s;
+  }
+
+  /**
+   * walk remotes.
+   * <pre>
+   *   remotes inserted or removed while walking may be missed.
+   * </pre>
+   * @param action action
+   */
+  void forEach(Consumer<BsRemote> action) {
+    BsSlots s = slots;
+    for (int i = 0; i < s.values.length(); i++) {
+      BsRemote remote = s.values.get(i);
+      if (remote != null) {
+        action.accept(remote);
+      }
+    }
+  }
+
+  /**
+   * get remote count.
+   * @return remote count
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * get capacity.
+   * @return capacity
+   */
+  int capacity() {
+    return slots.keys.length();
+  }
+
+  /**
+   * key and value arrays.
+   */
+  private static class BsSlots {
+
+    /**
+     * keys.
+     */
+    private final AtomicLongArray keys;
+
+    /**
+     * values.
+     */
+    private final AtomicReferenceArray<BsRemote> values;
+
+    /**
+     * index mask.
+     */
+    private final int mask;
+
+    /**
+     * constructor.
+     * @param capacity power of two
+     */
+    private BsSlots(int capacity) {
+      this.keys = new AtomicLongArray(capacity);
+      this.values = new AtomicReferenceArray<>(capacity);
+      this.mask = capacity - 1;
+    }
+
+    /**
+     * get first probe index.
+     * @param key packed key
+     * @return index
+     */
+    private int index(long key) {
+      // murmur3 finalizer
+      key ^= key >>> 33;
+      key *= 0xff51afd7ed558ccdL;
+      key ^= key >>> 33;
+      key *= 0xc4ceb9fe1a85ec53L;
+      key ^= key >>> 33;
+      return (int) key & mask;
+    }
+  }
+}
@@ -0,0 +1,578 @@
+package com.walksocket.bs;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * selector loop.
+ * <pre>
+ *   shared by server and client,
+ *   receives datagrams on registered channels and dispatches callbacks.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsSelector implements Runnable {
+
+  /**
+   * name for logging, server or client.
+   */
+  private final String name;
+
+  /**
+   * nonblocking channel seletor.
+   */
+  private final Selector selector;
+
+  /**
+   * locals.
+   */
+  private final Map<DatagramChannel, BsLocal> localMaps;
+
+  /**
+   * remote manager.
+   */
+  private final BsRemoteManager manager;
+
+  /**
+   * callback dispatcher.
+   */
+  private final BsDispatcher dispatcher;
+
+  /**
+   * read buffer size.
+   */
+  private final int readBufferSize;
+
+  /**
+   * direct buffer pool.
+   * <pre>
+   *   if null, receive into heap buffer and copy to byte array.
+   * </pre>
+   */
+  private final BsBufferPool bufferPool;
+
+  /**
+   * bounded ingress.
+   */
+  private final BsIngress ingress;
+
+  /**
+   * local channels whose outbound queue is flushed by this selector.
+   * <pre>
+   *   if sharded, only selector owning first channel flushes.
+   * </pre>
+   */
+  private final List<BsLocalChannel> flushables = new ArrayList<>();
+
+  /**
+   * paused read by ingress.
+   * <pre>
+   *   only touched by selector thread.
+   * </pre>
+   */
+  private boolean paused = false;
+
+  /**
+   * select timeout while paused.
+   * <pre>
+   *   resume is triggered by wakeup, and timeout is safety net.
+   * </pre>
+   */
+  private static final long PAUSED_SELECT_MILLISECONDS = 10;
+
+  /**
+   * max datagrams received from one ready channel per select.
+   * <pre>
+   *   if 1, receive once and go back to select.
+   *   if greater, drain channel until empty or limit,
+   *   and dispatch whole batch at once.
+   *   limit keeps other listening ports from starving.
+   * </pre>
+   */
+  private final int receiveBatchSize;
+
+  /**
+   * receive buffers passed to transport.
+   * <pre>
+   *   if direct buffer pool, slot is filled from pool and handed to callback.
+   *   otherwise, slot is direct scratch reused after copy to byte array.
+   * </pre>
+   */
+  private final ByteBuffer[] slots;
+
+  /**
+   * senders set by transport.
+   */
+  private final InetSocketAddress[] remoteAddrs;
+
+  /**
+   * rate limiter, or null.
+   * <pre>
+   *   dropped datagram leaves its slot to next receive,
+   *   and no remote is generated for it.
+   * </pre>
+   */
+  private final BsRateLimiter rateLimiter;
+
+  /**
+   * inbound chain of pipeline, or null.
+   */
+  private final BsHandlerContext[] inbound;
+
+  /**
+   * receiver of message passed by last handler.
+   */
+  private final BiConsumer<BsRemote, Object> sink = this::deliver;
+
+  /**
+   * received datagram going through pipeline.
+   */
+  private ByteBuffer holding;
+
+  /**
+   * received nano time of holding datagram.
+   */
+  private long holdingNanos;
+
+  /**
+   * holding datagram is handed to callback.
+   */
+  private boolean holdingOwned;
+
+  /**
+   * first incoming of receiving batch.
+   * <pre>
+   *   only touched by selector thread.
+   * </pre>
+   */
+  private BsIncoming first;
+
+  /**
+   * incomings of receiving batch, if more than one.
+   */
+  private List<BsIncoming> batch;
+
+  /**
+   * cidr table, or null.
+   * <pre>
+   *   swapped by server at runtime, and read once per receive.
+   * </pre>
+   */
+  private volatile BsCidrTable cidrTable;
+
+  /**
+   * received datagram count.
+   */
+  private final AtomicLong receivedCount = new AtomicLong(0);
+
+  /**
+   * received batch count.
+   */
+  private final AtomicLong receivedBatchCount = new AtomicLong(0);
+
+  /**
+   * batch count reached limit.
+   * <pre>
+   *   channel still had datagrams, and yielded to other channels.
+   * </pre>
+   */
+  private final AtomicLong receivedFullBatchCount = new AtomicLong(0);
+
+  /**
+   * constructor.
+   * @param name name for logging
+   * @param localMaps locals
+   * @param manager remote manager
+   * @param dispatcher callback dispatcher
+   * @param readBufferSize read buffer size
+   * @param bufferPool direct buffer pool, or null
+   * @param receiveBatchSize max datagrams received from one ready channel per select
+   * @param rateLimiter rate limiter, or null
+   * @param pipeline pipeline, or null
+   * @throws IOException selector exception
+   */
+  BsSelector(
+      String name,
+      Map<DatagramChannel, BsLocal> localMaps,
+      BsRemoteManager manager,
+      BsDispatcher dispatcher,
+      int readBufferSize,
+      BsBufferPool bufferPool,
+      int receiveBatchSize,
+      BsRateLimiter rateLimiter,
+      BsPipeline pipeline) throws IOException {
+    this.name = name;
+    this.localMaps = localMaps;
+    this.manager = manager;
+    this.dispatcher = dispatcher;
+    this.ingress = dispatcher.getIngress();
+    this.readBufferSize = readBufferSize;
+    this.bufferPool = bufferPool;
+    this.receiveBatchSize = receiveBatchSize;
+    this.rateLimiter = rateLimiter;
+    this.inbound = pipeline != null ? pipeline.bind(sink) : null;
+    this.slots = new ByteBuffer[Math.max(1, Math.min(receiveBatchSize, BsTransport.VLEN))];
+    this.remoteAddrs = new InetSocketAddress[slots.length];
+    if (bufferPool == null) {
+      for (int i = 0; i < slots.length; i++) {
+        slots[i] = ByteBuffer.allocateDirect(readBufferSize);
+      }
+    }
+    this.selector = Selector.open();
+    for (DatagramChannel channel : localMaps.keySet()) {
+      if (!channel.isRegistered()) {
+        channel.register(selector, SelectionKey.OP_READ);
+      }
+    }
+    for (Map.Entry<DatagramChannel, BsLocal> entry : localMaps.entrySet()) {
+      BsLocalChannel localChannel = entry.getValue().getLocalChannel();
+      if (entry.getKey() == localChannel.getChannel()) {
+        flushables.add(localChannel);
+        localChannel.attach(this);
+      }
+    }
+  }
+
+  /**
+   * set cidr table.
+   * @param cidrTable cidr table, or null
+   */
+  void setCidrTable(BsCidrTable cidrTable) {
+    this.cidrTable = cidrTable;
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      try {
+        interestWrite();
+        int selected = paused ? selector.select(PAUSED_SELECT_MILLISECONDS) : selector.select();
+        if (paused && ingress.canResume()) {
+          resume();
+        }
+        if (selected > 0) {
+          Set<SelectionKey> keys = selector.selectedKeys();
+          for(Iterator<SelectionKey> it = keys.iterator(); it.hasNext();) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (key.isValid() && key.isWritable()) {
+              flush(key);
+            }
+            if (key.isValid() && key.isReadable()) {
+              receive((DatagramChannel) key.channel());
+            }
+          }
+        }
+      } catch (IOException e) {
+        BsLogger.error(e);
+      }
+    }
+  }
+
+  /**
+   * add OP_WRITE to channels which have flush request.
+   */
+  private void interestWrite() {
+    for (BsLocalChannel localChannel : flushables) {
+      if (localChannel.getOutbound().takeFlushRequest()) {
+        SelectionKey key = localChannel.getChannel().keyFor(selector);
+        if (key != null && key.isValid()) {
+          key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+      }
+    }
+  }
+
+  /**
+   * flush outbound queue until empty or socket send buffer is full.
+   * <pre>
+   *   if empty, OP_WRITE is removed.
+   *   offers after that request flush again, and OP_WRITE is added on next loop.
+   * </pre>
+   * @param key writable key
+   */
+  private void flush(SelectionKey key) {
+    BsLocal local = localMaps.get((DatagramChannel) key.channel());
+    if (local == null) {
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+      return;
+    }
+    BsLocalChannel localChannel = local.getLocalChannel();
+    if (localChannel.getOutbound().flush(localChannel.getChannel(), localChannel.getTransport())) {
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+  }
+
+  /**
+   * receive datagrams until empty or batch limit.
+   * @param localChannel ready channel
+   * @throws IOException receive exception
+   */
+  private void receive(DatagramChannel localChannel) throws IOException {
+    // confirm which local binding port was received
+    BsLocal local = localMaps.get(localChannel);
+    if (local == null) {
+      BsLogger.error(localChannel);
+      return;
+    }
+
+    // drain
+    BsTransport transport = local.getLocalChannel().getTransport();
+    BsCidrTable table = cidrTable;
+    int size = 0;
+    int drained = 0;
+    int denied = 0;
+    long bytes = 0;
+    try {
+      while (drained < receiveBatchSize) {
+        if (ingress.shouldPause()) {
+          pause();
+          break;
+        }
+        int max = Math.min(slots.length, receiveBatchSize - drained);
+        for (int i = 0; i < max; i++) {
+          if (slots[i] == null) {
+            slots[i] = bufferPool.acquire();
+          }
+          slots[i].clear();
+        }
+        int received = transport.receive(localChannel, slots, remoteAddrs, max);
+        long receivedNanos = received > 0 ? System.nanoTime() : 0;
+        drained += received;
+        for (int i = 0; i < received; i++) {
+          if (table != null && !table.allows(remoteAddrs[i].getAddress())) {
+            denied++;
+            continue;
+          }
+          if (rateLimiter != null && !rateLimiter.admit(remoteAddrs[i], receivedNanos)) {
+            continue;
+          }
+          bytes += slots[i].position();
+          hold(i, local, receivedNanos);
+          size++;
+        }
+        if (received < max) {
+          break;
+        }
+      }
+    } finally {
+      // execute callback
+      if (denied > 0) {
+        local.getLocalChannel().getMetrics().receiveDenied(denied);
+      }
+      if (size > 0) {
+        receivedCount.addAndGet(size);
+        local.getLocalChannel().getMetrics().received(size, bytes);
+        receivedBatchCount.incrementAndGet();
+        if (drained == receiveBatchSize && receiveBatchSize > 1) {
+          receivedFullBatchCount.incrementAndGet();
+        }
+      }
+      if (batch != null) {
+        dispatcher.dispatch(batch);
+      } else if (first != null) {
+        dispatcher.dispatch(first);
+      }
+      first = null;
+      batch = null;
+    }
+  }
+
+  /**
+   * hold received datagram in slot.
+   * <pre>
+   *   if pipeline, datagram goes through inbound handlers,
+   *   and messages passed by last handler are held by deliver.
+   * </pre>
+   * @param i slot index
+   * @param local local
+   * @param receivedNanos received nano time
+   */
+  private void hold(int i, BsLocal local, long receivedNanos) {
+    ByteBuffer buffer = slots[i];
+    InetSocketAddress remoteAddr = remoteAddrs[i];
+    BsLogger.debug(() -> String.format(
+        "%s received from %s:%s at %s",
+        name,
+        remoteAddr.getHostString(),
+        remoteAddr.getPort(),
+        local.getLocalChannel().getLocalAddr().getPort()));
+
+    // generate remote
+    BsRemote remote = manager.generate(remoteAddr, local.getLocalChannel());
+
+    // hold message
+    buffer.flip();
+    if (inbound != null) {
+      holding = buffer;
+      holdingNanos = receivedNanos;
+      holdingOwned = false;
+      try {
+        BsPipeline.inbound(inbound, sink, remote, buffer);
+      } catch (RuntimeException e) {
+        BsLogger.error(e);
+      } finally {
+        if (holdingOwned) {
+          slots[i] = null;
+        }
+        holding = null;
+      }
+      return;
+    }
+    if (bufferPool != null) {
+      // pooled buffer is owned by incoming, slot is filled again on next receive
+      slots[i] = null;
+      add(new BsIncoming(remote, buffer, receivedNanos));
+      return;
+    }
+    byte[] data = new byte[buffer.remaining()];
+    buffer.get(data);
+    add(new BsIncoming(remote, data, receivedNanos));
+  }
+
+  /**
+   * hold message passed by last handler of pipeline.
+   * <pre>
+   *   received pooled buffer itself is handed to callback without copy,
+   *   other ByteBuffer is copied because it may be view of slot reused on next receive.
+   * </pre>
+   * @param remote remote
+   * @param message message
+   */
+  private void deliver(BsRemote remote, Object message) {
+    long receivedNanos = holding != null ? holdingNanos : System.nanoTime();
+    if (message == holding && bufferPool != null && !holdingOwned) {
+      holdingOwned = true;
+      add(new BsIncoming(remote, holding, receivedNanos));
+    } else if (message instanceof ByteBuffer) {
+      ByteBuffer buffer = ((ByteBuffer) message).duplicate();
+      byte[] data = new byte[buffer.remaining()];
+      buffer.get(data);
+      add(new BsIncoming(remote, data, receivedNanos));
+    } else if (message instanceof byte[]) {
+      add(new BsIncoming(remote, (byte[]) message, receivedNanos));
+    } else {
+      add(new BsIncoming(remote, message, receivedNanos));
+    }
+  }
+
+  /**
+   * add incoming to receiving batch.
+   * @param incoming incoming
+   */
+  private void add(BsIncoming incoming) {
+    if (first == null) {
+      first = incoming;
+    } else {
+      if (batch == null) {
+        batch = new ArrayList<>();
+        batch.add(first);
+      }
+      batch.add(incoming);
+    }
+  }
+
+
+  /**
+   * pause read.
+   * <pre>
+   *   datagrams are left in kernel socket buffer.
+   * </pre>
+   */
+  private void pause() {
+    if (paused) {
+      return;
+    }
+    for (SelectionKey key : selector.keys()) {
+      if (key.isValid()) {
+        // keep OP_WRITE, outbound queue is flushed while paused
+        key.interestOps(key.interestOps() & SelectionKey.OP_WRITE);
+      }
+    }
+    paused = true;
+    ingress.paused(this);
+    BsLogger.debug(() -> String.format("%s paused read by ingress(%s)", name, ingress));
+  }
+
+  /**
+   * resume read.
+   */
+  private void resume() {
+    for (SelectionKey key : selector.keys()) {
+      if (key.isValid()) {
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+      }
+    }
+    paused = false;
+    ingress.resumed(this);
+    BsLogger.debug(() -> String.format("%s resumed read by ingress(%s)", name, ingress));
+  }
+
+  /**
+   * wakeup selector.
+   */
+  void wakeup() {
+    selector.wakeup();
+  }
+
+  /**
+   * close selector.
+   */
+  void close() {
+    for (BsLocalChannel localChannel : flushables) {
+      localChannel.attach(null);
+    }
+    if (selector.isOpen()) {
+      try {
+        selector.close();
+      } catch (IOException e) {
+        BsLogger.error(e);
+      }
+    }
+  }
+
+  /**
+   * get received datagram count.
+   * @return received datagram count
+   */
+  long getReceivedCount() {
+    return receivedCount.get();
+  }
+
+  /**
+   * get received batch count.
+   * @return received batch count
+   */
+  long getReceivedBatchCount() {
+    return receivedBatchCount.get();
+  }
+
+  /**
+   * get batch count reached limit.
+   * @return batch count reached limit
+   */
+  long getReceivedFullBatchCount() {
+    return receivedFullBatchCount.get();
+  }
+
+  /**
+   * is open.
+   * @return if selector is open, true
+   */
+  boolean isOpen() {
+    return selector.isOpen();
+  }
+}
@@ -0,0 +1,24 @@
+package com.walksocket.bs;
+
+/**
+ * send status.
+ * <pre>
+ *   result of BsRemote#send.
+ *   while datagram is queued for socket, future is not completed.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public enum BsSendStatus {
+
+  /**
+   * written to socket.
+   */
+  WRITTEN,
+
+  /**
+   * dropped, send queue was full or channel was closed.
+   */
+  DROPPED,
+}
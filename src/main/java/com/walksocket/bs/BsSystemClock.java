@@ -0,0 +1,34 @@
+package com.walksocket.bs;
+
+/**
+ * system clock.
+ * <pre>
+ *   System#currentTimeMillis on every read, default.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+public class BsSystemClock implements BsClock {
+
+  /**
+   * instance.
+   */
+  public static final BsSystemClock INSTANCE = new BsSystemClock();
+
+  /**
+   * constructor.
+   */
+  private BsSystemClock() {
+  }
+
+  @Override
+  public long millis() {
+    return System.currentTimeMillis();
+  }
+
+  @Override
+  public String toString() {
+    return "system";
+  }
+}
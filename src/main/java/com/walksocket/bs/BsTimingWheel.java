@@ -0,0 +1,277 @@
+package com.walksocket.bs;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * hierarchical timing wheel of remote idle timeouts.
+ * <pre>
+ *   one wheel per remote manager shard, guarded by shard lock.
+ *   remotes are linked into slots intrusively, so scheduling allocates nothing.
+ *   new remotes are added through queue without lock.
+ *   deadline is refreshed lazily.
+ *   updateTimeout only extends lifetime of remote, and when scheduled tick comes,
+ *   remote which is not timeout yet is scheduled again to its current lifetime.
+ *   only shortened deadline, by escape or setIdleMilliSeconds, is rescheduled
+ *   through refresh queue without lock.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsTimingWheel {
+
+  /**
+   * slot bits per level.
+   */
+  private static final int BITS = 6;
+
+  /**
+   * slots per level.
+   */
+  private static final int SLOTS = 1 << BITS;
+
+  /**
+   * mask of slot index.
+   */
+  private static final int MASK = SLOTS - 1;
+
+  /**
+   * levels.
+   * <pre>
+   *   covers 64^4 ticks, farther deadline is clamped and scheduled again on expiration.
+   * </pre>
+   */
+  private static final int LEVELS = 4;
+
+  /**
+   * max ticks from current tick.
+   */
+  private static final long MAX_DELTA = (1L << (BITS * LEVELS)) - 1;
+
+  /**
+   * tick milliseconds.
+   */
+  private final long tickMilliseconds;
+
+  /**
+   * start timestamp milliseconds.
+   */
+  private final long startMilliseconds;
+
+  /**
+   * slots, head of linked remotes.
+   */
+  private final BsRemote[][] slots = new BsRemote[LEVELS][SLOTS];
+
+  /**
+   * current tick.
+   */
+  private long currentTick = 0;
+
+  /**
+   * scheduled remote count.
+   */
+  private int size = 0;
+
+  /**
+   * remotes added without lock.
+   */
+  private final Queue<BsRemote> additions = new ConcurrentLinkedQueue<>();
+
+  /**
+   * remotes whose deadline was shortened.
+   */
+  private final Queue<BsRemote> refreshes = new ConcurrentLinkedQueue<>();
+
+  /**
+   * constructor.
+   * @param tickMilliseconds tick milliseconds
+   * @param startMilliseconds start timestamp milliseconds
+   */
+  BsTimingWheel(long tickMilliseconds, long startMilliseconds) {
+    this.tickMilliseconds = Math.max(1, tickMilliseconds);
+    this.startMilliseconds = startMilliseconds;
+  }
+
+  /**
+   * schedule remote.
+   * <pre>
+   *   if already scheduled, moved.
+   *   call with shard lock.
+   * </pre>
+   * @param remote remote
+   * @param deadlineMilliseconds deadline timestamp milliseconds
+   */
+  void schedule(BsRemote remote, long deadlineMilliseconds) {
+    unschedule(remote);
+    long tick = (deadlineMilliseconds - startMilliseconds + tickMilliseconds - 1) / tickMilliseconds;
+    if (tick <= currentTick) {
+      tick = currentTick + 1;
+    }
+    if (tick - currentTick > MAX_DELTA) {
+      tick = currentTick + MAX_DELTA;
+    }
+    remote.wheelTick = tick;
+    link(remote);
+    size++;
+  }
+
+  /**
+   * unschedule remote.
+   * <pre>
+   *   call with shard lock.
+   * </pre>
+   * @param remote remote
+   */
+  void unschedule(BsRemote remote) {
+    if (remote.wheelTick < 0) {
+      return;
+    }
+    unlink(remote);
+    remote.wheelTick = -1;
+    size--;
+  }
+
+  /**
+   * add new remote.
+   * <pre>
+   *   callable from any thread without lock, scheduled on next advance.
+   * </pre>
+   * @param remote remote
+   */
+  void add(BsRemote remote) {
+    additions.offer(remote);
+  }
+
+  /**
+   * request reschedule of shortened deadline.
+   * <pre>
+   *   callable from any thread without lock, applied on next advance.
+   * </pre>
+   * @param remote remote
+   */
+  void refresh(BsRemote remote) {
+    refreshes.offer(remote);
+  }
+
+  /**
+   * advance to now, and collect expired remotes.
+   * <pre>
+   *   call with shard lock.
+   *   collected remotes are unscheduled,
+   *   so caller times them out or schedules them again.
+   * </pre>
+   * @param nowMilliseconds now timestamp milliseconds
+   * @param expired expired remotes
+   */
+  void advance(long nowMilliseconds, List<BsRemote> expired) {
+    // apply addition and refresh
+    BsRemote remote;
+    while ((remote = additions.poll()) != null) {
+      if (remote.isActive() && remote.wheelTick < 0) {
+        schedule(remote, remote.getLifeTimestampMilliseconds());
+      }
+    }
+    while ((remote = refreshes.poll()) != null) {
+      if (remote.wheelTick >= 0) {
+        schedule(remote, remote.getLifeTimestampMilliseconds());
+      }
+    }
+
+    // tick
+    long targetTick = (nowMilliseconds - startMilliseconds) / tickMilliseconds;
+    while (currentTick < targetTick && size > 0) {
+      currentTick++;
+      cascade();
+      int index = (int) (currentTick & MASK);
+      while ((remote = slots[0][index]) != null) {
+        unschedule(remote);
+        expired.add(remote);
+      }
+    }
+    if (size == 0 && currentTick < targetTick) {
+      // nothing to expire, jump
+      currentTick = targetTick;
+    }
+  }
+
+  /**
+   * cascade upper level slots to lower levels when lower level wraps.
+   */
+  private void cascade() {
+    for (int level = 1; level < LEVELS; level++) {
+      if (((currentTick >> (BITS * (level - 1))) & MASK) != 0) {
+        return;
+      }
+      int index = (int) ((currentTick >> (BITS * level)) & MASK);
+      BsRemote remote = slots[level][index];
+      slots[level][index] = null;
+      while (remote != null) {
+        BsRemote next = remote.wheelNext;
+        remote.wheelPrev = null;
+        remote.wheelNext = null;
+        link(remote);
+        remote = next;
+      }
+    }
+  }
+
+  /**
+   * link remote into slot of its tick.
+   * @param remote remote
+   */
+  private void link(BsRemote remote) {
+    long delta = remote.wheelTick - currentTick;
+    int level = 0;
+    while (level < LEVELS - 1 && delta >= (1L << (BITS * (level + 1)))) {
+      level++;
+    }
+    int index = (int) ((remote.wheelTick >> (BITS * level)) & MASK);
+    BsRemote head = slots[level][index];
+    remote.wheelLevel = level;
+    remote.wheelPrev = null;
+    remote.wheelNext = head;
+    if (head != null) {
+      head.wheelPrev = remote;
+    }
+    slots[level][index] = remote;
+  }
+
+  /**
+   * unlink remote from its slot.
+   * @param remote remote
+   */
+  private void unlink(BsRemote remote) {
+    if (remote.wheelPrev != null) {
+      remote.wheelPrev.wheelNext = remote.wheelNext;
+    } else {
+      int level = remote.wheelLevel;
+      int index = (int) ((remote.wheelTick >> (BITS * level)) & MASK);
+      slots[level][index] = remote.wheelNext;
+    }
+    if (remote.wheelNext != null) {
+      remote.wheelNext.wheelPrev = remote.wheelPrev;
+    }
+    remote.wheelPrev = null;
+    remote.wheelNext = null;
+  }
+
+  /**
+   * get scheduled remote count.
+   * @return scheduled remote count
+   */
+  int size() {
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "tickMilliseconds:%s, currentTick:%s, size:%s",
+        tickMilliseconds,
+        currentTick,
+        size);
+  }
+}
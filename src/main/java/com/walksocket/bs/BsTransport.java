@@ -0,0 +1,111 @@
+package com.walksocket.bs;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * datagram transport.
+ * <pre>
+ *   receives and sends multiple datagrams per call on nonblocking channel.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+interface BsTransport {
+
+  /**
+   * max datagrams per call.
+   */
+  int VLEN = 64;
+
+  /**
+   * receive datagrams.
+   * <pre>
+   *   each received datagram is put from position of buffers[i],
+   *   and sender is set to remoteAddrs[i], like DatagramChannel#receive.
+   * </pre>
+   * @param channel nonblocking channel
+   * @param buffers receive buffers, direct if direct only
+   * @param remoteAddrs senders
+   * @param max max datagrams
+   * @return received count, 0 if channel is empty
+   * @throws IOException receive exception
+   */
+  int receive(DatagramChannel channel, ByteBuffer[] buffers, InetSocketAddress[] remoteAddrs, int max)
+      throws IOException;
+
+  /**
+   * send datagrams.
+   * <pre>
+   *   remaining of buffers[i] is sent to remoteAddrs[i].
+   *   stops at first datagram which kernel can not accept now.
+   *   empty datagram is sent too, and counted.
+   *   if datagram fails, exception tells count sent before it,
+   *   so caller completes them, and drops only failed one.
+   * </pre>
+   * @param channel nonblocking channel
+   * @param buffers send buffers
+   * @param remoteAddrs destinations
+   * @param offset first index
+   * @param count datagrams
+   * @return sent count
+   * @throws BsTransportException send exception of datagram at offset + sent count
+   */
+  int send(DatagramChannel channel, ByteBuffer[] buffers, InetSocketAddress[] remoteAddrs, int offset, int count)
+      throws BsTransportException;
+
+  /**
+   * is direct only.
+   * @return if receive buffers must be direct, true
+   */
+  boolean isDirectOnly();
+
+  /**
+   * send exception of transport.
+   * @author shigenobu
+   *
+   */
+  class BsTransportException extends IOException {
+
+    /**
+     * version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * count sent before failed datagram.
+     */
+    private final int sent;
+
+    /**
+     * constructor.
+     * @param sent count sent before failed datagram
+     * @param e error
+     */
+    BsTransportException(int sent, Throwable e) {
+      super(e);
+      this.sent = sent;
+    }
+
+    /**
+     * constructor.
+     * @param sent count sent before failed datagram
+     * @param message message
+     */
+    BsTransportException(int sent, String message) {
+      super(message);
+      this.sent = sent;
+    }
+
+    /**
+     * get count sent before failed datagram.
+     * @return sent count
+     */
+    int getSent() {
+      return sent;
+    }
+  }
+}
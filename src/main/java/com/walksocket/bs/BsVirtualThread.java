@@ -0,0 +1,33 @@
+package com.walksocket.bs;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * virtual thread support.
+ * <pre>
+ *   this is java 8 version, virtual thread is not supported.
+ *   java 21 version is packed in META-INF/versions/21 of multi-release jar.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsVirtualThread {
+
+  /**
+   * is supported.
+   * @return if virtual thread is available, true
+   */
+  static boolean isSupported() {
+    return false;
+  }
+
+  /**
+   * create executor starting virtual thread per task.
+   * @param name thread name prefix
+   * @return executor
+   */
+  static ExecutorService newExecutor(String name) {
+    throw new UnsupportedOperationException("virtual thread requires java 21 and later.");
+  }
+}
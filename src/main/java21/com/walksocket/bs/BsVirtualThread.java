@@ -0,0 +1,33 @@
+package com.walksocket.bs;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * virtual thread support.
+ * <pre>
+ *   this is java 21 version, packed in META-INF/versions/21 of multi-release jar.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+class BsVirtualThread {
+
+  /**
+   * is supported.
+   * @return if virtual thread is available, true
+   */
+  static boolean isSupported() {
+    return true;
+  }
+
+  /**
+   * create executor starting virtual thread per task.
+   * @param name thread name prefix
+   * @return executor
+   */
+  static ExecutorService newExecutor(String name) {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name, 0).factory());
+  }
+}
@@ -0,0 +1,467 @@
+package com.walksocket.bs;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Method;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+
+/**
+ * native transport.
+ * <pre>
+ *   this is java 22 version, packed in META-INF/versions/22 of multi-release jar.
+ *   receives and sends up to vlen datagrams per syscall by recvmmsg and sendmmsg on linux.
+ *   file descriptor of channel is read from jdk internal,
+ *   so run with --add-opens java.base/sun.nio.ch=ALL-UNNAMED
+ *   and --enable-native-access=ALL-UNNAMED, otherwise nio transport is used.
+ * </pre>
+ * @author shigenobu
+ * @version 0.1.2
+ *
+ */
+final class BsNativeTransport implements BsTransport {
+
+  /**
+   * flags.
+   */
+  private static final int MSG_DONTWAIT = 0x40;
+
+  /**
+   * errno, would block.
+   */
+  private static final int EAGAIN = 11;
+
+  /**
+   * errno, interrupted.
+   */
+  private static final int EINTR = 4;
+
+  /**
+   * address family.
+   */
+  private static final short AF_INET = 2;
+
+  /**
+   * size of struct iovec.
+   */
+  private static final long IOVEC_SIZE = 16;
+
+  /**
+   * size of struct mmsghdr.
+   */
+  private static final long MMSGHDR_SIZE = 64;
+
+  /**
+   * size of struct sockaddr_in.
+   */
+  private static final int SOCKADDR_IN_SIZE = 16;
+
+  /**
+   * offsets of struct mmsghdr on 64 bit linux.
+   */
+  private static final long MSG_NAME = 0;
+  private static final long MSG_NAMELEN = 8;
+  private static final long MSG_IOV = 16;
+  private static final long MSG_IOVLEN = 24;
+  private static final long MSG_FLAGS = 48;
+  private static final long MSG_LEN = 56;
+
+  /**
+   * network order layouts in struct sockaddr_in.
+   */
+  private static final ValueLayout.OfShort PORT = JAVA_SHORT.withOrder(ByteOrder.BIG_ENDIAN);
+  private static final ValueLayout.OfInt ADDR = JAVA_INT.withOrder(ByteOrder.BIG_ENDIAN);
+
+  /**
+   * int recvmmsg(int sockfd, struct mmsghdr *msgvec, unsigned int vlen, int flags, struct timespec *timeout).
+   */
+  private static final MethodHandle RECVMMSG;
+
+  /**
+   * int sendmmsg(int sockfd, struct mmsghdr *msgvec, unsigned int vlen, int flags).
+   */
+  private static final MethodHandle SENDMMSG;
+
+  /**
+   * captured call state.
+   */
+  private static final StructLayout CAPTURE;
+
+  /**
+   * errno in captured call state.
+   */
+  private static final VarHandle ERRNO;
+
+  /**
+   * file descriptor of channel.
+   */
+  private static final MethodHandle FD;
+
+  /**
+   * reason if unavailable.
+   */
+  private static final Throwable UNAVAILABLE;
+
+  static {
+    MethodHandle recvmmsg = null;
+    MethodHandle sendmmsg = null;
+    StructLayout capture = null;
+    VarHandle errno = null;
+    MethodHandle fd = null;
+    Throwable unavailable = null;
+    try {
+      String os = System.getProperty("os.name");
+      String arch = System.getProperty("os.arch");
+      if (!os.startsWith("Linux") || !(arch.equals("amd64") || arch.equals("x86_64") || arch.equals("aarch64"))) {
+        throw new UnsupportedOperationException(String.format("%s %s is not supported.", os, arch));
+      }
+
+      Linker linker = Linker.nativeLinker();
+      SymbolLookup libc = linker.defaultLookup();
+      Linker.Option captureErrno = Linker.Option.captureCallState("errno");
+      recvmmsg = linker.downcallHandle(
+          libc.find("recvmmsg").orElseThrow(),
+          FunctionDescriptor.of(JAVA_INT, JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT, ADDRESS),
+          captureErrno);
+      sendmmsg = linker.downcallHandle(
+          libc.find("sendmmsg").orElseThrow(),
+          FunctionDescriptor.of(JAVA_INT, JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT),
+          captureErrno);
+      capture = Linker.Option.captureStateLayout();
+      errno = capture.varHandle(MemoryLayout.PathElement.groupElement("errno"));
+
+      Method getFdVal = Class.forName("sun.nio.ch.SelChImpl").getMethod("getFDVal");
+      getFdVal.setAccessible(true);
+      fd = MethodHandles.lookup().unreflect(getFdVal)
+          .asType(MethodType.methodType(int.class, DatagramChannel.class));
+      // fail here, not on first receive, if sun.nio.ch is not opened
+      try (DatagramChannel probe = DatagramChannel.open()) {
+        if ((int) fd.invokeExact(probe) < 0) {
+          throw new IOException("file descriptor is not readable.");
+        }
+      }
+    } catch (Throwable e) {
+      unavailable = e;
+    }
+    RECVMMSG = recvmmsg;
+    SENDMMSG = sendmmsg;
+    CAPTURE = capture;
+    ERRNO = errno;
+    FD = fd;
+    UNAVAILABLE = unavailable;
+  }
+
+  /**
+   * open.
+   * @param vlen max datagrams per syscall
+   * @return transport, or null if not supported
+   */
+  static BsTransport open(int vlen) {
+    if (UNAVAILABLE != null) {
+      BsLogger.debug(() -> String.format("native transport is unavailable, %s", UNAVAILABLE));
+      return null;
+    }
+    return new BsNativeTransport(vlen);
+  }
+
+  /**
+   * max datagrams per syscall.
+   */
+  private final int vlen;
+
+  /**
+   * native memory per thread.
+   * <pre>
+   *   selector threads receive, and senders send concurrently.
+   * </pre>
+   */
+  private final ThreadLocal<Context> contexts;
+
+  /**
+   * constructor.
+   * @param vlen max datagrams per syscall
+   */
+  private BsNativeTransport(int vlen) {
+    this.vlen = vlen;
+    this.contexts = ThreadLocal.withInitial(() -> new Context(vlen));
+  }
+
+  @Override
+  public int receive(DatagramChannel channel, ByteBuffer[] buffers, InetSocketAddress[] remoteAddrs, int max)
+      throws IOException {
+    Context ctx = contexts.get();
+    int n = Math.min(max, vlen);
+    for (int i = 0; i < n; i++) {
+      if (!buffers[i].isDirect()) {
+        throw new IllegalArgumentException("native transport receives into direct buffer only.");
+      }
+      MemorySegment segment = MemorySegment.ofBuffer(buffers[i]);
+      ctx.recvIovecs.set(JAVA_LONG, i * IOVEC_SIZE, segment.address());
+      ctx.recvIovecs.set(JAVA_LONG, i * IOVEC_SIZE + 8, segment.byteSize());
+      ctx.recvMsgvec.set(JAVA_INT, i * MMSGHDR_SIZE + MSG_NAMELEN, SOCKADDR_IN_SIZE);
+      ctx.recvMsgvec.set(JAVA_INT, i * MMSGHDR_SIZE + MSG_FLAGS, 0);
+    }
+
+    int received;
+    try {
+      received = (int) RECVMMSG.invokeExact(ctx.capture, fd(channel), ctx.recvMsgvec, n, MSG_DONTWAIT, MemorySegment.NULL);
+    } catch (Throwable e) {
+      throw new IOException(e);
+    }
+    if (received < 0) {
+      int err = (int) ERRNO.get(ctx.capture, 0L);
+      if (err == EAGAIN || err == EINTR) {
+        return 0;
+      }
+      throw new IOException(String.format("recvmmsg failed, errno:%s", err));
+    }
+
+    for (int i = 0; i < received; i++) {
+      int len = ctx.recvMsgvec.get(JAVA_INT, i * MMSGHDR_SIZE + MSG_LEN);
+      buffers[i].position(buffers[i].position() + len);
+      remoteAddrs[i] = ctx.remoteAddr(i);
+    }
+    return received;
+  }
+
+  @Override
+  public int send(DatagramChannel channel, ByteBuffer[] buffers, InetSocketAddress[] remoteAddrs, int offset, int count)
+      throws BsTransportException {
+    Context ctx = contexts.get();
+    int fd;
+    try {
+      fd = fd(channel);
+    } catch (IOException e) {
+      throw new BsTransportException(0, e);
+    }
+    int sent = 0;
+    while (sent < count) {
+      int n = Math.min(count - sent, vlen);
+      for (int i = 0; i < n; i++) {
+        ByteBuffer buffer = buffers[offset + sent + i];
+        MemorySegment segment = buffer.isDirect()
+            ? MemorySegment.ofBuffer(buffer)
+            : ctx.sendScratch(i, buffer);
+        ctx.sendIovecs.set(JAVA_LONG, i * IOVEC_SIZE, segment.address());
+        ctx.sendIovecs.set(JAVA_LONG, i * IOVEC_SIZE + 8, segment.byteSize());
+        try {
+          ctx.sendName(i, remoteAddrs[offset + sent + i]);
+        } catch (IOException e) {
+          // send ones before it, and fail it on next call
+          if (i == 0) {
+            throw new BsTransportException(sent, e);
+          }
+          n = i;
+          break;
+        }
+      }
+
+      int written;
+      try {
+        written = (int) SENDMMSG.invokeExact(ctx.capture, fd, ctx.sendMsgvec, n, 0);
+      } catch (Throwable e) {
+        throw new BsTransportException(sent, e);
+      }
+      if (written < 0) {
+        int err = (int) ERRNO.get(ctx.capture, 0L);
+        if (err == EAGAIN || err == EINTR) {
+          break;
+        }
+        throw new BsTransportException(sent, String.format("sendmmsg failed, errno:%s", err));
+      }
+
+      for (int i = 0; i < written; i++) {
+        ByteBuffer buffer = buffers[offset + sent + i];
+        buffer.position(buffer.limit());
+      }
+      sent += written;
+      if (written < n) {
+        break;
+      }
+    }
+    return sent;
+  }
+
+  @Override
+  public boolean isDirectOnly() {
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("native(vlen:%s)", vlen);
+  }
+
+  /**
+   * get file descriptor.
+   * @param channel channel
+   * @return file descriptor
+   * @throws IOException if not readable
+   */
+  private static int fd(DatagramChannel channel) throws IOException {
+    try {
+      return (int) FD.invokeExact(channel);
+    } catch (Throwable e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * native memory of thread.
+   */
+  private static final class Context {
+
+    /**
+     * arena, freed when thread is gone.
+     */
+    private final Arena arena = Arena.ofAuto();
+
+    /**
+     * captured errno.
+     */
+    private final MemorySegment capture;
+
+    /**
+     * receive headers.
+     */
+    private final MemorySegment recvMsgvec;
+
+    /**
+     * receive iovecs.
+     */
+    private final MemorySegment recvIovecs;
+
+    /**
+     * receive sockaddr_in.
+     */
+    private final MemorySegment recvNames;
+
+    /**
+     * send headers.
+     */
+    private final MemorySegment sendMsgvec;
+
+    /**
+     * send iovecs.
+     */
+    private final MemorySegment sendIovecs;
+
+    /**
+     * send sockaddr_in.
+     */
+    private final MemorySegment sendNames;
+
+    /**
+     * send copies of heap buffers.
+     */
+    private final MemorySegment[] sendScratches;
+
+    /**
+     * last sender, datagrams often come from same peer in burst.
+     */
+    private int lastAddr;
+    private int lastPort = -1;
+    private InetSocketAddress lastRemoteAddr;
+
+    /**
+     * constructor.
+     * @param vlen max datagrams per syscall
+     */
+    private Context(int vlen) {
+      capture = arena.allocate(CAPTURE);
+      recvMsgvec = arena.allocate(vlen * MMSGHDR_SIZE, 8);
+      recvIovecs = arena.allocate(vlen * IOVEC_SIZE, 8);
+      recvNames = arena.allocate((long) vlen * SOCKADDR_IN_SIZE, 8);
+      sendMsgvec = arena.allocate(vlen * MMSGHDR_SIZE, 8);
+      sendIovecs = arena.allocate(vlen * IOVEC_SIZE, 8);
+      sendNames = arena.allocate((long) vlen * SOCKADDR_IN_SIZE, 8);
+      sendScratches = new MemorySegment[vlen];
+
+      // headers point to fixed iovec and sockaddr, only iovec base and length change per call
+      for (int i = 0; i < vlen; i++) {
+        long hdr = i * MMSGHDR_SIZE;
+        recvMsgvec.set(JAVA_LONG, hdr + MSG_NAME, recvNames.address() + (long) i * SOCKADDR_IN_SIZE);
+        recvMsgvec.set(JAVA_LONG, hdr + MSG_IOV, recvIovecs.address() + i * IOVEC_SIZE);
+        recvMsgvec.set(JAVA_LONG, hdr + MSG_IOVLEN, 1L);
+        sendMsgvec.set(JAVA_LONG, hdr + MSG_NAME, sendNames.address() + (long) i * SOCKADDR_IN_SIZE);
+        sendMsgvec.set(JAVA_INT, hdr + MSG_NAMELEN, SOCKADDR_IN_SIZE);
+        sendMsgvec.set(JAVA_LONG, hdr + MSG_IOV, sendIovecs.address() + i * IOVEC_SIZE);
+        sendMsgvec.set(JAVA_LONG, hdr + MSG_IOVLEN, 1L);
+      }
+    }
+
+    /**
+     * get sender.
+     * @param i index
+     * @return sender
+     * @throws IOException if address is broken
+     */
+    private InetSocketAddress remoteAddr(int i) throws IOException {
+      long off = (long) i * SOCKADDR_IN_SIZE;
+      int port = Short.toUnsignedInt(recvNames.get(PORT, off + 2));
+      int addr = recvNames.get(ADDR, off + 4);
+      if (lastRemoteAddr != null && addr == lastAddr && port == lastPort) {
+        return lastRemoteAddr;
+      }
+      InetAddress inet = InetAddress.getByAddress(new byte[] {
+          (byte) (addr >>> 24), (byte) (addr >>> 16), (byte) (addr >>> 8), (byte) addr});
+      lastAddr = addr;
+      lastPort = port;
+      lastRemoteAddr = new InetSocketAddress(inet, port);
+      return lastRemoteAddr;
+    }
+
+    /**
+     * set destination.
+     * @param i index
+     * @param remoteAddr destination
+     * @throws IOException if not ipv4
+     */
+    private void sendName(int i, InetSocketAddress remoteAddr) throws IOException {
+      if (!(remoteAddr.getAddress() instanceof Inet4Address)) {
+        throw new IOException(String.format("native transport sends to ipv4 only, %s", remoteAddr));
+      }
+      byte[] b = remoteAddr.getAddress().getAddress();
+      long off = (long) i * SOCKADDR_IN_SIZE;
+      sendNames.set(JAVA_SHORT, off, AF_INET);
+      sendNames.set(PORT, off + 2, (short) remoteAddr.getPort());
+      sendNames.set(ADDR, off + 4, (b[0] & 0xFF) << 24 | (b[1] & 0xFF) << 16 | (b[2] & 0xFF) << 8 | (b[3] & 0xFF));
+    }
+
+    /**
+     * copy heap buffer to native memory.
+     * @param i index
+     * @param buffer heap buffer
+     * @return copied segment
+     */
+    private MemorySegment sendScratch(int i, ByteBuffer buffer) {
+      int len = buffer.remaining();
+      if (sendScratches[i] == null || sendScratches[i].byteSize() < len) {
+        sendScratches[i] = arena.allocate(Integer.highestOneBit(Math.max(len, 1)) << 1, 8);
+      }
+      MemorySegment scratch = sendScratches[i].asSlice(0, len);
+      scratch.copyFrom(MemorySegment.ofBuffer(buffer));
+      return scratch;
+    }
+  }
+}
@@ -3,9 +3,28 @@ package com.walksocket.bs;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeAll;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 public class BsMainTest {
 
@@ -383,4 +402,1599 @@ public class BsMainTest {
       });
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testDirectBuffer()
+      throws BsLocal.BsLocalException, BsExecutorServer.BsExecutorServerException, BsExecutorClient.BsExecutorClientException, InterruptedException {
+    // start server
+    AtomicInteger received4Server = new AtomicInteger();
+    BsLocal local4Server = new BsLocal("0.0.0.0", 8720);
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        fail("byte array callback is not invoked in direct buffer mode");
+      }
+
+      @Override
+      public void incoming(BsRemote remote, ByteBuffer message) {
+        assertTrue(message.isReadOnly());
+        assertEquals("hello direct", StandardCharsets.UTF_8.decode(message).toString());
+        received4Server.incrementAndGet();
+        try {
+          remote.send("hi direct".getBytes(StandardCharsets.UTF_8));
+        } catch (BsRemote.BsSendException e) {
+          e.printStackTrace();
+        }
+      }
+    }, local4Server);
+    executor4Server.directBuffer(true);
+    executor4Server.start();
+
+    // start client, byte array callback is invoked by default method
+    AtomicInteger received4Client = new AtomicInteger();
+    BsLocal local4Client = new BsLocal("0.0.0.0", 18720);
+    BsRemote remote4Client = new BsRemote("127.0.0.1", 8720, local4Client.getLocalChannel());
+    BsExecutorClient executor4Client = new BsExecutorClient(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        assertEquals("hi direct", new String(message, StandardCharsets.UTF_8));
+        received4Client.incrementAndGet();
+      }
+    }, local4Client, remote4Client);
+    executor4Client.directBuffer(true);
+    executor4Client.start();
+
+    try {
+      for (int i = 0; i < 3; i++) {
+        remote4Client.send("hello direct".getBytes(StandardCharsets.UTF_8));
+      }
+    } catch (BsRemote.BsSendException e) {
+      e.printStackTrace();
+    }
+    Thread.sleep(1000);
+
+    executor4Client.shutdown();
+    executor4Server.shutdown();
+    assertEquals(3, received4Server.get());
+    assertEquals(3, received4Client.get());
+  }
+
+  @Test
+  public void testSelectorThreads()
+      throws BsLocal.BsLocalException, BsExecutorServer.BsExecutorServerException, BsExecutorClient.BsExecutorClientException, InterruptedException,
+      IOException {
+    // SO_REUSEPORT requires java 9 and later
+    assumeTrue(!System.getProperty("java.specification.version").startsWith("1."));
+
+    // start server with 4 channels on same port
+    AtomicInteger received4Server = new AtomicInteger();
+    BsLocal local4Server = new BsLocal("0.0.0.0", 8730);
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        received4Server.incrementAndGet();
+        try {
+          remote.send(message);
+        } catch (BsRemote.BsSendException e) {
+          e.printStackTrace();
+        }
+      }
+    }, local4Server);
+    executor4Server.selectorThreads(4);
+    executor4Server.start();
+
+    // ephemeral port, every channel is bound to same port
+    BsLocal local4Ephemeral = new BsLocal("0.0.0.0", 0);
+    try {
+      local4Ephemeral.getLocalChannel().shard(3);
+      Set<Integer> ports = new HashSet<>();
+      for (DatagramChannel channel : local4Ephemeral.getLocalChannel().getChannels()) {
+        ports.add(((InetSocketAddress) channel.getLocalAddress()).getPort());
+      }
+      assertEquals(1, ports.size());
+      assertNotEquals(0, ports.iterator().next().intValue());
+    } finally {
+      local4Ephemeral.getLocalChannel().destroy();
+    }
+
+    // start clients
+    AtomicInteger received4Client = new AtomicInteger();
+    List<BsExecutorClient> executors4Client = new ArrayList<>();
+    List<BsRemote> remotes4Client = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      BsLocal local4Client = new BsLocal("0.0.0.0", 18730 + i);
+      BsRemote remote4Client = new BsRemote("127.0.0.1", 8730, local4Client.getLocalChannel());
+      BsExecutorClient executor4Client = new BsExecutorClient(new BsCallback() {
+        @Override
+        public void incoming(BsRemote remote, byte[] message) {
+          received4Client.incrementAndGet();
+        }
+      }, local4Client, remote4Client);
+      executor4Client.start();
+      executors4Client.add(executor4Client);
+      remotes4Client.add(remote4Client);
+    }
+
+    try {
+      for (int i = 0; i < 5; i++) {
+        for (BsRemote remote4Client : remotes4Client) {
+          remote4Client.send(("hello " + i).getBytes(StandardCharsets.UTF_8));
+        }
+      }
+    } catch (BsRemote.BsSendException e) {
+      e.printStackTrace();
+    }
+    Thread.sleep(1000);
+
+    // one remote per client port, wherever selector received
+    assertEquals(8, executor4Server.getRemoteCount());
+    assertEquals(40, received4Server.get());
+    assertEquals(40, received4Client.get());
+
+    for (BsExecutorClient executor4Client : executors4Client) {
+      executor4Client.shutdown();
+    }
+    executor4Server.shutdown();
+  }
+
+  @Test
+  public void testReceiveBatch()
+      throws BsLocal.BsLocalException, BsExecutorServer.BsExecutorServerException, InterruptedException {
+    // start server, callback is slow so datagrams pile up in socket
+    List<String> received4Server = Collections.synchronizedList(new ArrayList<>());
+    BsLocal local4Server = new BsLocal("0.0.0.0", 8740);
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        received4Server.add(new String(message, StandardCharsets.UTF_8));
+      }
+    }, local4Server);
+    executor4Server.receiveBatchSize(16);
+    executor4Server.directBuffer(true);
+    executor4Server.callbackPool(Executors.newFixedThreadPool(1));
+    executor4Server.start();
+
+    // send from raw local, not started as client
+    BsLocal local4Client = new BsLocal("0.0.0.0", 18740);
+    BsRemote remote4Client = new BsRemote("127.0.0.1", 8740, local4Client.getLocalChannel());
+    try {
+      for (int i = 0; i < 100; i++) {
+        remote4Client.send(("hello " + i).getBytes(StandardCharsets.UTF_8));
+      }
+    } catch (BsRemote.BsSendException e) {
+      e.printStackTrace();
+    }
+    Thread.sleep(1000);
+
+    // order is kept for same remote
+    assertEquals(100, received4Server.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals("hello " + i, received4Server.get(i));
+    }
+    assertEquals(100, executor4Server.getReceivedCount());
+    assertTrue(executor4Server.getReceivedBatchCount() <= 100);
+    System.out.println(String.format("received:%s, batch:%s, full batch:%s",
+        executor4Server.getReceivedCount(),
+        executor4Server.getReceivedBatchCount(),
+        executor4Server.getReceivedFullBatchCount()));
+
+    local4Client.getLocalChannel().destroy();
+    executor4Server.shutdown();
+  }
+
+  @Test
+  public void testMailbox()
+      throws BsLocal.BsLocalException, BsExecutorServer.BsExecutorServerException, InterruptedException {
+    // start server, slow remote must not block others
+    Map<Integer, List<Integer>> received4Server = new HashMap<>();
+    BsLocal local4Server = new BsLocal("0.0.0.0", 8750);
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        int port = remote.getRemoteAddr().getPort();
+        if (port == 18750) {
+          try {
+            Thread.sleep(10);
+          } catch (InterruptedException e) {
+            e.printStackTrace();
+          }
+        }
+        synchronized (received4Server) {
+          received4Server.computeIfAbsent(port, k -> new ArrayList<>())
+              .add(Integer.parseInt(new String(message, StandardCharsets.UTF_8)));
+        }
+      }
+    }, local4Server);
+    executor4Server.callbackPool(Executors.newFixedThreadPool(2));
+    executor4Server.start();
+
+    BsLocal localSlow = new BsLocal("0.0.0.0", 18750);
+    BsLocal localFast = new BsLocal("0.0.0.0", 18751);
+    BsRemote remoteSlow = new BsRemote("127.0.0.1", 8750, localSlow.getLocalChannel());
+    BsRemote remoteFast = new BsRemote("127.0.0.1", 8750, localFast.getLocalChannel());
+    try {
+      for (int i = 0; i < 50; i++) {
+        remoteSlow.send(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+      }
+      for (int i = 0; i < 50; i++) {
+        remoteFast.send(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+      }
+    } catch (BsRemote.BsSendException e) {
+      e.printStackTrace();
+    }
+    Thread.sleep(200);
+
+    // fast remote completed while slow remote is still running
+    synchronized (received4Server) {
+      assertEquals(50, received4Server.get(18751).size());
+      assertTrue(received4Server.get(18750).size() < 50);
+    }
+    Thread.sleep(1000);
+
+    // order is kept for each remote
+    synchronized (received4Server) {
+      for (List<Integer> received : received4Server.values()) {
+        assertEquals(50, received.size());
+        for (int i = 0; i < 50; i++) {
+          assertEquals(i, (int) received.get(i));
+        }
+      }
+    }
+
+    localSlow.getLocalChannel().destroy();
+    localFast.getLocalChannel().destroy();
+    executor4Server.shutdown();
+  }
+
+  @Test
+  public void testVirtualThread()
+      throws BsLocal.BsLocalException, BsExecutorServer.BsExecutorServerException, InterruptedException {
+    // given callback pool is not replaced, nor shutdown
+    ExecutorService given = Executors.newSingleThreadExecutor();
+    BsLocal local4Given = new BsLocal("0.0.0.0", 8761);
+    BsExecutorServer executor4Given = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+      }
+    }, local4Given).callbackPool(given).virtualThread(true);
+    assertThrows(BsExecutorServer.BsExecutorServerException.class, executor4Given::start);
+    assertFalse(given.isShutdown());
+    given.shutdown();
+    local4Given.getLocalChannel().destroy();
+
+    // java 21 classes are loaded only from multi-release jar, run by testJava21 task
+    assumeTrue(BsVirtualThread.isSupported());
+
+    // start server, every callback blocks
+    List<String> threads = Collections.synchronizedList(new ArrayList<>());
+    List<Integer> received4Server = Collections.synchronizedList(new ArrayList<>());
+    BsLocal local4Server = new BsLocal("0.0.0.0", 8760);
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        threads.add(Thread.currentThread().toString());
+        try {
+          Thread.sleep(5);
+        } catch (InterruptedException e) {
+          e.printStackTrace();
+        }
+        received4Server.add(Integer.parseInt(new String(message, StandardCharsets.UTF_8)));
+      }
+    }, local4Server);
+    executor4Server.virtualThread(true);
+    executor4Server.start();
+
+    BsLocal local4Client = new BsLocal("0.0.0.0", 18760);
+    BsRemote remote4Client = new BsRemote("127.0.0.1", 8760, local4Client.getLocalChannel());
+    try {
+      for (int i = 0; i < 50; i++) {
+        remote4Client.send(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+      }
+    } catch (BsRemote.BsSendException e) {
+      e.printStackTrace();
+    }
+    Thread.sleep(1000);
+
+    // order is kept on virtual threads
+    assertEquals(50, received4Server.size());
+    for (int i = 0; i < 50; i++) {
+      assertEquals(i, (int) received4Server.get(i));
+    }
+    assertTrue(threads.get(0).startsWith("VirtualThread"));
+
+    local4Client.getLocalChannel().destroy();
+    executor4Server.shutdown();
+  }
+
+  @Test
+  public void testIngress()
+      throws BsLocal.BsLocalException, BsExecutorServer.BsExecutorServerException, InterruptedException {
+    for (BsIngressPolicy policy : BsIngressPolicy.values()) {
+      // start server, callback is slow
+      AtomicInteger received4Server = new AtomicInteger();
+      BsLocal local4Server = new BsLocal("0.0.0.0", 8770);
+      BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+        @Override
+        public void incoming(BsRemote remote, byte[] message) {
+          try {
+            Thread.sleep(5);
+          } catch (InterruptedException e) {
+            e.printStackTrace();
+          }
+          received4Server.incrementAndGet();
+        }
+      }, local4Server);
+      executor4Server.callbackPool(Executors.newFixedThreadPool(1));
+      executor4Server.ingressCapacity(10, 1024 * 1024);
+      executor4Server.ingressPolicy(policy);
+      executor4Server.start();
+
+      BsLocal local4Client = new BsLocal("0.0.0.0", 18770);
+      BsRemote remote4Client = new BsRemote("127.0.0.1", 8770, local4Client.getLocalChannel());
+      try {
+        for (int i = 0; i < 100; i++) {
+          remote4Client.send(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+        }
+      } catch (BsRemote.BsSendException e) {
+        e.printStackTrace();
+      }
+      Thread.sleep(1500);
+
+      System.out.println(String.format("policy:%s, received:%s, dropped:%s, paused:%s",
+          policy,
+          received4Server.get(),
+          executor4Server.getIngressDroppedCount(),
+          executor4Server.getIngressPausedCount()));
+      assertEquals(0, executor4Server.getIngressMessages());
+      if (policy == BsIngressPolicy.PAUSE_READ) {
+        // kernel socket buffer absorbed burst
+        assertEquals(100, received4Server.get());
+        assertTrue(executor4Server.getIngressPausedCount() > 0);
+      } else {
+        assertTrue(executor4Server.getIngressDroppedCount() > 0);
+        assertEquals(100, received4Server.get() + executor4Server.getIngressDroppedCount());
+      }
+
+      local4Client.getLocalChannel().destroy();
+      executor4Server.shutdown();
+    }
+  }
+
+  @Test
+  public void testNativeTransport()
+      throws BsLocal.BsLocalException, BsExecutorServer.BsExecutorServerException, BsExecutorClient.BsExecutorClientException, InterruptedException {
+    // java 22 classes are loaded only from multi-release jar
+    assumeTrue(BsNativeTransport.open(BsTransport.VLEN) != null);
+
+    // start server
+    List<Integer> received4Server = Collections.synchronizedList(new ArrayList<>());
+    BsLocal local4Server = new BsLocal("0.0.0.0", 8780);
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        received4Server.add(Integer.parseInt(new String(message, StandardCharsets.UTF_8)));
+        try {
+          remote.send(message);
+        } catch (BsRemote.BsSendException e) {
+          e.printStackTrace();
+        }
+      }
+    }, local4Server);
+    executor4Server.nativeTransport(true);
+    executor4Server.receiveBatchSize(32);
+    executor4Server.start();
+
+    // start client
+    AtomicInteger received4Client = new AtomicInteger();
+    BsLocal local4Client = new BsLocal("0.0.0.0", 18780);
+    BsRemote remote4Client = new BsRemote("127.0.0.1", 8780, local4Client.getLocalChannel());
+    BsExecutorClient executor4Client = new BsExecutorClient(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        received4Client.incrementAndGet();
+      }
+    }, local4Client, remote4Client);
+    executor4Client.nativeTransport(true);
+    executor4Client.directBuffer(true);
+    executor4Client.receiveBatchSize(32);
+    executor4Client.start();
+
+    try {
+      for (int i = 0; i < 100; i++) {
+        remote4Client.send(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+      }
+    } catch (BsRemote.BsSendException e) {
+      e.printStackTrace();
+    }
+    Thread.sleep(1000);
+
+    assertEquals(100, received4Server.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, (int) received4Server.get(i));
+    }
+    assertEquals(100, received4Client.get());
+
+    executor4Client.shutdown();
+    executor4Server.shutdown();
+  }
+
+  @Test
+  public void testSendQueue()
+      throws BsLocal.BsLocalException, BsExecutorServer.BsExecutorServerException, BsExecutorClient.BsExecutorClientException, Exception {
+    // start server
+    AtomicInteger received4Server = new AtomicInteger();
+    BsLocal local4Server = new BsLocal("0.0.0.0", 8790);
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        received4Server.incrementAndGet();
+      }
+    }, local4Server);
+    executor4Server.start();
+
+    // not started as client, not queued
+    BsLocal local4Raw = new BsLocal("0.0.0.0", 18791);
+    BsRemote remote4Raw = new BsRemote("127.0.0.1", 8790, local4Raw.getLocalChannel());
+    assertEquals(BsSendStatus.WRITTEN, remote4Raw.send("raw".getBytes(StandardCharsets.UTF_8)).get());
+
+    // start client
+    BsLocal local4Client = new BsLocal("0.0.0.0", 18790);
+    BsRemote remote4Client = new BsRemote("127.0.0.1", 8790, local4Client.getLocalChannel());
+    BsExecutorClient executor4Client = new BsExecutorClient(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+      }
+    }, local4Client, remote4Client);
+    executor4Client.sendQueueCapacity(10);
+    executor4Client.start();
+
+    // written at once
+    for (int i = 0; i < 10; i++) {
+      assertEquals(BsSendStatus.WRITTEN, remote4Client.send(String.valueOf(i).getBytes(StandardCharsets.UTF_8)).get());
+    }
+
+    // as if socket send buffer was full, queue and flush by selector
+    BsOutbound outbound = local4Client.getLocalChannel().getOutbound();
+    List<CompletableFuture<BsSendStatus>> futures = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      futures.add(outbound.offer(ByteBuffer.wrap(String.valueOf(i).getBytes(StandardCharsets.UTF_8)), remote4Client.getRemoteAddr()));
+    }
+    assertEquals(10, executor4Client.getSendQueueSize());
+    assertEquals(2, executor4Client.getSendDroppedCount());
+    assertTrue(outbound.requestFlush());
+
+    // wake client selector up by datagram
+    new BsRemote("127.0.0.1", 18790, local4Raw.getLocalChannel()).send("wake".getBytes(StandardCharsets.UTF_8));
+    for (int i = 0; i < 12; i++) {
+      BsSendStatus status = futures.get(i).get(1, TimeUnit.SECONDS);
+      assertEquals(i < 10 ? BsSendStatus.WRITTEN : BsSendStatus.DROPPED, status);
+    }
+    Thread.sleep(500);
+
+    assertEquals(0, executor4Client.getSendQueueSize());
+    assertEquals(1 + 10 + 10, received4Server.get());
+
+    // future is not shared between sends
+    CompletableFuture<BsSendStatus> obtruded = remote4Client.send("obtruded".getBytes(StandardCharsets.UTF_8));
+    obtruded.obtrudeValue(BsSendStatus.DROPPED);
+    assertEquals(BsSendStatus.WRITTEN, remote4Client.send("fresh".getBytes(StandardCharsets.UTF_8)).get());
+    assertEquals(BsSendStatus.DROPPED, outbound.dropped().get());
+    assertNotSame(outbound.dropped(), outbound.dropped());
+
+    // empty datagram is written, and does not block next one
+    assertEquals(BsSendStatus.WRITTEN, remote4Client.send(new byte[0]).get());
+    futures.clear();
+    futures.add(outbound.offer(ByteBuffer.allocate(0), remote4Client.getRemoteAddr()));
+    futures.add(outbound.offer(ByteBuffer.wrap("after".getBytes(StandardCharsets.UTF_8)), remote4Client.getRemoteAddr()));
+    assertTrue(outbound.requestFlush());
+    new BsRemote("127.0.0.1", 18790, local4Raw.getLocalChannel()).send("wake".getBytes(StandardCharsets.UTF_8));
+    for (CompletableFuture<BsSendStatus> future : futures) {
+      assertEquals(BsSendStatus.WRITTEN, future.get(1, TimeUnit.SECONDS));
+    }
+    assertEquals(BsSendStatus.WRITTEN, remote4Client.send("hello".getBytes(StandardCharsets.UTF_8)).get(1, TimeUnit.SECONDS));
+    Thread.sleep(500);
+    assertEquals(0, executor4Client.getSendQueueSize());
+    assertEquals(1 + 10 + 10 + 2 + 4, received4Server.get());
+
+    // datagrams sent before failed one are written, and only failed one is dropped
+    BsOutbound failing = new BsOutbound(new BsPortMetrics(0));
+    AtomicInteger calls = new AtomicInteger();
+    BsTransport transport = new BsTransport() {
+      @Override
+      public int receive(DatagramChannel channel, ByteBuffer[] buffers, InetSocketAddress[] remoteAddrs, int max) {
+        return 0;
+      }
+
+      @Override
+      public int send(DatagramChannel channel, ByteBuffer[] buffers, InetSocketAddress[] remoteAddrs, int offset, int count)
+          throws BsTransportException {
+        if (calls.incrementAndGet() == 1) {
+          buffers[offset].position(buffers[offset].limit());
+          throw new BsTransportException(1, "failed");
+        }
+        return count;
+      }
+
+      @Override
+      public boolean isDirectOnly() {
+        return false;
+      }
+    };
+    futures.clear();
+    for (int i = 0; i < 3; i++) {
+      futures.add(failing.offer(ByteBuffer.wrap(String.valueOf(i).getBytes(StandardCharsets.UTF_8)), remote4Client.getRemoteAddr()));
+    }
+    try (DatagramChannel channel = DatagramChannel.open()) {
+      assertTrue(failing.flush(channel, transport));
+    }
+    assertEquals(BsSendStatus.WRITTEN, futures.get(0).get());
+    assertEquals(BsSendStatus.DROPPED, futures.get(1).get());
+    assertEquals(BsSendStatus.WRITTEN, futures.get(2).get());
+    assertEquals(2, calls.get());
+
+    local4Raw.getLocalChannel().destroy();
+    executor4Client.shutdown();
+    executor4Server.shutdown();
+  }
+
+  @Test
+  public void testBroadcast()
+      throws BsLocal.BsLocalException, BsExecutorServer.BsExecutorServerException, BsExecutorClient.BsExecutorClientException, InterruptedException {
+    // start server on 2 ports
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+      }
+    }, Arrays.asList(new BsLocal("0.0.0.0", 8800), new BsLocal("0.0.0.0", 8801)));
+    executor4Server.start();
+
+    // start clients, and register to server
+    AtomicInteger received4Client = new AtomicInteger();
+    AtomicInteger empty4Client = new AtomicInteger();
+    List<BsExecutorClient> executor4Clients = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      BsLocal local4Client = new BsLocal("0.0.0.0", 18800 + i);
+      BsRemote remote4Client = new BsRemote("127.0.0.1", 8800 + i % 2, local4Client.getLocalChannel());
+      BsExecutorClient executor4Client = new BsExecutorClient(new BsCallback() {
+        @Override
+        public void incoming(BsRemote remote, byte[] message) {
+          if (message.length == 0) {
+            empty4Client.incrementAndGet();
+            return;
+          }
+          assertEquals("state", new String(message, StandardCharsets.UTF_8));
+          received4Client.incrementAndGet();
+        }
+      }, local4Client, remote4Client);
+      executor4Client.start();
+      executor4Clients.add(executor4Client);
+      try {
+        remote4Client.send("hello".getBytes(StandardCharsets.UTF_8));
+      } catch (BsRemote.BsSendException e) {
+        e.printStackTrace();
+      }
+    }
+    Thread.sleep(500);
+    assertEquals(4, executor4Server.getRemoteCount());
+
+    // broadcast except last client
+    BsBroadcastResult result = executor4Server.broadcast(
+        "state".getBytes(StandardCharsets.UTF_8),
+        remote -> remote.getRemoteAddr().getPort() != 18803);
+    System.out.println(result);
+    assertEquals(3, result.getWrittenCount() + result.getQueuedCount());
+    assertEquals(0, result.getDroppedCount());
+    Thread.sleep(500);
+    assertEquals(3, received4Client.get());
+
+    // empty payload is written, and does not block next broadcast
+    result = executor4Server.broadcast(new byte[0], remote -> true);
+    assertEquals(4, result.getWrittenCount());
+    assertEquals(0, result.getQueuedCount());
+    result = executor4Server.broadcast("state".getBytes(StandardCharsets.UTF_8), remote -> true);
+    assertEquals(4, result.getWrittenCount() + result.getQueuedCount());
+    Thread.sleep(500);
+    assertEquals(4, empty4Client.get());
+    assertEquals(3 + 4, received4Client.get());
+
+    // destinations sent before failed one are not sent again, and only failed one is dropped
+    BsLocal local4Failing = new BsLocal("0.0.0.0", 8802);
+    List<InetSocketAddress> destinations = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      destinations.add(new InetSocketAddress("127.0.0.1", 18810 + i));
+    }
+    List<InetSocketAddress> sent = new ArrayList<>();
+    local4Failing.getLocalChannel().setTransport(new BsTransport() {
+      @Override
+      public int receive(DatagramChannel channel, ByteBuffer[] buffers, InetSocketAddress[] remoteAddrs, int max) {
+        return 0;
+      }
+
+      @Override
+      public int send(DatagramChannel channel, ByteBuffer[] buffers, InetSocketAddress[] remoteAddrs, int offset, int count)
+          throws BsTransportException {
+        if (sent.isEmpty()) {
+          sent.add(remoteAddrs[offset]);
+          sent.add(remoteAddrs[offset + 1]);
+          throw new BsTransportException(2, "failed");
+        }
+        for (int i = 0; i < count; i++) {
+          sent.add(remoteAddrs[offset + i]);
+        }
+        return count;
+      }
+
+      @Override
+      public boolean isDirectOnly() {
+        return false;
+      }
+    });
+    result = local4Failing.getLocalChannel().broadcast(ByteBuffer.allocateDirect(1).asReadOnlyBuffer(), destinations);
+    assertEquals(4, result.getWrittenCount());
+    assertEquals(1, result.getDroppedCount());
+    assertEquals(Arrays.asList(destinations.get(0), destinations.get(1), destinations.get(3), destinations.get(4)), sent);
+    local4Failing.getLocalChannel().destroy();
+
+    for (BsExecutorClient executor4Client : executor4Clients) {
+      executor4Client.shutdown();
+    }
+    executor4Server.shutdown();
+  }
+
+  @Test
+  public void testTimingWheel() throws BsLocal.BsLocalException {
+    BsLocal local = new BsLocal("0.0.0.0", 8810);
+    BsTimingWheel wheel = new BsTimingWheel(100, 0);
+    BsRemote near = new BsRemote("127.0.0.1", 1, local.getLocalChannel());
+    BsRemote middle = new BsRemote("127.0.0.1", 2, local.getLocalChannel());
+    BsRemote far = new BsRemote("127.0.0.1", 3, local.getLocalChannel());
+    BsRemote escaped = new BsRemote("127.0.0.1", 4, local.getLocalChannel());
+    escaped.setWheel(wheel);
+    wheel.schedule(near, 250);
+    wheel.schedule(middle, 10000);
+    wheel.schedule(far, 5000000);
+    wheel.schedule(escaped, 100000000);
+    assertEquals(4, wheel.size());
+
+    // only expired remotes are collected
+    List<BsRemote> expired = new ArrayList<>();
+    wheel.advance(200, expired);
+    assertTrue(expired.isEmpty());
+    wheel.advance(300, expired);
+    assertEquals(Collections.singletonList(near), expired);
+    expired.clear();
+    wheel.advance(9999, expired);
+    assertTrue(expired.isEmpty());
+
+    wheel.advance(10000, expired);
+    assertEquals(Collections.singletonList(middle), expired);
+    expired.clear();
+
+    // shortened deadline is rescheduled to next tick
+    escaped.escape();
+    wheel.advance(10100, expired);
+    assertEquals(Collections.singletonList(escaped), expired);
+    expired.clear();
+
+    // cascaded from upper level
+    wheel.advance(4999999, expired);
+    assertTrue(expired.isEmpty());
+    wheel.advance(5000000, expired);
+    assertEquals(Collections.singletonList(far), expired);
+    assertEquals(0, wheel.size());
+
+    local.getLocalChannel().destroy();
+  }
+
+  @Test
+  public void testRemoteRegistry() throws BsLocal.BsLocalException, InterruptedException {
+    BsLocal local = new BsLocal("0.0.0.0", 8820);
+    BsRemoteManager manager = new BsRemoteManager(10, new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+      }
+    }, new BsShutdown());
+
+    // every thread generates with new address instances, like received datagrams
+    List<Map<Integer, BsRemote>> generated = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 16; t++) {
+      Map<Integer, BsRemote> remotes = new HashMap<>();
+      generated.add(remotes);
+      threads.add(new Thread(() -> {
+        for (int port = 1; port <= 1000; port++) {
+          remotes.put(port, manager.generate(new InetSocketAddress("127.0.0.1", port), local.getLocalChannel()));
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // same peer, same remote
+    assertEquals(1000, manager.getRemoteCount());
+    for (int port = 1; port <= 1000; port++) {
+      for (Map<Integer, BsRemote> remotes : generated) {
+        assertSame(generated.get(0).get(port), remotes.get(port));
+      }
+    }
+
+    manager.shutdownServiceTimeout();
+    local.getLocalChannel().destroy();
+  }
+
+  @Test
+  public void testRemoteTable() throws BsLocal.BsLocalException {
+    BsLocal local = new BsLocal("0.0.0.0", 8830);
+    BsRemoteTable table = new BsRemoteTable();
+
+    // insert with resize
+    List<BsRemote> remotes = new ArrayList<>();
+    for (int port = 1; port <= 10000; port++) {
+      InetSocketAddress remoteAddr = new InetSocketAddress("10.0.0.1", port);
+      BsRemote remote = table.computeIfAbsent(
+          BsRemoteTable.pack(remoteAddr), remoteAddr, addr -> new BsRemote(addr, local.getLocalChannel()));
+      remotes.add(remote);
+    }
+    assertEquals(10000, table.size());
+    for (int port = 1; port <= 10000; port++) {
+      assertSame(remotes.get(port - 1), table.get(BsRemoteTable.pack(new InetSocketAddress("10.0.0.1", port))));
+    }
+    assertNull(table.get(BsRemoteTable.pack(new InetSocketAddress("10.0.0.2", 1))));
+
+    // remove, and insert again over tombstones
+    for (int port = 1; port <= 10000; port += 2) {
+      assertTrue(table.remove(BsRemoteTable.pack(remotes.get(port - 1).getRemoteAddr()), remotes.get(port - 1)));
+    }
+    assertEquals(5000, table.size());
+    assertNull(table.get(BsRemoteTable.pack(new InetSocketAddress("10.0.0.1", 1))));
+    assertSame(remotes.get(1), table.get(BsRemoteTable.pack(new InetSocketAddress("10.0.0.1", 2))));
+    int capacity = table.capacity();
+    for (int i = 0; i < 10; i++) {
+      InetSocketAddress remoteAddr = new InetSocketAddress("10.0.0.1", 1);
+      BsRemote remote = table.computeIfAbsent(
+          BsRemoteTable.pack(remoteAddr), remoteAddr, addr -> new BsRemote(addr, local.getLocalChannel()));
+      assertTrue(table.remove(BsRemoteTable.pack(remoteAddr), remote));
+    }
+    assertEquals(capacity, table.capacity());
+
+    // ipv6 falls back to generic map
+    BsRemoteRegistry registry = new BsRemoteRegistry(4);
+    InetSocketAddress remoteAddr6 = new InetSocketAddress("::1", 1);
+    assertEquals(-1, BsRemoteTable.pack(remoteAddr6));
+    BsRemote remote6 = registry.computeIfAbsent(remoteAddr6, addr -> new BsRemote(addr, local.getLocalChannel()));
+    assertSame(remote6, registry.get(new InetSocketAddress("::1", 1)));
+    assertTrue(registry.remove(remote6));
+    assertNull(registry.get(remoteAddr6));
+
+    local.getLocalChannel().destroy();
+  }
+
+  @Test
+  public void testClock() throws BsLocal.BsLocalException, InterruptedException {
+    // coarse clock lags behind system clock up to resolution
+    BsCoarseClock coarse = new BsCoarseClock(5);
+    Thread.sleep(20);
+    assertTrue(Math.abs(System.currentTimeMillis() - coarse.millis()) < 100);
+    coarse.close();
+
+    // timeout is driven only by manual clock
+    BsManualClock manual = new BsManualClock(1000000);
+    BsDate.setClock(manual);
+    BsLocal local = new BsLocal("0.0.0.0", 8840);
+    AtomicInteger timeout = new AtomicInteger();
+    BsRemoteManager manager = new BsRemoteManager(10, new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+      }
+
+      @Override
+      public void timeout(BsRemote remote) {
+        timeout.incrementAndGet();
+      }
+    }, new BsShutdown());
+    try {
+      manager.startServiceTimeout();
+      BsRemote remote = manager.generate(new InetSocketAddress("127.0.0.1", 1), local.getLocalChannel());
+      remote.setIdleMilliSeconds(500);
+
+      manual.advance(400);
+      Thread.sleep(300);
+      assertEquals(0, timeout.get());
+      assertEquals(1, manager.getRemoteCount());
+
+      manual.advance(200);
+      Thread.sleep(300);
+      assertEquals(1, timeout.get());
+      assertEquals(0, manager.getRemoteCount());
+    } finally {
+      BsDate.setClock(BsSystemClock.INSTANCE);
+      manager.shutdownServiceTimeout();
+      local.getLocalChannel().destroy();
+    }
+  }
+
+  @Test
+  public void testAsyncLogger() throws Exception {
+    // bounded ring drops lines while sink is stalled
+    CountDownLatch stall = new CountDownLatch(1);
+    List<String> lines = Collections.synchronizedList(new ArrayList<>());
+    long dropped = BsLogger.getDroppedCount();
+    BsLogger.setAsync(8, new BsLogSink() {
+      @Override
+      public void write(boolean error, CharSequence line) throws IOException {
+        try {
+          stall.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        lines.add(line.toString());
+      }
+    });
+    try {
+      for (int i = 0; i < 100; i++) {
+        BsLogger.info("async " + i);
+      }
+      assertTrue(BsLogger.getDroppedCount() - dropped >= 100 - 8 - 1);
+    } finally {
+      stall.countDown();
+      BsLogger.setSync();
+    }
+    assertTrue(lines.stream().filter(line -> line.contains("][RC-I][")).count() > 0);
+    assertTrue(lines.get(0).matches("\\[\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3}\\]\\[RC-I\\]\\[\\d{10}\\]async \\d+"));
+
+    // mapped file, across small regions
+    Path path = Files.createTempFile("bs", ".log");
+    BsLogger.setAsync(1024, new BsMappedFileSink(path, 64));
+    try {
+      for (int i = 0; i < 10; i++) {
+        BsLogger.info("mapped " + i);
+      }
+    } finally {
+      BsLogger.setSync();
+    }
+    List<String> written = Files.readAllLines(path, StandardCharsets.UTF_8);
+    Files.delete(path);
+    List<String> mapped = new ArrayList<>();
+    for (String line : written) {
+      if (line.contains("]mapped ")) {
+        mapped.add(line.substring(line.indexOf("]mapped ") + 1));
+      }
+    }
+    assertEquals(10, mapped.size());
+    for (int i = 0; i < 10; i++) {
+      assertEquals("mapped " + i, mapped.get(i));
+    }
+
+    // message is rendered when logged, and closed ring refuses line
+    CountDownLatch hold = new CountDownLatch(1);
+    List<String> held = Collections.synchronizedList(new ArrayList<>());
+    BsLogger.setAsync(8, new BsLogSink() {
+      @Override
+      public void write(boolean error, CharSequence line) throws IOException {
+        try {
+          hold.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        held.add(line.toString());
+      }
+    });
+    StringBuilder state = new StringBuilder("before");
+    try {
+      BsLogger.info(state);
+      state.setLength(0);
+      state.append("after");
+    } finally {
+      hold.countDown();
+      BsLogger.setSync();
+    }
+    assertTrue(held.get(0).endsWith("]before"));
+    BsLogRing closed = new BsLogRing(8, BsConsoleSink.INSTANCE, new AtomicLong());
+    closed.close();
+    assertFalse(closed.offer("I", 1, 0, "closed"));
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    // server echoes, and throws on "error"
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        if ("error".equals(new String(message, StandardCharsets.UTF_8))) {
+          throw new RuntimeException("error");
+        }
+        try {
+          remote.send(message);
+        } catch (BsRemote.BsSendException e) {
+          e.printStackTrace();
+        }
+      }
+    }, Collections.singletonList(new BsLocal("0.0.0.0", 8850)));
+    executor4Server.start();
+    assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+        new ObjectName("com.walksocket.bs:type=BsMetrics,name=server-8850")));
+    assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+        new ObjectName("com.walksocket.bs:type=BsPortMetrics,name=server-8850,port=8850")));
+
+    BsLocal local4Client = new BsLocal("0.0.0.0", 18850);
+    BsRemote remote4Client = new BsRemote("127.0.0.1", 8850, local4Client.getLocalChannel());
+    BsExecutorClient executor4Client = new BsExecutorClient(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+      }
+    }, local4Client, remote4Client);
+    executor4Client.start();
+    for (int i = 0; i < 10; i++) {
+      remote4Client.send("hello".getBytes(StandardCharsets.UTF_8));
+    }
+    remote4Client.send("error".getBytes(StandardCharsets.UTF_8));
+    Thread.sleep(500);
+
+    Map<String, Long> server = executor4Server.getMetrics().snapshot();
+    System.out.println(server);
+    assertEquals(11, (long) server.get("port.8850.receivedPackets"));
+    assertEquals(55, (long) server.get("port.8850.receivedBytes"));
+    assertEquals(10, (long) server.get("port.8850.sentPackets"));
+    assertEquals(11, (long) server.get("callbackCount"));
+    assertEquals(1, (long) server.get("callbackExceptions"));
+    assertTrue(executor4Server.getMetrics().getQueueWait().getMax() > 0);
+
+    Map<String, Long> client = executor4Client.getMetrics().snapshot();
+    System.out.println(client);
+    assertEquals(11, (long) client.get("port.18850.sentPackets"));
+    assertEquals(10, (long) client.get("port.18850.receivedPackets"));
+
+    executor4Client.shutdown();
+    executor4Server.shutdown();
+    assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+        new ObjectName("com.walksocket.bs:type=BsMetrics,name=server-8850")));
+  }
+
+  @Test
+  public void testAttributeKey() throws BsLocal.BsLocalException {
+    BsAttributeKey<Integer> cnt = BsAttributeKey.intKey("test.cnt");
+    BsAttributeKey<Long> last = BsAttributeKey.longKey("test.last");
+    BsAttributeKey<String> room = BsAttributeKey.valueOf("test.room", String.class);
+    assertSame(cnt, BsAttributeKey.intKey("test.cnt"));
+    assertThrows(IllegalArgumentException.class, () -> BsAttributeKey.valueOf("test.cnt", Integer.class));
+
+    BsLocal local = new BsLocal("0.0.0.0", 8860);
+    BsRemote remote = new BsRemote("127.0.0.1", 18860, local.getLocalChannel());
+    assertEquals(0, remote.getInt(cnt));
+    assertNull(remote.getAttribute(room));
+    for (int i = 0; i < 5; i++) {
+      remote.setInt(cnt, remote.getInt(cnt) + 1);
+    }
+    remote.setLong(last, Long.MAX_VALUE);
+    remote.setAttribute(room, "lobby");
+    assertEquals(5, remote.getInt(cnt));
+    assertEquals(Integer.valueOf(5), remote.getAttribute(cnt));
+    assertEquals(Long.MAX_VALUE, remote.getLong(last));
+    assertEquals("lobby", remote.getAttribute(room));
+
+    // key registered after remote holds values grows slots
+    BsAttributeKey<String> late = BsAttributeKey.valueOf("test.late", String.class);
+    remote.setAttribute(late, "late");
+    assertEquals("late", remote.getAttribute(late));
+    assertEquals("lobby", remote.getAttribute(room));
+
+    remote.clearAttribute(cnt);
+    remote.clearAttribute(room);
+    assertEquals(0, remote.getInt(cnt));
+    assertNull(remote.getAttribute(room));
+    local.getLocalChannel().destroy();
+  }
+
+  @Test
+  public void testOffHeapRemotes() throws Exception {
+    BsAttributeKey<Integer> cnt = BsAttributeKey.intKey("test.offHeap.cnt");
+
+    // slot reused by other remote is not touched by stale handle
+    BsLocal local = new BsLocal("0.0.0.0", 8869);
+    BsRemoteSlab slab = new BsRemoteSlab(1, 64, 1);
+    BsRemote stale = slab.generate(new InetSocketAddress("127.0.0.1", 1), 1, local.getLocalChannel());
+    stale.lock();
+    try {
+      assertTrue(slab.remove(stale));
+    } finally {
+      stale.unlock();
+    }
+    BsRemote reused = slab.generate(new InetSocketAddress("127.0.0.1", 2), 2, local.getLocalChannel());
+    assertEquals(stale.getSlot(), reused.getSlot());
+    assertNotEquals(stale.getGeneration(), reused.getGeneration());
+    assertFalse(slab.isCurrent(stale.getSlot(), stale.getGeneration()));
+    assertFalse(stale.isActive());
+    assertTrue(reused.isActive());
+    stale.setInt(cnt, 5);
+    stale.setActive(false);
+    assertEquals(0, reused.getInt(cnt));
+    assertTrue(reused.isActive());
+    local.getLocalChannel().destroy();
+    List<BsRemote> handles = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger rejected = new AtomicInteger();
+    AtomicInteger timeouts = new AtomicInteger();
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        handles.add(remote);
+        if ("bye".equals(new String(message, StandardCharsets.UTF_8))) {
+          remote.escape();
+          return;
+        }
+        remote.setInt(cnt, remote.getInt(cnt) + 1);
+        try {
+          remote.setValue("cnt", 1);
+        } catch (IllegalStateException e) {
+          rejected.incrementAndGet();
+        }
+        try {
+          remote.send(String.valueOf(remote.getInt(cnt)).getBytes(StandardCharsets.UTF_8));
+        } catch (BsRemote.BsSendException e) {
+          e.printStackTrace();
+        }
+      }
+
+      @Override
+      public void timeout(BsRemote remote) {
+        timeouts.incrementAndGet();
+      }
+    }, Collections.singletonList(new BsLocal("0.0.0.0", 8870)))
+        .offHeapRemotes(100, 64);
+    executor4Server.start();
+
+    List<String> received4Client = Collections.synchronizedList(new ArrayList<>());
+    List<BsExecutorClient> executor4Clients = new ArrayList<>();
+    List<BsRemote> remote4Clients = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      BsLocal local4Client = new BsLocal("0.0.0.0", 18870 + i);
+      BsRemote remote4Client = new BsRemote("127.0.0.1", 8870, local4Client.getLocalChannel());
+      BsExecutorClient executor4Client = new BsExecutorClient(new BsCallback() {
+        @Override
+        public void incoming(BsRemote remote, byte[] message) {
+          received4Client.add(new String(message, StandardCharsets.UTF_8));
+        }
+      }, local4Client, remote4Client);
+      executor4Client.start();
+      executor4Clients.add(executor4Client);
+      remote4Clients.add(remote4Client);
+    }
+    for (int i = 0; i < 3; i++) {
+      for (BsRemote remote4Client : remote4Clients) {
+        remote4Client.send("hello".getBytes(StandardCharsets.UTF_8));
+      }
+      Thread.sleep(100);
+    }
+    Thread.sleep(300);
+
+    // state is kept in slab between handles
+    assertEquals(2, executor4Server.getRemoteCount());
+    assertEquals(6, rejected.get());
+    assertEquals(2, Collections.frequency(received4Client, "3"));
+    BsRemote handle = handles.get(0);
+    assertEquals(3, handle.getInt(cnt));
+    assertTrue(handle.isActive());
+
+    // escaped remote is swept, and stale handle is not active
+    remote4Clients.get(0).send("bye".getBytes(StandardCharsets.UTF_8));
+    Thread.sleep(100);
+    BsRemote escaped = handles.get(handles.size() - 1);
+    Thread.sleep(2000);
+    assertEquals(1, timeouts.get());
+    assertEquals(1, executor4Server.getRemoteCount());
+    assertFalse(escaped.isActive());
+    assertEquals(0, escaped.getInt(cnt));
+    assertThrows(BsRemote.BsSendException.class, () -> escaped.send("stale".getBytes(StandardCharsets.UTF_8)));
+
+    for (BsExecutorClient executor4Client : executor4Clients) {
+      executor4Client.shutdown();
+    }
+    executor4Server.shutdown();
+  }
+
+  @Test
+  public void testRemoteRecycle() throws Exception {
+    BsLocal local = new BsLocal("0.0.0.0", 8880);
+    AtomicInteger timeouts = new AtomicInteger();
+    BsRemoteManager manager = new BsRemoteManager(1, new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+      }
+
+      @Override
+      public void timeout(BsRemote remote) {
+        timeouts.incrementAndGet();
+      }
+    }, new BsShutdown());
+    manager.startServiceTimeout();
+
+    // rid is formatted lazily, and differs per remote
+    BsRemote old = manager.generate(new InetSocketAddress("127.0.0.1", 18880), local.getLocalChannel());
+    BsRemote other = manager.generate(new InetSocketAddress("127.0.0.1", 18881), local.getLocalChannel());
+    assertEquals(16, old.getRid().length());
+    assertNotEquals(old.getRid(), other.getRid());
+
+    // evicted remote gives its mailbox and lock to next new remote
+    old.updateTimeout();
+    old.escape();
+    Thread.sleep(1500);
+    assertEquals(1, timeouts.get());
+    assertEquals(1, manager.getRemoteCount());
+    BsRemote recycled = manager.generate(new InetSocketAddress("127.0.0.1", 18882), local.getLocalChannel());
+    assertNotSame(old, recycled);
+    assertSame(old.getMailbox(), recycled.getMailbox());
+    assertTrue(recycled.isActive());
+
+    // stale reference is still evicted remote
+    assertFalse(old.isActive());
+    assertEquals(18880, old.getRemoteAddr().getPort());
+    assertThrows(BsRemote.BsSendException.class, () -> old.send("stale".getBytes(StandardCharsets.UTF_8)));
+    assertSame(recycled, manager.generate(new InetSocketAddress("127.0.0.1", 18882), local.getLocalChannel()));
+
+    // remote of new peer with pooled mailbox and lock allocates less than half
+    com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    if (threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled()) {
+      int n = 1000;
+      InetSocketAddress addr = new InetSocketAddress("127.0.0.1", 18883);
+      BsRemote[] remotes = new BsRemote[n];
+      BsRemotePool pool = new BsRemotePool(n);
+      long tid = Thread.currentThread().getId();
+      long before = threadMXBean.getThreadAllocatedBytes(tid);
+      for (int i = 0; i < n; i++) {
+        remotes[i] = pool.create(addr, local.getLocalChannel());
+      }
+      long created = threadMXBean.getThreadAllocatedBytes(tid) - before;
+      for (BsRemote remote : remotes) {
+        assertTrue(pool.offer(remote));
+      }
+      before = threadMXBean.getThreadAllocatedBytes(tid);
+      for (int i = 0; i < n; i++) {
+        remotes[i] = pool.create(addr, local.getLocalChannel());
+      }
+      long pooled = threadMXBean.getThreadAllocatedBytes(tid) - before;
+      System.out.println(String.format("bytes per remote, new:%s, pooled:%s", created / n, pooled / n));
+      assertTrue(pooled * 2 < created);
+    }
+
+    manager.shutdownServiceTimeout();
+    local.getLocalChannel().destroy();
+  }
+
+  @Test
+  public void testRateLimit() throws Exception {
+    // datagram rejected by prefix does not cost remote token
+    BsRateLimiter limiter = new BsRateLimiter(BsRateLimitAction.DROP, 1, 2, 24, 64, 1, 1, 2);
+    long now = System.nanoTime();
+    InetSocketAddress peer1 = new InetSocketAddress("10.0.0.1", 1000);
+    InetSocketAddress peer2 = new InetSocketAddress("10.0.0.2", 1000);
+    assertTrue(limiter.admit(peer1, now));
+    for (int i = 0; i < 3; i++) {
+      assertFalse(limiter.admit(peer2, now));
+    }
+    assertTrue(limiter.admit(peer2, now + TimeUnit.SECONDS.toNanos(1)));
+    assertEquals(0, limiter.getRemoteExceededCount());
+    assertEquals(3, limiter.getPrefixExceededCount());
+
+    // peers in few slots keep own buckets
+    limiter = new BsRateLimiter(BsRateLimitAction.DROP, 1, 1, 24, 64, 0, 0, 2);
+    now = System.nanoTime();
+    assertTrue(limiter.admit(peer1, now));
+    assertTrue(limiter.admit(peer2, now));
+    assertFalse(limiter.admit(peer1, now));
+    assertEquals(1, limiter.getRemoteExceededCount());
+
+    for (BsRateLimitAction action : BsRateLimitAction.values()) {
+      // start server, one token per 10 seconds, so only burst passes
+      AtomicInteger received4Server = new AtomicInteger();
+      BsLocal local4Server = new BsLocal("0.0.0.0", 8890);
+      BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+        @Override
+        public void incoming(BsRemote remote, byte[] message) {
+          received4Server.incrementAndGet();
+        }
+      }, local4Server);
+      executor4Server.rateLimitRemote(0.1, 5);
+      executor4Server.rateLimitPrefix(24, 64, 0.1, 8);
+      executor4Server.rateLimitAction(action);
+      executor4Server.start();
+
+      // two remotes in same prefix
+      BsLocal local4Client1 = new BsLocal("0.0.0.0", 18890);
+      BsLocal local4Client2 = new BsLocal("0.0.0.0", 18891);
+      BsRemote remote4Client1 = new BsRemote("127.0.0.1", 8890, local4Client1.getLocalChannel());
+      BsRemote remote4Client2 = new BsRemote("127.0.0.1", 8890, local4Client2.getLocalChannel());
+      for (int i = 0; i < 10; i++) {
+        remote4Client1.send(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+      }
+      Thread.sleep(500);
+      for (int i = 0; i < 10; i++) {
+        remote4Client2.send(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+      }
+      Thread.sleep(1000);
+
+      System.out.println(String.format("action:%s, received:%s, remoteExceeded:%s, prefixExceeded:%s, dropped:%s",
+          action,
+          received4Server.get(),
+          executor4Server.getRateLimitRemoteExceededCount(),
+          executor4Server.getRateLimitPrefixExceededCount(),
+          executor4Server.getRateLimitDroppedCount()));
+      // client1 exceeds remote limit after 5, and client2 exceeds prefix limit after 3
+      // without spending its remote tokens
+      assertEquals(5, executor4Server.getRateLimitRemoteExceededCount());
+      assertEquals(7, executor4Server.getRateLimitPrefixExceededCount());
+      assertEquals(12, executor4Server.getMetrics().getRateLimitExceeded());
+      if (action == BsRateLimitAction.DROP) {
+        assertEquals(8, received4Server.get());
+        assertEquals(12, executor4Server.getRateLimitDroppedCount());
+        assertEquals(2, executor4Server.getRemoteCount());
+      } else {
+        assertEquals(20, received4Server.get());
+        assertEquals(0, executor4Server.getRateLimitDroppedCount());
+      }
+
+      local4Client1.getLocalChannel().destroy();
+      local4Client2.getLocalChannel().destroy();
+      executor4Server.shutdown();
+    }
+  }
+
+  @Test
+  public void testCidrFilter() throws Exception {
+    // longest prefix wins
+    BsCidrTable table = new BsCidrFilter()
+        .deny("10.0.0.0/8")
+        .allow("10.1.0.0/16")
+        .deny("10.1.2.128/25")
+        .allow("10.1.2.130")
+        .deny("2001:db8::/32")
+        .allow("2001:db8:1::/48")
+        .compile();
+    assertFalse(table.allows(InetAddress.getByName("10.2.3.4")));
+    assertTrue(table.allows(InetAddress.getByName("10.1.3.4")));
+    assertTrue(table.allows(InetAddress.getByName("10.1.2.127")));
+    assertFalse(table.allows(InetAddress.getByName("10.1.2.129")));
+    assertTrue(table.allows(InetAddress.getByName("10.1.2.130")));
+    assertTrue(table.allows(InetAddress.getByName("11.0.0.1")));
+    assertFalse(table.allows(InetAddress.getByName("2001:db8:2::1")));
+    assertTrue(table.allows(InetAddress.getByName("2001:db8:1::1")));
+    assertTrue(table.allows(InetAddress.getByName("2001:db9::1")));
+    assertFalse(new BsCidrFilter().allow("192.168.0.0/16").defaultAllow(false).compile()
+        .allows(InetAddress.getByName("10.0.0.1")));
+    assertThrows(IllegalArgumentException.class, () -> new BsCidrFilter().deny("10.0.0.0/33"));
+    assertThrows(IllegalArgumentException.class, () -> new BsCidrFilter().deny("localhost"));
+
+    // start server denying loopback
+    AtomicInteger received4Server = new AtomicInteger();
+    BsLocal local4Server = new BsLocal("0.0.0.0", 8900);
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        received4Server.incrementAndGet();
+      }
+    }, local4Server);
+    executor4Server.cidrFilter(new BsCidrFilter().deny("127.0.0.0/8"));
+    executor4Server.start();
+
+    BsLocal local4Client = new BsLocal("0.0.0.0", 18900);
+    BsRemote remote4Client = new BsRemote("127.0.0.1", 8900, local4Client.getLocalChannel());
+    for (int i = 0; i < 5; i++) {
+      remote4Client.send(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+    }
+    Thread.sleep(500);
+    assertEquals(0, received4Server.get());
+    assertEquals(5, executor4Server.getCidrDeniedCount());
+    assertEquals(0, executor4Server.getRemoteCount());
+
+    // swap while running
+    executor4Server.cidrFilter(new BsCidrFilter().deny("127.0.0.0/8").allow("127.0.0.1/32"));
+    for (int i = 0; i < 5; i++) {
+      remote4Client.send(String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+    }
+    Thread.sleep(500);
+    assertEquals(5, received4Server.get());
+    assertEquals(5, executor4Server.getCidrDeniedCount());
+    assertEquals(1, executor4Server.getRemoteCount());
+
+    local4Client.getLocalChannel().destroy();
+    executor4Server.shutdown();
+  }
+
+  @Test
+  public void testPipeline() throws Exception {
+    // magic byte, dropped on selector thread if missing
+    BsHandler magic = new BsHandler() {
+      @Override
+      public void inbound(BsHandlerContext ctx, BsRemote remote, Object message) {
+        ByteBuffer buffer = (ByteBuffer) message;
+        if (buffer.remaining() > 0 && buffer.get() == 'M') {
+          ctx.fireInbound(remote, buffer);
+        }
+      }
+
+      @Override
+      public CompletableFuture<BsSendStatus> outbound(BsHandlerContext ctx, BsRemote remote, Object message) {
+        ByteBuffer buffer = (ByteBuffer) message;
+        ByteBuffer encoded = ByteBuffer.allocate(buffer.remaining() + 1);
+        encoded.put((byte) 'M').put(buffer).flip();
+        return ctx.write(remote, encoded);
+      }
+    };
+    // string codec, only messages starting with obj: are decoded
+    BsHandler codec = new BsHandler() {
+      @Override
+      public void inbound(BsHandlerContext ctx, BsRemote remote, Object message) {
+        String text = StandardCharsets.UTF_8.decode(((ByteBuffer) message).duplicate()).toString();
+        ctx.fireInbound(remote, text.startsWith("obj:") ? text : message);
+      }
+
+      @Override
+      public CompletableFuture<BsSendStatus> outbound(BsHandlerContext ctx, BsRemote remote, Object message) {
+        if (message instanceof String) {
+          return ctx.write(remote, ByteBuffer.wrap(((String) message).getBytes(StandardCharsets.UTF_8)));
+        }
+        return ctx.write(remote, message);
+      }
+    };
+
+    // start server, raw message is received buffer itself
+    List<Object> received4Server = Collections.synchronizedList(new ArrayList<>());
+    BsLocal local4Server = new BsLocal("0.0.0.0", 8910);
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        fail("byte array callback is not invoked in direct buffer mode");
+      }
+
+      @Override
+      public void incoming(BsRemote remote, ByteBuffer message) {
+        received4Server.add(StandardCharsets.UTF_8.decode(message).toString());
+      }
+
+      @Override
+      public void decoded(BsRemote remote, Object message) {
+        received4Server.add(message);
+        try {
+          remote.send((Object) ("echo:" + message));
+        } catch (BsRemote.BsSendException e) {
+          e.printStackTrace();
+        }
+      }
+    }, local4Server);
+    executor4Server.directBuffer(true);
+    executor4Server.pipeline(new BsPipeline().addLast(magic).addLast(codec));
+    executor4Server.start();
+
+    // start client, with magic only
+    List<String> received4Client = Collections.synchronizedList(new ArrayList<>());
+    BsLocal local4Client = new BsLocal("0.0.0.0", 18910);
+    BsRemote remote4Client = new BsRemote("127.0.0.1", 8910, local4Client.getLocalChannel());
+    BsExecutorClient executor4Client = new BsExecutorClient(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        received4Client.add(new String(message, StandardCharsets.UTF_8));
+      }
+    }, local4Client, remote4Client);
+    executor4Client.pipeline(new BsPipeline().addLast(magic));
+    executor4Client.start();
+
+    // junk without magic
+    BsLocal local4Junk = new BsLocal("0.0.0.0", 18911);
+    new BsRemote("127.0.0.1", 8910, local4Junk.getLocalChannel()).send("junk".getBytes(StandardCharsets.UTF_8));
+    remote4Client.send("raw".getBytes(StandardCharsets.UTF_8));
+    remote4Client.send("obj:hello".getBytes(StandardCharsets.UTF_8));
+    Thread.sleep(1000);
+
+    assertEquals(Arrays.asList("raw", "obj:hello"), received4Server);
+    assertEquals(Arrays.asList("echo:obj:hello"), received4Client);
+    assertEquals(3, executor4Server.getReceivedCount());
+    assertThrows(IllegalStateException.class, () -> new BsPipeline().addLast(codec)
+        .outbound(remote4Client, new Object()));
+    assertThrows(BsRemote.BsSendException.class, () -> remote4Client.send(new Object()));
+
+    local4Junk.getLocalChannel().destroy();
+    executor4Client.shutdown();
+    executor4Server.shutdown();
+  }
+
+  @Test
+  public void testFrame() throws Exception {
+    // varint frames, split as one list, and malformed tail is dropped
+    List<Object> split = new ArrayList<>();
+    BsPipeline batchPipeline = new BsPipeline().addLast(new BsFrameHandler().batch(true));
+    BsHandlerContext[] chain = batchPipeline.bind((remote, message) -> split.add(message));
+    byte[] frames = new byte[300 + 2 + 1 + 2];
+    int offset = BsFrameHandler.writeVarint(frames, 0, 300);
+    assertEquals(2, offset);
+    offset += 300;
+    offset = BsFrameHandler.writeVarint(frames, offset, 1);
+    frames[offset++] = 'a';
+    frames[offset] = (byte) 0x85;
+    BsPipeline.inbound(chain, null, null, ByteBuffer.wrap(frames));
+    assertEquals(1, split.size());
+    List<?> list = (List<?>) split.get(0);
+    assertEquals(2, list.size());
+    assertEquals(300, ((byte[]) list.get(0)).length);
+    assertEquals(1, ((BsFrameHandler) batchPipeline.getHandlers().get(0)).getMalformedDatagrams());
+
+    // start server
+    BsFrameHandler frame4Server = new BsFrameHandler();
+    List<String> received4Server = Collections.synchronizedList(new ArrayList<>());
+    BsLocal local4Server = new BsLocal("0.0.0.0", 8920);
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        received4Server.add(new String(message, StandardCharsets.UTF_8));
+      }
+    }, local4Server);
+    executor4Server.pipeline(new BsPipeline().addLast(frame4Server));
+    executor4Server.start();
+
+    // client packs 40 byte messages for 50 milliseconds
+    BsFrameHandler frame4Client = new BsFrameHandler().flushDelayMicros(50000);
+    BsLocal local4Client = new BsLocal("0.0.0.0", 18920);
+    BsRemote remote4Client = new BsRemote("127.0.0.1", 8920, local4Client.getLocalChannel());
+    BsExecutorClient executor4Client = new BsExecutorClient(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+      }
+    }, local4Client, remote4Client);
+    executor4Client.pipeline(new BsPipeline().addLast(frame4Client));
+    executor4Client.start();
+
+    List<String> expected = new ArrayList<>();
+    List<CompletableFuture<BsSendStatus>> futures = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      String message = String.format("message-%032d", i);
+      expected.add(message);
+      futures.add(remote4Client.send(message.getBytes(StandardCharsets.UTF_8)));
+    }
+    assertFalse(futures.get(99).isDone());
+    Thread.sleep(1000);
+
+    System.out.println(String.format("sent messages:%s, datagrams:%s",
+        frame4Client.getSentMessages(), frame4Client.getSentDatagrams()));
+    assertEquals(expected, received4Server);
+    for (CompletableFuture<BsSendStatus> future : futures) {
+      assertEquals(BsSendStatus.WRITTEN, future.get());
+    }
+    assertEquals(100, frame4Client.getSentMessages());
+    assertEquals(4, frame4Client.getSentDatagrams());
+    assertEquals(4, frame4Server.getReceivedDatagrams());
+    assertEquals(100, frame4Server.getReceivedMessages());
+
+    executor4Client.shutdown();
+    executor4Server.shutdown();
+  }
+
+  @Test
+  public void testFragment() throws Exception {
+    // start server
+    BsFragmentHandler fragment4Server = new BsFragmentHandler();
+    List<String> received4Server = Collections.synchronizedList(new ArrayList<>());
+    List<BsCompositeBuffer> composites4Server = Collections.synchronizedList(new ArrayList<>());
+    BsLocal local4Server = new BsLocal("0.0.0.0", 8930);
+    BsExecutorServer executor4Server = new BsExecutorServer(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+        received4Server.add(new String(message, StandardCharsets.UTF_8));
+      }
+
+      @Override
+      public void decoded(BsRemote remote, Object message) {
+        composites4Server.add((BsCompositeBuffer) message);
+      }
+    }, local4Server);
+    executor4Server.pipeline(new BsPipeline().addLast(fragment4Server));
+    executor4Server.start();
+
+    // start client
+    BsFragmentHandler fragment4Client = new BsFragmentHandler();
+    BsLocal local4Client = new BsLocal("0.0.0.0", 18930);
+    BsRemote remote4Client = new BsRemote("127.0.0.1", 8930, local4Client.getLocalChannel());
+    BsExecutorClient executor4Client = new BsExecutorClient(new BsCallback() {
+      @Override
+      public void incoming(BsRemote remote, byte[] message) {
+      }
+    }, local4Client, remote4Client);
+    executor4Client.pipeline(new BsPipeline().addLast(fragment4Client));
+    executor4Client.start();
+
+    // small message in one datagram, and large one in fragments
+    byte[] large = new byte[100000];
+    for (int i = 0; i < large.length; i++) {
+      large[i] = (byte) i;
+    }
+    assertEquals(BsSendStatus.WRITTEN, remote4Client.send("small".getBytes(StandardCharsets.UTF_8)).get());
+    assertEquals(BsSendStatus.WRITTEN, remote4Client.send(large).get());
+    assertThrows(BsRemote.BsSendException.class, () -> remote4Client.send(new byte[2 * 1024 * 1024]));
+    Thread.sleep(500);
+
+    System.out.println(fragment4Server);
+    assertEquals(Collections.singletonList("small"), received4Server);
+    assertEquals(1, composites4Server.size());
+    BsCompositeBuffer composite = composites4Server.get(0);
+    int count = (large.length + 1350 - BsFragmentHandler.HEADER - 1) / (1350 - BsFragmentHandler.HEADER);
+    assertEquals(large.length, composite.size());
+    assertEquals(count, composite.getBufferCount());
+    assertArrayEquals(large, composite.toArray());
+    assertEquals(2, fragment4Client.getSentMessages());
+    assertEquals(1 + count, fragment4Client.getSentDatagrams());
+    assertEquals(1, fragment4Server.getReassembledMessages());
+    assertEquals(0, fragment4Server.getPendingMessages());
+    assertEquals(0, fragment4Server.getReassemblyBytes());
+
+    // fragments captured on outbound, and given to receiver out of order
+    List<ByteBuffer> captured = new ArrayList<>();
+    BsPipeline sender = new BsPipeline()
+        .addLast(new BsHandler() {
+          @Override
+          public CompletableFuture<BsSendStatus> outbound(BsHandlerContext ctx, BsRemote remote, Object message) {
+            captured.add((ByteBuffer) message);
+            return CompletableFuture.completedFuture(BsSendStatus.WRITTEN);
+          }
+        })
+        .addLast(new BsFragmentHandler().maxDatagramSize(100));
+    BsFragmentHandler fragment = new BsFragmentHandler().maxPendingMessages(2).maxReassemblyBytes(300);
+    List<Object> reassembled = new ArrayList<>();
+    BsHandlerContext[] chain = new BsPipeline().addLast(fragment).bind((remote, message) -> reassembled.add(message));
+    for (int i = 0; i < 4; i++) {
+      assertEquals(BsSendStatus.WRITTEN, sender.outbound(remote4Client, new byte[250]).get());
+    }
+    assertEquals(12, captured.size());
+    BsPipeline.inbound(chain, null, remote4Client, captured.get(2).duplicate());
+    BsPipeline.inbound(chain, null, remote4Client, captured.get(1).duplicate());
+    BsPipeline.inbound(chain, null, remote4Client, captured.get(1).duplicate());
+    BsPipeline.inbound(chain, null, remote4Client, captured.get(0).duplicate());
+    assertEquals(1, reassembled.size());
+    assertEquals(250, ((BsCompositeBuffer) reassembled.get(0)).size());
+    BsPipeline.inbound(chain, null, remote4Client, ByteBuffer.wrap(new byte[] {9}));
+    assertEquals(1, fragment.getMalformedDatagrams());
+
+    // third pending message drops oldest
+    BsPipeline.inbound(chain, null, remote4Client, captured.get(3).duplicate());
+    BsPipeline.inbound(chain, null, remote4Client, captured.get(6).duplicate());
+    BsPipeline.inbound(chain, null, remote4Client, captured.get(9).duplicate());
+    assertEquals(2, fragment.getPendingMessages());
+    assertEquals(1, fragment.getDroppedMessages());
+    assertTrue(fragment.getReassemblyBytes() > 0);
+
+    // over global limit drops message
+    BsPipeline.inbound(chain, null, remote4Client, captured.get(10).duplicate());
+    assertEquals(2, fragment.getDroppedMessages());
+    assertEquals(1, fragment.getPendingMessages());
+
+    // incomplete message older than idle timeout of remote, and removal of remote
+    remote4Client.setIdleMilliSeconds(100);
+    Thread.sleep(200);
+    BsPipeline.inbound(chain, null, remote4Client, captured.get(5).duplicate());
+    assertEquals(1, fragment.getExpiredMessages());
+    assertEquals(1, fragment.getPendingMessages());
+    fragment.removed(remote4Client);
+    assertEquals(2, fragment.getExpiredMessages());
+    assertEquals(0, fragment.getPendingMessages());
+    assertEquals(0, fragment.getReassemblyBytes());
+    assertEquals(1, reassembled.size());
+
+    // fragment declaring other count than pending message of same id is malformed
+    BsPipeline.inbound(chain, null, remote4Client, captured.get(3).duplicate());
+    for (int forgedCount : new int[] {4, 2}) {
+      ByteBuffer forged = ByteBuffer.allocate(captured.get(4).remaining());
+      forged.put(captured.get(4).duplicate());
+      forged.flip();
+      forged.putShort(7, (short) forgedCount);
+      BsPipeline.inbound(chain, null, remote4Client, forged);
+    }
+    assertEquals(3, fragment.getMalformedDatagrams());
+    assertEquals(1, reassembled.size());
+    BsPipeline.inbound(chain, null, remote4Client, captured.get(4).duplicate());
+    BsPipeline.inbound(chain, null, remote4Client, captured.get(5).duplicate());
+    assertEquals(2, reassembled.size());
+    assertEquals(250, ((BsCompositeBuffer) reassembled.get(1)).size());
+
+    executor4Client.shutdown();
+    executor4Server.shutdown();
+  }
+}